@@ -4,5 +4,5 @@ package nkp.pspValidator.cli;
  * Created by Martin Řehánek on 10.4.17.
  */
 public enum Action {
-    VALIDATE_PSP, VALIDATE_PSP_GROUP, BUILD_MINIFIED_PACKAGE, VALIDATE_METADATA_BY_PROFILE, DEV;
+    VALIDATE_PSP, VALIDATE_PSP_GROUP, BUILD_MINIFIED_PACKAGE, VALIDATE_METADATA_BY_PROFILE, BUILD_CONFIG_SNAPSHOT, DEV;
 }
@@ -1,7 +1,14 @@
 package nkp.pspValidator.cli;
 
 import nkp.pspValidator.shared.*;
+import nkp.pspValidator.shared.engine.FilePipeline;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
+import nkp.pspValidator.shared.engine.HashManager;
+import nkp.pspValidator.shared.engine.PersistentHashCache;
+import nkp.pspValidator.shared.engine.Rule;
+import nkp.pspValidator.shared.engine.StorageType;
 import nkp.pspValidator.shared.engine.Utils;
+import nkp.pspValidator.shared.engine.XmlDocumentCache;
 import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.PspDataException;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
@@ -10,8 +17,11 @@ import nkp.pspValidator.shared.engine.types.MetadataFormat;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
 import nkp.pspValidator.shared.externalUtils.CliCommand;
 import nkp.pspValidator.shared.externalUtils.ExternalUtil;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilExecutor;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilOutputCache;
 import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
-import nkp.pspValidator.shared.externalUtils.ExternalUtilManagerFactory;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilMetrics;
+import nkp.pspValidator.shared.externalUtils.validation.BinaryFileValidator;
 import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfile;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfileParser;
@@ -22,6 +32,7 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -32,6 +43,11 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
@@ -41,6 +57,11 @@ import java.util.zip.ZipFile;
 public class Main {
 
     public static int DEFAULT_VERBOSITY = 2;
+    public static int DEFAULT_RULE_THREADS = 1;
+    public static int DEFAULT_FILE_THREADS = 1;
+    public static int DEFAULT_PSP_THREADS = 1;
+    public static int DEFAULT_HASH_CACHE_MAX_ENTRIES = 1000000;
+    public static int DEFAULT_UTIL_CACHE_MB = 1024;
 
     public static void main(String[] args) throws PspDataException, XmlFileParsingException, InvalidXPathExpressionException, FdmfRegistry.UnknownFdmfException, ValidatorConfigurationException, FdmfRegistry.UnknownFdmfException {
         main(null, args);
@@ -57,14 +78,14 @@ public class Main {
         //https://commons.apache.org/proper/commons-cli/usage.html
         Options options = new Options();
         options.addOption(OptionBuilder
-                .withDescription(replaceUmlaut("Akce, která má být provedena. Povolené hodnoty jsou VALIDATE_PSP, VALIDATE_PSP_GROUP, BUILD_MINIFIED_PACKAGE a VALIDATE_METADATA_BY_PROFILE."))
+                .withDescription(replaceUmlaut("Akce, která má být provedena. Povolené hodnoty jsou VALIDATE_PSP, VALIDATE_PSP_GROUP, BUILD_MINIFIED_PACKAGE, VALIDATE_METADATA_BY_PROFILE a BUILD_CONFIG_SNAPSHOT."))
                 .hasArg()
                 .withArgName("AKCE")
                 .withLongOpt(Params.ACTION)
                 .create("a"));
         options.addOption(OptionBuilder
                 .withDescription(replaceUmlaut("Adresář obsahující formalizované DMF pro jednotlivé verze standardu. " +
-                        "Parametr je povinný pro akce VALIDATE_PSP a VALIDATE_PSP_GROUP, u ostatních akcí je ignorován."))
+                        "Parametr je povinný pro akce VALIDATE_PSP, VALIDATE_PSP_GROUP a BUILD_CONFIG_SNAPSHOT, u ostatních akcí je ignorován."))
                 .hasArg()
                 //.withArgName("ADRESÁŘ_FDMF")
                 .withArgName("ADRESAR_CONFIG")
@@ -228,6 +249,188 @@ public class Main {
                 .withLongOpt(Params.VERBOSITY)
                 .create("v"));
 
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Počet souběžně validovaných balíků skupiny. Bude použito jen pro akci VALIDATE_PSP_GROUP." +
+                                " Každý balík má vlastní engine a protokol, nastavení --" + Params.RULE_THREADS + " platí pro každý z nich." +
+                                " Výchozí hodnota 1 znamená sekvenční zpracování."))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.PSP_THREADS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Počet vláken pro souběžné vyhodnocování navzájem nezávislých pravidel." +
+                                " Výchozí hodnota 1 znamená sekvenční zpracování."))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.RULE_THREADS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Počet vláken pro souběžnou validaci souborů v rámci jednoho pravidla (např. validace podle XSD)." +
+                                " Výchozí hodnota 1 znamená sekvenční zpracování."))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.FILE_THREADS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Počet souběžně běžících procesů externích nástrojů při validaci binárních souborů, buď společně pro všechny nástroje," +
+                                " nebo pro jednotlivé nástroje, např. \"4\" nebo \"JPYLYZER=8,JHOVE=2\" nebo \"4,JHOVE=2\"." +
+                                " Výchozí hodnota 1 znamená sekvenční zpracování."))
+                .hasArg()
+                .withArgName("POCET|NASTROJ=POCET,...")
+                .withLongOpt(Params.UTIL_THREADS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Kolik souborů předat jednomu spuštění externího nástroje, který to umožňuje (např. JHOVE)." +
+                                " Ušetří opakované spouštění JVM/interpretu nástroje. Výchozí hodnota 1 znamená spuštění pro každý soubor zvlášť."))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.UTIL_BATCH_SIZE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Časový limit (v sekundách) jednoho spuštění externího nástroje, buď společně pro všechny nástroje," +
+                                " nebo pro jednotlivé nástroje, např. \"300\" nebo \"300,KAKADU=60\". Nástroj, který limit překročí," +
+                                " se i se svými podprocesy ukončí a soubor se v protokolu označí jako nezvalidovaný." +
+                                " Pokud není uveden, doba běhu nástrojů není omezená."))
+                .hasArg()
+                .withArgName("SEKUNDY|NASTROJ=SEKUNDY,...")
+                .withLongOpt(Params.UTIL_TIMEOUT)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        String.format("Kolik výstupu (v MB, podle počtu znaků) jednoho spuštění externího nástroje se nejvýše načte do paměti," +
+                                " nástroj s delším výstupem se ukončí. Výchozí hodnota je %d.", ExternalUtilManager.DEFAULT_MAX_OUTPUT_CHARS / (1024 * 1024))))
+                .hasArg()
+                .withArgName("MB")
+                .withLongOpt(Params.UTIL_MAX_OUTPUT_MB)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Typ úložiště, na kterém leží balíky. Podle něj se volí počet vláken pro výpočet kontrolních součtů." +
+                                " HDD (výchozí) i pro rotační disky a síťová úložiště (NFS), SSD pro SSD disky."))
+                .hasArg()
+                .withArgName("SSD|HDD")
+                .withLongOpt(Params.STORAGE_TYPE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Počet vláken pro výpočet kontrolních součtů. Pokud není uveden, použije se výchozí hodnota podle typu úložiště."))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.HASH_THREADS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Soubor pro uložení kontrolních součtů mezi jednotlivými běhy validátoru." +
+                                " Součet se z něj použije, pokud se soubor od posledního výpočtu nezměnil (cesta, velikost, čas změny, inode)." +
+                                " Pokud není uveden, perzistentní cache se nepoužije."))
+                .hasArg()
+                .withArgName("SOUBOR")
+                .withLongOpt(Params.HASH_CACHE_FILE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        String.format("Maximální počet záznamů v perzistentní cache kontrolních součtů. Výchozí hodnota je %d.", DEFAULT_HASH_CACHE_MAX_ENTRIES)))
+                .hasArg()
+                .withArgName("POCET")
+                .withLongOpt(Params.HASH_CACHE_MAX_ENTRIES)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Které záznamy odstranit z perzistentní cache kontrolních součtů při překročení maximálního počtu:" +
+                                " LRU (výchozí) nejdéle nepoužité, FIFO nejstarší."))
+                .hasArg()
+                .withArgName("LRU|FIFO")
+                .withLongOpt(Params.HASH_CACHE_EVICTION)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Kontrolní součty vždy spočítat znovu, perzistentní cache jen aktualizovat."))
+                .withLongOpt(Params.HASH_CACHE_VERIFY)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Soubor pro uložení výstupů externích nástrojů nad binárními soubory mezi jednotlivými běhy validátoru." +
+                                " Výstup se z něj použije, pokud se nezměnil soubor (cesta, velikost, čas změny, inode) ani verze nástroje." +
+                                " Pokud není uveden, perzistentní cache se nepoužije."))
+                .hasArg()
+                .withArgName("SOUBOR")
+                .withLongOpt(Params.UTIL_CACHE_FILE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        String.format("Kolik místa (v MB, podle odhadu) smí zabírat výstupy v perzistentní cache výstupů nástrojů," +
+                                " při překročení se odstraní nejdéle nepoužité. Výchozí hodnota je %d.", DEFAULT_UTIL_CACHE_MB)))
+                .hasArg()
+                .withArgName("MB")
+                .withLongOpt(Params.UTIL_CACHE_MB)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Externí nástroje vždy spustit znovu, perzistentní cache výstupů nástrojů jen aktualizovat."))
+                .withLongOpt(Params.UTIL_CACHE_BYPASS)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        String.format("Kolik paměti (v MB, podle odhadu) smí zabírat načtené xml dokumenty balíku v cache. Výchozí hodnota je %d, 0 cache vypne.",
+                                XmlDocumentCache.DEFAULT_BUDGET_BYTES / (1024 * 1024))))
+                .hasArg()
+                .withArgName("MB")
+                .withLongOpt(Params.XML_CACHE_MB)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Pravidla kontrolující seznamy souborů (např. sekundární METS) vyhodnotit jedním společným průchodem soubory," +
+                                " každý soubor se tak načte jen jednou."))
+                .withLongOpt(Params.FILE_PIPELINE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Na začátku validace jedním průchodem načíst strom souborů balíku (jména, typy, velikosti) a dotazy funkcí na soubory" +
+                                " balíku odpovídat z něj. Zrychlí validaci na síťových úložištích (NFS/SMB)."))
+                .withLongOpt(Params.FS_SNAPSHOT)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Balík nebo skupinu balíků v ZIP souboru nerozbalovat, soubory číst přímo ze ZIP souboru. Do adresáře" +
+                                " pro dočasné soubory se rozbalí jen soubory pro externí nástroje, po dobu jejich běhu."))
+                .withLongOpt(Params.ZIP_IN_PLACE)
+                .create());
+
+        options.addOption(OptionBuilder
+                .withDescription(replaceUmlaut(
+                        "Soubor se snímkem zpracované konfigurace validátoru. Akce BUILD_CONFIG_SNAPSHOT ho vytvoří (parametr je pro ni povinný)," +
+                                " akce VALIDATE_PSP a VALIDATE_PSP_GROUP z něj konfiguraci načtou místo zpracování XML." +
+                                " Pokud se konfigurace od vytvoření snímku změnila, snímek se ignoruje."))
+                .hasArg()
+                .withArgName("SOUBOR")
+                .withLongOpt(Params.CONFIG_SNAPSHOT)
+                .create());
+
         options.addOption(OptionBuilder
                 .withDescription(replaceUmlaut(
                         "Adresář s binárními soubory nástroje ImageMagick. " +
@@ -360,6 +563,7 @@ public class Main {
                     case VALIDATE_PSP:
                     case VALIDATE_PSP_GROUP:
                     case VALIDATE_METADATA_BY_PROFILE:
+                    case BUILD_CONFIG_SNAPSHOT:
                         if (!line.hasOption(Params.CONFIG_DIR)) {
                             System.err.println(String.format("Chyba: pro akci %s je parametr --%s povinný!", action, Params.CONFIG_DIR));
                             printHelp(options);
@@ -395,6 +599,16 @@ public class Main {
                     }
                 }
 
+                //config snapshot
+                File configSnapshotFile = null;
+                if (line.hasOption(Params.CONFIG_SNAPSHOT)) {
+                    configSnapshotFile = new File(line.getOptionValue(Params.CONFIG_SNAPSHOT));
+                } else if (action == Action.BUILD_CONFIG_SNAPSHOT) {
+                    System.err.println(String.format("Chyba: pro akci %s je parametr --%s povinný!", action, Params.CONFIG_SNAPSHOT));
+                    printHelp(options);
+                    return;
+                }
+
                 File minifiedPspDir = null;
                 switch (action) {
                     case BUILD_MINIFIED_PACKAGE: {
@@ -517,6 +731,226 @@ public class Main {
                     }
                 }
 
+                //rule threads
+                Integer ruleThreads = DEFAULT_RULE_THREADS;
+                if (line.hasOption(Params.RULE_THREADS)) {
+                    try {
+                        ruleThreads = Integer.valueOf(line.getOptionValue(Params.RULE_THREADS));
+                        if (ruleThreads < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.RULE_THREADS));
+                            printHelp(options);
+                            return;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.RULE_THREADS));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //psp threads
+                Integer pspThreads = DEFAULT_PSP_THREADS;
+                if (line.hasOption(Params.PSP_THREADS)) {
+                    try {
+                        pspThreads = Integer.valueOf(line.getOptionValue(Params.PSP_THREADS));
+                        if (pspThreads < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.PSP_THREADS));
+                            printHelp(options);
+                            return;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.PSP_THREADS));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //file threads
+                Integer fileThreads = DEFAULT_FILE_THREADS;
+                if (line.hasOption(Params.FILE_THREADS)) {
+                    try {
+                        fileThreads = Integer.valueOf(line.getOptionValue(Params.FILE_THREADS));
+                        if (fileThreads < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.FILE_THREADS));
+                            printHelp(options);
+                            return;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.FILE_THREADS));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //external util threads
+                Map<ExternalUtil, Integer> utilThreads = new EnumMap<>(ExternalUtil.class);
+                if (line.hasOption(Params.UTIL_THREADS)) {
+                    try {
+                        utilThreads = ExternalUtilExecutor.parseThreads(line.getOptionValue(Params.UTIL_THREADS));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(String.format("Chyba: neplatná hodnota parametru --%s: %s!", Params.UTIL_THREADS, e.getMessage()));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                Integer utilBatchSize = 1;
+                if (line.hasOption(Params.UTIL_BATCH_SIZE)) {
+                    try {
+                        utilBatchSize = Integer.valueOf(line.getOptionValue(Params.UTIL_BATCH_SIZE));
+                        if (utilBatchSize < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_BATCH_SIZE));
+                            printHelp(options);
+                            return;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_BATCH_SIZE));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //external util limits
+                Map<ExternalUtil, Integer> utilTimeouts = new EnumMap<>(ExternalUtil.class);
+                if (line.hasOption(Params.UTIL_TIMEOUT)) {
+                    try {
+                        utilTimeouts = ExternalUtilManager.parseTimeouts(line.getOptionValue(Params.UTIL_TIMEOUT));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(String.format("Chyba: neplatná hodnota parametru --%s: %s!", Params.UTIL_TIMEOUT, e.getMessage()));
+                        printHelp(options);
+                        return;
+                    }
+                }
+                long utilMaxOutputChars = ExternalUtilManager.DEFAULT_MAX_OUTPUT_CHARS;
+                if (line.hasOption(Params.UTIL_MAX_OUTPUT_MB)) {
+                    try {
+                        long utilMaxOutputMb = Long.valueOf(line.getOptionValue(Params.UTIL_MAX_OUTPUT_MB));
+                        if (utilMaxOutputMb < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_MAX_OUTPUT_MB));
+                            printHelp(options);
+                            return;
+                        }
+                        utilMaxOutputChars = utilMaxOutputMb * 1024 * 1024;
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_MAX_OUTPUT_MB));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //storage type, hash threads
+                StorageType storageType = StorageType.HDD;
+                if (line.hasOption(Params.STORAGE_TYPE)) {
+                    try {
+                        storageType = StorageType.valueOf(line.getOptionValue(Params.STORAGE_TYPE).toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být SSD nebo HDD!", Params.STORAGE_TYPE));
+                        printHelp(options);
+                        return;
+                    }
+                }
+                Integer hashThreads = null;
+                if (line.hasOption(Params.HASH_THREADS)) {
+                    try {
+                        hashThreads = Integer.valueOf(line.getOptionValue(Params.HASH_THREADS));
+                        if (hashThreads < 1) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.HASH_THREADS));
+                            printHelp(options);
+                            return;
+                        }
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.HASH_THREADS));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                //persistent hash cache
+                PersistentHashCache hashCache = null;
+                if (line.hasOption(Params.HASH_CACHE_FILE)) {
+                    int maxEntries = DEFAULT_HASH_CACHE_MAX_ENTRIES;
+                    if (line.hasOption(Params.HASH_CACHE_MAX_ENTRIES)) {
+                        try {
+                            maxEntries = Integer.valueOf(line.getOptionValue(Params.HASH_CACHE_MAX_ENTRIES));
+                            if (maxEntries < 1) {
+                                System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.HASH_CACHE_MAX_ENTRIES));
+                                printHelp(options);
+                                return;
+                            }
+                        } catch (NumberFormatException e) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.HASH_CACHE_MAX_ENTRIES));
+                            printHelp(options);
+                            return;
+                        }
+                    }
+                    PersistentHashCache.EvictionPolicy eviction = PersistentHashCache.EvictionPolicy.LRU;
+                    if (line.hasOption(Params.HASH_CACHE_EVICTION)) {
+                        try {
+                            eviction = PersistentHashCache.EvictionPolicy.valueOf(line.getOptionValue(Params.HASH_CACHE_EVICTION).toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být LRU nebo FIFO!", Params.HASH_CACHE_EVICTION));
+                            printHelp(options);
+                            return;
+                        }
+                    }
+                    hashCache = new PersistentHashCache(new File(line.getOptionValue(Params.HASH_CACHE_FILE)), maxEntries, eviction, line.hasOption(Params.HASH_CACHE_VERIFY));
+                }
+
+                //persistent external util output cache
+                ExternalUtilOutputCache utilOutputCache = null;
+                if (line.hasOption(Params.UTIL_CACHE_FILE)) {
+                    long utilCacheMb = DEFAULT_UTIL_CACHE_MB;
+                    if (line.hasOption(Params.UTIL_CACHE_MB)) {
+                        try {
+                            utilCacheMb = Long.valueOf(line.getOptionValue(Params.UTIL_CACHE_MB));
+                            if (utilCacheMb < 1) {
+                                System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_CACHE_MB));
+                                printHelp(options);
+                                return;
+                            }
+                        } catch (NumberFormatException e) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být kladné číslo!", Params.UTIL_CACHE_MB));
+                            printHelp(options);
+                            return;
+                        }
+                    }
+                    utilOutputCache = new ExternalUtilOutputCache(new File(line.getOptionValue(Params.UTIL_CACHE_FILE)), utilCacheMb * 1024 * 1024, line.hasOption(Params.UTIL_CACHE_BYPASS));
+                }
+
+                //xml document cache
+                long xmlCacheBytes = XmlDocumentCache.DEFAULT_BUDGET_BYTES;
+                if (line.hasOption(Params.XML_CACHE_MB)) {
+                    try {
+                        long xmlCacheMb = Long.valueOf(line.getOptionValue(Params.XML_CACHE_MB));
+                        if (xmlCacheMb < 0) {
+                            System.err.println(String.format("Chyba: hodnota parametru --%s musí být nezáporné číslo!", Params.XML_CACHE_MB));
+                            printHelp(options);
+                            return;
+                        }
+                        xmlCacheBytes = xmlCacheMb * 1024 * 1024;
+                    } catch (NumberFormatException e) {
+                        System.err.println(String.format("Chyba: hodnota parametru --%s musí být nezáporné číslo!", Params.XML_CACHE_MB));
+                        printHelp(options);
+                        return;
+                    }
+                }
+
+                Validator.PerformanceParams performanceParams = new Validator.PerformanceParams();
+                performanceParams.ruleThreads = ruleThreads;
+                performanceParams.fileThreads = fileThreads;
+                performanceParams.storageType = storageType;
+                performanceParams.hashThreads = hashThreads;
+                performanceParams.hashCache = hashCache;
+                performanceParams.xmlDocumentCacheBytes = xmlCacheBytes;
+                performanceParams.filePipeline = line.hasOption(Params.FILE_PIPELINE);
+                performanceParams.fileSystemSnapshot = line.hasOption(Params.FS_SNAPSHOT);
+                performanceParams.zipInPlace = line.hasOption(Params.ZIP_IN_PLACE);
+                performanceParams.utilThreads = utilThreads;
+                performanceParams.utilBatchSize = utilBatchSize;
+                performanceParams.utilOutputCache = utilOutputCache;
+                performanceParams.utilTimeouts = utilTimeouts;
+                performanceParams.utilMaxOutputChars = utilMaxOutputChars;
+
                 //external utils
                 Map<ExternalUtil, File> utilsPaths = new HashMap<>();
                 Set<ExternalUtil> utilsDisabled = new HashSet<>();
@@ -583,19 +1017,24 @@ public class Main {
                 PrintStream out = System.out;
                 PrintStream err = System.err;
 
+                ConfigSnapshot configSnapshot = null;
+                if (configSnapshotFile != null && (action == Action.VALIDATE_PSP || action == Action.VALIDATE_PSP_GROUP)) {
+                    configSnapshot = loadConfigSnapshot(configSnapshotFile, configDir, err);
+                }
+
                 switch (action) {
                     case VALIDATE_PSP:
                         validatePsp(psp,
-                                configDir, tmpDir,
-                                verbosity, out, err, xmlProtocolDir, xmlProtocolFile,
+                                configDir, configSnapshot, tmpDir,
+                                verbosity, performanceParams, out, err, xmlProtocolDir, xmlProtocolFile,
                                 dmfDetectorParams,
                                 utilsPaths, utilsDisabled,
                                 devParams);
                         break;
                     case VALIDATE_PSP_GROUP:
                         validatePspGroup(pspGroup,
-                                configDir, tmpDir,
-                                verbosity, out, err, xmlProtocolDir,
+                                configDir, configSnapshot, tmpDir,
+                                verbosity, performanceParams, pspThreads, out, err, xmlProtocolDir,
                                 dmfDetectorParams,
                                 utilsPaths, utilsDisabled,
                                 devParams);
@@ -614,10 +1053,27 @@ public class Main {
                             }
                         }
                         break;
+                    case BUILD_CONFIG_SNAPSHOT:
+                        buildConfigSnapshot(configDir, configSnapshotFile, out);
+                        break;
                     case DEV:
                         dev();
                         break;
                 }
+                if (hashCache != null) {
+                    try {
+                        hashCache.save();
+                    } catch (IOException e) {
+                        System.err.println(String.format("Chyba zápisu cache kontrolních součtů: %s", e.getMessage()));
+                    }
+                }
+                if (utilOutputCache != null) {
+                    try {
+                        utilOutputCache.save();
+                    } catch (IOException e) {
+                        System.err.println(String.format("Chyba zápisu cache výstupů nástrojů: %s", e.getMessage()));
+                    }
+                }
             }
         } catch (ParseException exp) {
             System.err.println("Chyba parsování parametrů: " + exp.getMessage());
@@ -698,6 +1154,30 @@ public class Main {
         }
     }
 
+    private static ConfigSnapshot loadConfigSnapshot(File configSnapshotFile, File configDir, PrintStream err) {
+        try {
+            ConfigSnapshot snapshot = ConfigSnapshot.load(configSnapshotFile, configDir);
+            if (snapshot == null) {
+                err.println(String.format("Snímek konfigurace %s neexistuje nebo neodpovídá konfiguraci, konfigurace se zpracuje z XML", configSnapshotFile.getAbsolutePath()));
+            }
+            return snapshot;
+        } catch (IOException e) {
+            err.println(String.format("Chyba čtení snímku konfigurace %s, konfigurace se zpracuje z XML: %s", configSnapshotFile.getAbsolutePath(), e.getMessage()));
+            return null;
+        }
+    }
+
+    private static void buildConfigSnapshot(File configDir, File configSnapshotFile, PrintStream out) throws ValidatorConfigurationException {
+        out.println(String.format("Kořenový adresář konfigurace validátoru: %s", configDir.getAbsolutePath()));
+        ConfigSnapshot snapshot = ConfigSnapshot.build(configDir);
+        try {
+            snapshot.save(configSnapshotFile, configDir);
+            out.println(String.format("Snímek konfigurace uložen do %s", configSnapshotFile.getAbsolutePath()));
+        } catch (IOException e) {
+            throw new ValidatorConfigurationException("nelze uložit snímek konfigurace %s: %s", configSnapshotFile.getAbsolutePath(), e.getMessage());
+        }
+    }
+
     private static void dev() {
         System.out.println("DEV");
         nkp.pspValidator.shared.Main.templateTest();
@@ -893,22 +1373,26 @@ public class Main {
     }
 
     private static void validatePspGroup(File pspGroup,
-                                         File configDir, File tmpDir,
-                                         Integer verbosity, PrintStream out, PrintStream err,
+                                         File configDir, ConfigSnapshot configSnapshot, File tmpDir,
+                                         Integer verbosity, Validator.PerformanceParams performanceParams, int pspThreads, PrintStream out, PrintStream err,
                                          File xmlProtocolDir,
                                          DmfDetector.Params dmfDetectorParams,
-                                         Map<ExternalUtil, File> utilsPaths, Set<ExternalUtil> utilsDisabled, Validator.DevParams devParams) throws ValidatorConfigurationException, XmlFileParsingException, FdmfRegistry.UnknownFdmfException, PspDataException, InvalidXPathExpressionException {
+                                         Map<ExternalUtil, File> utilsPaths, Set<ExternalUtil> utilsDisabled, Validator.DevParams devParams) throws ValidatorConfigurationException {
         Platform platform = Platform.detectOs();
         out.println(String.format("Platforma: %s", platform.toReadableString()));
 
-        //validator configuration
+        //validator configuration, sdilena vsemi baliky skupiny
         out.println(String.format("Kořenový adresář konfigurace validátoru: %s", configDir.getAbsolutePath()));
-        ValidatorConfigurationManager validatorConfigManager = new ValidatorConfigurationManager(configDir);
-        ExternalUtilManager externalUtilManager = new ExternalUtilManagerFactory(validatorConfigManager.getExternalUtilsConfigFile()).buildExternalUtilManager(platform.getOperatingSystem());
+        ValidatorConfigurationManager validatorConfigManager = new ValidatorConfigurationManager(configDir, configSnapshot);
+        ExternalUtilManager externalUtilManager = validatorConfigManager.buildExternalUtilManagerFactory().buildExternalUtilManager(platform.getOperatingSystem());
         externalUtilManager.setPaths(utilsPaths);
+        //limity plati uz pro zjistovani verzi nastroju
+        externalUtilManager.setTimeouts(performanceParams.utilTimeouts);
+        externalUtilManager.setMaxOutputChars(performanceParams.utilMaxOutputChars);
         detectImageTools(out, externalUtilManager, utilsDisabled);
+        FdmfRegistry fdmfRegistry = new FdmfRegistry(validatorConfigManager);
 
-
+        PspGroupSummary summary = new PspGroupSummary();
         //pspDirOrZipFile dir or zip file?
         if (!pspGroup.exists()) {
             throw new IllegalStateException(String.format("Soubor %s neexistuje", pspGroup.getAbsolutePath()));
@@ -917,30 +1401,31 @@ public class Main {
                 if (!pspGroup.canRead()) {
                     throw new IllegalStateException(String.format("Nelze číst adresář %s", pspGroup.getAbsolutePath()));
                 }
-                validatePspGroupDir(pspGroup,
-                        configDir, tmpDir,
-                        verbosity, out, err, xmlProtocolDir,
+                validatePspGroupDir(pspGroup, null, null,
+                        tmpDir,
+                        externalUtilManager, validatorConfigManager, fdmfRegistry,
+                        verbosity, performanceParams, pspThreads, out, err, xmlProtocolDir,
                         dmfDetectorParams,
-                        utilsPaths, utilsDisabled,
-                        devParams);
+                        devParams, summary);
             } else {
                 validatePspGroupZip(pspGroup,
-                        configDir, tmpDir,
-                        verbosity, out, err, xmlProtocolDir,
+                        tmpDir,
+                        externalUtilManager, validatorConfigManager, fdmfRegistry,
+                        verbosity, performanceParams, pspThreads, out, err, xmlProtocolDir,
                         dmfDetectorParams,
-                        utilsPaths, utilsDisabled,
-                        devParams);
+                        devParams, summary);
             }
         }
+        summary.print(out, pspThreads);
     }
 
     private static void validatePspGroupZip(File pspGroupFile,
-                                            File configDir, File tmpDir,
-                                            Integer verbosity, PrintStream out, PrintStream err,
+                                            File tmpDir,
+                                            ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                            Integer verbosity, Validator.PerformanceParams performanceParams, int pspThreads, PrintStream out, PrintStream err,
                                             File xmlProtocolDir,
                                             DmfDetector.Params dmfDetectorParams,
-                                            Map<ExternalUtil, File> utilsPaths, Set<ExternalUtil> utilsDisabled,
-                                            Validator.DevParams devParams) throws PspDataException, XmlFileParsingException, FdmfRegistry.UnknownFdmfException, ValidatorConfigurationException, InvalidXPathExpressionException {
+                                            Validator.DevParams devParams, PspGroupSummary summary) {
         try {
             try {
                 new ZipFile(pspGroupFile);
@@ -962,23 +1447,29 @@ public class Main {
                     out.println(String.format("Mažu adresář %s", containerDir.getAbsolutePath()));
                     Utils.deleteNonemptyDir(containerDir);
                 }
-                out.println(String.format("Rozbaluji %s do adresáře %s", pspGroupFile.getAbsolutePath(), containerDir.getAbsolutePath()));
-                Utils.unzip(pspGroupFile, containerDir);
-                File[] filesInContainer = containerDir.listFiles();
-                if (filesInContainer.length == 1 && filesInContainer[0].isDirectory()) {
-                    validatePspGroupDir(filesInContainer[0],
-                            configDir, tmpDir,
-                            verbosity, out, err, xmlProtocolDir,
-                            dmfDetectorParams,
-                            utilsPaths, utilsDisabled,
-                            devParams);
+                if (performanceParams.zipInPlace) {
+                    out.println(String.format("Čtu %s bez rozbalení, soubory pro externí nástroje se rozbalí do adresáře %s", pspGroupFile.getAbsolutePath(), containerDir.getAbsolutePath()));
+                    try (FileSystemSnapshot zipFileSystem = FileSystemSnapshot.ofZip(pspGroupFile, containerDir)) {
+                        validatePspGroupDir(findPspDirInContainer(zipFileSystem, containerDir), null, zipFileSystem,
+                                tmpDir,
+                                externalUtilManager, validatorConfigManager, fdmfRegistry,
+                                verbosity, performanceParams, pspThreads, out, err, xmlProtocolDir,
+                                dmfDetectorParams,
+                                devParams, summary);
+                    } finally {
+                        if (containerDir.exists()) {
+                            Utils.deleteNonemptyDir(containerDir);
+                        }
+                    }
                 } else {
-                    validatePspGroupDir(containerDir,
-                            configDir, tmpDir,
-                            verbosity, out, err, xmlProtocolDir,
+                    out.println(String.format("Rozbaluji %s do adresáře %s", pspGroupFile.getAbsolutePath(), containerDir.getAbsolutePath()));
+                    Map<File, String> knownHashes = Utils.unzipAndComputeHashes(pspGroupFile, containerDir);
+                    validatePspGroupDir(findPspDirInContainer(FileSystemSnapshot.passThrough(), containerDir), knownHashes, null,
+                            tmpDir,
+                            externalUtilManager, validatorConfigManager, fdmfRegistry,
+                            verbosity, performanceParams, pspThreads, out, err, xmlProtocolDir,
                             dmfDetectorParams,
-                            utilsPaths, utilsDisabled,
-                            devParams);
+                            devParams, summary);
                 }
             }
         } catch (IOException e) {
@@ -986,28 +1477,163 @@ public class Main {
         }
     }
 
-    private static void validatePspGroupDir(File pspGroupDir,
-                                            File configDir, File tmpDir,
-                                            Integer verbosity, PrintStream out, PrintStream err,
+    /**
+     * @return adresář balíku (skupiny) v adresáři, kam se rozbalil ZIP: jediný adresář v něm, jinak adresář samotný
+     */
+    private static File findPspDirInContainer(FileSystemSnapshot fileSystem, File containerDir) {
+        File[] filesInContainer = fileSystem.listFiles(containerDir);
+        if (filesInContainer != null && filesInContainer.length == 1 && fileSystem.isDirectory(filesInContainer[0])) {
+            return filesInContainer[0];
+        } else {
+            return containerDir;
+        }
+    }
+
+    /**
+     * @param knownHashes   kontrolní součty souborů spočítané při rozbalení skupiny ze ZIP souboru, nebo null
+     * @param zipFileSystem snímek ZIP souboru skupiny, která se nerozbaluje, nebo null
+     * @param pspThreads    počet souběžně validovaných balíků, každý má vlastní engine, výstup balíku se vypíše vcelku po jeho dokončení
+     */
+    private static void validatePspGroupDir(File pspGroupDir, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem,
+                                            File tmpDir,
+                                            ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                            Integer verbosity, Validator.PerformanceParams performanceParams, int pspThreads, PrintStream out, PrintStream err,
                                             File xmlProtocolDir,
                                             DmfDetector.Params dmfDetectorParams,
-                                            Map<ExternalUtil, File> utilsPaths, Set<ExternalUtil> utilsDisabled,
-                                            Validator.DevParams devParams) throws XmlFileParsingException, FdmfRegistry.UnknownFdmfException, PspDataException, ValidatorConfigurationException, InvalidXPathExpressionException {
-        for (File pspDirOrZip : pspGroupDir.listFiles()) {
-            //TODO: pocitat nevalidni baliky
-            validatePsp(pspDirOrZip,
-                    configDir, tmpDir,
-                    verbosity, out, err,
-                    xmlProtocolDir, null,
+                                            Validator.DevParams devParams, PspGroupSummary summary) {
+        File[] pspDirsOrZips = zipFileSystem != null ? zipFileSystem.listFiles(pspGroupDir) : pspGroupDir.listFiles();
+        Arrays.sort(pspDirsOrZips);
+        validatePsps(pspDirsOrZips, pspThreads, out, err, (pspDirOrZip, pspOut, pspErr) ->
+                validatePspInGroup(pspDirOrZip, knownHashes, zipFileSystem,
+                        tmpDir,
+                        externalUtilManager, validatorConfigManager, fdmfRegistry,
+                        verbosity, performanceParams, pspOut, pspErr, xmlProtocolDir,
+                        dmfDetectorParams,
+                        devParams, summary));
+    }
+
+    /**
+     * Validace jednoho balíku skupiny, výstup balíku jde do předaných streamů.
+     */
+    interface PspValidation {
+        void validate(File pspDirOrZip, PrintStream out, PrintStream err);
+    }
+
+    /**
+     * @param pspThreads počet souběžně validovaných balíků; při více vláknech se výstup balíku (out i err) bufferuje
+     *                   a do out se vypíše vcelku po jeho dokončení, výstupy balíků se tak neprolínají
+     */
+    static void validatePsps(File[] pspDirsOrZips, int pspThreads, PrintStream out, PrintStream err, PspValidation validation) {
+        if (pspThreads <= 1) {
+            for (File pspDirOrZip : pspDirsOrZips) {
+                validation.validate(pspDirOrZip, out, err);
+            }
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(pspThreads, runnable -> {
+                Thread thread = new Thread(runnable, "psp-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> tasks = new ArrayList<>(pspDirsOrZips.length);
+                for (File pspDirOrZip : pspDirsOrZips) {
+                    tasks.add(executor.submit(() -> {
+                        //vystup a chyby baliku zvlast, vypisou se najednou do out a err az po validaci baliku
+                        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+                        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+                        PrintStream pspOut = new PrintStream(outBuffer);
+                        PrintStream pspErr = new PrintStream(errBuffer);
+                        try {
+                            validation.validate(pspDirOrZip, pspOut, pspErr);
+                        } finally {
+                            pspOut.flush();
+                            pspErr.flush();
+                            synchronized (out) {
+                                out.write(outBuffer.toByteArray(), 0, outBuffer.size());
+                                out.flush();
+                                err.write(errBuffer.toByteArray(), 0, errBuffer.size());
+                                err.flush();
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //validatePspInGroup chyby baliku zachytava, sem se dostanou jen neocekavane chyby
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void validatePspInGroup(File pspDirOrZipFile, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem,
+                                           File tmpDir,
+                                           ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                           Integer verbosity, Validator.PerformanceParams performanceParams, PrintStream out, PrintStream err,
+                                           File xmlProtocolDir,
+                                           DmfDetector.Params dmfDetectorParams,
+                                           Validator.DevParams devParams, PspGroupSummary summary) {
+        long start = System.currentTimeMillis();
+        PspGroupSummary.Verdict verdict;
+        try {
+            Boolean valid = validatePspDirOrZip(pspDirOrZipFile, knownHashes, zipFileSystem,
+                    tmpDir,
+                    externalUtilManager, validatorConfigManager, fdmfRegistry,
+                    out, err, verbosity, performanceParams, xmlProtocolDir, null,
                     dmfDetectorParams,
-                    utilsPaths, utilsDisabled,
                     devParams);
+            verdict = valid == null ? PspGroupSummary.Verdict.NOT_PROCESSED : valid ? PspGroupSummary.Verdict.VALID : PspGroupSummary.Verdict.INVALID;
+        } catch (ValidatorConfigurationException | FdmfRegistry.UnknownFdmfException | PspDataException | InvalidXPathExpressionException | XmlFileParsingException | RuntimeException e) {
+            //chyba jednoho baliku neukonci validaci cele skupiny
+            err.println(String.format("Chyba validace balíku %s: %s", pspDirOrZipFile.getAbsolutePath(), e.getMessage()));
+            verdict = PspGroupSummary.Verdict.ERROR;
         }
+        summary.add(pspDirOrZipFile, verdict, System.currentTimeMillis() - start, sizeOf(pspDirOrZipFile, zipFileSystem));
+    }
+
+    private static long sizeOf(File pspDirOrZipFile, FileSystemSnapshot zipFileSystem) {
+        if (zipFileSystem != null) {
+            return sizeOf(zipFileSystem, pspDirOrZipFile);
+        }
+        if (!pspDirOrZipFile.isDirectory()) {
+            return pspDirOrZipFile.length();
+        }
+        long[] size = new long[1];
+        try {
+            Files.walkFileTree(pspDirOrZipFile.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            //jen pro statistiku propustnosti
+        }
+        return size[0];
+    }
+
+    private static long sizeOf(FileSystemSnapshot fileSystem, File file) {
+        File[] children = fileSystem.listFiles(file);
+        if (children == null) {
+            return fileSystem.length(file);
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(fileSystem, child);
+        }
+        return size;
     }
 
     private static void validatePsp(File pspDirOrZipFile,
-                                    File configDir, File tmpDir,
-                                    Integer verbosity, PrintStream out, PrintStream err,
+                                    File configDir, ConfigSnapshot configSnapshot, File tmpDir,
+                                    Integer verbosity, Validator.PerformanceParams performanceParams, PrintStream out, PrintStream err,
                                     File xmlProtocolDir, File xmlProtocolFile,
                                     DmfDetector.Params dmfDetectorParams,
                                     Map<ExternalUtil, File> utilsPaths, Set<ExternalUtil> utilsDisabled,
@@ -1017,39 +1643,74 @@ public class Main {
 
         //validator configuration
         out.println(String.format("Kořenový adresář konfigurace validátoru: %s", configDir.getAbsolutePath()));
-        ValidatorConfigurationManager validatorConfigManager = new ValidatorConfigurationManager(configDir);
-        ExternalUtilManager externalUtilManager = new ExternalUtilManagerFactory(validatorConfigManager.getExternalUtilsConfigFile()).buildExternalUtilManager(platform.getOperatingSystem());
+        ValidatorConfigurationManager validatorConfigManager = new ValidatorConfigurationManager(configDir, configSnapshot);
+        ExternalUtilManager externalUtilManager = validatorConfigManager.buildExternalUtilManagerFactory().buildExternalUtilManager(platform.getOperatingSystem());
         externalUtilManager.setPaths(utilsPaths);
+        //limity plati uz pro zjistovani verzi nastroju
+        externalUtilManager.setTimeouts(performanceParams.utilTimeouts);
+        externalUtilManager.setMaxOutputChars(performanceParams.utilMaxOutputChars);
         detectImageTools(out, externalUtilManager, utilsDisabled);
+        FdmfRegistry fdmfRegistry = new FdmfRegistry(validatorConfigManager);
+
+        validatePspDirOrZip(pspDirOrZipFile, null, null,
+                tmpDir,
+                externalUtilManager, validatorConfigManager, fdmfRegistry,
+                out, err, verbosity, performanceParams, xmlProtocolDir, xmlProtocolFile,
+                dmfDetectorParams,
+                devParams);
+    }
 
+    /**
+     * @param zipFileSystem snímek ZIP souboru skupiny, ve které balík je, pokud se skupina nerozbaluje, jinak null
+     * @return jestli je balík validní, null pokud nebyl zpracován (není ZIP, chyba rozbalení)
+     */
+    private static Boolean validatePspDirOrZip(File pspDirOrZipFile, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem,
+                                               File tmpDir,
+                                               ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                               PrintStream out, PrintStream err, Integer verbosity, Validator.PerformanceParams performanceParams,
+                                               File xmlProtocolDir, File xmlProtocolFile,
+                                               DmfDetector.Params dmfDetectorParams,
+                                               Validator.DevParams devParams) throws ValidatorConfigurationException, FdmfRegistry.UnknownFdmfException, PspDataException, InvalidXPathExpressionException, XmlFileParsingException {
+        FileSystemSnapshot fileSystem = zipFileSystem != null ? zipFileSystem : FileSystemSnapshot.passThrough();
         //pspDirOrZipFile dir or zip file?
-        if (!pspDirOrZipFile.exists()) {
+        if (!fileSystem.exists(pspDirOrZipFile)) {
             throw new IllegalStateException(String.format("Soubor %s neexistuje", pspDirOrZipFile.getAbsolutePath()));
         } else {
-            if (pspDirOrZipFile.isDirectory()) {
-                if (!pspDirOrZipFile.canRead()) {
+            if (fileSystem.isDirectory(pspDirOrZipFile)) {
+                if (!fileSystem.canRead(pspDirOrZipFile)) {
                     throw new IllegalStateException(String.format("Nelze číst adresář %s", pspDirOrZipFile.getAbsolutePath()));
                 }
-                validatePspDir(pspDirOrZipFile,
-                        externalUtilManager, validatorConfigManager,
-                        out, verbosity, xmlProtocolDir, xmlProtocolFile,
+                return validatePspDir(pspDirOrZipFile, knownHashes, zipFileSystem,
+                        externalUtilManager, validatorConfigManager, fdmfRegistry,
+                        out, verbosity, performanceParams, xmlProtocolDir, xmlProtocolFile,
                         dmfDetectorParams,
                         devParams);
             } else {
-                validatePspZip(pspDirOrZipFile,
-                        tmpDir,
-                        externalUtilManager, validatorConfigManager,
-                        out, err, verbosity, xmlProtocolDir, xmlProtocolFile,
-                        dmfDetectorParams,
-                        devParams);
+                try {
+                    //ZIP balik v nerozbalovanem ZIP souboru skupiny, ZipFile potrebuje soubor na disku
+                    fileSystem.materialize(pspDirOrZipFile);
+                } catch (IOException e) {
+                    out.println(String.format("Chyba zpracování ZIP souboru %s: %s!", pspDirOrZipFile.getAbsolutePath(), e.getMessage()));
+                    return null;
+                }
+                try {
+                    return validatePspZip(pspDirOrZipFile,
+                            tmpDir,
+                            externalUtilManager, validatorConfigManager, fdmfRegistry,
+                            out, err, verbosity, performanceParams, xmlProtocolDir, xmlProtocolFile,
+                            dmfDetectorParams,
+                            devParams);
+                } finally {
+                    fileSystem.release(pspDirOrZipFile);
+                }
             }
         }
     }
 
-    private static void validatePspZip(File pspZipFile,
+    private static Boolean validatePspZip(File pspZipFile,
                                        File tmpDir,
-                                       ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager,
-                                       PrintStream out, PrintStream err, Integer verbosity,
+                                       ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                       PrintStream out, PrintStream err, Integer verbosity, Validator.PerformanceParams performanceParams,
                                        File xmlProtocolDir, File xmlProtocolFile,
                                        DmfDetector.Params dmfDetectorParams,
                                        Validator.DevParams devParams) throws XmlFileParsingException, FdmfRegistry.UnknownFdmfException, PspDataException, ValidatorConfigurationException, InvalidXPathExpressionException {
@@ -1058,7 +1719,7 @@ public class Main {
                 new ZipFile(pspZipFile);
             } catch (ZipException e) {
                 out.println(String.format("Soubor %s není adresář ani soubor ZIP, ignoruji.", pspZipFile.getAbsolutePath()));
-                return;
+                return null;
             }
             if (tmpDir == null) {
                 err.println(String.format("Chyba: prázdný parametr --%s: adresář pro dočasné soubory je potřeba pro rozbalení ZIP souboru %s!", Params.TMP_DIR, pspZipFile.getAbsolutePath()));
@@ -1074,19 +1735,25 @@ public class Main {
                     out.println(String.format("Mažu adresář %s", containerDir.getAbsolutePath()));
                     Utils.deleteNonemptyDir(containerDir);
                 }
-                out.println(String.format("Rozbaluji %s do adresáře %s", pspZipFile.getAbsolutePath(), containerDir.getAbsolutePath()));
-                Utils.unzip(pspZipFile, containerDir);
-                File[] filesInContainer = containerDir.listFiles();
-                if (filesInContainer.length == 1 && filesInContainer[0].isDirectory()) {
-                    validatePspDir(filesInContainer[0],
-                            externalUtilManager, validatorConfigManager,
-                            out, verbosity, xmlProtocolDir, xmlProtocolFile,
-                            dmfDetectorParams,
-                            devParams);
+                if (performanceParams.zipInPlace) {
+                    out.println(String.format("Čtu %s bez rozbalení, soubory pro externí nástroje se rozbalí do adresáře %s", pspZipFile.getAbsolutePath(), containerDir.getAbsolutePath()));
+                    try (FileSystemSnapshot zipFileSystem = FileSystemSnapshot.ofZip(pspZipFile, containerDir)) {
+                        return validatePspDir(findPspDirInContainer(zipFileSystem, containerDir), null, zipFileSystem,
+                                externalUtilManager, validatorConfigManager, fdmfRegistry,
+                                out, verbosity, performanceParams, xmlProtocolDir, xmlProtocolFile,
+                                dmfDetectorParams,
+                                devParams);
+                    } finally {
+                        if (containerDir.exists()) {
+                            Utils.deleteNonemptyDir(containerDir);
+                        }
+                    }
                 } else {
-                    validatePspDir(containerDir,
-                            externalUtilManager, validatorConfigManager,
-                            out, verbosity, xmlProtocolDir, xmlProtocolFile,
+                    out.println(String.format("Rozbaluji %s do adresáře %s", pspZipFile.getAbsolutePath(), containerDir.getAbsolutePath()));
+                    Map<File, String> knownHashes = Utils.unzipAndComputeHashes(pspZipFile, containerDir);
+                    return validatePspDir(findPspDirInContainer(FileSystemSnapshot.passThrough(), containerDir), knownHashes, null,
+                            externalUtilManager, validatorConfigManager, fdmfRegistry,
+                            out, verbosity, performanceParams, xmlProtocolDir, xmlProtocolFile,
                             dmfDetectorParams,
                             devParams);
                 }
@@ -1094,25 +1761,37 @@ public class Main {
         } catch (IOException e) {
             out.println(String.format("Chyba zpracování ZIP souboru %s: %s!", pspZipFile.getAbsolutePath(), e.getMessage()));
         }
+        return null;
     }
 
-    private static void validatePspDir(File pspDir,
-                                       ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager,
-                                       PrintStream out, Integer verbosity,
+    /**
+     * @param knownHashes   kontrolní součty souborů spočítané při rozbalení ze ZIP souboru (mohou obsahovat i soubory jiných balíků), nebo null
+     * @param zipFileSystem snímek ZIP souboru, pokud se balík nerozbaluje, jinak null
+     */
+    private static boolean validatePspDir(File pspDir, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem,
+                                       ExternalUtilManager externalUtilManager, ValidatorConfigurationManager validatorConfigManager, FdmfRegistry fdmfRegistry,
+                                       PrintStream out, Integer verbosity, Validator.PerformanceParams performanceParams,
                                        File xmlProtocolDir, File xmlProtocolFile,
                                        DmfDetector.Params dmfDetectorParams,
                                        Validator.DevParams devParams) throws ValidatorConfigurationException, FdmfRegistry.UnknownFdmfException, PspDataException, XmlFileParsingException, InvalidXPathExpressionException {
         //psp dir, dmf detection
-        checkReadableDir(pspDir);
+        if (zipFileSystem == null) {
+            checkReadableDir(pspDir);
+        }
         out.println(String.format("Zpracovávám PSP balík %s", pspDir.getAbsolutePath()));
 
 
-        Dmf dmfResolved = new DmfDetector().resolveDmf(pspDir, dmfDetectorParams);
+        Dmf dmfResolved = (zipFileSystem == null ? new DmfDetector() : new DmfDetector(zipFileSystem)).resolveDmf(pspDir, dmfDetectorParams);
         out.println(String.format("Bude použita verze standardu %s", dmfResolved));
 
         //initializes j2k profiles according to selected fDMF
-        FdmfConfiguration fdmfConfig = new FdmfRegistry(validatorConfigManager).getFdmfConfig(dmfResolved);
-        fdmfConfig.initBinaryFileProfiles(externalUtilManager);
+        FdmfConfiguration fdmfConfig = fdmfRegistry.getFdmfConfig(dmfResolved);
+        synchronized (fdmfConfig) {
+            //fDMF sdili vsechny baliky skupiny, profily se inicializuji jen jednou
+            if (!fdmfConfig.isBinaryFileProfilesInitialized()) {
+                fdmfConfig.initBinaryFileProfiles(externalUtilManager);
+            }
+        }
 
         //xml protocol file
         if (xmlProtocolFile == null) {
@@ -1124,10 +1803,49 @@ public class Main {
         }
 
         //validate
-        Validator validator = ValidatorFactory.buildValidator(fdmfConfig, pspDir, validatorConfigManager.getDictionaryManager());
+        Validator validator = ValidatorFactory.buildValidator(fdmfConfig, pspDir, validatorConfigManager.getDictionaryManager(), zipFileSystem);
+        validator.applyPerformanceParams(performanceParams);
+        if (knownHashes != null) {
+            validator.registerKnownHashes(pspDir, knownHashes);
+        }
         out.println(String.format("Validátor inicializován, spouštím validace"));
         ValidationState.ProgressListener progressListener = null;
-        validator.run(xmlProtocolFile, out, verbosity, devParams, null, progressListener, null);
+        ValidationState state = validator.run(xmlProtocolFile, out, verbosity, devParams, null, progressListener, null);
+        if (verbosity >= 3) {
+            HashManager hashManager = validator.getHashManager();
+            Double throughput = hashManager.getBulkThroughputMBps();
+            out.println(String.format("Kontrolní součty: přečteno %d MB, ušetřeno opakovaného čtení %d MB, propustnost %s",
+                    hashManager.getBytesHashed() / (1024 * 1024), hashManager.getBytesSaved() / (1024 * 1024),
+                    throughput == null ? "neměřena" : String.format("%.1f MB/s", throughput)));
+            XmlDocumentCache.Statistics xmlCache = validator.getXmlDocumentCacheStatistics();
+            out.println(String.format("Cache xml dokumentů: zásahů %d, načtení %d, načtení mimo cache %d, vyřazení %d, nejvíce %d MB z %d MB (odhad)",
+                    xmlCache.getHits(), xmlCache.getMisses(), xmlCache.getUncached(), xmlCache.getEvictions(),
+                    xmlCache.getPeakBytes() / (1024 * 1024), xmlCache.getBudgetBytes() / (1024 * 1024)));
+            for (Rule rule : state.getFilePipelineRules()) {
+                FilePipeline.Timing timing = state.getFilePipelineTiming(rule);
+                out.println(String.format("Společný průchod soubory, pravidlo %s: parametry %d ms, kontrola souborů %d ms",
+                        rule.getName(), timing.getParametersMs(), timing.getVisitMs()));
+            }
+            FileSystemSnapshot.Statistics fsSnapshot = validator.getFileSystemStatistics();
+            if (fsSnapshot.getRefreshes() > 0) {
+                out.println(String.format("Snímek souborů balíku: položek %d, ušetřeno dotazů na souborový systém %d, předáno %d",
+                        fsSnapshot.getEntries(), fsSnapshot.getStatsAvoided(), fsSnapshot.getStatsPerformed()));
+            }
+            if (performanceParams.utilOutputCache != null) {
+                out.println(String.format("Cache výstupů nástrojů: zásahů %d, spuštění %d",
+                        performanceParams.utilOutputCache.getHits(), performanceParams.utilOutputCache.getMisses()));
+            }
+            BinaryFileValidator binaryFileValidator = validator.getBinaryFileValidator();
+            if (binaryFileValidator != null) {
+                for (ExternalUtilMetrics.Statistics utilStats : binaryFileValidator.getUtilMetrics().getStatistics()) {
+                    out.println(String.format("Nástroj %s (%s): spuštění %d, souborů %d, selhání %d, překročení času %d, překročení výstupu %d, doba p50 %d ms, p99 %d ms, max %d ms",
+                            utilStats.getExecution().getUtil().getUserFriendlyName(), utilStats.getExecution().getName(),
+                            utilStats.getExecutions(), utilStats.getFiles(), utilStats.getFailures(), utilStats.getTimeouts(), utilStats.getOutputLimits(),
+                            utilStats.getP50Millis(), utilStats.getP99Millis(), utilStats.getMaxMillis()));
+                }
+            }
+        }
+        return state.isValid();
     }
 
 
@@ -39,6 +39,27 @@ public class Params {
     public static final String DISABLE_CHECKMATE = "disable-checkmate";
 
     public static final String VERBOSITY = "verbosity";
+    public static final String RULE_THREADS = "rule-threads";
+    public static final String FILE_THREADS = "file-threads";
+    public static final String UTIL_THREADS = "util-threads";
+    public static final String UTIL_BATCH_SIZE = "util-batch-size";
+    public static final String UTIL_TIMEOUT = "util-timeout";
+    public static final String UTIL_MAX_OUTPUT_MB = "util-max-output-mb";
+    public static final String STORAGE_TYPE = "storage-type";
+    public static final String HASH_THREADS = "hash-threads";
+    public static final String PSP_THREADS = "psp-threads";
+    public static final String HASH_CACHE_FILE = "hash-cache-file";
+    public static final String HASH_CACHE_MAX_ENTRIES = "hash-cache-max-entries";
+    public static final String HASH_CACHE_EVICTION = "hash-cache-eviction";
+    public static final String HASH_CACHE_VERIFY = "hash-cache-verify";
+    public static final String UTIL_CACHE_FILE = "util-cache-file";
+    public static final String UTIL_CACHE_MB = "util-cache-mb";
+    public static final String UTIL_CACHE_BYPASS = "util-cache-bypass";
+    public static final String XML_CACHE_MB = "xml-cache-mb";
+    public static final String FILE_PIPELINE = "file-pipeline";
+    public static final String FS_SNAPSHOT = "fs-snapshot";
+    public static final String ZIP_IN_PLACE = "zip-in-place";
+    public static final String CONFIG_SNAPSHOT = "config-snapshot";
     public static final String HELP = "help";
     public static final String VERSION = "version";
     public static final String QUIT_AFTER_NTH_INVALID_PSP = "quit-after-nth-invalid-psp";
@@ -0,0 +1,73 @@
+package nkp.pspValidator.cli;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Souhrn validace skupiny PSP balíků: počty validních a nevalidních balíků, doby validace a propustnost.
+ * Výsledky mohou přidávat souběžně validující vlákna.
+ */
+class PspGroupSummary {
+
+    enum Verdict {
+        VALID, INVALID, NOT_PROCESSED, ERROR
+    }
+
+    private final long startTime = System.currentTimeMillis();
+    private final List<PackageResult> results = new ArrayList<>();
+
+    synchronized void add(File psp, Verdict verdict, long durationMs, long bytes) {
+        results.add(new PackageResult(psp, verdict, durationMs, bytes));
+    }
+
+    synchronized void print(PrintStream out, int pspThreads) {
+        long totalTime = System.currentTimeMillis() - startTime;
+        int[] counts = new int[Verdict.values().length];
+        long packagesTime = 0;
+        long maxTime = 0;
+        long bytes = 0;
+        for (PackageResult result : results) {
+            counts[result.verdict.ordinal()]++;
+            packagesTime += result.durationMs;
+            maxTime = Math.max(maxTime, result.durationMs);
+            bytes += result.bytes;
+        }
+        out.println("=========================================================================");
+        out.println(String.format("Souhrn validace skupiny balíků (vláken pro balíky: %d)", pspThreads));
+        out.println(String.format("Balíků: %d, validních: %d, nevalidních: %d, nezpracovaných: %d, chyb validace: %d",
+                results.size(), counts[Verdict.VALID.ordinal()], counts[Verdict.INVALID.ordinal()],
+                counts[Verdict.NOT_PROCESSED.ordinal()], counts[Verdict.ERROR.ordinal()]));
+        out.println(String.format("Celková doba: %s, součet dob validace balíků: %s, průměrně na balík: %s, nejdéle: %s",
+                formatDuration(totalTime), formatDuration(packagesTime),
+                formatDuration(results.isEmpty() ? 0 : packagesTime / results.size()), formatDuration(maxTime)));
+        if (totalTime > 0) {
+            out.println(String.format("Propustnost: %.1f balíků/hod, %.1f MB/s",
+                    results.size() * 3_600_000.0 / totalTime, bytes / (1024.0 * 1024.0) / (totalTime / 1000.0)));
+        }
+        for (PackageResult result : results) {
+            if (result.verdict == Verdict.INVALID || result.verdict == Verdict.ERROR) {
+                out.println(String.format("%s: %s", result.verdict == Verdict.INVALID ? "nevalidní" : "chyba", result.psp.getAbsolutePath()));
+            }
+        }
+    }
+
+    private static String formatDuration(long ms) {
+        return String.format("%d:%02d:%02d.%03d", ms / 3_600_000, (ms / 60_000) % 60, (ms / 1000) % 60, ms % 1000);
+    }
+
+    private static class PackageResult {
+        private final File psp;
+        private final Verdict verdict;
+        private final long durationMs;
+        private final long bytes;
+
+        PackageResult(File psp, Verdict verdict, long durationMs, long bytes) {
+            this.psp = psp;
+            this.verdict = verdict;
+            this.durationMs = durationMs;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package nkp.pspValidator.cli;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validace skupiny balíků v poolu vláken: výstup balíků se neprolíná, souhrn počítá balíky podle výsledku.
+ */
+public class PspGroupValidationTest {
+
+    private static final int PACKAGES = 12;
+    private static final int LINES = 20;
+
+    @Test
+    public void outputOfPackageNotInterleaved() {
+        File[] psps = psps();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outBuffer, true);
+        PrintStream err = new PrintStream(errBuffer, true);
+        Main.validatePsps(psps, 4, out, err, (psp, pspOut, pspErr) -> {
+            threads.add(Thread.currentThread().getName());
+            for (int i = 0; i < LINES; i++) {
+                //stridani out a err a cekani, aby se vlakna na vystupu potkala
+                (i % 2 == 0 ? pspOut : pspErr).println(psp.getName() + " " + i);
+                sleep(1);
+            }
+        });
+        assertTrue(threads.size() > 1);
+
+        //chyby baliku jdou do err, ne do out
+        List<String> outPackages = assertPackagesNotInterleaved(lines(outBuffer), 0);
+        List<String> errPackages = assertPackagesNotInterleaved(lines(errBuffer), 1);
+        //baliky jsou v out i err ve stejnem poradi
+        assertEquals(outPackages, errPackages);
+    }
+
+    /**
+     * @return balíky v pořadí výstupu, každý má své řádky pohromadě a ve správném pořadí
+     */
+    private static List<String> assertPackagesNotInterleaved(List<String> lines, int firstLine) {
+        int linesPerPackage = LINES / 2;
+        assertEquals(PACKAGES * linesPerPackage, lines.size());
+        List<String> packages = new ArrayList<>();
+        for (int start = 0; start < lines.size(); start += linesPerPackage) {
+            String psp = lines.get(start).split(" ")[0];
+            assertFalse(packages.contains(psp));
+            packages.add(psp);
+            for (int i = 0; i < linesPerPackage; i++) {
+                assertEquals(psp + " " + (firstLine + 2 * i), lines.get(start + i));
+            }
+        }
+        return packages;
+    }
+
+    @Test
+    public void singleThreadWritesDirectly() {
+        File[] psps = psps();
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outBuffer, true);
+        PrintStream err = new PrintStream(errBuffer, true);
+        List<String> order = new ArrayList<>();
+        Main.validatePsps(psps, 1, out, err, (psp, pspOut, pspErr) -> {
+            assertSame(out, pspOut);
+            assertSame(err, pspErr);
+            order.add(psp.getName());
+        });
+        List<String> expected = new ArrayList<>();
+        for (File psp : psps) {
+            expected.add(psp.getName());
+        }
+        assertEquals(expected, order);
+    }
+
+    @Test
+    public void summaryCountsVerdicts() throws Exception {
+        PspGroupSummary summary = new PspGroupSummary();
+        File[] psps = psps();
+        PspGroupSummary.Verdict[] verdicts = PspGroupSummary.Verdict.values();
+        ByteArrayOutputStream ignored = new ByteArrayOutputStream();
+        //vysledky pridavaji soubezna vlakna
+        Main.validatePsps(psps, 4, new PrintStream(ignored), new PrintStream(ignored), (psp, pspOut, pspErr) -> {
+            int index = index(psp);
+            summary.add(psp, verdicts[index % verdicts.length], 10, 1024);
+        });
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        summary.print(new PrintStream(buffer, true, "UTF-8"), 4);
+        String output = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(output, output.contains("vláken pro balíky: 4"));
+        assertTrue(output, output.contains("Balíků: 12, validních: 3, nevalidních: 3, nezpracovaných: 3, chyb validace: 3"));
+        assertTrue(output, output.contains("součet dob validace balíků: 0:00:00.120, průměrně na balík: 0:00:00.010, nejdéle: 0:00:00.010"));
+        //vypisou se jen nevalidni a chybne baliky
+        for (File psp : psps) {
+            PspGroupSummary.Verdict verdict = verdicts[index(psp) % verdicts.length];
+            assertEquals(psp.getName(), verdict == PspGroupSummary.Verdict.INVALID, output.contains("nevalidní: " + psp.getAbsolutePath() + System.lineSeparator()));
+            assertEquals(psp.getName(), verdict == PspGroupSummary.Verdict.ERROR, output.contains("chyba: " + psp.getAbsolutePath() + System.lineSeparator()));
+        }
+    }
+
+    private static File[] psps() {
+        File[] psps = new File[PACKAGES];
+        for (int i = 0; i < PACKAGES; i++) {
+            psps[i] = new File(String.format("psp_%02d", i));
+        }
+        return psps;
+    }
+
+    private static int index(File psp) {
+        return Integer.parseInt(psp.getName().substring("psp_".length()));
+    }
+
+    private static List<String> lines(ByteArrayOutputStream buffer) {
+        String output = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        return Arrays.asList(output.split(System.lineSeparator()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,10 +2,19 @@ package nkp.pspValidator.gui;
 
 import nkp.pspValidator.shared.Dmf;
 import nkp.pspValidator.shared.Platform;
+import nkp.pspValidator.shared.Validator;
+import nkp.pspValidator.shared.engine.PersistentHashCache;
+import nkp.pspValidator.shared.engine.StorageType;
+import nkp.pspValidator.shared.externalUtils.ExternalUtil;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilExecutor;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilOutputCache;
 
 import java.io.*;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -87,6 +96,40 @@ public class ConfigurationManager {
     //text log verbosity
     public static final String PROP_TEXT_LOG_VERBOSITY = "text_log.verbosity";
 
+    //pocet vlaken pro paralelni vyhodnocovani pravidel, neuvedeno znamena sekvencni zpracovani
+    public static final String PROP_VALIDATION_RULE_THREADS = "validation.rule_threads";
+    //pocet vlaken pro soubeznou validaci souboru v ramci jednoho pravidla
+    public static final String PROP_VALIDATION_FILE_THREADS = "validation.file_threads";
+    //pocet soubezne bezicich procesu externich nastroju, napr. "4" nebo "JPYLYZER=8,JHOVE=2"
+    public static final String PROP_VALIDATION_UTIL_THREADS = "validation.util_threads";
+    //kolik souboru predat jednomu spusteni externiho nastroje
+    public static final String PROP_VALIDATION_UTIL_BATCH_SIZE = "validation.util_batch_size";
+    //casove limity spusteni externich nastroju v sekundach, napr. "300" nebo "300,KAKADU=60", neuvedeno znamena bez limitu
+    public static final String PROP_VALIDATION_UTIL_TIMEOUT = "validation.util_timeout";
+    //kolik MB (podle poctu znaku) vystupu jednoho spusteni externiho nastroje se nejvys nacte
+    public static final String PROP_VALIDATION_UTIL_MAX_OUTPUT_MB = "validation.util_max_output_mb";
+    //typ uloziste (SSD/HDD) a pocet vlaken pro vypocet kontrolnich souctu
+    public static final String PROP_VALIDATION_STORAGE_TYPE = "validation.storage_type";
+    public static final String PROP_VALIDATION_HASH_THREADS = "validation.hash_threads";
+    //kontrolni soucty ulozene mezi behy validatoru, neuvedeny soubor znamena bez perzistentni cache
+    public static final String PROP_VALIDATION_HASH_CACHE_FILE = "validation.hash_cache.file";
+    public static final String PROP_VALIDATION_HASH_CACHE_MAX_ENTRIES = "validation.hash_cache.max_entries";
+    public static final String PROP_VALIDATION_HASH_CACHE_EVICTION = "validation.hash_cache.eviction";
+    public static final String PROP_VALIDATION_HASH_CACHE_VERIFY = "validation.hash_cache.verify";
+    private static final int DEFAULT_HASH_CACHE_MAX_ENTRIES = 1000000;
+    //vystupy externich nastroju ulozene mezi behy validatoru, neuvedeny soubor znamena bez perzistentni cache
+    public static final String PROP_VALIDATION_UTIL_CACHE_FILE = "validation.util_cache.file";
+    public static final String PROP_VALIDATION_UTIL_CACHE_MB = "validation.util_cache.mb";
+    public static final String PROP_VALIDATION_UTIL_CACHE_BYPASS = "validation.util_cache.bypass";
+    private static final int DEFAULT_UTIL_CACHE_MB = 1024;
+    //odhad pameti (MB) pro nactene xml dokumenty baliku, neuvedeno znamena vychozi hodnotu
+    public static final String PROP_VALIDATION_XML_CACHE_MB = "validation.xml_cache_mb";
+    //pravidla nad seznamy souboru vyhodnotit jednim spolecnym pruchodem soubory
+    public static final String PROP_VALIDATION_FILE_PIPELINE = "validation.file_pipeline";
+    public static final String PROP_VALIDATION_FS_SNAPSHOT = "validation.fs_snapshot";
+    //ZIP balik nerozbalovat, soubory cist primo ze ZIP souboru
+    public static final String PROP_VALIDATION_ZIP_IN_PLACE = "validation.zip_in_place";
+
     private final Platform platform;
     private final File configFile;
     private final Properties properties = new Properties();
@@ -196,6 +239,77 @@ public class ConfigurationManager {
         }
     }
 
+    public Validator.PerformanceParams getPerformanceParams() {
+        Validator.PerformanceParams params = new Validator.PerformanceParams();
+        Integer ruleThreads = getIntegerOrNull(PROP_VALIDATION_RULE_THREADS);
+        if (ruleThreads != null && ruleThreads > 1) {
+            params.ruleThreads = ruleThreads;
+        }
+        Integer fileThreads = getIntegerOrNull(PROP_VALIDATION_FILE_THREADS);
+        if (fileThreads != null && fileThreads > 1) {
+            params.fileThreads = fileThreads;
+        }
+        String utilThreads = getStringOrDefault(PROP_VALIDATION_UTIL_THREADS, null);
+        if (utilThreads != null && !utilThreads.trim().isEmpty()) {
+            params.utilThreads = ExternalUtilExecutor.parseThreads(utilThreads);
+        }
+        Integer utilBatchSize = getIntegerOrNull(PROP_VALIDATION_UTIL_BATCH_SIZE);
+        if (utilBatchSize != null && utilBatchSize > 1) {
+            params.utilBatchSize = utilBatchSize;
+        }
+        params.utilTimeouts = getUtilTimeouts();
+        params.utilMaxOutputChars = getUtilMaxOutputChars();
+        String storageType = getStringOrDefault(PROP_VALIDATION_STORAGE_TYPE, null);
+        if (storageType != null) {
+            params.storageType = StorageType.valueOf(storageType.trim().toUpperCase());
+        }
+        Integer hashThreads = getIntegerOrNull(PROP_VALIDATION_HASH_THREADS);
+        if (hashThreads != null && hashThreads > 0) {
+            params.hashThreads = hashThreads;
+        }
+        String hashCacheFile = getStringOrDefault(PROP_VALIDATION_HASH_CACHE_FILE, null);
+        if (hashCacheFile != null && !hashCacheFile.trim().isEmpty()) {
+            Integer maxEntries = getIntegerOrNull(PROP_VALIDATION_HASH_CACHE_MAX_ENTRIES);
+            String eviction = getStringOrDefault(PROP_VALIDATION_HASH_CACHE_EVICTION, PersistentHashCache.EvictionPolicy.LRU.name());
+            params.hashCache = new PersistentHashCache(new File(hashCacheFile.trim()),
+                    maxEntries != null && maxEntries > 0 ? maxEntries : DEFAULT_HASH_CACHE_MAX_ENTRIES,
+                    PersistentHashCache.EvictionPolicy.valueOf(eviction.trim().toUpperCase()),
+                    getBooleanOrDefault(PROP_VALIDATION_HASH_CACHE_VERIFY, false));
+        }
+        String utilCacheFile = getStringOrDefault(PROP_VALIDATION_UTIL_CACHE_FILE, null);
+        if (utilCacheFile != null && !utilCacheFile.trim().isEmpty()) {
+            Integer utilCacheMb = getIntegerOrNull(PROP_VALIDATION_UTIL_CACHE_MB);
+            params.utilOutputCache = new ExternalUtilOutputCache(new File(utilCacheFile.trim()),
+                    (utilCacheMb != null && utilCacheMb > 0 ? utilCacheMb : DEFAULT_UTIL_CACHE_MB) * 1024L * 1024L,
+                    getBooleanOrDefault(PROP_VALIDATION_UTIL_CACHE_BYPASS, false));
+        }
+        Integer xmlCacheMb = getIntegerOrNull(PROP_VALIDATION_XML_CACHE_MB);
+        if (xmlCacheMb != null && xmlCacheMb >= 0) {
+            params.xmlDocumentCacheBytes = xmlCacheMb * 1024L * 1024L;
+        }
+        params.filePipeline = getBooleanOrDefault(PROP_VALIDATION_FILE_PIPELINE, false);
+        params.fileSystemSnapshot = getBooleanOrDefault(PROP_VALIDATION_FS_SNAPSHOT, false);
+        params.zipInPlace = getBooleanOrDefault(PROP_VALIDATION_ZIP_IN_PLACE, false);
+        return params;
+    }
+
+    /**
+     * @return časové limity externích nástrojů v sekundách, neuvedené nástroje bez limitu
+     */
+    public Map<ExternalUtil, Integer> getUtilTimeouts() {
+        String utilTimeouts = getStringOrDefault(PROP_VALIDATION_UTIL_TIMEOUT, null);
+        if (utilTimeouts != null && !utilTimeouts.trim().isEmpty()) {
+            return ExternalUtilManager.parseTimeouts(utilTimeouts);
+        } else {
+            return new EnumMap<>(ExternalUtil.class);
+        }
+    }
+
+    public long getUtilMaxOutputChars() {
+        Integer utilMaxOutputMb = getIntegerOrNull(PROP_VALIDATION_UTIL_MAX_OUTPUT_MB);
+        return utilMaxOutputMb != null && utilMaxOutputMb > 0 ? utilMaxOutputMb * 1024L * 1024L : ExternalUtilManager.DEFAULT_MAX_OUTPUT_CHARS;
+    }
+
     public String getStringOrDefault(String propertyName, String defaultValue) {
         String stringVal = properties.getProperty(propertyName);
         if (stringVal == null) {
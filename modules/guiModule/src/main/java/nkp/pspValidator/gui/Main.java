@@ -15,9 +15,11 @@ import nkp.pspValidator.gui.skipping.SkippingConfigurationDialog;
 import nkp.pspValidator.shared.DmfDetector;
 import nkp.pspValidator.shared.Platform;
 import nkp.pspValidator.shared.Version;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class Main extends Application {
@@ -125,10 +127,18 @@ public class Main extends Application {
     }
 
     public void runPspDirValidation(File pspDir, DmfDetector.Params dmDetectorParams, boolean createTxtLog, boolean createXmlLog, int verbosity) {
+        runPspDirValidation(pspDir, null, null, dmDetectorParams, createTxtLog, createXmlLog, verbosity);
+    }
+
+    /**
+     * @param knownHashes   kontrolní součty spočítané při rozbalení ZIP souboru, nebo null
+     * @param zipFileSystem snímek ZIP souboru, který se nerozbaluje, nebo null, po validaci se zavře
+     */
+    public void runPspDirValidation(File pspDir, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem, DmfDetector.Params dmDetectorParams, boolean createTxtLog, boolean createXmlLog, int verbosity) {
 
         //because the possible unzip dialog cannot close it's parent dialog
         dialogStage.close();
-        mainController.runPspDirValidation(pspDir, dmDetectorParams, createTxtLog, createXmlLog, verbosity);
+        mainController.runPspDirValidation(pspDir, knownHashes, zipFileSystem, dmDetectorParams, createTxtLog, createXmlLog, verbosity);
     }
 
     public void unzipAndRunPspZipValidation(File pspZip, DmfDetector.Params dmfDetectorParams, boolean createTxtLog, boolean createXmlLog, int verbosity) {
@@ -18,6 +18,7 @@ import nkp.pspValidator.gui.skipping.SkippedManager;
 import nkp.pspValidator.gui.skipping.SkippedManagerImpl;
 import nkp.pspValidator.gui.validation.*;
 import nkp.pspValidator.shared.*;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.Rule;
 import nkp.pspValidator.shared.engine.RulesSection;
@@ -25,6 +26,7 @@ import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -163,7 +165,7 @@ public class MainController extends AbstractController implements ValidationStat
      * @param createTxtLog
      * @param createXmlLog
      */
-    public void runPspDirValidation(File pspDir, DmfDetector.Params dmfDetectorParams, boolean createTxtLog, boolean createXmlLog, int verbosity) {
+    public void runPspDirValidation(File pspDir, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem, DmfDetector.Params dmfDetectorParams, boolean createTxtLog, boolean createXmlLog, int verbosity) {
         initBeforeValidation();
         this.pspDir = pspDir;
         this.logTxtFile = createTxtLog ? buildTxtLogFile(pspDir) : null;
@@ -178,10 +180,16 @@ public class MainController extends AbstractController implements ValidationStat
 
                 //System.out.println("validating " + pspDir.getAbsolutePath() + ", mon: " + focedMonographVersion + ", per: " + forcedPeriodicalVersion);
                 PrintStream out = null;
+                Validator.PerformanceParams performanceParams;
                 try {
                     updateStatusFromWorkerThread(String.format("Inicializuji balík %s.", pspDir.getAbsolutePath()), TotalState.RUNNING);
-                    dmf = new DmfDetector().resolveDmf(pspDir, dmfDetectorParams);
-                    Validator validator = Utils.buildValidator(main.getValidationDataManager(), dmf, pspDir);
+                    dmf = (zipFileSystem == null ? new DmfDetector() : new DmfDetector(zipFileSystem)).resolveDmf(pspDir, dmfDetectorParams);
+                    Validator validator = Utils.buildValidator(main.getValidationDataManager(), dmf, pspDir, zipFileSystem);
+                    performanceParams = main.getConfigurationManager().getPerformanceParams();
+                    validator.applyPerformanceParams(performanceParams);
+                    if (knownHashes != null) {
+                        validator.registerKnownHashes(pspDir, knownHashes);
+                    }
                     out = buildTxtLogPrintstream();
                     //DEV
                     Validator.DevParams devParams = null;
@@ -205,6 +213,20 @@ public class MainController extends AbstractController implements ValidationStat
                             toSetOfSkippedSectionNames(skippedManager, dmf),
                             MainController.this,
                             MainController.this);
+                    if (performanceParams.hashCache != null) {
+                        try {
+                            performanceParams.hashCache.save();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    if (performanceParams.utilOutputCache != null) {
+                        try {
+                            performanceParams.utilOutputCache.save();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
                     //updateStatus(String.format("Validace balíku %s hotova.", pspDir.getAbsolutePath()));
                 } /*catch (InterruptedException e) {
                     updateStatusFromWorkerThread(String.format("Validace balíku zrušena."), TotalState.STOPPED);
@@ -215,6 +237,13 @@ public class MainController extends AbstractController implements ValidationStat
                     if (out != null) {
                         out.close();
                     }
+                    if (zipFileSystem != null) {
+                        try {
+                            zipFileSystem.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
                     return null;
                 }
             }
@@ -10,10 +10,12 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.stage.WindowEvent;
 import nkp.pspValidator.shared.DmfDetector;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 import nkp.pspValidator.shared.engine.Utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Map;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
@@ -90,9 +92,26 @@ public class UnzipAndValidateDialogController extends DialogController {
                             }
                         }
 
+                        if (main.getConfigurationManager().getBooleanOrDefault(ConfigurationManager.PROP_VALIDATION_ZIP_IN_PLACE, false)) {
+                            //soubory se ctou primo ze ZIP souboru, do container dir se rozbali jen soubory pro externi nastroje
+                            updateMessage(String.format("Čtu obsah souboru %s", pspZip.getAbsolutePath()));
+                            FileSystemSnapshot zipFileSystem = FileSystemSnapshot.ofZip(pspZip, containerDir);
+                            File pspDir = containerDir;
+                            File[] filesInContainer = zipFileSystem.listFiles(containerDir);
+                            if (filesInContainer.length == 1) {
+                                pspDir = filesInContainer[0];
+                            }
+                            if (!isCancelled()) {
+                                finishOkAndContinue(pspDir, null, zipFileSystem);
+                            } else {
+                                zipFileSystem.close();
+                            }
+                            return null;
+                        }
+
                         //unzip into container dir
                         updateMessage(String.format("Rozbaluji %s do adresáře %s", pspZip.getAbsolutePath(), containerDir.getAbsolutePath()));
-                        Utils.unzip(pspZip, containerDir);
+                        Map<File, String> knownHashes = Utils.unzipAndComputeHashes(pspZip, containerDir);
                         busyWait(1000);
                         if (isCancelled()) {
                             return null;
@@ -106,7 +125,7 @@ public class UnzipAndValidateDialogController extends DialogController {
                         //System.out.println("psp dir: " + pspDir.getAbsolutePath());
 
                         if (!isCancelled()) {
-                            finishOkAndContinue(pspDir);
+                            finishOkAndContinue(pspDir, knownHashes, null);
                         }
                         return null;
                     }
@@ -121,14 +140,16 @@ public class UnzipAndValidateDialogController extends DialogController {
                 }
             }
 
-            private void finishOkAndContinue(File pspDir) {
+            private void finishOkAndContinue(File pspDir, Map<File, String> knownHashes, FileSystemSnapshot zipFileSystem) {
                 Platform.runLater(() -> {
-                    lblInfo.setText("Soubor ZIP byl rozbalen do adresáře " + pspDir.getAbsolutePath());
+                    lblInfo.setText(zipFileSystem == null
+                            ? "Soubor ZIP byl rozbalen do adresáře " + pspDir.getAbsolutePath()
+                            : "Soubor ZIP byl načten bez rozbalení");
                     progressIndicator.setVisible(false);
                     task = null;
                     btnCancelOrClose.setText("Zavřít");
                     stage.close();
-                    main.runPspDirValidation(pspDir, dmfDetectorParams, createTxtLog, createXmlLog, verbosity);
+                    main.runPspDirValidation(pspDir, knownHashes, zipFileSystem, dmfDetectorParams, createTxtLog, createXmlLog, verbosity);
                 });
             }
 
@@ -91,6 +91,9 @@ public class ValidationDataInitializationDialogController extends DialogControll
                         ValidatorConfigurationManager validatorConfigMgr = new ValidatorConfigurationManager(validatorConfigDir);
                         //Thread.sleep(5000);
                         ExternalUtilManager externalUtilManager = new ExternalUtilManagerFactory(validatorConfigMgr.getExternalUtilsConfigFile()).buildExternalUtilManager(getConfigurationManager().getPlatform().getOperatingSystem());
+                        //limity plati uz pro zjistovani verzi nastroju
+                        externalUtilManager.setTimeouts(getConfigurationManager().getUtilTimeouts());
+                        externalUtilManager.setMaxOutputChars(getConfigurationManager().getUtilMaxOutputChars());
                         validationDataManager.setExternalUtilManager(externalUtilManager);
                         validationDataManager.setFdmfRegistry(new FdmfRegistry(validatorConfigMgr));
                         validationDataManager.setValidatorConfigMgr(validatorConfigMgr);
@@ -98,6 +101,9 @@ public class ValidationDataInitializationDialogController extends DialogControll
                     }
                 } catch (ValidatorConfigurationException e) {
                     processResult(new Result(false, e.getMessage()));
+                } catch (IllegalArgumentException e) {
+                    //napr. neplatne limity externich nastroju v konfiguraci
+                    processResult(new Result(false, e.getMessage()));
                 } finally {
                     return null;
                 }
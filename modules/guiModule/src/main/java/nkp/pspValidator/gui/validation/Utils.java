@@ -2,6 +2,7 @@ package nkp.pspValidator.gui.validation;
 
 import nkp.pspValidator.gui.ValidationDataManager;
 import nkp.pspValidator.shared.*;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
 
@@ -13,9 +14,16 @@ import java.io.File;
 public class Utils {
 
     public static Validator buildValidator(ValidationDataManager mgr, Dmf dmf, File pspDir) throws FdmfRegistry.UnknownFdmfException, ValidatorConfigurationException {
+        return buildValidator(mgr, dmf, pspDir, null);
+    }
+
+    /**
+     * @param zipFileSystem snímek ZIP souboru, ze kterého se balík čte bez rozbalení, nebo null
+     */
+    public static Validator buildValidator(ValidationDataManager mgr, Dmf dmf, File pspDir, FileSystemSnapshot zipFileSystem) throws FdmfRegistry.UnknownFdmfException, ValidatorConfigurationException {
         FdmfConfiguration fdmfConfig = mgr.getFdmfRegistry().getFdmfConfig(dmf);
         fdmfConfig.initBinaryFileProfiles(mgr.getExternalUtilManager());
         DictionaryManager dictionaryManager = mgr.getValidatorConfigMgr().getDictionaryManager();
-        return ValidatorFactory.buildValidator(fdmfConfig, pspDir, dictionaryManager);
+        return ValidatorFactory.buildValidator(fdmfConfig, pspDir, dictionaryManager, zipFileSystem);
     }
 }
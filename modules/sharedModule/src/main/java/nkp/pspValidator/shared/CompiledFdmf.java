@@ -0,0 +1,114 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.CompiledConfig;
+import nkp.pspValidator.shared.engine.ConfigProcessor;
+import nkp.pspValidator.shared.engine.Engine;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+import nkp.pspValidator.shared.engine.types.MetadataFormat;
+import nkp.pspValidator.shared.externalUtils.validation.BinaryFileValidator;
+import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
+import nkp.pspValidator.shared.metadataProfile.MetadataProfileParser;
+import nkp.pspValidator.shared.metadataProfile.biblio.BibliographicMetadataProfilesManager;
+import nkp.pspValidator.shared.metadataProfile.mets.MetsProfilesManager;
+import nkp.pspValidator.shared.metadataProfile.tech.TechnicalMetadataProfilesManager;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Zkompilovaná fDMF: zpracované konfigurační soubory (jmenné prostory, vzory, proměnné, sekce pravidel) a zaregistrované
+ * metadatové profily. Vzniká jednou pro FdmfConfiguration, pro každý balík se z ní jen levně sestaví nový Engine, ve kterém
+ * je čerstvý jen stav balíku (poskytnuté soubory, vyhodnocení proměnných, výsledky pravidel).
+ * <p>
+ * Po vytvoření se nemění, může ji tedy sdílet více souběžně validovaných balíků.
+ */
+public class CompiledFdmf {
+
+    private final DictionaryManager dictionaryManager;
+    private final Map<String, File> providedFiles;
+    private final List<CompiledConfig> configs;
+    private final BibliographicMetadataProfilesManager biblioMgr;
+    private final TechnicalMetadataProfilesManager techMgr;
+    private final MetsProfilesManager metsMgr;
+
+    CompiledFdmf(FdmfConfiguration fdmfConfiguration, DictionaryManager dictionaryManager) throws ValidatorConfigurationException {
+        this.dictionaryManager = dictionaryManager;
+        this.providedFiles = Collections.unmodifiableMap(new LinkedHashMap<>(fdmfConfiguration.getProvidedFiles()));
+
+        //configuration files (patterns, variables, rules)
+        List<CompiledConfig> configs = fdmfConfiguration.getSnapshotConfigs();
+        //profiles from snapshot have already been test-parsed when building it
+        boolean testParseProfiles = configs == null;
+        if (configs == null) {
+            ConfigProcessor configProcessor = new ConfigProcessor();
+            configs = new ArrayList<>();
+            for (File configFile : fdmfConfiguration.getFdmfConfigFiles()) {
+                configs.add(configProcessor.compile(configFile));
+            }
+        }
+        this.configs = Collections.unmodifiableList(new ArrayList<>(configs));
+
+        //bibliographic profile files
+        biblioMgr = new BibliographicMetadataProfilesManager(new MetadataProfileParser(dictionaryManager));
+        for (File profileFile : fdmfConfiguration.getBiblioDcProfiles()) {
+            biblioMgr.registerProfileFile(profileFile, MetadataFormat.DC, testParseProfiles);
+        }
+        for (File profileFile : fdmfConfiguration.getBiblioModsProfiles()) {
+            biblioMgr.registerProfileFile(profileFile, MetadataFormat.MODS, testParseProfiles);
+        }
+
+        //technical profile files
+        techMgr = new TechnicalMetadataProfilesManager(new MetadataProfileParser(dictionaryManager));
+        for (File profileFile : fdmfConfiguration.getTechProfiles()) {
+            techMgr.processFile(profileFile, testParseProfiles);
+        }
+
+        //mets profile files
+        metsMgr = new MetsProfilesManager(new MetadataProfileParser(dictionaryManager));
+        for (File profileFile : fdmfConfiguration.getMetsProfiles()) {
+            metsMgr.processFile(profileFile, testParseProfiles);
+        }
+    }
+
+    List<CompiledConfig> getConfigs() {
+        return configs;
+    }
+
+    DictionaryManager getDictionaryManager() {
+        return dictionaryManager;
+    }
+
+    /**
+     * @param binaryFileValidator profily binárních souborů, mohou se měnit podle dostupnosti externích nástrojů, proto nejsou součástí šablony
+     */
+    public Engine buildEngine(File pspRootDir, BinaryFileValidator binaryFileValidator) throws ValidatorConfigurationException {
+        return buildEngine(pspRootDir, binaryFileValidator, null);
+    }
+
+    /**
+     * @param packageFileSystem snímek ZIP souboru balíku, null pro balík v adresáři. Nastavuje se předem, některé
+     *                          proměnné se vyhodnotí už při sestavení funkcí z konfigurace.
+     */
+    public Engine buildEngine(File pspRootDir, BinaryFileValidator binaryFileValidator, FileSystemSnapshot packageFileSystem) throws ValidatorConfigurationException {
+        Engine engine = new Engine(binaryFileValidator);
+        if (packageFileSystem != null) {
+            engine.setFileSystemSnapshot(packageFileSystem);
+        }
+        //psp dir
+        engine.setProvidedFile("PSP_DIR", pspRootDir);
+        //init with provided files
+        for (String id : providedFiles.keySet()) {
+            engine.setProvidedFile(id, providedFiles.get(id));
+        }
+        //configuration (patterns, variables, rules)
+        for (CompiledConfig config : configs) {
+            config.applyTo(engine);
+        }
+        //profile managers are read-only after registration
+        engine.setBibliographicMetadataProfilesManager(biblioMgr);
+        engine.setTechnicalMetadataProfilesManager(techMgr);
+        engine.setMetsProfilesManager(metsMgr);
+        return engine;
+    }
+}
@@ -0,0 +1,263 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.CompiledConfig;
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilExecution;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilManagerFactory;
+import nkp.pspValidator.shared.externalUtils.OutputSplitter;
+import nkp.pspValidator.shared.externalUtils.UtilHandler;
+import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binární snímek zpracované konfigurace validátoru: slovníky, konfigurace externích nástrojů a pro každou fDMF
+ * zkompilované konfigurační soubory (ConfigProcessor.compile()) a seznamy ověřených metadatových profilů.
+ * <p>
+ * Snímek se sestaví jednou (akce BUILD_CONFIG_SNAPSHOT v CLI) a při startu se místo XML jen deserializuje.
+ * Platí jen pro stejný formát snímku, verzi validátoru, nezměněné serializované třídy (otisk jejich serialVersionUID,
+ * viz classFingerprint()) a nezměněný konfigurační adresář (cesta, seznam souborů, jejich velikosti a časy změn).
+ * Jinak load() vrátí null a konfigurace se zpracuje z XML jako dřív.
+ * Jednotlivé fDMF se deserializují až při prvním použití, pokud to selže, zpracuje se daná fDMF z XML.
+ * <p>
+ * Profily binárních souborů ve snímku nejsou, jejich načtení závisí na dostupných externích nástrojích.
+ */
+public class ConfigSnapshot {
+
+    private static final int FORMAT_VERSION = 3;
+    //tridy, jejichz instance jsou ve snimku, vcetne vnorenych (definice pravidel, spusteni nastroju)
+    private static final Class<?>[] SERIALIZED_CLASSES = {
+            FdmfEntry.class, CompiledConfig.class, ExternalUtilManagerFactory.class, ExternalUtilExecution.class,
+            UtilHandler.class, OutputSplitter.class, Dmf.class
+    };
+    private static final int MAGIC = 0x4B56434E; //KVCN
+
+    final HashMap<String, HashSet<String>> dictionaries;
+    private final ExternalUtilManagerFactory externalUtilManagerFactory;
+    //serializovane fDMF podle nazvu adresare
+    final HashMap<String, byte[]> serializedFdmfs;
+    private final Map<String, FdmfEntry> fdmfs = new HashMap<>();
+
+    ConfigSnapshot(HashMap<String, HashSet<String>> dictionaries, ExternalUtilManagerFactory externalUtilManagerFactory, HashMap<String, byte[]> serializedFdmfs) {
+        this.dictionaries = dictionaries;
+        this.externalUtilManagerFactory = externalUtilManagerFactory;
+        this.serializedFdmfs = serializedFdmfs;
+    }
+
+    /**
+     * Zpracuje celou konfiguraci z XML včetně validace proti XSD a zkušebního zpracování metadatových profilů.
+     */
+    public static ConfigSnapshot build(File configDir) throws ValidatorConfigurationException {
+        //absolutni cesty, aby snimek fungoval i z jineho pracovniho adresare
+        ValidatorConfigurationManager configManager = new ValidatorConfigurationManager(configDir.getAbsoluteFile());
+        DictionaryManager dictionaryManager = configManager.getDictionaryManager();
+        HashMap<String, HashSet<String>> dictionaries = new HashMap<>();
+        for (String dictionary : dictionaryManager.getDictionaries()) {
+            dictionaries.put(dictionary, new HashSet<>(dictionaryManager.getDictionaryValues(dictionary)));
+        }
+        ExternalUtilManagerFactory externalUtilManagerFactory = new ExternalUtilManagerFactory(configManager.getExternalUtilsConfigFile());
+        FdmfRegistry fdmfRegistry = new FdmfRegistry(configManager);
+        HashMap<String, byte[]> serializedFdmfs = new HashMap<>();
+        for (String version : fdmfRegistry.getMonographFdmfVersions()) {
+            addFdmf(serializedFdmfs, fdmfRegistry.getMonographFdmfConfig(version), dictionaryManager);
+        }
+        for (String version : fdmfRegistry.getPeriodicalFdmfVersions()) {
+            addFdmf(serializedFdmfs, fdmfRegistry.getPeriodicalFdmfConfig(version), dictionaryManager);
+        }
+        for (String version : fdmfRegistry.getAudioGramFdmfVersions()) {
+            addFdmf(serializedFdmfs, fdmfRegistry.getAudioGramFdmfConfig(version), dictionaryManager);
+        }
+        for (String version : fdmfRegistry.getAudioFonoFdmfVersions()) {
+            addFdmf(serializedFdmfs, fdmfRegistry.getAudioFonoFdmfConfig(version), dictionaryManager);
+        }
+        return new ConfigSnapshot(dictionaries, externalUtilManagerFactory, serializedFdmfs);
+    }
+
+    private static void addFdmf(Map<String, byte[]> serializedFdmfs, FdmfConfiguration fdmfConfig, DictionaryManager dictionaryManager) throws ValidatorConfigurationException {
+        CompiledFdmf compiledFdmf = fdmfConfig.getCompiledFdmf(dictionaryManager);
+        FdmfEntry entry = new FdmfEntry(fdmfConfig, compiledFdmf.getConfigs());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(entry);
+        } catch (IOException e) {
+            throw new ValidatorConfigurationException("nelze serializovat fDMF %s: %s", fdmfConfig.getFdmfRoot().getAbsolutePath(), e.getMessage());
+        }
+        serializedFdmfs.put(fdmfConfig.getFdmfRoot().getName(), bytes.toByteArray());
+    }
+
+    /**
+     * Uloží snímek platný pro aktuální stav konfiguračního adresáře.
+     */
+    public void save(File snapshotFile, File configDir) throws IOException {
+        File tmpFile = new File(snapshotFile.getAbsoluteFile().getParentFile(), snapshotFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(Version.VERSION_CODE);
+            out.writeLong(classFingerprint());
+            out.writeUTF(fingerprint(configDir));
+            ObjectOutputStream objectOut = new ObjectOutputStream(out);
+            objectOut.writeObject(dictionaries);
+            objectOut.writeObject(externalUtilManagerFactory);
+            objectOut.writeObject(serializedFdmfs);
+            objectOut.flush();
+        }
+        Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return snímek, nebo null, pokud neexistuje, je v jiném formátu, z jiné verze validátoru, nebo je konfigurace od jeho sestavení změněná
+     * @throws IOException chyba čtení (poškozený) snímku
+     */
+    @SuppressWarnings("unchecked")
+    public static ConfigSnapshot load(File snapshotFile, File configDir) throws IOException {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !Version.VERSION_CODE.equals(in.readUTF())
+                    || in.readLong() != classFingerprint()) {
+                return null;
+            }
+            if (!fingerprint(configDir).equals(in.readUTF())) {
+                return null;
+            }
+            ObjectInputStream objectIn = new ObjectInputStream(in);
+            return new ConfigSnapshot(
+                    (HashMap<String, HashSet<String>>) objectIn.readObject(),
+                    (ExternalUtilManagerFactory) objectIn.readObject(),
+                    (HashMap<String, byte[]>) objectIn.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(String.format("nekompatibilní snímek konfigurace %s: %s", snapshotFile.getAbsolutePath(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Otisk serializovaných tříd ze serialVersionUID a serializovaných polí (jméno a typ). Třídy snímku mají pevné
+     * serialVersionUID, přidané nebo změněné pole by se tak při deserializaci tiše vynechalo nebo zůstalo prázdné.
+     * Otisk pole zachytí, takže se snímek po změně tříd zahodí i při stejné verzi validátoru.
+     */
+    static long classFingerprint() {
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> serializedClass : SERIALIZED_CLASSES) {
+            classes.add(serializedClass);
+            classes.addAll(Arrays.asList(serializedClass.getDeclaredClasses()));
+        }
+        classes.sort(Comparator.comparing(Class::getName));
+        long result = 17;
+        for (Class<?> serializedClass : classes) {
+            ObjectStreamClass streamClass = ObjectStreamClass.lookup(serializedClass);
+            if (streamClass != null) {
+                result = 31 * result + serializedClass.getName().hashCode();
+                result = 31 * result + streamClass.getSerialVersionUID();
+                for (ObjectStreamField field : streamClass.getFields()) {
+                    result = 31 * result + field.getName().hashCode();
+                    result = 31 * result + field.getType().getName().hashCode();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Otisk konfiguračního adresáře z kanonické cesty a seznamu souborů s velikostmi a časy změn. Obsah souborů se nečte.
+     */
+    private static String fingerprint(File configDir) throws IOException {
+        List<String> lines = new ArrayList<>();
+        File root = configDir.getCanonicalFile();
+        collectFiles(root, "", lines);
+        Collections.sort(lines);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(root.getPath().getBytes(StandardCharsets.UTF_8));
+            for (String line : lines) {
+                digest.update((byte) '\n');
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void collectFiles(File dir, String relativePath, List<String> lines) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException(String.format("nelze číst adresář %s", dir.getAbsolutePath()));
+        }
+        for (File file : files) {
+            String path = relativePath + '/' + file.getName();
+            if (file.isDirectory()) {
+                collectFiles(file, path, lines);
+            } else {
+                lines.add(path + ' ' + file.length() + ' ' + file.lastModified());
+            }
+        }
+    }
+
+    public Map<String, Set<String>> getDictionaries() {
+        return Collections.unmodifiableMap(dictionaries);
+    }
+
+    public ExternalUtilManagerFactory getExternalUtilManagerFactory() {
+        return externalUtilManagerFactory;
+    }
+
+    /**
+     * @return zpracovaná fDMF, nebo null, pokud ve snímku není nebo ji nejde deserializovat (fDMF se pak zpracuje z XML)
+     */
+    synchronized FdmfEntry getFdmf(String fdmfDirName) {
+        FdmfEntry entry = fdmfs.get(fdmfDirName);
+        if (entry == null) {
+            byte[] serialized = serializedFdmfs.get(fdmfDirName);
+            if (serialized == null) {
+                return null;
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                entry = (FdmfEntry) in.readObject();
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                //napr. InvalidClassException po zmene trid, ktere otisk nezachytil
+                System.err.println(String.format("Snímek konfigurace fDMF %s nelze použít (%s), konfigurace se zpracuje z XML.", fdmfDirName, e.getMessage()));
+                serializedFdmfs.remove(fdmfDirName);
+                return null;
+            }
+            fdmfs.put(fdmfDirName, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Soubory fDMF ověřené proti XSD a zkompilované konfigurační soubory.
+     */
+    static class FdmfEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final HashMap<String, File> providedFiles;
+        final ArrayList<File> fdmfConfigFiles;
+        final ArrayList<File> biblioModsProfiles;
+        final ArrayList<File> biblioDcProfiles;
+        final ArrayList<File> techProfiles;
+        final ArrayList<File> metsProfiles;
+        final ArrayList<CompiledConfig> configs;
+
+        FdmfEntry(FdmfConfiguration fdmfConfig, List<CompiledConfig> configs) {
+            this.providedFiles = new HashMap<>(fdmfConfig.getProvidedFiles());
+            this.fdmfConfigFiles = new ArrayList<>(fdmfConfig.getFdmfConfigFiles());
+            this.biblioModsProfiles = new ArrayList<>(fdmfConfig.getBiblioModsProfiles());
+            this.biblioDcProfiles = new ArrayList<>(fdmfConfig.getBiblioDcProfiles());
+            this.techProfiles = new ArrayList<>(fdmfConfig.getTechProfiles());
+            this.metsProfiles = new ArrayList<>(fdmfConfig.getMetsProfiles());
+            this.configs = new ArrayList<>(configs);
+        }
+    }
+}
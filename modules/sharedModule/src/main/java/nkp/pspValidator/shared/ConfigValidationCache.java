@@ -0,0 +1,159 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.Utils;
+import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Verdikty "konfigurační soubor je validní podle XSD" uložené na disku mezi běhy validátoru.
+ * <p>
+ * Klíčem je kontrolní součet obsahu konfiguračního souboru a XSD, nezměněné soubory se tak při dalším startu validovat nemusí.
+ * Ukládají se jen kladné verdikty, nevalidní soubor se validuje pokaždé (kvůli chybové hlášce). Změny v XSD importovaných
+ * z hlavního XSD se nesledují, stejně jako v XsdSchemaRegistry.
+ * <p>
+ * Verdikty se ukládají v domovském adresáři uživatele, ne ve sdíleném dočasném adresáři, kde by soubor mohl předem
+ * vytvořit (a podvrhnout verdikty) jiný uživatel. Soubor, který nepatří aktuálnímu uživateli nebo do kterého můžou
+ * zapisovat ostatní, se nepoužije.
+ * <p>
+ * Pokud soubor cache nejde číst nebo zapisovat, validuje se normálně, jen bez ukládání.
+ */
+public class ConfigValidationCache {
+
+    private static final ConfigValidationCache instance = new ConfigValidationCache(
+            new File(new File(System.getProperty("user.home"), ".komplexni-validator"), "config-validation.cache"));
+
+    private final File cacheFile;
+    private Set<String> validKeys;
+    //soubor je cizi nebo zapisovatelny ostatnimi, verdikty se drzi jen v pameti
+    private boolean untrusted;
+
+    public static ConfigValidationCache getInstance() {
+        return instance;
+    }
+
+    public ConfigValidationCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * @throws Exception chyba validace (SAXException) nebo čtení souborů
+     */
+    public void validate(File configFile, File xsdFile, boolean resolveImports) throws Exception {
+        String key = buildKey(configFile, xsdFile, resolveImports);
+        if (key != null && isKnownValid(key)) {
+            return;
+        }
+        javax.xml.validation.Validator validator = XsdSchemaRegistry.getInstance().newValidator(xsdFile, resolveImports);
+        validator.validate(new StreamSource(configFile));
+        if (key != null) {
+            storeValid(key);
+        }
+    }
+
+    private String buildKey(File configFile, File xsdFile, boolean resolveImports) {
+        try {
+            return Utils.computeHash(configFile) + ' ' + Utils.computeHash(xsdFile) + (resolveImports ? " imports" : "");
+        } catch (HashComputationException e) {
+            //soubor nejde precist, chybu ohlasi samotna validace
+            return null;
+        }
+    }
+
+    private synchronized boolean isKnownValid(String key) {
+        return getValidKeys().contains(key);
+    }
+
+    private synchronized void storeValid(String key) {
+        if (getValidKeys().add(key) && !untrusted) {
+            try {
+                createIfMissing();
+            } catch (IOException e) {
+                return;
+            }
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(cacheFile, true), StandardCharsets.UTF_8)) {
+                out.write(key);
+                out.write('\n');
+            } catch (IOException e) {
+                //cache je jen zrychleni, verdikt zustane alespon v pameti
+            }
+        }
+    }
+
+    private Set<String> getValidKeys() {
+        if (validKeys == null) {
+            validKeys = new HashSet<>();
+            if (cacheFile.exists()) {
+                if (!isTrusted(cacheFile.toPath())) {
+                    untrusted = true;
+                    return validKeys;
+                }
+                try {
+                    validKeys.addAll(Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    //poskozena nebo necitelna cache, verdikty se spocitaji znovu
+                }
+            }
+        }
+        return validKeys;
+    }
+
+    /**
+     * Vytvoří soubor (a adresář) s právy jen pro vlastníka, na systémech bez POSIX práv s výchozími právy.
+     */
+    private void createIfMissing() throws IOException {
+        if (cacheFile.exists()) {
+            return;
+        }
+        Path dir = cacheFile.getAbsoluteFile().getParentFile().toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.isDirectory(dir)) {
+            if (posix) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(dir);
+            }
+        }
+        try {
+            if (posix) {
+                Files.createFile(cacheFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } else {
+                Files.createFile(cacheFile.toPath());
+            }
+        } catch (FileAlreadyExistsException e) {
+            //soubor mezitim vytvoril jiny proces, posoudi se pri dalsim cteni
+        }
+    }
+
+    /**
+     * @return jestli soubor patří aktuálnímu uživateli a nemůžou do něj zapisovat ostatní
+     */
+    static boolean isTrusted(Path file) {
+        try {
+            String owner = Files.getOwner(file).getName();
+            String user = System.getProperty("user.name");
+            //na Windows je pred jmenem vlastnika domena oddelena zpetnym lomitkem
+            if (!owner.equals(user) && !owner.endsWith("\\" + user)) {
+                return false;
+            }
+            if (Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+                return !permissions.contains(PosixFilePermission.GROUP_WRITE) && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared;
 
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.PspDataException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
@@ -9,8 +10,10 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.*;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static nkp.pspValidator.shared.Dmf.Type.*;
@@ -20,6 +23,18 @@ import static nkp.pspValidator.shared.Dmf.Type.*;
  */
 public class DmfDetector {
 
+    private final FileSystemSnapshot fileSystem;
+
+    public DmfDetector() {
+        this(FileSystemSnapshot.passThrough());
+    }
+
+    /**
+     * @param fileSystem snímek souborů balíku, např. snímek ZIP souboru, který se nerozbaluje
+     */
+    public DmfDetector(FileSystemSnapshot fileSystem) {
+        this.fileSystem = fileSystem;
+    }
 
     public static final String DEFAULT_MONOGRAPH_VERSION = "2.1";
     public static final String DEFAULT_PERIODICAL_VERSION = "2.0";
@@ -61,7 +76,7 @@ public class DmfDetector {
 
     private File findPrimaryMetsFile(File pspRootDir) throws PspDataException {
         Pattern pattern = Pattern.compile(".*mets.*\\.xml", java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.UNICODE_CASE);
-        File[] metsCandidates = pspRootDir.listFiles((dir, name) -> pattern.matcher(name).matches());
+        File[] metsCandidates = listFiles(pspRootDir, pattern);
         if (metsCandidates.length >= 2) {
             for (File metsCandidate : metsCandidates) {
                 System.out.println(metsCandidate.getAbsolutePath());
@@ -76,8 +91,26 @@ public class DmfDetector {
         }
     }
 
+    private File[] listFiles(File dir, Pattern pattern) {
+        List<File> result = new ArrayList<>();
+        File[] files = fileSystem.listFiles(dir);
+        if (files != null) {
+            for (File file : files) {
+                if (pattern.matcher(file.getName()).matches()) {
+                    result.add(file);
+                }
+            }
+        }
+        return result.toArray(new File[0]);
+    }
+
     private Document loadDocument(File file) throws XmlFileParsingException {
         try {
+            if (fileSystem.isInArchive(file)) {
+                try (InputStream in = fileSystem.openStream(file)) {
+                    return XmlUtils.buildDocumentFromStream(in, file.toURI().toString(), false);
+                }
+            }
             return XmlUtils.buildDocumentFromFile(file, false);
         } catch (SAXException e) {
             throw new XmlFileParsingException(file, String.format("chyba parsování xml v souboru %s: %s", file.getAbsolutePath(), e.getMessage()));
@@ -118,12 +151,7 @@ public class DmfDetector {
     private File findInfoFile(File pspRootDir) throws PspDataException {
         Pattern pattern = Pattern.compile("info.*\\.xml", java.util.regex.Pattern.CASE_INSENSITIVE | java.util.regex.Pattern.UNICODE_CASE);
 
-        File[] infoCandidates = pspRootDir.listFiles(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String name) {
-                return pattern.matcher(name).matches();
-            }
-        });
+        File[] infoCandidates = listFiles(pspRootDir, pattern);
         if (infoCandidates.length >= 2) {
             throw new PspDataException(pspRootDir,
                     String.format("nalezeno více možných souborů INFO, není jasné, který použít pro zjištění verze standardu DMF"));
@@ -1,15 +1,13 @@
 package nkp.pspValidator.shared;
 
+import nkp.pspValidator.shared.engine.CompiledConfig;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.externalUtils.ExternalUtil;
 import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
 import nkp.pspValidator.shared.externalUtils.ResourceType;
 import nkp.pspValidator.shared.externalUtils.validation.BinaryFileValidator;
+import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
 
-import javax.xml.XMLConstants;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -50,8 +48,12 @@ public class FdmfConfiguration {
     private final List<File> biblioDcProfiles = new ArrayList<>();
     private final List<File> techProfiles = new ArrayList<>();
     private List<File> metsProfiles = new ArrayList<>();
+    //zkompilovane konfiguracni soubory ze snimku konfigurace, jinak null
+    private final List<CompiledConfig> snapshotConfigs;
 
-    private BinaryFileValidator binaryFileValidator;
+    private volatile BinaryFileValidator binaryFileValidator;
+    //sestavuje se az pri prvni validaci baliku, pak se sdili
+    private CompiledFdmf compiledFdmf;
 
 
     public FdmfConfiguration(File fdmfRoot, File fdmfConfigXsd, File j2kProfileXsd, File metadataProfileXsd) throws ValidatorConfigurationException {
@@ -59,9 +61,27 @@ public class FdmfConfiguration {
         this.fdmfConfigXsd = fdmfConfigXsd;
         this.j2kProfileXsd = j2kProfileXsd;
         this.metadataProfileXsd = metadataProfileXsd;
+        this.snapshotConfigs = null;
         init();
     }
 
+    /**
+     * fDMF ze snímku konfigurace, soubory už byly ověřeny při sestavení snímku.
+     */
+    FdmfConfiguration(File fdmfRoot, File fdmfConfigXsd, File j2kProfileXsd, File metadataProfileXsd, ConfigSnapshot.FdmfEntry snapshot) {
+        this.fdmfRoot = fdmfRoot;
+        this.fdmfConfigXsd = fdmfConfigXsd;
+        this.j2kProfileXsd = j2kProfileXsd;
+        this.metadataProfileXsd = metadataProfileXsd;
+        this.snapshotConfigs = snapshot.configs;
+        providedFiles.putAll(snapshot.providedFiles);
+        fdmfConfigFiles.addAll(snapshot.fdmfConfigFiles);
+        biblioModsProfiles.addAll(snapshot.biblioModsProfiles);
+        biblioDcProfiles.addAll(snapshot.biblioDcProfiles);
+        techProfiles.addAll(snapshot.techProfiles);
+        metsProfiles.addAll(snapshot.metsProfiles);
+    }
+
     private void init() throws ValidatorConfigurationException {
         checkDirExistAndReadable(fdmfRoot);
 
@@ -141,26 +161,38 @@ public class FdmfConfiguration {
     }
 
     private void validateConfigFile(File configFile, File xsd) throws ValidatorConfigurationException {
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
         try {
-            Schema schema = schemaFactory.newSchema(xsd);
-            javax.xml.validation.Validator validator = schema.newValidator();
-            validator.validate(new StreamSource(configFile));
+            ConfigValidationCache.getInstance().validate(configFile, xsd, false);
         } catch (Exception e) {
             e.printStackTrace();
             throw new ValidatorConfigurationException("konfigurační soubor %s není validní: %s", configFile.getAbsolutePath(), e.getMessage());
         }
     }
 
-    public void initBinaryFileProfiles(ExternalUtilManager externalUtilManager) throws ValidatorConfigurationException {
-        binaryFileValidator = new BinaryFileValidator(externalUtilManager);
+    public synchronized void initBinaryFileProfiles(ExternalUtilManager externalUtilManager) throws ValidatorConfigurationException {
+        BinaryFileValidator validator = new BinaryFileValidator(externalUtilManager);
         for (ResourceType type : ResourceType.values()) {
             for (ExternalUtil util : ExternalUtil.values()) {
                 if (externalUtilManager.isUtilAvailable(util)) {
-                    validateAndProcessBinaryFileProfile(fdmfRoot, binaryFileValidator, type, util);
+                    validateAndProcessBinaryFileProfile(fdmfRoot, validator, type, util);
                 }
             }
         }
+        binaryFileValidator = validator;
+    }
+
+    public boolean isBinaryFileProfilesInitialized() {
+        return binaryFileValidator != null;
+    }
+
+    /**
+     * @return zkompilovaná fDMF, sestaví se při prvním volání (a znovu jen pro jiný DictionaryManager)
+     */
+    public synchronized CompiledFdmf getCompiledFdmf(DictionaryManager dictionaryManager) throws ValidatorConfigurationException {
+        if (compiledFdmf == null || compiledFdmf.getDictionaryManager() != dictionaryManager) {
+            compiledFdmf = new CompiledFdmf(this, dictionaryManager);
+        }
+        return compiledFdmf;
     }
 
     private void validateAndProcessBinaryFileProfile(File fdmfRoot, BinaryFileValidator validator, ResourceType type, ExternalUtil util) throws ValidatorConfigurationException {
@@ -222,6 +254,14 @@ public class FdmfConfiguration {
         return binaryFileValidator;
     }
 
+    public File getFdmfRoot() {
+        return fdmfRoot;
+    }
+
+    List<CompiledConfig> getSnapshotConfigs() {
+        return snapshotConfigs;
+    }
+
     public Map<String, File> getProvidedFiles() {
         return providedFiles;
     }
@@ -4,128 +4,151 @@ import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException
 import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
+ * Konfigurace fDMF se jen vyhledají podle názvů adresářů, načtou a zvalidují se až při prvním vyžádání konkrétní verze.
+ * Pokud je k dispozici snímek konfigurace (ConfigSnapshot), vezmou se z něj.
+ * <p>
  * Created by Martin Řehánek on 2.11.16.
  */
 public class FdmfRegistry {
 
-    private final Map<String, FdmfConfiguration> monographFdmfByVersion = new HashMap<>();
-    private final Map<String, FdmfConfiguration> periodicalFdmfByVersion = new HashMap<>();
-    private final Map<String, FdmfConfiguration> audioGramFdmfByVersion = new HashMap<>();
-    private final Map<String, FdmfConfiguration> audioFonoFdmfByVersion = new HashMap<>();
+    private final ValidatorConfigurationManager validatorConfigManager;
+    private final Map<String, File> monographFdmfDirByVersion = new HashMap<>();
+    private final Map<String, File> periodicalFdmfDirByVersion = new HashMap<>();
+    private final Map<String, File> audioGramFdmfDirByVersion = new HashMap<>();
+    private final Map<String, File> audioFonoFdmfDirByVersion = new HashMap<>();
+    //nactene konfigurace podle adresare fDMF
+    private final Map<File, FdmfConfiguration> loadedFdmfConfigs = new HashMap<>();
 
     public FdmfRegistry(ValidatorConfigurationManager validatorConfigManager) throws ValidatorConfigurationException {
+        this.validatorConfigManager = validatorConfigManager;
         init(validatorConfigManager);
     }
 
+    /**
+     * Inicializuje profily binárních souborů v už načtených konfiguracích. Konfigurace načtené později je potřeba
+     * inicializovat až při použití (viz FdmfConfiguration.isBinaryFileProfilesInitialized()).
+     */
     public void initBinaryFileProfiles(ExternalUtilManager externalUtilManager) throws ValidatorConfigurationException {
-        for (FdmfConfiguration fdmfConfig : monographFdmfByVersion.values()) {
-            fdmfConfig.initBinaryFileProfiles(externalUtilManager);
-        }
-        for (FdmfConfiguration fdmfConfig : periodicalFdmfByVersion.values()) {
-            fdmfConfig.initBinaryFileProfiles(externalUtilManager);
+        List<FdmfConfiguration> loaded;
+        synchronized (loadedFdmfConfigs) {
+            loaded = new ArrayList<>(loadedFdmfConfigs.values());
         }
-        for (FdmfConfiguration fdmfConfig : audioGramFdmfByVersion.values()) {
-            fdmfConfig.initBinaryFileProfiles(externalUtilManager);
-        }
-        for (FdmfConfiguration fdmfConfig : audioFonoFdmfByVersion.values()) {
+        for (FdmfConfiguration fdmfConfig : loaded) {
             fdmfConfig.initBinaryFileProfiles(externalUtilManager);
         }
     }
 
     private void init(ValidatorConfigurationManager validatorConfigManager) throws ValidatorConfigurationException {
-        loadFdmfConfigs(validatorConfigManager, "monograph", monographFdmfByVersion);
-        loadFdmfConfigs(validatorConfigManager, "periodical", periodicalFdmfByVersion);
-        loadFdmfConfigs(validatorConfigManager, "audio_gram", audioGramFdmfByVersion);
-        loadFdmfConfigs(validatorConfigManager, "audio_fono", audioFonoFdmfByVersion);
+        scanFdmfDirs(validatorConfigManager, "monograph", monographFdmfDirByVersion);
+        scanFdmfDirs(validatorConfigManager, "periodical", periodicalFdmfDirByVersion);
+        scanFdmfDirs(validatorConfigManager, "audio_gram", audioGramFdmfDirByVersion);
+        scanFdmfDirs(validatorConfigManager, "audio_fono", audioFonoFdmfDirByVersion);
     }
 
-    private void loadFdmfConfigs(ValidatorConfigurationManager validatorConfigManager, String fdmfDirPefix, Map<String, FdmfConfiguration> mapToStoreResults) throws ValidatorConfigurationException {
+    private void scanFdmfDirs(ValidatorConfigurationManager validatorConfigManager, String fdmfDirPefix, Map<String, File> mapToStoreResults) throws ValidatorConfigurationException {
         File[] fdmfDirs = validatorConfigManager.getFdmfDir().listFiles((dir, name) -> name.matches(fdmfDirPefix + "_[0-9]+(\\.([0-9])+)*"));
+        if (fdmfDirs == null) {
+            throw new ValidatorConfigurationException("nelze číst adresář %s", validatorConfigManager.getFdmfDir().getAbsolutePath());
+        }
         for (File fdmfDir : fdmfDirs) {
             String versionNumber = fdmfDir.getName().substring(fdmfDirPefix.length() + 1);
-            mapToStoreResults.put(versionNumber, new FdmfConfiguration(
-                    fdmfDir,
-                    validatorConfigManager.getFdmfConfigXsd(),
-                    validatorConfigManager.getBinaryFileProfileXsd(),
-                    validatorConfigManager.getMetadataProfileXsd()));
+            mapToStoreResults.put(versionNumber, fdmfDir);
+        }
+    }
+
+    private FdmfConfiguration loadFdmfConfig(File fdmfDir) throws ValidatorConfigurationException {
+        if (fdmfDir == null) {
+            return null;
+        }
+        synchronized (loadedFdmfConfigs) {
+            FdmfConfiguration fdmfConfig = loadedFdmfConfigs.get(fdmfDir);
+            if (fdmfConfig == null) {
+                ConfigSnapshot snapshot = validatorConfigManager.getConfigSnapshot();
+                ConfigSnapshot.FdmfEntry snapshotEntry = snapshot == null ? null : snapshot.getFdmf(fdmfDir.getName());
+                if (snapshotEntry != null) {
+                    fdmfConfig = new FdmfConfiguration(
+                            fdmfDir,
+                            validatorConfigManager.getFdmfConfigXsd(),
+                            validatorConfigManager.getBinaryFileProfileXsd(),
+                            validatorConfigManager.getMetadataProfileXsd(),
+                            snapshotEntry);
+                } else {
+                    fdmfConfig = new FdmfConfiguration(
+                            fdmfDir,
+                            validatorConfigManager.getFdmfConfigXsd(),
+                            validatorConfigManager.getBinaryFileProfileXsd(),
+                            validatorConfigManager.getMetadataProfileXsd());
+                }
+                loadedFdmfConfigs.put(fdmfDir, fdmfConfig);
+            }
+            return fdmfConfig;
         }
     }
 
     public Set<String> getMonographFdmfVersions() {
-        return monographFdmfByVersion.keySet();
+        return monographFdmfDirByVersion.keySet();
     }
 
     public Set<String> getPeriodicalFdmfVersions() {
-        return periodicalFdmfByVersion.keySet();
+        return periodicalFdmfDirByVersion.keySet();
     }
 
     public Set<String> getAudioGramFdmfVersions() {
-        return audioGramFdmfByVersion.keySet();
+        return audioGramFdmfDirByVersion.keySet();
     }
 
     public Set<String> getAudioFonoFdmfVersions() {
-        return audioFonoFdmfByVersion.keySet();
+        return audioFonoFdmfDirByVersion.keySet();
     }
 
-    public FdmfConfiguration getMonographFdmfConfig(String dmfVersion) {
-        return monographFdmfByVersion.get(dmfVersion);
+    public FdmfConfiguration getMonographFdmfConfig(String dmfVersion) throws ValidatorConfigurationException {
+        return loadFdmfConfig(monographFdmfDirByVersion.get(dmfVersion));
     }
 
-    public FdmfConfiguration getPeriodicalFdmfConfig(String dmfVersion) {
-        return periodicalFdmfByVersion.get(dmfVersion);
+    public FdmfConfiguration getPeriodicalFdmfConfig(String dmfVersion) throws ValidatorConfigurationException {
+        return loadFdmfConfig(periodicalFdmfDirByVersion.get(dmfVersion));
     }
 
-    public FdmfConfiguration getAudioGramFdmfConfig(String dmfVersion) {
-        return audioGramFdmfByVersion.get(dmfVersion);
+    public FdmfConfiguration getAudioGramFdmfConfig(String dmfVersion) throws ValidatorConfigurationException {
+        return loadFdmfConfig(audioGramFdmfDirByVersion.get(dmfVersion));
     }
 
-    public FdmfConfiguration getAudioFonoFdmfConfig(String dmfVersion) {
-        return audioFonoFdmfByVersion.get(dmfVersion);
+    public FdmfConfiguration getAudioFonoFdmfConfig(String dmfVersion) throws ValidatorConfigurationException {
+        return loadFdmfConfig(audioFonoFdmfDirByVersion.get(dmfVersion));
     }
 
 
-    public FdmfConfiguration getFdmfConfig(Dmf dmf) throws UnknownFdmfException {
+    public FdmfConfiguration getFdmfConfig(Dmf dmf) throws UnknownFdmfException, ValidatorConfigurationException {
+        Map<String, File> dirByVersion;
         switch (dmf.getType()) {
-            case MONOGRAPH: {
-                FdmfConfiguration file = monographFdmfByVersion.get(dmf.getVersion());
-                if (file == null) {
-                    throw new UnknownFdmfException(dmf);
-                } else {
-                    return file;
-                }
-            }
-            case PERIODICAL: {
-                FdmfConfiguration file = periodicalFdmfByVersion.get(dmf.getVersion());
-                if (file == null) {
-                    throw new UnknownFdmfException(dmf);
-                } else {
-                    return file;
-                }
-            }
-            case AUDIO_GRAM: {
-                FdmfConfiguration file = audioGramFdmfByVersion.get(dmf.getVersion());
-                if (file == null) {
-                    throw new UnknownFdmfException(dmf);
-                } else {
-                    return file;
-                }
-            }
-            case AUDIO_FONO: {
-                FdmfConfiguration file = audioFonoFdmfByVersion.get(dmf.getVersion());
-                if (file == null) {
-                    throw new UnknownFdmfException(dmf);
-                } else {
-                    return file;
-                }
-            }
+            case MONOGRAPH:
+                dirByVersion = monographFdmfDirByVersion;
+                break;
+            case PERIODICAL:
+                dirByVersion = periodicalFdmfDirByVersion;
+                break;
+            case AUDIO_GRAM:
+                dirByVersion = audioGramFdmfDirByVersion;
+                break;
+            case AUDIO_FONO:
+                dirByVersion = audioFonoFdmfDirByVersion;
+                break;
             default:
                 throw new IllegalStateException();
         }
+        File fdmfDir = dirByVersion.get(dmf.getVersion());
+        if (fdmfDir == null) {
+            throw new UnknownFdmfException(dmf);
+        } else {
+            return loadFdmfConfig(fdmfDir);
+        }
     }
 
 
@@ -1,8 +1,10 @@
 package nkp.pspValidator.shared;
 
+import nkp.pspValidator.shared.engine.FilePipeline;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.Rule;
 import nkp.pspValidator.shared.engine.RulesSection;
+import nkp.pspValidator.shared.engine.XmlDocumentCache;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
 
@@ -24,6 +26,7 @@ public class ValidationState {
     private final Map<RulesSection, Long> finishTimeBySection = new HashMap<>();
     private final Map<Rule, Long> startTimeByRule = new HashMap<>();
     private final Map<Rule, Long> finishTimeByRule = new HashMap<>();
+    private final Map<Rule, FilePipeline.Timing> filePipelineTimingByRule = new LinkedHashMap<>();
     //rules and sections
     private final List<RulesSection> sections;
     private final Map<RulesSection, List<Rule>> rulesBySection;
@@ -38,6 +41,7 @@ public class ValidationState {
     private final Map<Rule, Map<Level, Integer>> ruleProblemsByLevel = new HashMap<>();
     private final Map<Rule, Integer> ruleProblemsTotal = new HashMap<>();
     private boolean valid;
+    private XmlDocumentCache.Statistics xmlDocumentCacheStatistics;
 
 
     public ValidationState(ProgressListener progressListener, List<RulesSection> sections, Map<RulesSection, List<Rule>> rules) {
@@ -121,6 +125,27 @@ public class ValidationState {
 
     public void reportRuleProcessingFinished(RulesSection section, Rule rule, ValidationResult result) {
         finishTimeByRule.put(rule, System.currentTimeMillis());
+        processRuleResult(section, rule, result);
+    }
+
+    /**
+     * Pro pravidla vyhodnocená mimo vlákno, které stav reportuje (RuleScheduler). Časy jsou skutečné časy vyhodnocení pravidla.
+     */
+    public void reportRuleProcessingFinished(RulesSection section, Rule rule, ValidationResult result, long startTime, long finishTime) {
+        startTimeByRule.put(rule, startTime);
+        finishTimeByRule.put(rule, finishTime);
+        processRuleResult(section, rule, result);
+    }
+
+    /**
+     * Pro pravidla vyhodnocená ve společném průchodu soubory. Doba zpracování pravidla je pak jen práce průchodu pro toto
+     * pravidlo, ne čekání na celý průchod, který spustilo první z pravidel.
+     */
+    public void reportRuleFilePipelineTiming(Rule rule, FilePipeline.Timing timing) {
+        filePipelineTimingByRule.put(rule, timing);
+    }
+
+    private void processRuleResult(RulesSection section, Rule rule, ValidationResult result) {
         validationResults.put(rule, result);
         //rule problems
         Map<Level, Integer> problemsByLevel = computeProblemsByLevel(rule);
@@ -251,6 +276,17 @@ public class ValidationState {
         }
     }
 
+    public void setXmlDocumentCacheStatistics(XmlDocumentCache.Statistics xmlDocumentCacheStatistics) {
+        this.xmlDocumentCacheStatistics = xmlDocumentCacheStatistics;
+    }
+
+    /**
+     * @return statistiky cache xml dokumentů po dokončení validací, jinak null
+     */
+    public XmlDocumentCache.Statistics getXmlDocumentCacheStatistics() {
+        return xmlDocumentCacheStatistics;
+    }
+
     public void reportValidationsCanceled() {
         if (progressListener != null) {
             progressListener.onValidationsCancel();
@@ -306,9 +342,27 @@ public class ValidationState {
     }
 
     public long getRuleProcessingDuration(Rule rule) {
+        FilePipeline.Timing timing = filePipelineTimingByRule.get(rule);
+        if (timing != null) {
+            return timing.getDurationMs();
+        }
         return finishTimeByRule.get(rule) - startTimeByRule.get(rule);
     }
 
+    /**
+     * @return null, pokud pravidlo nebylo vyhodnocené ve společném průchodu soubory
+     */
+    public FilePipeline.Timing getFilePipelineTiming(Rule rule) {
+        return filePipelineTimingByRule.get(rule);
+    }
+
+    /**
+     * @return pravidla vyhodnocená ve společném průchodu soubory v pořadí vyhodnocení
+     */
+    public Set<Rule> getFilePipelineRules() {
+        return Collections.unmodifiableSet(filePipelineTimingByRule.keySet());
+    }
+
     public List<RulesSection> getSections() {
         return sections;
     }
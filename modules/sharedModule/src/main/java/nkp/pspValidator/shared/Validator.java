@@ -1,11 +1,22 @@
 package nkp.pspValidator.shared;
 
 import nkp.pspValidator.shared.engine.Engine;
+import nkp.pspValidator.shared.engine.FilePipeline;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
+import nkp.pspValidator.shared.engine.HashManager;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.PersistentHashCache;
 import nkp.pspValidator.shared.engine.Rule;
+import nkp.pspValidator.shared.engine.RuleScheduler;
 import nkp.pspValidator.shared.engine.RulesSection;
+import nkp.pspValidator.shared.engine.StorageType;
+import nkp.pspValidator.shared.engine.XmlDocumentCache;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+import nkp.pspValidator.shared.externalUtils.ExternalUtil;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilOutputCache;
+import nkp.pspValidator.shared.externalUtils.validation.BinaryFileValidator;
 
 import java.io.File;
 import java.io.PrintStream;
@@ -18,11 +29,179 @@ import java.util.*;
 public class Validator {
 
     private final Engine engine;
+    //1 znamena sekvencni zpracovani pravidel, jinak pocet vlaken pro RuleScheduler
+    private int ruleThreads = 1;
+    private boolean filePipeline = false;
+    private boolean fileSystemSnapshot = false;
+    //snimek ZIP souboru balicku, ktery se nerozbaluje, null pro balik v adresari
+    private FileSystemSnapshot packageFileSystem;
 
     public Validator(Engine engine) {
         this.engine = engine;
     }
 
+    public int getRuleThreads() {
+        return ruleThreads;
+    }
+
+    public void setRuleThreads(int ruleThreads) {
+        if (ruleThreads < 1) {
+            throw new IllegalArgumentException(String.format("Nepovolený počet vláken pro pravidla: %d. Hodnota musí být alespoň 1", ruleThreads));
+        }
+        this.ruleThreads = ruleThreads;
+    }
+
+    /**
+     * Počet vláken pro souběžnou validaci seznamů souborů v rámci jednoho pravidla (např. validace podle XSD).
+     */
+    public void setFileValidationThreads(int fileValidationThreads) {
+        engine.setFileValidationThreads(fileValidationThreads);
+    }
+
+    /**
+     * Pravidla kontrolující seznamy souborů soubor po souboru vyhodnotit jedním společným průchodem soubory (FilePipeline).
+     */
+    public void setFilePipeline(boolean filePipeline) {
+        this.filePipeline = filePipeline;
+    }
+
+    /**
+     * Na soubory balíku se ptát přes snímek adresáře balíku (FileSystemSnapshot), načtený na začátku každého běhu.
+     */
+    public void setFileSystemSnapshot(boolean fileSystemSnapshot) {
+        this.fileSystemSnapshot = fileSystemSnapshot;
+    }
+
+    /**
+     * Soubory balíku číst ze snímku ZIP souboru (FileSystemSnapshot.ofZip()) místo z adresáře, balík se pak nemusí
+     * rozbalovat. Snímek zavírá volající, po skončení validace. Snímek je potřeba předat už při sestavení validátoru
+     * (ValidatorFactory), tady se jen zapamatuje, že se místo něj nemá načítat snímek adresáře.
+     *
+     * @param packageFileSystem snímek ZIP souboru, jehož adresáře obsahují PSP_DIR, null pro balík v adresáři
+     */
+    void setPackageFileSystem(FileSystemSnapshot packageFileSystem) {
+        this.packageFileSystem = packageFileSystem;
+        engine.setFileSystemSnapshot(packageFileSystem);
+    }
+
+    /**
+     * Počet současně běžících procesů jednotlivých externích nástrojů, neuvedené nástroje běží nejvýš jednou najednou.
+     * Limity jsou sdílené všemi validacemi používajícími stejný ExternalUtilManager.
+     */
+    public void setExternalUtilThreads(Map<ExternalUtil, Integer> utilThreads) {
+        BinaryFileValidator binaryFileValidator = engine.getBinaryFileValidator();
+        if (binaryFileValidator != null) {
+            binaryFileValidator.setUtilThreads(utilThreads);
+        }
+    }
+
+    /**
+     * Kolik souborů předat jednomu spuštění externího nástroje, pokud má nástroj definované spuštění nad více soubory.
+     * 1 znamená spouštění pro každý soubor zvlášť.
+     */
+    public void setExternalUtilBatchSize(int batchSize) {
+        BinaryFileValidator binaryFileValidator = engine.getBinaryFileValidator();
+        if (binaryFileValidator != null) {
+            binaryFileValidator.setBatchSize(batchSize);
+        }
+    }
+
+    /**
+     * @param outputCache perzistentní cache výstupů externích nástrojů, null znamená bez cache
+     */
+    public void setExternalUtilOutputCache(ExternalUtilOutputCache outputCache) {
+        BinaryFileValidator binaryFileValidator = engine.getBinaryFileValidator();
+        if (binaryFileValidator != null) {
+            binaryFileValidator.setOutputCache(outputCache);
+        }
+    }
+
+    /**
+     * Časové limity spuštění externích nástrojů, nástroj po překročení limitu se ukončí a soubor se označí jako nezvalidovaný.
+     *
+     * @param timeouts limity v sekundách, neuvedené nástroje bez limitu
+     */
+    public void setExternalUtilTimeouts(Map<ExternalUtil, Integer> timeouts) {
+        BinaryFileValidator binaryFileValidator = engine.getBinaryFileValidator();
+        if (binaryFileValidator != null) {
+            binaryFileValidator.setTimeouts(timeouts);
+        }
+    }
+
+    /**
+     * Kolik znaků výstupu jednoho spuštění externího nástroje se nejvýše zachytí, při překročení se nástroj ukončí.
+     */
+    public void setExternalUtilMaxOutputChars(long maxOutputChars) {
+        BinaryFileValidator binaryFileValidator = engine.getBinaryFileValidator();
+        if (binaryFileValidator != null) {
+            binaryFileValidator.setMaxOutputChars(maxOutputChars);
+        }
+    }
+
+    /**
+     * Odhad paměti, kterou smí zabírat DOM dokumenty v cache.
+     */
+    public void setXmlDocumentCacheBudget(long bytes) {
+        engine.getXmlDocumentCache().setBudgetBytes(bytes);
+    }
+
+    /**
+     * Nastaví validátor podle parametrů souběžnosti a cache z konfigurace (CLI, GUI), volat před run().
+     * Odpovídá zavolání jednotlivých setterů, viz PerformanceParams. Parametr zipInPlace vyhodnocuje volající,
+     * snímek ZIP souboru se předává už při sestavení validátoru (ValidatorFactory).
+     */
+    public void applyPerformanceParams(PerformanceParams params) {
+        setRuleThreads(params.ruleThreads);
+        setFileValidationThreads(params.fileThreads);
+        setXmlDocumentCacheBudget(params.xmlDocumentCacheBytes);
+        setFilePipeline(params.filePipeline);
+        setFileSystemSnapshot(params.fileSystemSnapshot);
+        setExternalUtilThreads(params.utilThreads);
+        setExternalUtilBatchSize(params.utilBatchSize);
+        setExternalUtilOutputCache(params.utilOutputCache);
+        setExternalUtilTimeouts(params.utilTimeouts);
+        setExternalUtilMaxOutputChars(params.utilMaxOutputChars);
+        engine.getHashManager().setStorage(params.storageType, params.hashThreads);
+        engine.getHashManager().setPersistentCache(params.hashCache);
+    }
+
+    /**
+     * Kontrolní součty spočítané mimo validaci (např. při rozbalení ZIP souboru), pravidla je nebudou počítat znovu.
+     *
+     * @param hashes kontrolní součty podle souboru, soubory mimo pspDir se ignorují
+     */
+    public void registerKnownHashes(File pspDir, Map<File, String> hashes) {
+        engine.getHashManager().registerHashes(pspDir, hashes);
+    }
+
+    /**
+     * @return služba kontrolních součtů balíku, pro statistiky po validaci
+     */
+    public HashManager getHashManager() {
+        return engine.getHashManager();
+    }
+
+    /**
+     * @return statistiky cache xml dokumentů
+     */
+    public XmlDocumentCache.Statistics getXmlDocumentCacheStatistics() {
+        return engine.getXmlDocumentCache().getStatistics();
+    }
+
+    /**
+     * @return statistiky snímku souborů balíku, bez snímku nulové
+     */
+    public FileSystemSnapshot.Statistics getFileSystemStatistics() {
+        return engine.getFileSystem().getStatistics();
+    }
+
+    /**
+     * @return validátor binárních souborů, nebo null, pokud validátor externí nástroje nepoužívá
+     */
+    public BinaryFileValidator getBinaryFileValidator() {
+        return engine.getBinaryFileValidator();
+    }
+
     /**
      * only for tests
      */
@@ -31,122 +210,160 @@ public class Validator {
         return engine;
     }
 
-    public void run(File xmlProtocolFile,
-                    PrintStream out,
-                    int verbosity,
-                    DevParams devParams,
-                    Set<String> skippedSections,
-                    ValidationState.ProgressListener progressListener,
-                    ValidationState.ProgressController progressController) {
+    public ValidationState run(File xmlProtocolFile,
+                               PrintStream out,
+                               int verbosity,
+                               DevParams devParams,
+                               Set<String> skippedSections,
+                               ValidationState.ProgressListener progressListener,
+                               ValidationState.ProgressController progressController) {
         switch (verbosity) {
             case 3:
                 //vsechno, vcetne sekci a pravidel bez chyb
-                run(xmlProtocolFile, out,
+                return run(xmlProtocolFile, out,
                         true, true, true, true,
                         devParams,
                         skippedSections,
                         progressListener, progressController);
-                break;
             case 2:
                 //jen sekce a pravidla s chybami a popisy jednotlivych chyb (default)
-                run(xmlProtocolFile, out,
+                return run(xmlProtocolFile, out,
                         true, false, true, false,
                         devParams,
                         skippedSections,
                         progressListener, progressController);
-                break;
             case 1:
                 //jen pocty chyb v sekcich s chybami, bez popisu jednotlivych chyb
-                run(xmlProtocolFile, out,
+                return run(xmlProtocolFile, out,
                         true, false, false, false,
                         devParams,
                         skippedSections,
                         progressListener, progressController);
-                break;
             case 0:
                 //jen valid/not valid
-                run(xmlProtocolFile, out,
+                return run(xmlProtocolFile, out,
                         false, false, false, false,
                         devParams,
                         skippedSections,
                         progressListener, progressController);
-                break;
             default:
                 throw new IllegalStateException(String.format("Nepovolená hodnota verbosity: %d. Hodnota musí být v intervalu [0-3]", verbosity));
         }
     }
 
-    private void run(File xmlOutputFile,
-                     PrintStream out,
-                     boolean printSectionsWithProblems, boolean printSectionsWithoutProblems,
-                     boolean printRulesWithProblems, boolean printRulesWithoutProblems,
-                     DevParams devParams,
-                     Set<String> skippedSections,
-                     ValidationState.ProgressListener progressListener,
-                     ValidationState.ProgressController progressController
+    private ValidationState run(File xmlOutputFile,
+                                PrintStream out,
+                                boolean printSectionsWithProblems, boolean printSectionsWithoutProblems,
+                                boolean printRulesWithProblems, boolean printRulesWithoutProblems,
+                                DevParams devParams,
+                                Set<String> skippedSections,
+                                ValidationState.ProgressListener progressListener,
+                                ValidationState.ProgressController progressController
     ) {
         ValidatorProtocolTextBuilder textLogger = new ValidatorProtocolTextBuilder(out);
-        boolean sectionsUnlimitted = devParams == null || devParams.getSectionsToRun() == null || devParams.getSectionsToRun().isEmpty();
-        boolean noSectionsSkipped = skippedSections == null || skippedSections.isEmpty();
 
         ValidationState state = initState(progressListener);
         List<RulesSection> rulesSections = state.getSections();
-        state.reportValidationsStarted();
-        if (progressController == null || !progressController.shouldCancel()) {
+        RuleScheduler scheduler = ruleThreads > 1 ? new RuleScheduler(engine, ruleThreads) : null;
+        try {
+            if (packageFileSystem == null && fileSystemSnapshot) {
+                FileSystemSnapshot snapshot = new FileSystemSnapshot(engine.getProvidedVarsManager().getProvidedFile("PSP_DIR"));
+                snapshot.refresh();
+                engine.setFileSystemSnapshot(snapshot);
+            }
+            List<Rule> rulesToRun = new ArrayList<>();
             for (RulesSection section : rulesSections) {
-                if (progressController != null && progressController.shouldCancel()) {
-                    break;
+                if (shouldRunSection(section, devParams, skippedSections)) {
+                    rulesToRun.addAll(state.getRules(section));
                 }
-                boolean runSection = true;
-                runSection &= noSectionsSkipped || !skippedSections.contains(section.getName());
-                runSection &= sectionsUnlimitted || devParams.getSectionsToRun().contains(section.getName());
-
-                if (!runSection) {
-                    state.reportSectionSkipped(section);
-                    if (printSectionsWithoutProblems) {
-                        textLogger.logSectionSkipped(section.getName());
+            }
+            FilePipeline pipeline = filePipeline ? new FilePipeline(engine, rulesToRun) : null;
+            engine.setFilePipeline(pipeline);
+            if (scheduler != null) {
+                scheduler.schedule(rulesToRun);
+            }
+            state.reportValidationsStarted();
+            if (progressController == null || !progressController.shouldCancel()) {
+                for (RulesSection section : rulesSections) {
+                    if (progressController != null && progressController.shouldCancel()) {
+                        break;
                     }
-                } else {
-                    state.reportSectionProcessingStarted(section);
-                    processSection(section, state, printSectionsWithoutProblems, printSectionsWithProblems, printRulesWithoutProblems, printRulesWithProblems, textLogger, progressController);
-                    if (progressController == null || !progressController.shouldCancel()) {
-                        state.reportSectionProcessingFinished(section);
+                    if (!shouldRunSection(section, devParams, skippedSections)) {
+                        state.reportSectionSkipped(section);
+                        if (printSectionsWithoutProblems) {
+                            textLogger.logSectionSkipped(section.getName());
+                        }
                     } else {
-                        state.reportSectionProcessingCanceled(section);
+                        state.reportSectionProcessingStarted(section);
+                        processSection(section, state, printSectionsWithoutProblems, printSectionsWithProblems, printRulesWithoutProblems, printRulesWithProblems, textLogger, progressController, scheduler, pipeline);
+                        if (progressController == null || !progressController.shouldCancel()) {
+                            state.reportSectionProcessingFinished(section);
+                        } else {
+                            state.reportSectionProcessingCanceled(section);
+                        }
                     }
                 }
-            }
-            if (progressController == null || !progressController.shouldCancel()) {
-                state.reportValidationsFinished();
-                textLogger.logPackageSummary(state.getGlobalProblemsTotal(), state.getGlobalProblemsByLevel(), state.isValid());
-                if (xmlOutputFile != null) {
-                    textLogger.logXmlExportStarted(xmlOutputFile);
-                    new ValidatorProtocolXmlBuilder().buildXmlOutput(xmlOutputFile, state);
-                    //TODO: tohle nepatri do textoveho logu
-                    textLogger.logXmlExportCreated();
+                if (progressController == null || !progressController.shouldCancel()) {
+                    state.reportValidationsFinished();
+                    state.setXmlDocumentCacheStatistics(engine.getXmlDocumentCache().getStatistics());
+                    textLogger.logPackageSummary(state.getGlobalProblemsTotal(), state.getGlobalProblemsByLevel(), state.isValid());
+                    if (xmlOutputFile != null) {
+                        textLogger.logXmlExportStarted(xmlOutputFile);
+                        new ValidatorProtocolXmlBuilder().buildXmlOutput(xmlOutputFile, state);
+                        //TODO: tohle nepatri do textoveho logu
+                        textLogger.logXmlExportCreated();
+                    }
+                } else {
+                    state.reportValidationsCanceled();
                 }
             } else {
                 state.reportValidationsCanceled();
             }
-        } else {
-            state.reportValidationsCanceled();
+            return state;
+        } finally {
+            if (scheduler != null) {
+                scheduler.shutdown();
+            }
+            engine.setFilePipeline(null);
         }
     }
 
+    private boolean shouldRunSection(RulesSection section, DevParams devParams, Set<String> skippedSections) {
+        boolean sectionsUnlimitted = devParams == null || devParams.getSectionsToRun() == null || devParams.getSectionsToRun().isEmpty();
+        boolean noSectionsSkipped = skippedSections == null || skippedSections.isEmpty();
+        boolean runSection = true;
+        runSection &= noSectionsSkipped || !skippedSections.contains(section.getName());
+        runSection &= sectionsUnlimitted || devParams.getSectionsToRun().contains(section.getName());
+        return runSection;
+    }
+
     private void processSection(RulesSection section, ValidationState state,
                                 boolean printSectionsWithoutProblems, boolean printSectionsWithProblems,
                                 boolean printRulesWithoutProblems, boolean printRulesWithProblems,
                                 ValidatorProtocolTextBuilder textLogger,
-                                ValidationState.ProgressController progressController) {
+                                ValidationState.ProgressController progressController,
+                                RuleScheduler scheduler, FilePipeline pipeline) {
         //vypocet pravidel
         for (Rule rule : state.getRules(section)) {
             if (progressController == null || !progressController.shouldCancel()) {
                 state.reportRuleProcessingStarted(rule);
                 if (progressController == null || !progressController.shouldCancel()) {
-                    //skutecny vypocet
-                    ValidationResult result = rule.getResult();
-                    //ulozeni vysledku
-                    state.reportRuleProcessingFinished(section, rule, result);
+                    if (scheduler == null) {
+                        //skutecny vypocet
+                        ValidationResult result = engine.evaluateRule(rule);
+                        reportFilePipelineTiming(state, pipeline, rule);
+                        //ulozeni vysledku
+                        state.reportRuleProcessingFinished(section, rule, result);
+                    } else {
+                        //vypocet uz bezi na pozadi, jen se pocka na vysledek
+                        RuleScheduler.RuleExecution execution = scheduler.awaitExecution(rule, progressController);
+                        if (execution != null) {
+                            reportFilePipelineTiming(state, pipeline, rule);
+                            state.reportRuleProcessingFinished(section, rule, execution.getResult(), execution.getStartTime(), execution.getFinishTime());
+                        } else {
+                            state.reportRuleProcessingCanceled(section, rule);
+                        }
+                    }
                 } else {
                     state.reportRuleProcessingCanceled(section, rule);
                 }
@@ -180,6 +397,15 @@ public class Validator {
         }
     }
 
+    private void reportFilePipelineTiming(ValidationState state, FilePipeline pipeline, Rule rule) {
+        if (pipeline != null && pipeline.contains(rule)) {
+            FilePipeline.Timing timing = pipeline.getTiming(rule);
+            if (timing != null) {
+                state.reportRuleFilePipelineTiming(rule, timing);
+            }
+        }
+    }
+
     private ValidationState initState(ValidationState.ProgressListener progressListener) {
         List<RulesSection> sections = engine.getRuleSections();
         Map<RulesSection, List<Rule>> rules = new HashMap<>();
@@ -190,6 +416,37 @@ public class Validator {
         return state;
     }
 
+    /**
+     * Nastavení souběžnosti, výchozí hodnoty odpovídají sekvenčnímu zpracování.
+     */
+    public static class PerformanceParams {
+        public int ruleThreads = 1;
+        public int fileThreads = 1;
+        public StorageType storageType = StorageType.HDD;
+        //null znamena vychozi pocet podle typu uloziste
+        public Integer hashThreads;
+        //kontrolni soucty ulozene mezi behy, null znamena bez perzistentni cache
+        public PersistentHashCache hashCache;
+        //odhad pameti pro DOM dokumenty v cache
+        public long xmlDocumentCacheBytes = XmlDocumentCache.DEFAULT_BUDGET_BYTES;
+        //pravidla nad seznamy souboru vyhodnotit jednim spolecnym pruchodem soubory
+        public boolean filePipeline = false;
+        //dotazy na soubory baliku odpovidat ze snimku adresare
+        public boolean fileSystemSnapshot = false;
+        //ZIP balik nerozbalovat, ale cist pres FileSystemSnapshot.ofZip(), vyhodnocuje volajici (viz setPackageFileSystem())
+        public boolean zipInPlace = false;
+        //pocet soubezne bezicich procesu externich nastroju, neuvedene nastroje sekvencne
+        public Map<ExternalUtil, Integer> utilThreads = new EnumMap<>(ExternalUtil.class);
+        //kolik souboru predat jednomu spusteni externiho nastroje, 1 znamena kazdy soubor zvlast
+        public int utilBatchSize = 1;
+        //vystupy externich nastroju ulozene mezi behy, null znamena bez perzistentni cache
+        public ExternalUtilOutputCache utilOutputCache;
+        //casove limity externich nastroju v sekundach, neuvedene nastroje bez limitu
+        public Map<ExternalUtil, Integer> utilTimeouts = new EnumMap<>(ExternalUtil.class);
+        //kolik znaku vystupu jednoho spusteni externiho nastroje se nejvys zachyti
+        public long utilMaxOutputChars = ExternalUtilManager.DEFAULT_MAX_OUTPUT_CHARS;
+    }
+
     public static class DevParams {
         private Set<String> sectionsToRun = new HashSet<>();
 
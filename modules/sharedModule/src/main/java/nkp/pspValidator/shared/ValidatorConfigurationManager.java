@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared;
 
+import nkp.pspValidator.shared.externalUtils.ExternalUtilManagerFactory;
 import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 
@@ -14,12 +15,21 @@ public class ValidatorConfigurationManager {
     private final File fdmfDir;
     private final File dictionariesDir;
     private final DictionaryManager dictionaryManager;
+    private final ConfigSnapshot configSnapshot;
     //xsds
     private final File fdmfConfigXsd;
     private final File binaryFileProfileXsd;
     private final File metadataProfileXsd;
 
     public ValidatorConfigurationManager(File validatorConfigurationDir) throws ValidatorConfigurationException {
+        this(validatorConfigurationDir, null);
+    }
+
+    /**
+     * @param configSnapshot aktuální snímek konfigurace (viz ConfigSnapshot.load()), nebo null pro zpracování z XML
+     */
+    public ValidatorConfigurationManager(File validatorConfigurationDir, ConfigSnapshot configSnapshot) throws ValidatorConfigurationException {
+        this.configSnapshot = configSnapshot;
         checkDirExistAndReadable(validatorConfigurationDir);
         fdmfDir = new File(validatorConfigurationDir, "fDMF");
         checkDirExistAndReadable(fdmfDir);
@@ -27,7 +37,9 @@ public class ValidatorConfigurationManager {
         checkFileExistAndReadable(externalUtilsConfigFile);
         dictionariesDir = new File(validatorConfigurationDir, "dictionaries");
         checkDirExistAndReadable(dictionariesDir);
-        dictionaryManager = new DictionaryManager(dictionariesDir);
+        dictionaryManager = configSnapshot != null
+                ? new DictionaryManager(dictionariesDir, configSnapshot.getDictionaries())
+                : new DictionaryManager(dictionariesDir);
 
         //xsds
         File xsdDir = new File(validatorConfigurationDir, "xsd");
@@ -44,6 +56,16 @@ public class ValidatorConfigurationManager {
         return externalUtilsConfigFile;
     }
 
+    public ExternalUtilManagerFactory buildExternalUtilManagerFactory() throws ValidatorConfigurationException {
+        return configSnapshot != null
+                ? configSnapshot.getExternalUtilManagerFactory()
+                : new ExternalUtilManagerFactory(externalUtilsConfigFile);
+    }
+
+    public ConfigSnapshot getConfigSnapshot() {
+        return configSnapshot;
+    }
+
     public File getFdmfDir() {
         return fdmfDir;
     }
@@ -1,16 +1,11 @@
 package nkp.pspValidator.shared;
 
-import nkp.pspValidator.shared.metadataProfile.biblio.BibliographicMetadataProfilesManager;
-import nkp.pspValidator.shared.metadataProfile.MetadataProfileParser;
 import nkp.pspValidator.shared.metadataProfile.DictionaryManager;
-import nkp.pspValidator.shared.metadataProfile.mets.MetsProfilesManager;
-import nkp.pspValidator.shared.metadataProfile.tech.TechnicalMetadataProfilesManager;
 import nkp.pspValidator.shared.engine.Engine;
+import nkp.pspValidator.shared.engine.FileSystemSnapshot;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
-import nkp.pspValidator.shared.engine.types.MetadataFormat;
 
 import java.io.File;
-import java.util.Map;
 
 /**
  * Created by Martin Řehánek on 2.11.16.
@@ -18,46 +13,22 @@ import java.util.Map;
 public class ValidatorFactory {
 
     public static Validator buildValidator(FdmfConfiguration fdmfConfiguration, File pspRootDir, DictionaryManager dictionaryManager) throws ValidatorConfigurationException {
-        Engine engine = new Engine(fdmfConfiguration.getBinaryFileValidator());
-        //psp dir
-        engine.setProvidedFile("PSP_DIR", pspRootDir);
-        //init with provided files
-        Map<String, File> providedFiles = fdmfConfiguration.getProvidedFiles();
-        for (String id : providedFiles.keySet()) {
-            File file = providedFiles.get(id);
-            //System.out.println(String.format("id: %s, provided file: %s", id, file.getAbsolutePath()));
-            engine.setProvidedFile(id, file);
-        }
-        // init configuration files (patterns, variables, rules)
-        for (File configFile : fdmfConfiguration.getFdmfConfigFiles()) {
-            engine.processConfigFile(configFile);
-        }
-
-        // process bibliographic profile files
-        BibliographicMetadataProfilesManager biblioMgr = new BibliographicMetadataProfilesManager(new MetadataProfileParser(dictionaryManager));
-        for (File profileFile : fdmfConfiguration.getBiblioDcProfiles()) {
-            biblioMgr.registerProfileFile(profileFile, MetadataFormat.DC);
-        }
-        for (File profileFile : fdmfConfiguration.getBiblioModsProfiles()) {
-            biblioMgr.registerProfileFile(profileFile, MetadataFormat.MODS);
-        }
-        engine.setBibliographicMetadataProfilesManager(biblioMgr);
-
-        //process technical profile files
-        TechnicalMetadataProfilesManager techMgr = new TechnicalMetadataProfilesManager(new MetadataProfileParser(dictionaryManager));
-        for (File profileFile : fdmfConfiguration.getTechProfiles()) {
-            techMgr.processFile(profileFile);
-        }
-        engine.setTechnicalMetadataProfilesManager(techMgr);
+        return buildValidator(fdmfConfiguration, pspRootDir, dictionaryManager, null);
+    }
 
-        //process mets profile files
-        MetsProfilesManager metsMgr = new MetsProfilesManager(new MetadataProfileParser(dictionaryManager));
-        for (File profileFile : fdmfConfiguration.getMetsProfiles()) {
-            metsMgr.processFile(profileFile);
+    /**
+     * @param packageFileSystem snímek ZIP souboru, ze kterého se balík čte bez rozbalení, null pro balík v adresáři
+     */
+    public static Validator buildValidator(FdmfConfiguration fdmfConfiguration, File pspRootDir, DictionaryManager dictionaryManager,
+                                           FileSystemSnapshot packageFileSystem) throws ValidatorConfigurationException {
+        //konfigurace a profily se zpracuji jen pri prvnim baliku dane fDMF, dalsi baliky jen sestavi vlastni Engine
+        CompiledFdmf compiledFdmf = fdmfConfiguration.getCompiledFdmf(dictionaryManager);
+        Engine engine = compiledFdmf.buildEngine(pspRootDir, fdmfConfiguration.getBinaryFileValidator(), packageFileSystem);
+        Validator validator = new Validator(engine);
+        if (packageFileSystem != null) {
+            validator.setPackageFileSystem(packageFileSystem);
         }
-        engine.setMetsProfilesManager(metsMgr);
-
-        return new Validator(engine);
+        return validator;
     }
 
 }
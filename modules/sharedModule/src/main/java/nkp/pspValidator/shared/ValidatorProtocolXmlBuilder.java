@@ -1,8 +1,10 @@
 package nkp.pspValidator.shared;
 
+import nkp.pspValidator.shared.engine.FilePipeline;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.Rule;
 import nkp.pspValidator.shared.engine.RulesSection;
+import nkp.pspValidator.shared.engine.XmlDocumentCache;
 import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -40,6 +42,9 @@ public class ValidatorProtocolXmlBuilder {
             String verdict = protocol.isValid() ? "VALID" : "INVALID";
             Element summaryEl = buildSummaryEl(doc, duration, startDate, finishDAte, protocol.getGlobalProblemsTotal(), protocol.getGlobalProblemsByLevel(), verdict);
             protocolEl.appendChild(summaryEl);
+            if (protocol.getXmlDocumentCacheStatistics() != null) {
+                protocolEl.appendChild(buildXmlDocumentCacheEl(doc, protocol.getXmlDocumentCacheStatistics()));
+            }
 
             Element sectionsEl = doc.createElement("sections");
             protocolEl.appendChild(sectionsEl);
@@ -63,6 +68,11 @@ public class ValidatorProtocolXmlBuilder {
                         }
                         Element ruleSummaryEl = buildSummaryEl(doc, protocol.getRuleProcessingDuration(rule),
                                 null, null, protocol.getRuleProblemsTotal(rule), protocol.getRuleProblemsByLevel(rule), null);
+                        FilePipeline.Timing pipelineTiming = protocol.getFilePipelineTiming(rule);
+                        if (pipelineTiming != null) {
+                            ruleSummaryEl.setAttribute("parametersDuration", String.format("%d ms", pipelineTiming.getParametersMs()));
+                            ruleSummaryEl.setAttribute("filesDuration", String.format("%d ms", pipelineTiming.getVisitMs()));
+                        }
                         ruleEl.appendChild(ruleSummaryEl);
                         if (rule.getResult().hasProblems()) {
                             Element problemsEl = (Element) ruleSummaryEl.getElementsByTagName("problems").item(0);
@@ -87,11 +97,27 @@ public class ValidatorProtocolXmlBuilder {
         }
     }
 
+    private Element buildXmlDocumentCacheEl(Document doc, XmlDocumentCache.Statistics statistics) {
+        Element cacheEl = doc.createElement("xmlDocumentCache");
+        cacheEl.setAttribute("hits", String.valueOf(statistics.getHits()));
+        cacheEl.setAttribute("misses", String.valueOf(statistics.getMisses()));
+        cacheEl.setAttribute("uncached", String.valueOf(statistics.getUncached()));
+        cacheEl.setAttribute("evictions", String.valueOf(statistics.getEvictions()));
+        cacheEl.setAttribute("documents", String.valueOf(statistics.getDocuments()));
+        cacheEl.setAttribute("estimatedBytes", String.valueOf(statistics.getUsedBytes()));
+        cacheEl.setAttribute("peakEstimatedBytes", String.valueOf(statistics.getPeakBytes()));
+        cacheEl.setAttribute("budgetBytes", String.valueOf(statistics.getBudgetBytes()));
+        return cacheEl;
+    }
+
     private void appendErrorEl(Document doc, Element problemsEl, ValidationProblem error) {
         //TODO: add package id
         Element problemEl = doc.createElement("problem");
         problemsEl.appendChild(problemEl);
         problemEl.setAttribute("level", error.getLevel().name());
+        if (error.getKind() != ValidationProblem.Kind.VALIDATION) {
+            problemEl.setAttribute("kind", error.getKind().name());
+        }
         if (error.getFile() != null) {
             problemEl.setAttribute("file", error.getFile().getName());
         }
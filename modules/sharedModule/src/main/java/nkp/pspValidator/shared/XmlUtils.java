@@ -14,6 +14,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
@@ -71,6 +72,16 @@ public class XmlUtils {
         return builder.parse(file.getAbsoluteFile());
     }
 
+    /**
+     * @param systemId identifikátor dokumentu (URI souboru) pro chybová hlášení a relativní odkazy
+     */
+    public static Document buildDocumentFromStream(InputStream in, String systemId, boolean nsAware) throws ParserConfigurationException, IOException, SAXException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(nsAware);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        return builder.parse(in, systemId);
+    }
+
     public static Document buildDocumentFromString(String string, boolean nsAware) throws ParserConfigurationException, IOException, SAXException {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         factory.setNamespaceAware(nsAware);
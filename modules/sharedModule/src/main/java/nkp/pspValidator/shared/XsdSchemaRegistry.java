@@ -0,0 +1,132 @@
+package nkp.pspValidator.shared;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zkompilovaná XML schémata sdílená všemi pravidly i postupně validovanými balíky v rámci jednoho JVM.
+ * <p>
+ * Každé XSD se kompiluje jen jednou, klíčem je kanonická cesta a čas poslední změny souboru (změna souboru vynutí novou kompilaci).
+ * Změny v importovaných XSD se nesledují. Schema je thread-safe, Validator ne, proto se pro každé použití vytváří nový
+ * Validator ze zkompilovaného schématu.
+ */
+public class XsdSchemaRegistry {
+
+    private static final XsdSchemaRegistry instance = new XsdSchemaRegistry();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public static XsdSchemaRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param resolveImports jestli importy v XSD hledat pomocí XsdImportsResourceResolver v adresáři XSD souboru
+     * @return nový Validator, smí ho používat jen volající vlákno
+     */
+    public Validator newValidator(File xsdFile, boolean resolveImports) throws SAXException, IOException {
+        return getSchema(xsdFile, resolveImports).newValidator();
+    }
+
+    public Schema getSchema(File xsdFile, boolean resolveImports) throws SAXException, IOException {
+        File canonicalFile = xsdFile.getCanonicalFile();
+        long lastModified = canonicalFile.lastModified();
+        String key = canonicalFile.getPath() + (resolveImports ? "|imports" : "");
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified) {
+                hits.incrementAndGet();
+                return entry.getSchema();
+            }
+            Entry created = new Entry(lastModified, new FutureTask<>(() -> compile(canonicalFile, resolveImports)));
+            boolean registered = entry == null ? entries.putIfAbsent(key, created) == null : entries.replace(key, entry, created);
+            if (registered) {
+                misses.incrementAndGet();
+                created.task.run();
+                try {
+                    return created.getSchema();
+                } catch (SAXException | IOException | RuntimeException e) {
+                    //chybne schema se necha zkompilovat znovu, treba uz bude opravene
+                    entries.remove(key, created);
+                    throw e;
+                }
+            }
+            //jine vlakno mezitim zaregistrovalo vlastni kompilaci
+        }
+    }
+
+    private Schema compile(File xsdFile, boolean resolveImports) throws SAXException {
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        if (resolveImports) {
+            schemaFactory.setResourceResolver(new XsdImportsResourceResolver(xsdFile.getParentFile()));
+        }
+        return schemaFactory.newSchema(xsdFile);
+    }
+
+    /**
+     * @return počet schémat vrácených z registru
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return počet kompilací schémat
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final long lastModified;
+        private final FutureTask<Schema> task;
+
+        Entry(long lastModified, FutureTask<Schema> task) {
+            this.lastModified = lastModified;
+            this.task = task;
+        }
+
+        Schema getSchema() throws SAXException, IOException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return task.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SAXException) {
+                    throw (SAXException) cause;
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new RuntimeException(cause);
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
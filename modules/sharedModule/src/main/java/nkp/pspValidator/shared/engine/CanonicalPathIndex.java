@@ -0,0 +1,92 @@
+package nkp.pspValidator.shared.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kanonické cesty souborů balíku, zjištěné pro každý soubor jen jednou a sdílené všemi funkcemi.
+ * <p>
+ * Funkce, které porovnávají odkazy na soubory (z METS, INFO, souboru s kontrolními součty) s očekávanými soubory, si
+ * z očekávaných souborů sestaví FileSet a testují příslušnost v O(1), místo porovnávání každého odkazu s každým souborem.
+ * Kanonické cesty se berou ze snímku souborového systému (FileSystemSnapshot), pokud je zapnutý.
+ */
+public class CanonicalPathIndex {
+
+    private final Engine engine;
+    private final Map<String, String> canonicalPaths = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    CanonicalPathIndex(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return kanonická cesta, nebo absolutní cesta, pokud kanonickou nejde zjistit
+     */
+    public String getCanonicalPath(File file) {
+        String absolutePath = file.getAbsolutePath();
+        String canonicalPath = canonicalPaths.get(absolutePath);
+        if (canonicalPath != null) {
+            hits.incrementAndGet();
+            return canonicalPath;
+        }
+        misses.incrementAndGet();
+        try {
+            canonicalPath = engine.getFileSystem().getCanonicalPath(file);
+        } catch (IOException e) {
+            //neni cache-ovano, dalsi dotaz to zkusi znovu
+            return absolutePath;
+        }
+        canonicalPaths.put(absolutePath, canonicalPath);
+        return canonicalPath;
+    }
+
+    /**
+     * @return množina souborů porovnávaných podle kanonické cesty
+     */
+    public FileSet of(Collection<File> files) {
+        Set<String> paths = new HashSet<>(files.size() * 4 / 3 + 1);
+        for (File file : files) {
+            paths.add(getCanonicalPath(file));
+        }
+        return new FileSet(paths);
+    }
+
+    /**
+     * Zapomene zjištěné cesty, např. po změně snímku souborového systému.
+     */
+    public void clear() {
+        canonicalPaths.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public class FileSet {
+        private final Set<String> paths;
+
+        private FileSet(Set<String> paths) {
+            this.paths = paths;
+        }
+
+        public boolean contains(File file) {
+            return paths.contains(getCanonicalPath(file));
+        }
+
+        public int size() {
+            return paths.size();
+        }
+    }
+}
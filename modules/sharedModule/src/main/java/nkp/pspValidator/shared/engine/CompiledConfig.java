@@ -0,0 +1,287 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.evaluationFunctions.EvaluationFunction;
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationFunction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zpracovaný konfigurační soubor fDMF (jmenné prostory, vzory, proměnné, sekce pravidel) nezávislý na konkrétním Engine.
+ * <p>
+ * Vzniká jednou v ConfigProcessor.compile() a pro každý balík se jen přehraje do nového Engine (applyTo()) ve stejném
+ * pořadí, v jakém jsou definice v souboru. Soubor se tedy nečte ani neparsuje znovu. Objekt je po vytvoření neměnný,
+ * a proto ho mohou sdílet souběžně validované balíky. Kvůli snímku konfigurace (ConfigSnapshot) je serializovatelný.
+ */
+public class CompiledConfig implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Definition> definitions;
+
+    CompiledConfig(List<Definition> definitions) {
+        this.definitions = Collections.unmodifiableList(new ArrayList<>(definitions));
+    }
+
+    public void applyTo(Engine engine) throws ValidatorConfigurationException {
+        //parametry funkci se vyhodnocuji uz pri sestaveni, xml dokumenty se pritom sdileji pres cache
+        XmlDocumentCache docCache = engine.getXmlDocumentCache();
+        docCache.startPinning();
+        try {
+            for (Definition definition : definitions) {
+                definition.applyTo(engine);
+            }
+        } finally {
+            docCache.releasePinned();
+        }
+    }
+
+    interface Definition extends Serializable {
+        void applyTo(Engine engine) throws ValidatorConfigurationException;
+    }
+
+    static class NamespacesDefinition implements Definition {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, String> namespaces;
+
+        NamespacesDefinition(Map<String, String> namespaces) {
+            this.namespaces = Collections.unmodifiableMap(new LinkedHashMap<>(namespaces));
+        }
+
+        @Override
+        public void applyTo(Engine engine) {
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                engine.defineNamespace(namespace.getKey(), namespace.getValue());
+            }
+        }
+    }
+
+    static class PatternDefinitionDefinition implements Definition {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final List<ExpressionDefinition> expressions;
+
+        PatternDefinitionDefinition(String name, List<ExpressionDefinition> expressions) {
+            this.name = name;
+            this.expressions = Collections.unmodifiableList(new ArrayList<>(expressions));
+        }
+
+        @Override
+        public void applyTo(Engine engine) {
+            engine.registerPatternDefinition(name, buildPatternDefinition(engine, expressions));
+        }
+    }
+
+    static class ValueDefinitionDefinition implements Definition {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final ValueType type;
+        private final FunctionDefinition evaluation;
+
+        ValueDefinitionDefinition(String name, ValueType type, FunctionDefinition evaluation) {
+            this.name = name;
+            this.type = type;
+            this.evaluation = evaluation;
+        }
+
+        @Override
+        public void applyTo(Engine engine) throws ValidatorConfigurationException {
+            EvaluationFunction ef = evaluation.buildEvaluationFunction(engine);
+            engine.registerValueDefinition(name, engine.buildValueDefinition(type, ef));
+        }
+    }
+
+    static class ConstantValueDefinition implements Definition {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        //String, Integer, Boolean nebo enum, tedy nemenne
+        private final Object value;
+
+        ConstantValueDefinition(String name, Object value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public void applyTo(Engine engine) {
+            engine.registerValue(name, new ValueEvaluation(value));
+        }
+    }
+
+    static class RulesSectionDefinition implements Definition {
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final String name;
+        private final String description;
+        private final boolean enabled;
+        private final List<RuleDefinition> rules;
+
+        RulesSectionDefinition(int id, String name, String description, boolean enabled, List<RuleDefinition> rules) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.enabled = enabled;
+            this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        }
+
+        @Override
+        public void applyTo(Engine engine) throws ValidatorConfigurationException {
+            RulesSection section = engine.buildRuleSection(id, name, description);
+            section.setEnabled(enabled);
+            engine.registerRuleSection(section);
+            for (RuleDefinition rule : rules) {
+                ValidationFunction function = rule.validation.buildValidationFunction(engine);
+                engine.registerRule(section, new Rule(section.getId(), rule.id, rule.name, rule.description, function));
+            }
+        }
+    }
+
+    static class RuleDefinition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final String name;
+        private final String description;
+        private final FunctionDefinition validation;
+
+        RuleDefinition(int id, String name, String description, FunctionDefinition validation) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.validation = validation;
+        }
+    }
+
+    /**
+     * Vyhodnocovací nebo validační funkce včetně parametrů.
+     */
+    static class FunctionDefinition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final List<ValueParamDefinition> valueParams;
+        private final List<PatternParamDefinition> patternParams;
+
+        FunctionDefinition(String name, List<ValueParamDefinition> valueParams, List<PatternParamDefinition> patternParams) {
+            this.name = name;
+            this.valueParams = Collections.unmodifiableList(new ArrayList<>(valueParams));
+            this.patternParams = Collections.unmodifiableList(new ArrayList<>(patternParams));
+        }
+
+        EvaluationFunction buildEvaluationFunction(Engine engine) throws ValidatorConfigurationException {
+            EvaluationFunction function = engine.buildEvaluationFunction(name);
+            addParams(engine, function);
+            return function;
+        }
+
+        ValidationFunction buildValidationFunction(Engine engine) throws ValidatorConfigurationException {
+            ValidationFunction function = engine.buildValidationFunction(name);
+            addParams(engine, function);
+            return function;
+        }
+
+        private void addParams(Engine engine, Function function) throws ValidatorConfigurationException {
+            for (ValueParamDefinition param : valueParams) {
+                if (param.reference != null) {
+                    function.withValueParamByReference(param.name, param.type, param.reference);
+                } else if (param.evaluation != null) {
+                    //anonymni definice se vyhodnocuje hned, stejne jako pri primem zpracovani konfigurace
+                    function.withValueParam(param.name, param.type, param.evaluation.buildEvaluationFunction(engine).evaluate());
+                } else {
+                    function.withValueParam(param.name, param.type, new ValueEvaluation(param.constant));
+                }
+            }
+            for (PatternParamDefinition param : patternParams) {
+                if (param.reference != null) {
+                    function.withPatternParamByReference(param.name, param.reference);
+                } else if (param.expressions != null) {
+                    function.withPatternParam(param.name, buildPatternDefinition(engine, param.expressions).evaluate());
+                }
+            }
+        }
+    }
+
+    static class ValueParamDefinition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final ValueType type;
+        //prave jedno z nasledujicich
+        private final String reference;
+        private final FunctionDefinition evaluation;
+        private final Object constant;
+
+        private ValueParamDefinition(String name, ValueType type, String reference, FunctionDefinition evaluation, Object constant) {
+            this.name = name;
+            this.type = type;
+            this.reference = reference;
+            this.evaluation = evaluation;
+            this.constant = constant;
+        }
+
+        static ValueParamDefinition byReference(String name, ValueType type, String reference) {
+            return new ValueParamDefinition(name, type, reference, null, null);
+        }
+
+        static ValueParamDefinition byEvaluation(String name, ValueType type, FunctionDefinition evaluation) {
+            return new ValueParamDefinition(name, type, null, evaluation, null);
+        }
+
+        static ValueParamDefinition byConstant(String name, ValueType type, Object constant) {
+            return new ValueParamDefinition(name, type, null, null, constant);
+        }
+    }
+
+    static class PatternParamDefinition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        //prave jedno z nasledujicich
+        private final String reference;
+        private final List<ExpressionDefinition> expressions;
+
+        private PatternParamDefinition(String name, String reference, List<ExpressionDefinition> expressions) {
+            this.name = name;
+            this.reference = reference;
+            this.expressions = expressions == null ? null : Collections.unmodifiableList(new ArrayList<>(expressions));
+        }
+
+        static PatternParamDefinition byReference(String name, String reference) {
+            return new PatternParamDefinition(name, reference, null);
+        }
+
+        static PatternParamDefinition byExpressions(String name, List<ExpressionDefinition> expressions) {
+            return new PatternParamDefinition(name, null, expressions);
+        }
+    }
+
+    static class ExpressionDefinition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean caseSensitive;
+        private final String regexp;
+
+        ExpressionDefinition(boolean caseSensitive, String regexp) {
+            this.caseSensitive = caseSensitive;
+            this.regexp = regexp;
+        }
+    }
+
+    private static PatternDefinition buildPatternDefinition(Engine engine, List<ExpressionDefinition> expressions) {
+        PatternDefinition patternDefinition = engine.buildPatternDefinition();
+        for (ExpressionDefinition expression : expressions) {
+            //PatternExpression si kompiluje regularni vyraz az pri pouziti, proto ho kazdy Engine dostane vlastni
+            patternDefinition.withRawExpression(new PatternExpression(expression.caseSensitive, expression.regexp));
+        }
+        return patternDefinition;
+    }
+}
@@ -3,17 +3,18 @@ package nkp.pspValidator.shared.engine;
 import com.mycila.xmltool.XMLDoc;
 import com.mycila.xmltool.XMLTag;
 import nkp.pspValidator.shared.XmlUtils;
-import nkp.pspValidator.shared.engine.evaluationFunctions.EvaluationFunction;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.engine.types.EntityType;
 import nkp.pspValidator.shared.engine.types.MetadataFormat;
-import nkp.pspValidator.shared.engine.validationFunctions.ValidationFunction;
 import nkp.pspValidator.shared.externalUtils.ExternalUtil;
 import nkp.pspValidator.shared.externalUtils.ResourceType;
 import org.w3c.dom.Element;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Martin Řehánek on 29.10.16.
@@ -23,56 +24,67 @@ public class ConfigProcessor {
     /*TODO: logovani*/
 
     public void processConfigFile(Engine engine, File configFile) throws ValidatorConfigurationException {
+        compile(configFile).applyTo(engine);
+    }
+
+    /**
+     * Zpracuje konfigurační soubor do podoby nezávislé na Engine, kterou lze opakovaně použít pro další balíky.
+     */
+    public CompiledConfig compile(File configFile) throws ValidatorConfigurationException {
         XMLTag doc = XMLDoc.from(configFile, true);
+        List<CompiledConfig.Definition> definitions = new ArrayList<>();
         int ruleCounter = 0;
         for (Element childEl : doc.getChildElement()) {
             String elementName = childEl.getTagName();
             switch (elementName) {
                 case "pattern-def":
-                    processNamedPatternDefinition(engine, childEl);
+                    definitions.add(processNamedPatternDefinition(childEl));
                     break;
                 case "value-def":
-                    processNamedValueDefinition(engine, childEl);
+                    definitions.add(processNamedValueDefinition(childEl));
                     break;
                 case "rules-section":
-                    processRulesSectionDefinition(engine, childEl, ruleCounter++);
+                    definitions.add(processRulesSectionDefinition(childEl, ruleCounter++));
                     break;
                 case "namespaces":
-                    processNamespaces(engine, childEl);
+                    definitions.add(processNamespaces(childEl));
                 default:
                     //nothing
                     //System.out.println(String.format("ignoring element %s", elementName));
             }
         }
+        return new CompiledConfig(definitions);
     }
 
-    private void processNamespaces(Engine engine, Element childEl) {
+    private CompiledConfig.Definition processNamespaces(Element childEl) {
+        Map<String, String> namespaces = new LinkedHashMap<>();
         Element altoEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-alto").get(0);
-        engine.defineNamespace("alto", altoEl.getTextContent());
+        namespaces.put("alto", altoEl.getTextContent());
         Element cmdEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-copyright_md").get(0);
-        engine.defineNamespace("cmd", cmdEl.getTextContent());
+        namespaces.put("cmd", cmdEl.getTextContent());
         Element cdEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-dublin_core").get(0);
-        engine.defineNamespace("dc", cdEl.getTextContent());
+        namespaces.put("dc", cdEl.getTextContent());
         Element metsEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-mets").get(0);
-        engine.defineNamespace("mets", metsEl.getTextContent());
+        namespaces.put("mets", metsEl.getTextContent());
         Element mixEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-mix").get(0);
-        engine.defineNamespace("mix", mixEl.getTextContent());
+        namespaces.put("mix", mixEl.getTextContent());
         Element modsEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-mods").get(0);
-        engine.defineNamespace("mods", modsEl.getTextContent());
+        namespaces.put("mods", modsEl.getTextContent());
         Element oaiDcEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-oai_dc").get(0);
-        engine.defineNamespace("oai_dc", oaiDcEl.getTextContent());
+        namespaces.put("oai_dc", oaiDcEl.getTextContent());
         Element premisEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-premis").get(0);
-        engine.defineNamespace("premis", premisEl.getTextContent());
+        namespaces.put("premis", premisEl.getTextContent());
         Element xlinkEl = XmlUtils.getChildrenElementsByName(childEl, "namespace-xlink").get(0);
-        engine.defineNamespace("xlink", xlinkEl.getTextContent());
+        namespaces.put("xlink", xlinkEl.getTextContent());
         List<Element> aes57Els = XmlUtils.getChildrenElementsByName(childEl, "namespace-aes57");
         if (!aes57Els.isEmpty()) {
             Element aes57El = aes57Els.get(0);
-            engine.defineNamespace("aes57", aes57El.getTextContent());
+            namespaces.put("aes57", aes57El.getTextContent());
         }
+        return new CompiledConfig.NamespacesDefinition(namespaces);
     }
 
-    private void processRulesSectionDefinition(Engine engine, Element rulesSectionEl, Integer ruleId) throws ValidatorConfigurationException {
+    private CompiledConfig.Definition processRulesSectionDefinition(Element rulesSectionEl, Integer ruleId) throws ValidatorConfigurationException {
         String name = rulesSectionEl.getAttribute("name");
         //System.out.println(String.format("processing rule-section %s'", name));
         String description = null;
@@ -80,41 +92,29 @@ public class ConfigProcessor {
         if (descriptionFromEl != null && !descriptionFromEl.trim().isEmpty()) {
             description = descriptionFromEl.trim();
         }
-        RulesSection section = engine.buildRuleSection(ruleId, name, description);
-        section.setEnabled(parseBooleanAttribute("enabled", true));
-        engine.registerRuleSection(section);
+        boolean enabled = parseBooleanAttribute("enabled", true);
         //rules
         List<Element> ruleEls = XmlUtils.getChildrenElementsByName(rulesSectionEl, "rule");
+        List<CompiledConfig.RuleDefinition> rules = new ArrayList<>(ruleEls.size());
         int ruleCounter = 0;
         for (Element ruleEl : ruleEls) {
-            processRule(engine, section, ruleCounter++, ruleEl);
+            rules.add(processRule(ruleCounter++, ruleEl));
         }
+        return new CompiledConfig.RulesSectionDefinition(ruleId, name, description, enabled, rules);
     }
 
-    private void processRule(Engine engine, RulesSection section, int ruleId, Element ruleEl) throws ValidatorConfigurationException {
+    private CompiledConfig.RuleDefinition processRule(int ruleId, Element ruleEl) throws ValidatorConfigurationException {
         //name
         String name = ruleEl.getAttribute("name");
         Element validationEl = XmlUtils.getChildrenElementsByName(ruleEl, "validation").get(0);
-        ValidationFunction function = parseValidationFunction(engine, validationEl);
+        CompiledConfig.FunctionDefinition function = parseFunction(validationEl);
         //description
         List<Element> descriptionEls = XmlUtils.getChildrenElementsByName(ruleEl, "description");
         String description = null;
         if (!descriptionEls.isEmpty()) {
             description = descriptionEls.get(0).getTextContent().replaceAll("\\s+", " ").trim();
         }
-        Rule rule = new Rule(section.getId(), ruleId, name, description, function);
-        //System.out.println(String.format("registering rule '%s' (%s)", name, level));
-        engine.registerRule(section, rule);
-
-    }
-
-    private ValidationFunction parseValidationFunction(Engine engine, Element validationEl) throws ValidatorConfigurationException {
-        String name = validationEl.getAttribute("functionName");
-        Element paramsEl = XmlUtils.getChildrenElementsByName(validationEl, "params").get(0);
-        ValidationFunction function = engine.buildValidationFunction(name);
-        //params
-        addParams(engine, function, paramsEl);
-        return function;
+        return new CompiledConfig.RuleDefinition(ruleId, name, description, function);
     }
 
     private Level parseLevel(String levelStr, Level defaultLevel) {
@@ -126,21 +126,21 @@ public class ConfigProcessor {
     }
 
 
-    private void processNamedPatternDefinition(Engine engine, Element patternEl) {
+    private CompiledConfig.Definition processNamedPatternDefinition(Element patternEl) {
         String varName = patternEl.getAttribute("name");
         //System.out.println("processing named-pattern " + varName);
         List<Element> expressionEls = XmlUtils.getChildrenElementsByName(patternEl, "expression");
-        PatternDefinition patternDefinition = engine.buildPatternDefinition();
-        for (Element expressionEl : expressionEls) {
-            patternDefinition.withRawExpression(toExpression(expressionEl));
-        }
-        engine.registerPatternDefinition(varName, patternDefinition);
+        return new CompiledConfig.PatternDefinitionDefinition(varName, toExpressions(expressionEls));
     }
 
-    private PatternExpression toExpression(Element expressionEl) {
-        boolean caseSensitive = parseBooleanAttribute(expressionEl.getAttribute("caseSensitive"), true);
-        String regexp = expressionEl.getTextContent();
-        return new PatternExpression(caseSensitive, regexp);
+    private List<CompiledConfig.ExpressionDefinition> toExpressions(List<Element> expressionEls) {
+        List<CompiledConfig.ExpressionDefinition> expressions = new ArrayList<>(expressionEls.size());
+        for (Element expressionEl : expressionEls) {
+            boolean caseSensitive = parseBooleanAttribute(expressionEl.getAttribute("caseSensitive"), true);
+            String regexp = expressionEl.getTextContent();
+            expressions.add(new CompiledConfig.ExpressionDefinition(caseSensitive, regexp));
+        }
+        return expressions;
     }
 
     private boolean parseBooleanAttribute(String attrValue, boolean defaultValue) {
@@ -151,24 +151,18 @@ public class ConfigProcessor {
         }
     }
 
-    private void processNamedValueDefinition(Engine engine, Element valueDefEl) throws ValidatorConfigurationException {
+    private CompiledConfig.Definition processNamedValueDefinition(Element valueDefEl) throws ValidatorConfigurationException {
         String varName = valueDefEl.getAttribute("name");
         ValueType varType = ValueType.valueOf(valueDefEl.getAttribute("type"));
         //System.out.println(String.format("processing named-value %s (%s) ", varName, varType));
         List<Element> efEls = XmlUtils.getChildrenElementsByName(valueDefEl, "evaluation");
         if (!efEls.isEmpty()) {//evaluation function
             //System.out.println("processing named-value - by definition");
-            Element efEl = efEls.get(0);
-            EvaluationFunction ef = buildEf(engine, efEl);
-            ValueDefinition valueDefinition = engine.buildValueDefinition(varType, ef);
-            //System.out.println(String.format("registering named-value (by definition) %s", varName));
-            engine.registerValueDefinition(varName, valueDefinition);
+            return new CompiledConfig.ValueDefinitionDefinition(varName, varType, parseFunction(efEls.get(0)));
         } else {//constant
             //System.out.println("processing named-value - by constant");
-            //System.out.println(valueDefEl.toString());
             Object value = parseConstantValueDefinition(varName, valueDefEl, varType);
-            //System.out.println(String.format("registering named-value (by constant)"));
-            engine.registerValue(varName, new ValueEvaluation(value));
+            return new CompiledConfig.ConstantValueDefinition(varName, value);
         }
     }
 
@@ -205,17 +199,14 @@ public class ConfigProcessor {
     }
 
 
-    private EvaluationFunction buildEf(Engine engine, Element efEl) throws ValidatorConfigurationException {
-        String efName = efEl.getAttribute("functionName");
-        //System.out.println("buildEf (" + efName + ")");
-        EvaluationFunction ef = engine.buildEvaluationFunction(efName);
-        Element paramsEl = XmlUtils.getChildrenElementsByName(efEl, "params").get(0);
-        addParams(engine, ef, paramsEl);
-        return ef;
-    }
-
-    private void addParams(Engine engine, Function function, Element paramsEl) throws ValidatorConfigurationException {
+    /**
+     * Vyhodnocovací i validační funkce (elementy evaluation a validation) mají stejnou strukturu: jméno a parametry.
+     */
+    private CompiledConfig.FunctionDefinition parseFunction(Element functionEl) throws ValidatorConfigurationException {
+        String name = functionEl.getAttribute("functionName");
+        Element paramsEl = XmlUtils.getChildrenElementsByName(functionEl, "params").get(0);
         // value params
+        List<CompiledConfig.ValueParamDefinition> valueParams = new ArrayList<>();
         List<Element> valueEls = XmlUtils.getChildrenElementsByName(paramsEl, "value");
         for (Element valueEl : valueEls) {
             String paramName = valueEl.getAttribute("name");
@@ -226,18 +217,16 @@ public class ConfigProcessor {
             if (!valueRefEls.isEmpty()) { //param is reference
                 Element valueRefEl = valueRefEls.get(0);
                 String valueRefName = valueRefEl.getAttribute("name");
-                function.withValueParamByReference(paramName, paramType, valueRefName);
+                valueParams.add(CompiledConfig.ValueParamDefinition.byReference(paramName, paramType, valueRefName));
             } else if (!evaluationEls.isEmpty()) { //param anonymous definition
-                Element evaluationEl = evaluationEls.get(0);
-                EvaluationFunction valueParamEf = buildEf(engine, evaluationEl);
-                ValueEvaluation evaluation = valueParamEf.evaluate();
-                function.withValueParam(paramName, paramType, evaluation);
+                valueParams.add(CompiledConfig.ValueParamDefinition.byEvaluation(paramName, paramType, parseFunction(evaluationEls.get(0))));
             } else {//param is constant
                 Object paramValue = parseConstantValueDefinition(paramName, valueEl, paramType);
-                function.withValueParam(paramName, paramType, new ValueEvaluation(paramValue));
+                valueParams.add(CompiledConfig.ValueParamDefinition.byConstant(paramName, paramType, paramValue));
             }
         }
         //pattern params
+        List<CompiledConfig.PatternParamDefinition> patternParams = new ArrayList<>();
         List<Element> patternEls = XmlUtils.getChildrenElementsByName(paramsEl, "pattern");
         for (Element patternEl : patternEls) {
             String paramName = patternEl.getAttribute("name");
@@ -247,14 +236,11 @@ public class ConfigProcessor {
             if (!referenceEls.isEmpty()) {
                 Element referenceEl = referenceEls.get(0);
                 String varName = referenceEl.getAttribute("name");
-                function.withPatternParamByReference(paramName, varName);
+                patternParams.add(CompiledConfig.PatternParamDefinition.byReference(paramName, varName));
             } else if (!expressionEls.isEmpty()) {
-                PatternDefinition patternDefinition = engine.buildPatternDefinition();
-                for (Element expressionEl : expressionEls) {
-                    patternDefinition.withRawExpression(toExpression(expressionEl));
-                }
-                function.withPatternParam(paramName, patternDefinition.evaluate());
+                patternParams.add(CompiledConfig.PatternParamDefinition.byExpressions(paramName, toExpressions(expressionEls)));
             }
         }
+        return new CompiledConfig.FunctionDefinition(name, valueParams, patternParams);
     }
 }
@@ -1,6 +1,7 @@
 package nkp.pspValidator.shared.engine;
 
 import nkp.pspValidator.shared.engine.evaluationFunctions.*;
+import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
 import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
@@ -17,6 +18,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Martin Řehánek on 20.10.16.
@@ -24,19 +30,28 @@ import java.util.Map;
 public class Engine {
 
     private final Map<String, ValueDefinition> valueDefinitionsByVarName = new HashMap<>();
-    private final Map<String, ValueEvaluation> valueEvaluationsByVarName = new HashMap<>();
+    //vyhodnocení mohou při paralelním běhu pravidel (RuleScheduler) přibývat z více vláken
+    private final VariableEvaluationCache<ValueEvaluation> valueEvaluations = new VariableEvaluationCache<>();
 
     private final Map<String, PatternDefinition> patternDefinitionsByVarName = new HashMap<>();
-    private final Map<String, PatternEvaluation> patternEvaluationsByVarName = new HashMap<>();
+    private final VariableEvaluationCache<PatternEvaluation> patternEvaluations = new VariableEvaluationCache<>();
 
 
     private final ProvidedVarsManager providedVarsManager = new ProvidedVarsManager();
     private final ConfigProcessor configProcessor = new ConfigProcessor();
     private final XmlManager xmlManager = new XmlManager(true);
+    private final HashManager hashManager = new HashManager();
 
     private final RulesManager rulesManager = new RulesManager();
     private final BinaryFileValidator binaryFileValidator;
 
+    //souběžné zpracování seznamů souborů uvnitř validačních funkcí (např. validace podle XSD)
+    private int fileValidationThreads = 1;
+    private ExecutorService fileValidationExecutor;
+    private volatile FilePipeline filePipeline;
+    private volatile FileSystemSnapshot fileSystem = FileSystemSnapshot.passThrough();
+    private final CanonicalPathIndex canonicalPathIndex = new CanonicalPathIndex(this);
+
     private BibliographicMetadataProfilesManager bibliographicMetadataProfilesManager;
     private TechnicalMetadataProfilesManager technicalMetadataProfilesManager;
     private MetsProfilesManager metsProfilesManager;
@@ -69,6 +84,43 @@ public class Engine {
         this.binaryFileValidator = binaryFileValidator;
     }
 
+    public int getFileValidationThreads() {
+        return fileValidationThreads;
+    }
+
+    public synchronized void setFileValidationThreads(int fileValidationThreads) {
+        if (fileValidationThreads < 1) {
+            throw new IllegalArgumentException(String.format("počet vláken musí být alespoň 1, ne %d", fileValidationThreads));
+        }
+        if (fileValidationExecutor != null) {
+            fileValidationExecutor.shutdown();
+            fileValidationExecutor = null;
+        }
+        this.fileValidationThreads = fileValidationThreads;
+    }
+
+    /**
+     * @return sdílený pool pro validaci seznamů souborů, nebo null, pokud se mají soubory zpracovávat sekvenčně
+     */
+    public synchronized ExecutorService getFileValidationExecutor() {
+        if (fileValidationThreads == 1) {
+            return null;
+        }
+        if (fileValidationExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(fileValidationThreads, fileValidationThreads,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "file-validation-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            //Engine nema zadne ukonceni, necinna vlakna proto musi zaniknout sama
+            executor.allowCoreThreadTimeOut(true);
+            fileValidationExecutor = executor;
+        }
+        return fileValidationExecutor;
+    }
+
     //provided vars
 
     public void setProvidedString(String stringId, String value) {
@@ -272,7 +324,7 @@ public class Engine {
 
     public void registerValue(String valueVariableName, ValueEvaluation valueEvaluation) {
         //TODO: check if not defined already
-        valueEvaluationsByVarName.put(valueVariableName, valueEvaluation);
+        valueEvaluations.put(valueVariableName, valueEvaluation);
     }
 
     public void registerValueDefinition(String valueVariableName, ValueDefinition definition) {
@@ -305,37 +357,59 @@ public class Engine {
     }
 
     public ValueEvaluation getValueEvaluationByVariable(String varName) {
-        ValueEvaluation evaluation = valueEvaluationsByVarName.get(varName);
-        if (evaluation != null) {
-            return evaluation;
-        } else {//not evaluated yet
-            ValueDefinition definition = valueDefinitionsByVarName.get(varName);
-            if (definition == null) {
-                return new ValueEvaluation(null, String.format("proměnná pro hodnotu %s není definována", varName));
+        ValueDefinition definition = valueDefinitionsByVarName.get(varName);
+        if (definition == null) {
+            //konstanta registrovana pres registerValue(), jinak nedefinovana promenna
+            ValueEvaluation constant = valueEvaluations.getIfPresent(varName);
+            if (constant != null) {
+                return constant;
             } else {
-                evaluation = definition.evaluate();
-                valueEvaluationsByVarName.put(varName, evaluation);
-                return evaluation;
+                return new ValueEvaluation(null, String.format("proměnná pro hodnotu %s není definována", varName));
             }
+        } else {
+            return valueEvaluations.get(varName, () -> evaluateVariable(definition),
+                    reason -> new ValueEvaluation(null, String.format("%s při vyhodnocování proměnné %s", reason, varName)));
         }
     }
 
     public PatternEvaluation getPatternEvaluationByVariable(String varName) {
-        PatternEvaluation evaluation = patternEvaluationsByVarName.get(varName);
-        if (evaluation != null) {
-            return evaluation;
+        PatternDefinition definition = patternDefinitionsByVarName.get(varName);
+        if (definition == null) {
+            return new PatternEvaluation(null, String.format("proměnná pro vzor %s není definována", varName));
         } else {
-            PatternDefinition definition = patternDefinitionsByVarName.get(varName);
-            if (definition == null) {
-                return new PatternEvaluation(null, String.format("proměnná pro vzor %s není definována", varName));
-            } else {
-                evaluation = definition.evaluate();
-                patternEvaluationsByVarName.put(varName, evaluation);
-                return evaluation;
-            }
+            return patternEvaluations.get(varName, definition::evaluate,
+                    reason -> new PatternEvaluation(null, String.format("%s při vyhodnocování vzoru %s", reason, varName)));
         }
     }
 
+    /**
+     * @return počty opakovaných použití (hits), vyhodnocení (misses) a doba vyhodnocení pro jednotlivé proměnné hodnot
+     */
+    public List<VariableEvaluationCache.Statistics> getValueEvaluationStatistics() {
+        return valueEvaluations.getStatistics();
+    }
+
+    /**
+     * @return počty opakovaných použití (hits), vyhodnocení (misses) a doba vyhodnocení pro jednotlivé proměnné vzorů
+     */
+    public List<VariableEvaluationCache.Statistics> getPatternEvaluationStatistics() {
+        return patternEvaluations.getStatistics();
+    }
+
+    /**
+     * @return definice hodnoty, nebo null, pokud je proměnná konstanta, nebo není definována
+     */
+    public ValueDefinition getValueDefinition(String varName) {
+        return valueDefinitionsByVarName.get(varName);
+    }
+
+    /**
+     * @return definice vzoru, nebo null, pokud vzor není definován
+     */
+    public PatternDefinition getPatternDefinition(String varName) {
+        return patternDefinitionsByVarName.get(varName);
+    }
+
     public List<RulesSection> getRuleSections() {
         return rulesManager.getSections();
     }
@@ -418,14 +492,110 @@ public class Engine {
         return xmlManager.getXmlDocument(file, nsAware);
     }
 
+    /**
+     * Index METS souboru sdílený pravidly, která ho kontrolují ve stejném vlákně. Sestaví se při prvním použití.
+     */
+    public MetsIndex getMetsIndex(File metsFile) throws XmlFileParsingException {
+        return MetsIndex.of(xmlManager.getXmlDocument(metsFile, true));
+    }
+
+    /**
+     * Cache DOM dokumentů balíku, omezená odhadem zabrané paměti.
+     */
+    public XmlDocumentCache getXmlDocumentCache() {
+        return xmlManager.getDocumentCache();
+    }
+
+    /**
+     * @return snímek souborového systému, přes který se funkce ptají na soubory balíku, bez zapnutého snímku se všechny
+     * dotazy předávají souborovému systému
+     */
+    public FileSystemSnapshot getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * @param snapshot snímek adresáře balíku, null znamená bez snímku
+     */
+    public void setFileSystemSnapshot(FileSystemSnapshot snapshot) {
+        this.fileSystem = snapshot == null ? FileSystemSnapshot.passThrough() : snapshot;
+        xmlManager.setFileSystem(fileSystem);
+        hashManager.setFileSystem(fileSystem);
+        canonicalPathIndex.clear();
+    }
+
+    /**
+     * @return kanonické cesty souborů balíku, sdílené všemi funkcemi
+     */
+    public CanonicalPathIndex getCanonicalPathIndex() {
+        return canonicalPathIndex;
+    }
+
+    /**
+     * @param filePipeline společný průchod soubory pro pravidla, která ho podporují, null znamená, že každé pravidlo čte soubory samo
+     */
+    public void setFilePipeline(FilePipeline filePipeline) {
+        this.filePipeline = filePipeline;
+    }
+
+    /**
+     * Vyhodnotí pravidlo. Xml dokumenty, které přitom použije, se po tu dobu z cache neodstraní.
+     */
+    public ValidationResult evaluateRule(Rule rule) {
+        FilePipeline pipeline = filePipeline;
+        if (pipeline != null && pipeline.contains(rule)) {
+            ValidationResult result = pipeline.getResult(rule);
+            rule.setResult(result);
+            return result;
+        }
+        XmlDocumentCache docCache = xmlManager.getDocumentCache();
+        docCache.startPinning();
+        try {
+            return rule.getResult();
+        } finally {
+            docCache.releasePinned();
+        }
+    }
+
+    /**
+     * Vyhodnotí proměnnou. Xml dokumenty, které přitom použije, patří vláknu jen po dobu vyhodnocení.
+     */
+    private ValueEvaluation evaluateVariable(ValueDefinition definition) {
+        XmlDocumentCache docCache = xmlManager.getDocumentCache();
+        docCache.startPinning();
+        try {
+            return definition.evaluate();
+        } finally {
+            docCache.releasePinned();
+        }
+    }
+
     public XPathExpression buildXpath(String xpathExpression) throws InvalidXPathExpressionException {
         return xmlManager.buildXpath(xpathExpression);
     }
 
+    /**
+     * @return počet XPath výrazů vrácených z cache (hits) a počet jejich kompilací (misses)
+     */
+    public XpathCache getXpathCache() {
+        return xmlManager.getXpathCache();
+    }
+
     public void defineNamespace(String prefix, String uri) {
         xmlManager.setNamespaceUri(prefix, uri);
     }
 
+    public String computeHash(File file) throws HashComputationException {
+        return hashManager.computeHash(file);
+    }
+
+    /**
+     * @return správce kontrolních součtů, mj. se statistikami přečtených a ušetřených bajtů
+     */
+    public HashManager getHashManager() {
+        return hashManager;
+    }
+
     public BinaryFileValidator getBinaryFileValidator() {
         return binaryFileValidator;
     }
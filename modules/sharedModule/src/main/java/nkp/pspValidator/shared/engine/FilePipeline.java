@@ -0,0 +1,240 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.validationFunctions.FileVisit;
+import nkp.pspValidator.shared.engine.validationFunctions.FileVisitingFunction;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Společný průchod soubory pro pravidla, jejichž funkce kontrolují seznam souborů soubor po souboru (FileVisitingFunction),
+ * typicky sekundární METS z amdsec.
+ * <p>
+ * Bez průchodu každé takové pravidlo čte všechny své soubory samo a při omezené cache xml dokumentů se tentýž soubor
+ * načítá opakovaně. Průchod projde sjednocení souborů všech pravidel jednou: soubor se načte, předá se kontrolám všech
+ * pravidel, která ho kontrolují, a pak se z cache odstraní. Počet načtení tak odpovídá počtu souborů, ne součinu
+ * pravidel a souborů.
+ * <p>
+ * Průchod se spustí při vyhodnocení prvního ze zapojených pravidel, ostatní pravidla jen vyzvednou svůj výsledek.
+ * Problémy ve výsledku pravidla jsou ve stejném pořadí jako při samostatném vyhodnocení pravidla.
+ * Doba vyhodnocení parametrů a kontroly souborů se měří pro každé pravidlo zvlášť (getTiming()), doba vyhodnocení
+ * prvního pravidla by jinak zahrnovala celý průchod.
+ */
+public class FilePipeline {
+
+    private final Engine engine;
+    private final Set<Rule> rules;
+    private final Map<Rule, ValidationResult> results = new ConcurrentHashMap<>();
+    private final Map<Rule, Timing> timings = new ConcurrentHashMap<>();
+    private final FutureTask<Void> pass = new FutureTask<>(this::run, null);
+    private volatile int filesVisited;
+
+    /**
+     * @param rules pravidla ke spuštění, zapojí se z nich jen ta s funkcí FileVisitingFunction
+     */
+    public FilePipeline(Engine engine, Collection<Rule> rules) {
+        this.engine = engine;
+        Set<Rule> visitingRules = new LinkedHashSet<>();
+        for (Rule rule : rules) {
+            if (rule.getFunction() instanceof FileVisitingFunction) {
+                visitingRules.add(rule);
+            }
+        }
+        this.rules = Collections.unmodifiableSet(visitingRules);
+    }
+
+    public boolean contains(Rule rule) {
+        return rules.contains(rule);
+    }
+
+    public Set<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return počet různých souborů, které průchod načetl, 0, pokud ještě neproběhl
+     */
+    public int getFilesVisited() {
+        return filesVisited;
+    }
+
+    /**
+     * @return doba, kterou průchod strávil prací pro pravidlo, null, pokud pravidlo není zapojené nebo průchod ještě neproběhl
+     */
+    public Timing getTiming(Rule rule) {
+        return timings.get(rule);
+    }
+
+    /**
+     * Vrátí výsledek pravidla, případně nejdřív provede celý průchod. Souběžná volání počkají na jeden průchod.
+     */
+    ValidationResult getResult(Rule rule) {
+        pass.run();
+        try {
+            pass.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("průchod soubory přerušen");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        return results.get(rule);
+    }
+
+    /**
+     * @return chyba úlohy k vyhození, RuntimeException a Error beze změny
+     */
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else {
+            return new RuntimeException(cause);
+        }
+    }
+
+    private void run() {
+        //parametry vsech pravidel, soubory podle absolutni cesty v poradi prvniho vyskytu
+        List<VisitState> visits = new ArrayList<>();
+        Map<String, List<Slot>> slotsByPath = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            Timing timing = new Timing();
+            long start = System.nanoTime();
+            FileVisit visit = ((FileVisitingFunction) rule.getFunction()).prepareFileVisit();
+            timing.parametersNanos = System.nanoTime() - start;
+            timings.put(rule, timing);
+            if (visit.isFailed()) {
+                results.put(rule, visit.getFailure());
+            } else {
+                VisitState state = new VisitState(rule, visit, timing);
+                visits.add(state);
+                List<File> files = visit.getFiles();
+                for (int i = 0; i < files.size(); i++) {
+                    slotsByPath.computeIfAbsent(files.get(i).getAbsolutePath(), path -> new ArrayList<>()).add(new Slot(state, i));
+                }
+            }
+        }
+
+        ExecutorService executor = engine.getFileValidationExecutor();
+        if (executor == null) {
+            for (List<Slot> slots : slotsByPath.values()) {
+                visitFile(slots);
+            }
+        } else {
+            List<Future<?>> tasks = new ArrayList<>(slotsByPath.size());
+            try {
+                for (List<Slot> slots : slotsByPath.values()) {
+                    tasks.add(executor.submit(() -> visitFile(slots)));
+                }
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("průchod soubory přerušen");
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } finally {
+                for (Future<?> task : tasks) {
+                    task.cancel(false);
+                }
+            }
+        }
+        filesVisited = slotsByPath.size();
+
+        for (VisitState state : visits) {
+            ValidationResult failure = state.failure;
+            if (failure != null) {
+                results.put(state.rule, failure);
+            } else {
+                ValidationResult result = new ValidationResult();
+                for (ValidationResult partialResult : state.partialResults) {
+                    result.getProblems().addAll(partialResult.getProblems());
+                }
+                results.put(state.rule, result);
+            }
+        }
+    }
+
+    private void visitFile(List<Slot> slots) {
+        XmlDocumentCache docCache = engine.getXmlDocumentCache();
+        File file = null;
+        docCache.startPinning();
+        try {
+            for (Slot slot : slots) {
+                VisitState state = slot.state;
+                file = state.visit.getFiles().get(slot.index);
+                if (state.failure == null) {
+                    long start = System.nanoTime();
+                    try {
+                        state.visit.visit(file, state.partialResults[slot.index]);
+                    } catch (Throwable e) {
+                        //stejne jako pri samostatnem vyhodnoceni: neocekavana chyba je jedinym vysledkem pravidla
+                        state.failure = state.visit.unexpectedError(e);
+                    } finally {
+                        state.timing.visitNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            }
+        } finally {
+            docCache.releasePinned();
+            if (file != null) {
+                docCache.discard(file);
+            }
+        }
+    }
+
+    private static class VisitState {
+        private final Rule rule;
+        private final FileVisit visit;
+        private final ValidationResult[] partialResults;
+        private final Timing timing;
+        private volatile ValidationResult failure;
+
+        VisitState(Rule rule, FileVisit visit, Timing timing) {
+            this.rule = rule;
+            this.visit = visit;
+            this.timing = timing;
+            this.partialResults = new ValidationResult[visit.getFiles().size()];
+            for (int i = 0; i < partialResults.length; i++) {
+                partialResults[i] = new ValidationResult();
+            }
+        }
+    }
+
+    private static class Slot {
+        private final VisitState state;
+        private final int index;
+
+        Slot(VisitState state, int index) {
+            this.state = state;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Práce průchodu pro jedno pravidlo: vyhodnocení parametrů funkce (prepareFileVisit()) a součet dob kontroly jeho
+     * souborů (při souběžném průchodu tedy může být delší než doba průchodu).
+     */
+    public static class Timing {
+        private volatile long parametersNanos;
+        private final AtomicLong visitNanos = new AtomicLong();
+
+        public long getParametersMs() {
+            return TimeUnit.NANOSECONDS.toMillis(parametersNanos);
+        }
+
+        public long getVisitMs() {
+            return TimeUnit.NANOSECONDS.toMillis(visitNanos.get());
+        }
+
+        public long getDurationMs() {
+            return TimeUnit.NANOSECONDS.toMillis(parametersNanos + visitNanos.get());
+        }
+    }
+}
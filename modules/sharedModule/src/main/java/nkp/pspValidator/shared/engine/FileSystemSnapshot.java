@@ -0,0 +1,570 @@
+package nkp.pspValidator.shared.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Snímek adresáře balíku: jména, typy, velikosti, časy změn a kanonické cesty všech souborů, načtené jedním průchodem
+ * (Files.walkFileTree). Funkce se přes něj ptají na existenci, typ, velikost a obsah adresářů, takže se při opakovaných
+ * dotazech na tentýž strom nevolá stat souborového systému, což je drahé hlavně na síťových úložištích (NFS/SMB).
+ * <p>
+ * Dotazy na soubory mimo snímek (např. XSD z konfigurace), pod symbolickými odkazy nebo v nečitelných adresářích se
+ * předávají souborovému systému. Snímek bez kořenového adresáře (viz passThrough()) předává všechno.
+ * <p>
+ * Snímek se nemění sám, po změně souborů je potřeba zavolat refresh().
+ * <p>
+ * Snímek ZIP souboru (viz ofZip()) se načte z centrálního adresáře ZIP souboru, balík se nerozbaluje. Soubory balíku
+ * pak existují jen ve snímku, pod adresářem, kam by se ZIP rozbalil. Obsah se čte přes openStream(), na disk se
+ * rozbalují jen soubory pro externí nástroje (materialize()/release()).
+ */
+public class FileSystemSnapshot implements Closeable {
+
+    private final Path root;
+    //null, pokud snimek neni snimek ZIP souboru
+    private final ZipFile zip;
+    //pocty soubeznych pouziti souboru rozbalenych pro externi nastroje
+    private final Map<Path, Integer> materialized = new ConcurrentHashMap<>();
+    private volatile Map<Path, Entry> entries;
+    private volatile String rootCanonicalPath;
+
+    private final AtomicLong statsAvoided = new AtomicLong();
+    private final AtomicLong statsPerformed = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param rootDir adresář, jehož obsah snímek pokryje, načte se až při refresh()
+     */
+    public FileSystemSnapshot(File rootDir) {
+        this(rootDir, null);
+    }
+
+    private FileSystemSnapshot(File rootDir, ZipFile zip) {
+        this.root = rootDir == null ? null : normalize(rootDir);
+        this.zip = zip;
+    }
+
+    /**
+     * Snímek obsahu ZIP souboru bez rozbalení. ZIP zůstane otevřený do close().
+     *
+     * @param rootDir adresář, do kterého by se ZIP rozbalil, nemusí existovat
+     * @throws IOException pokud ZIP nejde přečíst nebo některá položka směřuje mimo rootDir
+     */
+    public static FileSystemSnapshot ofZip(File zipFile, File rootDir) throws IOException {
+        FileSystemSnapshot snapshot = new FileSystemSnapshot(rootDir, new ZipFile(zipFile));
+        try {
+            snapshot.refreshes.incrementAndGet();
+            snapshot.refreshFromZip();
+        } catch (IOException e) {
+            snapshot.close();
+            throw e;
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return snímek, který nic neobsahuje a všechny dotazy předává souborovému systému
+     */
+    public static FileSystemSnapshot passThrough() {
+        return new FileSystemSnapshot(null);
+    }
+
+    /**
+     * Načte strom znovu. Pokud kořenový adresář nejde projít, snímek zůstane prázdný a dotazy se předávají souborovému systému.
+     */
+    public synchronized void refresh() {
+        if (root == null) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        if (zip != null) {
+            try {
+                refreshFromZip();
+            } catch (IOException e) {
+                entries = null;
+                rootCanonicalPath = null;
+            }
+            return;
+        }
+        Map<Path, Entry> walked = new HashMap<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    Entry entry = new Entry(dir, attrs);
+                    entry.children = new ArrayList<>();
+                    add(entry);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    add(new Entry(file, attrs));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    //soubor nebo adresar, ktery nejde precist: dotazy na nej i na jeho obsah pujdou na souborovy system
+                    addToParent(file);
+                    walked.put(file, Entry.UNKNOWN);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void add(Entry entry) {
+                    addToParent(entry.path);
+                    walked.put(entry.path, entry);
+                }
+
+                private void addToParent(Path path) {
+                    Entry parent = walked.get(path.getParent());
+                    if (parent != null && parent.children != null) {
+                        parent.children.add(path.getFileName().toString());
+                    }
+                }
+            });
+            rootCanonicalPath = root.toFile().getCanonicalPath();
+            entries = walked;
+        } catch (IOException e) {
+            entries = null;
+            rootCanonicalPath = null;
+        }
+    }
+
+    private void refreshFromZip() throws IOException {
+        Map<Path, Entry> read = new HashMap<>();
+        Entry rootEntry = new Entry(root, true, 0, 0, null);
+        read.put(root, rootEntry);
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        while (zipEntries.hasMoreElements()) {
+            ZipEntry zipEntry = zipEntries.nextElement();
+            Path path = root.resolve(zipEntry.getName()).normalize();
+            if (path.equals(root)) {
+                //polozka "./" apod., adresar uz ve snimku je
+                continue;
+            }
+            if (!path.startsWith(root)) {
+                throw new IOException(String.format("položka %s směřuje mimo adresář %s", zipEntry.getName(), root));
+            }
+            if (read.containsKey(path)) {
+                //adresar zalozeny uz pri pridani souboru v nem nebo opakovana polozka
+                continue;
+            }
+            long lastModified = Math.max(0, zipEntry.getTime());
+            Entry entry = zipEntry.isDirectory()
+                    ? new Entry(path, true, 0, lastModified, null)
+                    : new Entry(path, false, Math.max(0, zipEntry.getSize()), lastModified, zipEntry.getName());
+            read.put(path, entry);
+            //rodicovske adresare nemusi mit v ZIP souboru vlastni polozku
+            Path child = path;
+            Path parent = path.getParent();
+            while (true) {
+                Entry parentEntry = read.get(parent);
+                boolean created = parentEntry == null;
+                if (created) {
+                    parentEntry = new Entry(parent, true, 0, lastModified, null);
+                    read.put(parent, parentEntry);
+                }
+                if (parentEntry.children != null) {
+                    parentEntry.children.add(child.getFileName().toString());
+                }
+                if (!created) {
+                    break;
+                }
+                child = parent;
+                parent = parent.getParent();
+            }
+        }
+        rootCanonicalPath = root.toFile().getCanonicalPath();
+        entries = read;
+    }
+
+    /**
+     * @return jestli soubor existuje jen v ZIP souboru snímku (jeho obsah je tedy potřeba číst přes openStream())
+     */
+    public boolean isInArchive(File file) {
+        if (zip == null) {
+            return false;
+        }
+        Entry entry = lookup(file);
+        return entry != null && entry.zipEntryName != null;
+    }
+
+    /**
+     * Otevře obsah souboru, u snímku ZIP souboru přímo z položky ZIP souboru, jinak ze souborového systému.
+     */
+    public InputStream openStream(File file) throws IOException {
+        if (zip != null) {
+            Entry entry = lookup(file);
+            if (entry != null && entry.zipEntryName != null) {
+                ZipEntry zipEntry = zip.getEntry(entry.zipEntryName);
+                if (zipEntry == null) {
+                    throw new IOException(String.format("položka %s v ZIP souboru nenalezena", entry.zipEntryName));
+                }
+                return zip.getInputStream(zipEntry);
+            }
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Zajistí, že soubor ze ZIP souboru existuje na disku pod svou cestou ve snímku, např. pro externí nástroj.
+     * Každé volání musí následovat release(). Soubory mimo ZIP soubor se nemění.
+     */
+    public void materialize(File file) throws IOException {
+        if (!isInArchive(file)) {
+            return;
+        }
+        Path path = normalize(file);
+        try {
+            materialized.compute(path, (p, count) -> {
+                if (count == null) {
+                    try (InputStream in = openStream(file)) {
+                        Files.createDirectories(p.getParent());
+                        Files.copy(in, p, StandardCopyOption.REPLACE_EXISTING);
+                        //cas zmeny jako ve snimku, at sedi klice cache vystupu nastroju
+                        p.toFile().setLastModified(lastModified(file));
+                    } catch (IOException e) {
+                        throw new UncheckedMaterializationException(e);
+                    }
+                    return 1;
+                }
+                return count + 1;
+            });
+        } catch (UncheckedMaterializationException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Uvolní soubor rozbalený přes materialize(), po posledním uvolnění se z disku smaže.
+     */
+    public void release(File file) {
+        if (zip == null) {
+            return;
+        }
+        materialized.computeIfPresent(normalize(file), (p, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            p.toFile().delete();
+            return null;
+        });
+    }
+
+    /**
+     * Zavře ZIP soubor snímku a smaže soubory rozbalené pro externí nástroje, které nebyly uvolněny, i prázdné adresáře,
+     * které pro ně vznikly.
+     */
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            for (Path path : materialized.keySet()) {
+                path.toFile().delete();
+            }
+            materialized.clear();
+            zip.close();
+            if (Files.isDirectory(root)) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                        //smaze jen prazdne adresare
+                        dir.toFile().delete();
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        }
+    }
+
+    public boolean exists(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.exists();
+        }
+        statsAvoided.incrementAndGet();
+        return entry != Entry.MISSING;
+    }
+
+    public boolean isDirectory(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.isDirectory();
+        }
+        statsAvoided.incrementAndGet();
+        return entry.directory;
+    }
+
+    public boolean isFile(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.isFile();
+        }
+        statsAvoided.incrementAndGet();
+        return entry.regularFile;
+    }
+
+    /**
+     * @return velikost souboru v bajtech, 0 pro neexistující soubor (jako File.length())
+     */
+    public long length(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.length();
+        }
+        statsAvoided.incrementAndGet();
+        return entry.size;
+    }
+
+    /**
+     * @return čas poslední změny v ms, 0 pro neexistující soubor (jako File.lastModified())
+     */
+    public long lastModified(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.lastModified();
+        }
+        statsAvoided.incrementAndGet();
+        return entry.lastModified;
+    }
+
+    /**
+     * Právo ke čtení snímek nezjišťuje předem, zjistí se při prvním dotazu na soubor a pak se pamatuje.
+     */
+    public boolean canRead(File file) {
+        Entry entry = lookup(file);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return file.canRead();
+        } else if (entry == Entry.MISSING) {
+            statsAvoided.incrementAndGet();
+            return false;
+        }
+        Boolean readable = entry.readable;
+        if (readable == null) {
+            statsPerformed.incrementAndGet();
+            readable = file.canRead();
+            entry.readable = readable;
+        } else {
+            statsAvoided.incrementAndGet();
+        }
+        return readable;
+    }
+
+    /**
+     * @return obsah adresáře ve stejném tvaru jako File.listFiles(), tedy null, pokud to není čitelný adresář
+     */
+    public File[] listFiles(File dir) {
+        Entry entry = lookup(dir);
+        if (entry == null) {
+            statsPerformed.incrementAndGet();
+            return dir.listFiles();
+        }
+        statsAvoided.incrementAndGet();
+        if (entry.children == null) {
+            return null;
+        }
+        File[] files = new File[entry.children.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, entry.children.get(i));
+        }
+        return files;
+    }
+
+    public String getCanonicalPath(File file) throws IOException {
+        Entry entry = lookup(file);
+        if (entry == null || entry == Entry.MISSING) {
+            statsPerformed.incrementAndGet();
+            return file.getCanonicalPath();
+        }
+        statsAvoided.incrementAndGet();
+        //uvnitr snimku nejsou symbolicke odkazy (ty se neprochazi), kanonicka cesta je tedy kanonicky koren + relativni cesta
+        Path relative = root.relativize(entry.path);
+        return relative.toString().isEmpty() ? rootCanonicalPath : new File(rootCanonicalPath, relative.toString()).getPath();
+    }
+
+    /**
+     * @return záznam souboru, Entry.MISSING, pokud snímek ví, že soubor neexistuje, nebo null, pokud to snímek neví
+     */
+    private Entry lookup(File file) {
+        Map<Path, Entry> entries = this.entries;
+        if (entries == null) {
+            return null;
+        }
+        Path path;
+        try {
+            path = file.toPath().toAbsolutePath();
+        } catch (RuntimeException e) {
+            //cestu nejde prevest (napr. neplatne znaky), at rozhodne souborovy system
+            return null;
+        }
+        for (Path part : path) {
+            if ("..".equals(part.toString())) {
+                //'..' za symbolickym odkazem vede jinam nez lexikalne, at rozhodne souborovy system
+                return null;
+            }
+        }
+        return lookup(entries, path.normalize());
+    }
+
+    private Entry lookup(Map<Path, Entry> entries, Path path) {
+        if (!path.startsWith(root)) {
+            return null;
+        }
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            return entry == Entry.UNKNOWN || entry.symbolicLink ? null : entry;
+        }
+        Path parentPath = path.getParent();
+        if (parentPath == null || path.equals(root)) {
+            return null;
+        }
+        Entry parent = lookup(entries, parentPath);
+        if (parent == Entry.MISSING || (parent != null && !parent.directory)) {
+            //neexistujici rodic nebo rodic, ktery neni adresar
+            return Entry.MISSING;
+        } else if (parent != null && parent.children != null) {
+            //rodic je prosly adresar a soubor v nem neni
+            return Entry.MISSING;
+        } else {
+            return null;
+        }
+    }
+
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    public Statistics getStatistics() {
+        Map<Path, Entry> entries = this.entries;
+        return new Statistics(entries == null ? 0 : entries.size(), statsAvoided.get(), statsPerformed.get(), refreshes.get());
+    }
+
+    private static class UncheckedMaterializationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UncheckedMaterializationException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    public static class Statistics {
+        private final int entries;
+        private final long statsAvoided;
+        private final long statsPerformed;
+        private final long refreshes;
+
+        Statistics(int entries, long statsAvoided, long statsPerformed, long refreshes) {
+            this.entries = entries;
+            this.statsAvoided = statsAvoided;
+            this.statsPerformed = statsPerformed;
+            this.refreshes = refreshes;
+        }
+
+        /**
+         * Počet souborů a adresářů ve snímku.
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Počet dotazů zodpovězených ze snímku, tedy ušetřených volání souborového systému.
+         */
+        public long getStatsAvoided() {
+            return statsAvoided;
+        }
+
+        /**
+         * Počet dotazů předaných souborovému systému.
+         */
+        public long getStatsPerformed() {
+            return statsPerformed;
+        }
+
+        public long getRefreshes() {
+            return refreshes;
+        }
+    }
+
+    private static class Entry {
+        //soubor, o kterem snimek vi, ze neexistuje
+        static final Entry MISSING = new Entry();
+        //soubor, ktery pri pruchodu nesel precist
+        static final Entry UNKNOWN = new Entry();
+
+        private final Path path;
+        private final boolean directory;
+        private final boolean regularFile;
+        private final boolean symbolicLink;
+        private final long size;
+        private final long lastModified;
+        //jmena souboru v adresari v poradi, v jakem je vraci souborovy system, null, pokud to neni adresar
+        private List<String> children;
+        private volatile Boolean readable;
+        //jmeno polozky v ZIP souboru, null pro adresare a soubory mimo ZIP
+        private final String zipEntryName;
+
+        private Entry() {
+            this.path = null;
+            this.directory = false;
+            this.regularFile = false;
+            this.symbolicLink = false;
+            this.size = 0;
+            this.lastModified = 0;
+            this.zipEntryName = null;
+        }
+
+        Entry(Path path, boolean directory, long size, long lastModified, String zipEntryName) {
+            this.path = path;
+            this.directory = directory;
+            this.regularFile = !directory;
+            this.symbolicLink = false;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.zipEntryName = zipEntryName;
+            this.readable = Boolean.TRUE;
+            if (directory) {
+                this.children = new ArrayList<>();
+            }
+        }
+
+        Entry(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.directory = attrs.isDirectory();
+            this.regularFile = attrs.isRegularFile();
+            this.symbolicLink = attrs.isSymbolicLink();
+            //File.length() vraci pro adresar hodnotu zavislou na systemu, snimek ji bere z atributu stejne
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.zipEntryName = null;
+        }
+    }
+}
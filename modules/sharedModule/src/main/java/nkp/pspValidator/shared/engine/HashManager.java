@@ -0,0 +1,361 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kontrolní součty (MD5) souborů balíku s pamětí.
+ * <p>
+ * Stejné soubory kontroluje několik pravidel (soubor CHECKSUM, fileSec primárního i sekundárních METS), každý soubor se ale
+ * přečte jen jednou. Klíčem je kanonická cesta, velikost a čas poslední změny souboru, změněný soubor se tedy spočítá znovu.
+ * Pokud o stejný soubor požádá více vláken současně, počítá ho jen jedno z nich.
+ */
+public class HashManager {
+
+    private final Map<String, Entry> hashes = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bulkBytes = new AtomicLong();
+    private final AtomicLong bulkNanos = new AtomicLong();
+
+    private StorageType storageType = StorageType.HDD;
+    private Integer threads;
+    private ExecutorService executor;
+    private volatile PersistentHashCache persistentCache;
+    private volatile FileSystemSnapshot fileSystem = FileSystemSnapshot.passThrough();
+
+    public String computeHash(File file) throws HashComputationException {
+        return computeHash(file, false);
+    }
+
+    /**
+     * @param prefetch výpočet dopředu (computeHashes()), první následné vyžádání součtu pravidlem se pak nepočítá jako ušetřené čtení
+     */
+    private String computeHash(File file, boolean prefetch) throws HashComputationException {
+        FileSystemSnapshot fileSystem = this.fileSystem;
+        String key;
+        long size;
+        try {
+            String canonicalPath = fileSystem.getCanonicalPath(file);
+            File canonicalFile = new File(canonicalPath);
+            size = fileSystem.length(canonicalFile);
+            key = canonicalPath + '|' + size + '|' + fileSystem.lastModified(canonicalFile);
+        } catch (IOException e) {
+            throw new HashComputationException(e.getMessage());
+        }
+        Entry entry = hashes.get(key);
+        if (entry == null) {
+            Entry created = new Entry(new FutureTask<>(() -> computeHashUsingPersistentCache(fileSystem, file, size)), prefetch);
+            entry = hashes.putIfAbsent(key, created);
+            if (entry == null) {
+                misses.incrementAndGet();
+                created.task.run();
+                try {
+                    return getHash(created.task);
+                } catch (HashComputationException e) {
+                    //chyba (napr. docasne nedostupny soubor) se nepamatuje
+                    hashes.remove(key, created);
+                    throw e;
+                }
+            }
+        }
+        if (!prefetch && !entry.prefetchedUnclaimed.compareAndSet(true, false)) {
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(size);
+        }
+        return getHash(entry.task);
+    }
+
+    private String computeHashUsingPersistentCache(FileSystemSnapshot fileSystem, File file, long size) throws HashComputationException {
+        if (fileSystem.isInArchive(file)) {
+            //soubor ze ZIP souboru, ktery se nerozbaluje: cte se primo z polozky, perzistentni cache je jen pro soubory na disku
+            try (InputStream in = fileSystem.openStream(file)) {
+                String hash = Utils.computeHash(in);
+                bytesHashed.addAndGet(size);
+                return hash;
+            } catch (IOException e) {
+                throw new HashComputationException(e.getMessage());
+            }
+        }
+        PersistentHashCache cache = persistentCache;
+        if (cache != null) {
+            try {
+                String stored = cache.get(file);
+                if (stored != null) {
+                    bytesSaved.addAndGet(size);
+                    return stored;
+                }
+            } catch (IOException e) {
+                //soubor nejde precist ani tady, chybu ohlasi samotny vypocet
+            }
+        }
+        String hash = Utils.computeHash(file);
+        bytesHashed.addAndGet(size);
+        if (cache != null) {
+            try {
+                cache.put(file, hash);
+            } catch (IOException e) {
+                //soubor se mezitim stal nedostupnym, do cache se jen neulozi
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Zapamatuje součty spočítané mimo HashManager, typicky při rozbalování ZIP souboru (Utils.unzipAndComputeHashes()).
+     * Soubory se pak kvůli kontrolním součtům nečtou znovu.
+     *
+     * @param rootDir zapamatují se jen součty souborů v tomto adresáři (ZIP skupiny balíků obsahuje i soubory ostatních balíků)
+     */
+    public void registerHashes(File rootDir, Map<File, String> knownHashes) {
+        FileSystemSnapshot fileSystem = this.fileSystem;
+        String rootPrefix;
+        try {
+            rootPrefix = fileSystem.getCanonicalPath(rootDir) + File.separator;
+        } catch (IOException e) {
+            return;
+        }
+        for (Map.Entry<File, String> known : knownHashes.entrySet()) {
+            String canonicalPath;
+            try {
+                canonicalPath = fileSystem.getCanonicalPath(known.getKey());
+            } catch (IOException e) {
+                //soubor se spocita az na zadost pravidla
+                continue;
+            }
+            if (!canonicalPath.startsWith(rootPrefix)) {
+                continue;
+            }
+            File canonicalFile = new File(canonicalPath);
+            long size = fileSystem.length(canonicalFile);
+            String key = canonicalPath + '|' + size + '|' + fileSystem.lastModified(canonicalFile);
+            String hash = known.getValue();
+            FutureTask<String> task = new FutureTask<>(() -> hash);
+            task.run();
+            if (hashes.putIfAbsent(key, new Entry(task, true)) == null) {
+                bytesHashed.addAndGet(size);
+            }
+        }
+    }
+
+    /**
+     * @param fileSystem snímek souborů balíku, ze kterého se berou velikosti a časy změn souborů, u snímku ZIP souboru
+     *                   i obsah souborů
+     */
+    public void setFileSystem(FileSystemSnapshot fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * @param persistentCache součty uložené mezi běhy validátoru, null znamená bez perzistentní cache
+     */
+    public void setPersistentCache(PersistentHashCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+
+    public PersistentHashCache getPersistentCache() {
+        return persistentCache;
+    }
+
+    /**
+     * @param threads počet vláken pro hromadný výpočet, null znamená výchozí hodnotu podle typu úložiště
+     */
+    public synchronized void setStorage(StorageType storageType, Integer threads) {
+        if (threads != null && threads < 1) {
+            throw new IllegalArgumentException(String.format("počet vláken musí být alespoň 1, ne %d", threads));
+        }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.storageType = storageType;
+        this.threads = threads;
+    }
+
+    public synchronized int getThreads() {
+        return threads != null ? threads : storageType.getDefaultHashThreads();
+    }
+
+    /**
+     * Spočítá kontrolní součty všech souborů najednou, souběžně na počtu vláken odpovídajícím úložišti.
+     * Výsledky se zapamatují, pravidla si je pak vyzvedávají přes computeHash(). Chyby se tady ignorují, nahlásí je až
+     * pravidlo, které o součet požádá.
+     *
+     * @return souhrn hromadného výpočtu (počet bajtů, doba, propustnost)
+     */
+    public BulkHashReport computeHashes(Collection<File> files) {
+        ExecutorService executor = getExecutor();
+        long bytesBefore = bytesHashed.get();
+        long start = System.nanoTime();
+        List<Future<?>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+            tasks.add(executor.submit(() -> {
+                try {
+                    computeHash(file, true);
+                } catch (HashComputationException e) {
+                    //ohlasi pravidlo
+                }
+            }));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Future<?> task : tasks) {
+                task.cancel(false);
+            }
+        } catch (ExecutionException e) {
+            //computeHash chyby zachytava, sem se dostanou jen neocekavane vyjimky, soubory se pak spocitaji na zadost pravidla
+        }
+        long nanos = System.nanoTime() - start;
+        //pri soubeznem hromadnem vypoctu ve vice pravidlech nemusi byt bajty prirazene presne, pro odhad propustnosti to nevadi
+        long bytes = bytesHashed.get() - bytesBefore;
+        bulkBytes.addAndGet(bytes);
+        bulkNanos.addAndGet(nanos);
+        return new BulkHashReport(files.size(), bytes, nanos);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolSize = getThreads();
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "hash-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    private String getHash(FutureTask<String> task) throws HashComputationException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HashComputationException) {
+                throw (HashComputationException) cause;
+            } else {
+                throw new HashComputationException(cause.getMessage());
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return počet součtů vrácených z paměti
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return počet skutečně počítaných součtů
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return počet přečtených bajtů
+     */
+    public long getBytesHashed() {
+        return bytesHashed.get();
+    }
+
+    /**
+     * @return počet bajtů, které se díky paměti (i perzistentní cache) nemusely číst znovu
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return propustnost hromadných výpočtů v MB/s, nebo null, pokud žádný neproběhl
+     */
+    public Double getBulkThroughputMBps() {
+        return BulkHashReport.toMBps(bulkBytes.get(), bulkNanos.get());
+    }
+
+    private static class Entry {
+        private final FutureTask<String> task;
+        private final AtomicBoolean prefetchedUnclaimed;
+
+        Entry(FutureTask<String> task, boolean prefetched) {
+            this.task = task;
+            this.prefetchedUnclaimed = new AtomicBoolean(prefetched);
+        }
+    }
+
+    public static class BulkHashReport {
+        private final int files;
+        private final long bytes;
+        private final long nanos;
+
+        BulkHashReport(int files, long bytes, long nanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return počet bajtů skutečně přečtených (soubory spočítané už dříve se nezapočítávají)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getDurationMs() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        public Double getThroughputMBps() {
+            return toMBps(bytes, nanos);
+        }
+
+        static Double toMBps(long bytes, long nanos) {
+            if (nanos <= 0) {
+                return null;
+            }
+            return (bytes / (1024.0 * 1024.0)) / (nanos / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            Double throughput = getThroughputMBps();
+            return String.format("%d souborů, %.1f MB za %d ms (%.1f MB/s)", files, bytes / (1024.0 * 1024.0), getDurationMs(), throughput == null ? 0.0 : throughput);
+        }
+    }
+}
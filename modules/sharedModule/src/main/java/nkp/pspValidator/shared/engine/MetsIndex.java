@@ -0,0 +1,366 @@
+package nkp.pspValidator.shared.engine;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.*;
+
+/**
+ * Index METS dokumentu sestavený jedním průchodem DOM: dmdSec podle ID, potomci amdSec, skupiny souborů a soubory
+ * z fileSec (ID, SIZE, CHECKSUM, xlink:href prvního FLocat), stromy fyzických a logických strukturálních map a smLink.
+ * <p>
+ * Pravidla nad primárním METS se tak nemusí dotazovat XPath výrazy typu //mets:..., z nichž každý prochází celý dokument.
+ * Výsledky odpovídají XPath dotazům, které pravidla používala dřív (viz javadoc jednotlivých metod).
+ * <p>
+ * Index je uložený přímo v DOM dokumentu (user data), z cache xml dokumentů se tedy odstraní spolu s ním.
+ * Po sestavení se nemění.
+ */
+public class MetsIndex {
+
+    public static final String NS_METS = "http://www.loc.gov/METS/";
+    public static final String NS_XLINK = "http://www.w3.org/1999/xlink";
+    private static final String USER_DATA_KEY = MetsIndex.class.getName();
+
+    private final Map<String, Element> dmdSecsById = new HashMap<>();
+    private final List<String> dmdSecIds = new ArrayList<>();
+    private final Map<String, List<Element>> amdSecSectionsById = new LinkedHashMap<>();
+    private final List<FileGrp> fileGrps = new ArrayList<>();
+    private final List<FileEntry> files = new ArrayList<>();
+    private final List<StructMap> structMaps = new ArrayList<>();
+    private final List<SmLink> smLinks = new ArrayList<>();
+
+    /**
+     * Vrátí index uložený v dokumentu, případně ho sestaví. Dokument musí být načtený s podporou jmenných prostorů.
+     * Stejně jako dokument (viz XmlDocumentCache) se smí používat jen ve vlákně, které má dokument vypůjčený.
+     */
+    public static MetsIndex of(Document doc) {
+        MetsIndex index = (MetsIndex) doc.getUserData(USER_DATA_KEY);
+        if (index == null) {
+            index = new MetsIndex(doc);
+            doc.setUserData(USER_DATA_KEY, index, null);
+        }
+        return index;
+    }
+
+    MetsIndex(Document doc) {
+        Element root = doc.getDocumentElement();
+        if (root != null) {
+            visit(root, isMets(root, "mets"));
+        }
+    }
+
+    private void visit(Element el, boolean isRoot) {
+        for (Element child : childElements(el)) {
+            if (isRoot) {
+                indexRootChild(child);
+            }
+            if (isMets(child, "fileSec")) {
+                indexFileSec(child, isRoot);
+            }
+            visit(child, false);
+        }
+    }
+
+    private void indexRootChild(Element el) {
+        if (isMets(el, "dmdSec")) {
+            if (el.hasAttribute("ID")) {
+                String id = el.getAttribute("ID");
+                dmdSecIds.add(id);
+                dmdSecsById.putIfAbsent(id, el);
+            }
+        } else if (isMets(el, "amdSec")) {
+            List<Element> sections = amdSecSectionsById.computeIfAbsent(el.getAttribute("ID"), id -> new ArrayList<>());
+            sections.addAll(childElements(el));
+        } else if (isMets(el, "structMap")) {
+            structMaps.add(new StructMap(el, buildDivs(el)));
+        } else if (isMets(el, "structLink")) {
+            for (Element smLinkEl : childElements(el)) {
+                if (isMets(smLinkEl, "smLink")) {
+                    smLinks.add(new SmLink(smLinkEl.getAttribute("xlink:from"), smLinkEl.getAttribute("xlink:to")));
+                }
+            }
+        }
+    }
+
+    private void indexFileSec(Element fileSecEl, boolean inRoot) {
+        //soubory z fileSec kdekoli v dokumentu (//mets:fileSec), skupiny jen z /mets:mets/mets:fileSec
+        for (Element fileGrpEl : childElements(fileSecEl)) {
+            if (isMets(fileGrpEl, "fileGrp")) {
+                List<FileEntry> grpFiles = new ArrayList<>();
+                for (Element fileEl : childElements(fileGrpEl)) {
+                    if (isMets(fileEl, "file")) {
+                        grpFiles.add(new FileEntry(fileEl, firstFlocatHref(fileEl)));
+                    }
+                }
+                files.addAll(grpFiles);
+                if (inRoot) {
+                    fileGrps.add(new FileGrp(fileGrpEl, grpFiles));
+                }
+            }
+        }
+    }
+
+    private static String firstFlocatHref(Element fileEl) {
+        for (Element child : childElements(fileEl)) {
+            if (isMets(child, "FLocat")) {
+                return child.getAttributeNS(NS_XLINK, "href");
+            }
+        }
+        return "";
+    }
+
+    private static List<Div> buildDivs(Element parentEl) {
+        List<Div> divs = new ArrayList<>();
+        for (Element child : childElements(parentEl)) {
+            if (isMets(child, "div")) {
+                List<String> fptrFileIds = new ArrayList<>();
+                for (Element fptrEl : childElements(child)) {
+                    if (isMets(fptrEl, "fptr") && fptrEl.hasAttribute("FILEID")) {
+                        fptrFileIds.add(fptrEl.getAttribute("FILEID"));
+                    }
+                }
+                divs.add(new Div(child, fptrFileIds, buildDivs(child)));
+            }
+        }
+        return divs;
+    }
+
+    private static boolean isMets(Element el, String localName) {
+        return localName.equals(el.getLocalName()) && NS_METS.equals(el.getNamespaceURI());
+    }
+
+    private static List<Element> childElements(Element el) {
+        List<Element> result = new ArrayList<>();
+        for (Node child = el.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                result.add((Element) child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return element /mets:mets/mets:dmdSec[@ID='id'], nebo null
+     */
+    public Element getDmdSec(String id) {
+        return dmdSecsById.get(id);
+    }
+
+    /**
+     * @return hodnoty /mets:mets/mets:dmdSec/@ID v pořadí dokumentu
+     */
+    public List<String> getDmdSecIds() {
+        return Collections.unmodifiableList(dmdSecIds);
+    }
+
+    /**
+     * @return elementy /mets:mets/mets:amdSec[@ID='id']/* (techMD, sourceMD, digiprovMD, ...), případně prázdný seznam
+     */
+    public List<Element> getAmdSecSections(String amdSecId) {
+        List<Element> sections = amdSecSectionsById.get(amdSecId);
+        return sections == null ? Collections.emptyList() : Collections.unmodifiableList(sections);
+    }
+
+    public Set<String> getAmdSecIds() {
+        return Collections.unmodifiableSet(amdSecSectionsById.keySet());
+    }
+
+    /**
+     * @return skupiny /mets:mets/mets:fileSec/mets:fileGrp
+     */
+    public List<FileGrp> getFileGrps() {
+        return Collections.unmodifiableList(fileGrps);
+    }
+
+    /**
+     * @return soubory //mets:fileSec/mets:fileGrp/mets:file
+     */
+    public List<FileEntry> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * @return /mets:mets/mets:structMap[@TYPE='type']
+     */
+    public List<StructMap> getStructMaps(String type) {
+        List<StructMap> result = new ArrayList<>();
+        for (StructMap structMap : structMaps) {
+            if (type.equals(structMap.getType())) {
+                result.add(structMap);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return smLink elementy z /mets:mets/mets:structLink
+     */
+    public List<SmLink> getSmLinks() {
+        return Collections.unmodifiableList(smLinks);
+    }
+
+    public static class FileGrp {
+        private final Element element;
+        private final List<FileEntry> files;
+
+        FileGrp(Element element, List<FileEntry> files) {
+            this.element = element;
+            this.files = Collections.unmodifiableList(files);
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        public String getId() {
+            return element.getAttribute("ID");
+        }
+
+        public String getUse() {
+            return element.getAttribute("USE");
+        }
+
+        public List<FileEntry> getFiles() {
+            return files;
+        }
+    }
+
+    public static class FileEntry {
+        private final Element element;
+        private final String id;
+        private final String size;
+        private final String checksum;
+        private final String href;
+
+        FileEntry(Element element, String href) {
+            this.element = element;
+            this.id = element.getAttribute("ID");
+            this.size = element.getAttribute("SIZE");
+            this.checksum = element.getAttribute("CHECKSUM");
+            this.href = href;
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return hodnota atributu SIZE, prázdná, pokud chybí
+         */
+        public String getSize() {
+            return size;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * @return mets:FLocat/@xlink:href, prázdný, pokud chybí
+         */
+        public String getHref() {
+            return href;
+        }
+    }
+
+    public static class StructMap {
+        private final Element element;
+        private final List<Div> divs;
+
+        StructMap(Element element, List<Div> divs) {
+            this.element = element;
+            this.divs = Collections.unmodifiableList(divs);
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        public String getType() {
+            return element.getAttribute("TYPE");
+        }
+
+        /**
+         * @return přímí potomci mets:div
+         */
+        public List<Div> getDivs() {
+            return divs;
+        }
+    }
+
+    public static class Div {
+        private final Element element;
+        private final String id;
+        private final String type;
+        private final List<String> fptrFileIds;
+        private final List<Div> divs;
+
+        Div(Element element, List<String> fptrFileIds, List<Div> divs) {
+            this.element = element;
+            this.id = element.getAttribute("ID");
+            this.type = element.getAttribute("TYPE");
+            this.fptrFileIds = Collections.unmodifiableList(fptrFileIds);
+            this.divs = Collections.unmodifiableList(divs);
+        }
+
+        public Element getElement() {
+            return element;
+        }
+
+        public boolean hasId() {
+            return element.hasAttribute("ID");
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean hasType() {
+            return element.hasAttribute("TYPE");
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return mets:fptr/@FILEID
+         */
+        public List<String> getFptrFileIds() {
+            return fptrFileIds;
+        }
+
+        /**
+         * @return přímí potomci mets:div
+         */
+        public List<Div> getDivs() {
+            return divs;
+        }
+    }
+
+    public static class SmLink {
+        private final String from;
+        private final String to;
+
+        SmLink(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return atribut xlink:from, prázdný, pokud chybí
+         */
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+    }
+}
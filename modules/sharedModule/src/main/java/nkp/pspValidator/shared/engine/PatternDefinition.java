@@ -13,6 +13,8 @@ import java.util.regex.Matcher;
  */
 public class PatternDefinition {
 
+    private static final java.util.regex.Pattern PLACEHOLDER = java.util.regex.Pattern.compile("\\$\\{(.[A-Z0-9_\\-]*?)\\}");
+
     private final Engine engine;
     private final List<PatternExpression> rawExpressions = new ArrayList<>();
 
@@ -42,6 +44,17 @@ public class PatternDefinition {
         }
     }
 
+    /**
+     * @return jména proměnných (hodnot), které jsou ve výrazech použity jako ${PROMENNA}
+     */
+    public Set<String> getReferencedValueVariables() {
+        Set<String> result = new HashSet<>();
+        for (PatternExpression rawExpression : rawExpressions) {
+            result.addAll(extractVariableNames(rawExpression.getRegexp()));
+        }
+        return result;
+    }
+
     private PatternExpression fillPlaceholders(PatternExpression rawExpression) throws VariableNotDefinedException {
         Set<String> variables = extractVariableNames(rawExpression.getRegexp());
         String finalRegexp = rawExpression.getRegexp();
@@ -67,8 +80,7 @@ public class PatternDefinition {
 
     private Set<String> extractVariableNames(String expressionWithPlaceholders) {
         Set<String> result = new HashSet<>();
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("\\$\\{(.[A-Z0-9_\\-]*?)\\}");
-        Matcher matcher = pattern.matcher(expressionWithPlaceholders);
+        Matcher matcher = PLACEHOLDER.matcher(expressionWithPlaceholders);
         while (matcher.find()) {
             String placeholder = matcher.group();
             String varName = placeholder.substring(2, placeholder.length() - 1);
@@ -0,0 +1,184 @@
+package nkp.pspValidator.shared.engine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Kontrolní součty uložené na disku mezi jednotlivými běhy validátoru.
+ * <p>
+ * Stejný balík se často validuje opakovaně (u producenta, po opravách, po přenosu do archivu). Součet souboru se z cache
+ * použije jen tehdy, pokud souhlasí absolutní cesta, velikost, čas poslední změny i identifikátor souboru v souborovém systému
+ * (inode, pokud ho systém poskytuje). Počet záznamů je omezen, při překročení se odstraňují nejdéle nepoužité (LRU),
+ * případně nejstarší (FIFO) záznamy.
+ * <p>
+ * Soubor cache se načte při prvním použití a zapisuje se jen voláním save().
+ */
+public class PersistentHashCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4B564843; //KVHC
+
+    public enum EvictionPolicy {
+        LRU, FIFO
+    }
+
+    private final File cacheFile;
+    private final int maxEntries;
+    private final EvictionPolicy evictionPolicy;
+    //true: soubory se prectou vzdy, cache se jen aktualizuje
+    private final boolean verify;
+
+    private LinkedHashMap<String, Entry> entries;
+    private boolean modified = false;
+    private long hits = 0;
+    private long misses = 0;
+
+    public PersistentHashCache(File cacheFile, int maxEntries, EvictionPolicy evictionPolicy, boolean verify) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(String.format("maximální počet záznamů musí být alespoň 1, ne %d", maxEntries));
+        }
+        this.cacheFile = cacheFile;
+        this.maxEntries = maxEntries;
+        this.evictionPolicy = evictionPolicy;
+        this.verify = verify;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * @return uložený součet, nebo null, pokud v cache není, soubor se od té doby změnil, nebo se mají součty ověřovat
+     */
+    public String get(File file) throws IOException {
+        if (verify) {
+            return null;
+        }
+        BasicFileAttributes attributes = readAttributes(file);
+        synchronized (this) {
+            Entry stored = getEntries().get(file.getAbsolutePath());
+            if (stored != null && stored.matches(attributes)) {
+                hits++;
+                return stored.hash;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(File file, String hash) throws IOException {
+        BasicFileAttributes attributes = readAttributes(file);
+        Entry entry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey(attributes), hash);
+        synchronized (this) {
+            getEntries().put(file.getAbsolutePath(), entry);
+            modified = true;
+        }
+    }
+
+    /**
+     * Zapíše cache na disk (přes dočasný soubor, aby případný pád nezanechal poškozený soubor).
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException(String.format("nelze vytvořit adresář %s", dir.getAbsolutePath()));
+        }
+        File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeUTF(entry.fileKey);
+                out.writeUTF(entry.hash);
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        modified = false;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private LinkedHashMap<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, evictionPolicy == EvictionPolicy.LRU) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+            load();
+        }
+        return entries;
+    }
+
+    private void load() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                //neznamy format, cache se zalozi znovu
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String path = in.readUTF();
+                long fileSize = in.readLong();
+                long lastModified = in.readLong();
+                String fileKey = in.readUTF();
+                String hash = in.readUTF();
+                entries.put(path, new Entry(fileSize, lastModified, fileKey, hash));
+            }
+        } catch (IOException e) {
+            //poskozena cache neni chyba validace, jen se bude pocitat znovu
+            entries.clear();
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final String hash;
+
+        Entry(long size, long lastModified, String fileKey, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.hash = hash;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && fileKey.equals(fileKey(attributes));
+        }
+    }
+}
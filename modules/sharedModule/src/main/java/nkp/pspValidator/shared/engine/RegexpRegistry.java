@@ -0,0 +1,63 @@
+package nkp.pspValidator.shared.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Sdílené zkompilované regulární výrazy, které nejsou známé předem (z profilů metadat, z definic externích nástrojů
+ * a extrakcí jejich výstupu). Pattern je thread-safe, jeden zkompilovaný výraz tak může používat více vláken současně.
+ * <p>
+ * Počet výrazů je omezený (MAX_PATTERNS), po jeho dosažení se další výrazy kompilují při každém použití a do registru
+ * se nepřidávají. Pevné výrazy v kódu patří do konstant tříd, které je používají.
+ */
+public class RegexpRegistry {
+
+    static final int MAX_PATTERNS = 4096;
+
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private RegexpRegistry() {
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException pro chybný výraz, stejně jako Pattern.compile()
+     */
+    public static Pattern get(String regexp) {
+        Pattern pattern = patterns.get(regexp);
+        if (pattern != null) {
+            hits.incrementAndGet();
+            return pattern;
+        }
+        misses.incrementAndGet();
+        pattern = Pattern.compile(regexp);
+        if (patterns.size() < MAX_PATTERNS) {
+            Pattern previous = patterns.putIfAbsent(regexp, pattern);
+            if (previous != null) {
+                pattern = previous;
+            }
+        }
+        return pattern;
+    }
+
+    public static int size() {
+        return patterns.size();
+    }
+
+    /**
+     * @return počet výrazů vrácených z registru
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return počet kompilací výrazů
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+}
@@ -34,6 +34,17 @@ public class Rule {
         return result;
     }
 
+    /**
+     * Výsledek spočítaný mimo validate() funkce, ve společném průchodu soubory (FilePipeline).
+     */
+    void setResult(ValidationResult result) {
+        this.result = result;
+    }
+
+    public ValidationFunction getFunction() {
+        return function;
+    }
+
     public String getName() {
         return name;
     }
@@ -0,0 +1,202 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.ValidationState;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Paralelní vyhodnocování pravidel.
+ * <p>
+ * Z parametrů validačních funkcí (ValueParamReference, PatternParamReference) a z definic proměnných registrovaných v Engine
+ * sestaví graf závislostí. Každá proměnná se vyhodnotí jako samostatná úloha až po vyhodnocení proměnných, na kterých závisí,
+ * pravidlo se spustí až po vyhodnocení všech svých proměnných. Navzájem nezávislé úlohy běží souběžně na omezeném počtu vláken.
+ * <p>
+ * Výsledky se vyzvedávají přes awaitExecution() v pořadí, v jakém je potřebuje Validator (tj. pořadí sekcí a pravidel z konfigurace).
+ */
+public class RuleScheduler {
+
+    private static final long CANCEL_POLL_INTERVAL_MS = 200;
+
+    private final Engine engine;
+    private final ExecutorService executor;
+    private volatile boolean canceled = false;
+
+    private final Map<String, CompletableFuture<Void>> valueTasks = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> patternTasks = new HashMap<>();
+    private final Map<Rule, CompletableFuture<RuleExecution>> ruleTasks = new HashMap<>();
+
+    public RuleScheduler(Engine engine, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format("počet vláken musí být alespoň 1, ne %d", threads));
+        }
+        this.engine = engine;
+        this.executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+    }
+
+    /**
+     * Naplánuje vyhodnocení pravidel včetně všech proměnných, na kterých pravidla (i tranzitivně) závisí.
+     * Volat jen z jednoho vlákna, před prvním awaitExecution().
+     */
+    public void schedule(List<Rule> rules) {
+        for (Rule rule : rules) {
+            if (!ruleTasks.containsKey(rule)) {
+                ruleTasks.put(rule, scheduleRule(rule));
+            }
+        }
+    }
+
+    private CompletableFuture<RuleExecution> scheduleRule(Rule rule) {
+        Set<String> valueVars = rule.getFunction().getReferencedValueVariables();
+        Set<String> patternVars = rule.getFunction().getReferencedPatternVariables();
+        return dependencies(valueVars, patternVars, new HashSet<>()).thenApplyAsync(ignored -> {
+            if (canceled) {
+                return null;
+            }
+            long start = System.currentTimeMillis();
+            ValidationResult result = engine.evaluateRule(rule);
+            return new RuleExecution(result, start, System.currentTimeMillis());
+        }, executor);
+    }
+
+    private CompletableFuture<Void> dependencies(Set<String> valueVars, Set<String> patternVars, Set<String> resolving) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(valueVars.size() + patternVars.size());
+        for (String varName : valueVars) {
+            tasks.add(valueTask(varName, resolving));
+        }
+        for (String varName : patternVars) {
+            tasks.add(patternTask(varName, resolving));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private CompletableFuture<Void> valueTask(String varName, Set<String> resolving) {
+        CompletableFuture<Void> task = valueTasks.get(varName);
+        if (task != null) {
+            return task;
+        }
+        ValueDefinition definition = engine.getValueDefinition(varName);
+        String key = "value:" + varName;
+        if (definition == null || !resolving.add(key)) {
+            //konstanta, nedefinovana promenna, nebo cyklus v definicich - neni co planovat, vyhodnoti se az na zadost pravidla
+            return CompletableFuture.completedFuture(null);
+        }
+        task = dependencies(definition.getReferencedValueVariables(), definition.getReferencedPatternVariables(), resolving)
+                .thenRunAsync(() -> {
+                    if (!canceled) {
+                        engine.getValueEvaluationByVariable(varName);
+                    }
+                }, executor)
+                .exceptionally(e -> null);
+        resolving.remove(key);
+        valueTasks.put(varName, task);
+        return task;
+    }
+
+    private CompletableFuture<Void> patternTask(String varName, Set<String> resolving) {
+        CompletableFuture<Void> task = patternTasks.get(varName);
+        if (task != null) {
+            return task;
+        }
+        PatternDefinition definition = engine.getPatternDefinition(varName);
+        String key = "pattern:" + varName;
+        if (definition == null || !resolving.add(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        task = dependencies(definition.getReferencedValueVariables(), Collections.emptySet(), resolving)
+                .thenRunAsync(() -> {
+                    if (!canceled) {
+                        engine.getPatternEvaluationByVariable(varName);
+                    }
+                }, executor)
+                .exceptionally(e -> null);
+        resolving.remove(key);
+        patternTasks.put(varName, task);
+        return task;
+    }
+
+    /**
+     * Počká na vyhodnocení pravidla. Během čekání průběžně kontroluje, jestli nemá být validace zrušena.
+     *
+     * @return výsledek pravidla, nebo null, pokud byla validace zrušena
+     */
+    public RuleExecution awaitExecution(Rule rule, ValidationState.ProgressController progressController) {
+        CompletableFuture<RuleExecution> task = ruleTasks.get(rule);
+        if (task == null) {
+            throw new IllegalStateException(String.format("pravidlo %s nebylo naplánováno", rule.getName()));
+        }
+        while (true) {
+            if (progressController != null && progressController.shouldCancel()) {
+                cancel();
+                return null;
+            }
+            try {
+                return task.get(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //jeste nedobehlo
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return null;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new RuntimeException(cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Úlohy, které ještě nezačaly, se už nespustí. Rozběhnutá pravidla se nepřerušují.
+     */
+    public void cancel() {
+        canceled = true;
+        executor.shutdown();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public static class RuleExecution {
+        private final ValidationResult result;
+        private final long startTime;
+        private final long finishTime;
+
+        RuleExecution(ValidationResult result, long startTime, long finishTime) {
+            this.result = result;
+            this.startTime = startTime;
+            this.finishTime = finishTime;
+        }
+
+        public ValidationResult getResult() {
+            return result;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getFinishTime() {
+            return finishTime;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "rule-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package nkp.pspValidator.shared.engine;
+
+/**
+ * Typ úložiště, na kterém leží validovaný balík. Podle něj se volí počet vláken pro souběžné čtení souborů (kontrolní součty).
+ * Na SSD se paralelní čtení vyplatí, na rotačním disku a síťovém úložišti (NFS) vede velký počet vláken k přeskakování hlaviček,
+ * resp. k zahlcení sítě.
+ */
+public enum StorageType {
+    SSD, HDD;
+
+    public int getDefaultHashThreads() {
+        switch (this) {
+            case SSD:
+                return Math.max(2, Runtime.getRuntime().availableProcessors());
+            case HDD:
+                return 2;
+            default:
+                throw new IllegalStateException("unexpected value " + this);
+        }
+    }
+}
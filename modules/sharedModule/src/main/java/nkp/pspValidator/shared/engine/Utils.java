@@ -4,18 +4,30 @@ import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
 import nkp.pspValidator.shared.engine.exceptions.InvalidIdException;
 import nkp.pspValidator.shared.engine.exceptions.InvalidPathException;
 import nkp.pspValidator.shared.engine.types.Identifier;
+import org.apache.commons.codec.binary.Hex;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -23,6 +35,13 @@ import java.util.zip.ZipInputStream;
  */
 public class Utils {
 
+    private static final Pattern PATH_STARTING_WITH_DOTS_OR_SLASHES = Pattern.compile("^[\\./\\\\]+.*");
+    private static final Pattern PATH_SEPARATOR = Pattern.compile("[\\\\/]");
+
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+    //velky primy buffer pro kazde vlakno zvlast, soubory v balicich maji i stovky MB
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
     /**
      * Suported types are Integer, String, File, List<String>, List<File>
      *
@@ -92,11 +111,11 @@ public class Utils {
             filePath = filePath.substring(1, filePath.length());
         }
         // tenhle tvar nesmi ale zacinat na tecky ani lomitka
-        if (filePath.matches("^[\\./\\\\]+.*")) {
+        if (PATH_STARTING_WITH_DOTS_OR_SLASHES.matcher(filePath).matches()) {
             System.out.println(filePath);
             throw new InvalidPathException(filePath);
         }
-        String[] segments = filePath.split("[\\\\/]");
+        String[] segments = PATH_SEPARATOR.split(filePath);
         File file = new File(parentDir, buildPathFromSegments(segments));
         return file.getAbsoluteFile();
     }
@@ -113,25 +132,36 @@ public class Utils {
     }
 
     public static String computeHash(File file) throws HashComputationException {
-        FileInputStream fis = null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return computeHash(channel);
+        } catch (Exception e) {
+            throw new HashComputationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Kontrolní součet obsahu, který není soubor na disku (např. položka ZIP souboru). Stream se tady nezavírá.
+     */
+    public static String computeHash(InputStream in) throws HashComputationException {
         try {
-            fis = new FileInputStream(file);
-            String md5 = org.apache.commons.codec.digest.DigestUtils.md5Hex(fis);
-            fis.close();
-            return md5;
+            return computeHash(Channels.newChannel(in));
         } catch (Exception e) {
             throw new HashComputationException(e.getMessage());
-        } finally {
-            if (fis != null) {
-                try {
-                    fis.close();
-                } catch (IOException e) {
-                    //e.printStackTrace();
-                }
-            }
         }
     }
 
+    private static String computeHash(ReadableByteChannel channel) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        ByteBuffer buffer = HASH_BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
     /**
      * Returns longest common substrings (dynamic programming)
      * https://en.wikipedia.org/wiki/Longest_common_substring_problem
@@ -315,4 +345,66 @@ public class Utils {
             }
         }
     }
+
+    /**
+     * Rozbalí ZIP jedním průchodem: obsah každé položky se při zápisu zároveň započítá do kontrolního součtu (MD5),
+     * rozbalené soubory se tak kvůli kontrolním součtům nemusí číst znovu. Seznam položek se bere z centrálního adresáře
+     * ZIP souboru, podle něj se před rozbalením ověří i volné místo.
+     *
+     * @return kontrolní součty rozbalených souborů
+     */
+    public static Map<File, String> unzipAndComputeHashes(File zipFile, File outFolder) throws IOException {
+        if (!outFolder.exists()) {
+            outFolder.mkdirs();
+        }
+        File canonicalOutFolder = outFolder.getCanonicalFile();
+        Map<File, String> hashes = new HashMap<>();
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            long totalSize = 0;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getSize() > 0) {
+                    totalSize += entry.getSize();
+                }
+            }
+            long usableSpace = canonicalOutFolder.getUsableSpace();
+            if (usableSpace > 0 && totalSize > usableSpace) {
+                throw new IOException(String.format("nedostatek místa v adresáři %s: potřeba %d MB, volných %d MB",
+                        canonicalOutFolder.getAbsolutePath(), totalSize / (1024 * 1024), usableSpace / (1024 * 1024)));
+            }
+            byte[] buffer = new byte[1024 * 1024];
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                File entryFile = new File(canonicalOutFolder, entry.getName());
+                String entryPath = entryFile.getCanonicalPath();
+                if (entryPath.equals(canonicalOutFolder.getPath())) {
+                    //polozka "./" apod., adresar uz existuje
+                    continue;
+                }
+                if (!entryPath.startsWith(canonicalOutFolder.getPath() + File.separator)) {
+                    throw new IOException(String.format("položka %s směřuje mimo adresář %s", entry.getName(), canonicalOutFolder.getAbsolutePath()));
+                }
+                if (entry.isDirectory()) {
+                    entryFile.mkdirs();
+                } else {
+                    entryFile.getParentFile().mkdirs();
+                    digest.reset();
+                    try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(entryFile)) {
+                        int len;
+                        while ((len = in.read(buffer)) != -1) {
+                            digest.update(buffer, 0, len);
+                            out.write(buffer, 0, len);
+                        }
+                    }
+                    hashes.put(entryFile, Hex.encodeHexString(digest.digest()));
+                }
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return hashes;
+    }
 }
@@ -2,6 +2,8 @@ package nkp.pspValidator.shared.engine;
 
 import nkp.pspValidator.shared.engine.evaluationFunctions.EvaluationFunction;
 
+import java.util.Set;
+
 /**
  * Created by Martin Řehánek on 24.10.16.
  */
@@ -24,4 +26,12 @@ public class ValueDefinition {
         return evaluationFunction.evaluate();
     }
 
+    public Set<String> getReferencedValueVariables() {
+        return evaluationFunction.getReferencedValueVariables();
+    }
+
+    public Set<String> getReferencedPatternVariables() {
+        return evaluationFunction.getReferencedPatternVariables();
+    }
+
 }
@@ -0,0 +1,223 @@
+package nkp.pspValidator.shared.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Vyhodnocení proměnných (hodnot, vzorů) s pamětí, bezpečné pro použití z více vláken.
+ * <p>
+ * Pro každou proměnnou existuje jediná úloha (FutureTask). Vyhodnocení provede vlákno, které o proměnnou požádá jako první,
+ * ostatní vlákna čekají na jeho výsledek. Každá definice se tak v rámci balíku vyhodnotí nejvýš jednou.
+ * <p>
+ * Cyklická závislost se pozná i mezi vlákny (A čeká na B ve vlákně 1, B na A ve vlákně 2): než vlákno začne čekat,
+ * projde graf čekání (na koho čeká vlákno, které proměnnou vyhodnocuje, atd.). Pokud by čekalo samo na sebe, dostane
+ * místo výsledku chybové vyhodnocení, stejně jako při cyklu v rámci jednoho vlákna.
+ */
+public class VariableEvaluationCache<T> {
+
+    static final String CYCLE = "cyklická závislost";
+    static final String INTERRUPTED = "přerušeno čekání";
+
+    //graf cekani: vlakno -> vyhodnoceni, na ktere ceka; spolecny pro vsechny cache, hodnoty a vzory se odkazuji navzajem
+    private static final Map<Thread, Entry<?>> WAITING_FOR = new HashMap<>();
+
+    private final Map<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Uloží už známou hodnotu (např. konstantu), vyhodnocovat se nebude.
+     */
+    public void put(String varName, T evaluation) {
+        Entry<T> entry = new Entry<>(() -> evaluation, null);
+        entry.task.run();
+        entries.put(varName, entry);
+    }
+
+    /**
+     * @return už dokončené vyhodnocení proměnné, nebo null
+     */
+    public T getIfPresent(String varName) {
+        Entry<T> entry = entries.get(varName);
+        if (entry == null || !entry.task.isDone()) {
+            return null;
+        }
+        entry.hits.incrementAndGet();
+        return getDoneResult(entry);
+    }
+
+    /**
+     * Vrátí vyhodnocení proměnné. Pokud ještě není k dispozici, vyhodnotí ho pomocí evaluator, nebo počká na vlákno,
+     * které ho už vyhodnocuje.
+     *
+     * @param errorEvaluation vyhodnocení vrácené místo výsledku, pokud vyhodnocení proměnné (nepřímo, i přes jiná vlákna)
+     *                        vyžaduje ji samotnou, nebo pokud bylo čekání na jiné vlákno přerušeno; dostane popis důvodu
+     */
+    public T get(String varName, Supplier<T> evaluator, Function<String, T> errorEvaluation) {
+        Entry<T> entry = entries.get(varName);
+        if (entry == null) {
+            Entry<T> created = new Entry<>(evaluator, Thread.currentThread());
+            entry = entries.putIfAbsent(varName, created);
+            if (entry == null) {
+                //tohle vlakno promennou vyhodnoti
+                created.misses.incrementAndGet();
+                long start = System.currentTimeMillis();
+                try {
+                    created.task.run();
+                } finally {
+                    created.evaluationTime = System.currentTimeMillis() - start;
+                    created.evaluatingThread = null;
+                }
+                return getDoneResult(created);
+            }
+        }
+        if (entry.task.isDone()) {
+            entry.hits.incrementAndGet();
+            return getDoneResult(entry);
+        }
+        if (!startWaiting(entry)) {
+            return errorEvaluation.apply(CYCLE);
+        }
+        try {
+            entry.hits.incrementAndGet();
+            return unwrap(entry);
+        } catch (InterruptedException e) {
+            //vyhodnoceni v jinem vlakne dobehne a pouziji ho ostatni, jen toto vlakno uz na nej necheka
+            Thread.currentThread().interrupt();
+            return errorEvaluation.apply(INTERRUPTED);
+        } finally {
+            stopWaiting();
+        }
+    }
+
+    /**
+     * Zaregistruje čekání aktuálního vlákna na vyhodnocení, pokud tím nevznikne cyklus.
+     *
+     * @return false, pokud by vlákno (přes jiná vlákna) čekalo samo na sebe
+     */
+    private static boolean startWaiting(Entry<?> entry) {
+        Thread current = Thread.currentThread();
+        synchronized (WAITING_FOR) {
+            Entry<?> next = entry;
+            while (next != null) {
+                Thread owner = next.evaluatingThread;
+                if (owner == null) {
+                    //mezitim dopocitano
+                    break;
+                }
+                if (owner == current) {
+                    return false;
+                }
+                next = WAITING_FOR.get(owner);
+            }
+            WAITING_FOR.put(current, entry);
+            return true;
+        }
+    }
+
+    private static void stopWaiting() {
+        synchronized (WAITING_FOR) {
+            WAITING_FOR.remove(Thread.currentThread());
+        }
+    }
+
+    private T getDoneResult(Entry<T> entry) {
+        try {
+            return unwrap(entry);
+        } catch (InterruptedException e) {
+            //dokoncena uloha necheka, sem se nedojde
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private T unwrap(Entry<T> entry) throws InterruptedException {
+        try {
+            return entry.task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * @return statistiky pro všechny proměnné, o které se zatím někdo zajímal
+     */
+    public List<Statistics> getStatistics() {
+        List<Statistics> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry<T>> entry : entries.entrySet()) {
+            Entry<T> value = entry.getValue();
+            result.add(new Statistics(entry.getKey(), value.hits.get(), value.misses.get(), value.evaluationTime));
+        }
+        return result;
+    }
+
+    private static class Entry<T> {
+        private final FutureTask<T> task;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private volatile Thread evaluatingThread;
+        private volatile long evaluationTime;
+
+        Entry(Supplier<T> evaluator, Thread evaluatingThread) {
+            this.task = new FutureTask<>(evaluator::get);
+            this.evaluatingThread = evaluatingThread;
+        }
+    }
+
+    public static class Statistics {
+        private final String varName;
+        private final long hits;
+        private final long misses;
+        private final long evaluationTime;
+
+        Statistics(String varName, long hits, long misses, long evaluationTime) {
+            this.varName = varName;
+            this.hits = hits;
+            this.misses = misses;
+            this.evaluationTime = evaluationTime;
+        }
+
+        public String getVarName() {
+            return varName;
+        }
+
+        /**
+         * @return kolikrát bylo vráceno už existující (nebo právě počítané) vyhodnocení
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return kolikrát se muselo vyhodnocovat, tj. 0 pro uložené konstanty, jinak 1
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return doba vyhodnocení v milisekundách
+         */
+        public long getEvaluationTime() {
+            return evaluationTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: hits=%d, misses=%d, time=%d ms", varName, hits, misses, evaluationTime);
+        }
+    }
+}
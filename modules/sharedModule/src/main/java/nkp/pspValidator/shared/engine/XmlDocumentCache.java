@@ -0,0 +1,333 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache DOM dokumentů omezená odhadem paměti, kterou dokumenty zabírají, ne počtem dokumentů.
+ * Primární METS o desítkách MB tak vytlačí víc menších dokumentů, zatímco malých amdSec METS se vejde hodně.
+ * <p>
+ * Velikost DOM se odhaduje z velikosti souboru (DOM_SIZE_FACTOR). Odhad dokumentů v cache (vypůjčených i volných) nikdy
+ * nepřekročí rozpočet: před načtením dalšího dokumentu se odstraní nejdéle nepoužité volné dokumenty, a pokud ani tak
+ * místo nestačí (vypůjčené dokumenty zabírají skoro celý rozpočet, nebo je dokument větší než rozpočet), dokument se
+ * načte bez cache a po použití ho uvolní garbage collector. Na uvolnění místa se nečeká, vlákno držící dokumenty může
+ * čekat na výsledky jiných vláken (viz ValidationFunction.validateEach()).
+ * <p>
+ * DOM (Xerces) není thread-safe ani pro čtení (např. seznamy potomků si při procházení mění vnitřní stav), proto dokument
+ * z cache v jednu chvíli používá jen jedno vlákno: vlákno si ho "vypůjčí" prvním get() mezi startPinning() a releasePinned()
+ * a po releasePinned() ho může dostat kterékoliv jiné vlákno. Pokud je dokument souboru zrovna vypůjčený jiným vláknem,
+ * načte se další kopie, která se po vrácení také sdílí. Kopií je tak nejvýš tolik, kolik vláken soubor potřebovalo současně,
+ * nezávisle na tom, kolik vláken se během validace vystřídá.
+ * <p>
+ * Mimo startPinning()/releasePinned() není jasné, kdy vlákno dokument přestane používat, takže se dokument načte bez cache.
+ */
+public class XmlDocumentCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 512L * 1024 * 1024;
+    //DOM (Xerces) zabira v pameti radove nekolikanasobek velikosti zdrojoveho xml
+    static final int DOM_SIZE_FACTOR = 8;
+    private static final long DOM_BASE_SIZE = 4 * 1024;
+
+    interface Loader {
+        Document load(File file, boolean nsAware) throws XmlFileParsingException;
+    }
+
+    //volne (nevypujcene) kopie podle souboru a vsechny volne kopie od nejdele nepouzite, pristup jen pod zamkem cache
+    private final Map<Key, Deque<Copy>> freeByKey = new HashMap<>();
+    private final LinkedHashSet<Copy> free = new LinkedHashSet<>();
+    //pujcene dokumenty vlakna, pro kazde startPinning() jedna uroven
+    private final ThreadLocal<Deque<Map<Key, Copy>>> scopes = ThreadLocal.withInitial(ArrayDeque::new);
+    private long budgetBytes;
+    private long usedBytes;
+    private long freeBytes;
+    private long peakBytes;
+    private int documents;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong uncached = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    //velikosti souboru pro odhad zabrane pameti, soubory ze ZIP souboru na disku nejsou
+    private volatile FileSystemSnapshot fileSystem = FileSystemSnapshot.passThrough();
+
+    public XmlDocumentCache(long budgetBytes) {
+        setBudgetBytes(budgetBytes);
+    }
+
+    void setFileSystem(FileSystemSnapshot fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException(String.format("velikost cache nesmí být záporná: %d", budgetBytes));
+        }
+        this.budgetBytes = budgetBytes;
+        evict(budgetBytes);
+    }
+
+    /**
+     * @return dokument, který volající vlákno smí používat do releasePinned(), mimo startPinning()/releasePinned()
+     * dokument načtený bez cache
+     */
+    Document get(File file, boolean nsAware, Loader loader) throws XmlFileParsingException {
+        Deque<Map<Key, Copy>> threadScopes = scopes.get();
+        if (threadScopes.isEmpty()) {
+            uncached.incrementAndGet();
+            return loader.load(file, nsAware);
+        }
+        Key key = new Key(file.getAbsolutePath(), nsAware);
+        for (Map<Key, Copy> scope : threadScopes) {
+            Copy borrowed = scope.get(key);
+            if (borrowed != null) {
+                hits.incrementAndGet();
+                return borrowed.document;
+            }
+        }
+        Copy copy;
+        synchronized (this) {
+            copy = borrowFree(key);
+            if (copy == null) {
+                copy = reserve(key, estimateSize(fileSystem.length(file)));
+            }
+        }
+        if (copy == null) {
+            uncached.incrementAndGet();
+            return loader.load(file, nsAware);
+        } else if (copy.document != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            try {
+                copy.document = loader.load(file, nsAware);
+            } catch (XmlFileParsingException | RuntimeException | Error e) {
+                //chyba se necachuje, dalsi pokus soubor nacte znovu
+                synchronized (this) {
+                    documents--;
+                    usedBytes -= copy.size;
+                }
+                throw e;
+            }
+        }
+        threadScopes.peek().put(key, copy);
+        return copy.document;
+    }
+
+    /**
+     * Dokumenty, které aktuální vlákno od teď získá z cache, používá jen ono, a to až do releasePinned().
+     * Volání se můžou vnořovat, releasePinned() vrací dokumenty vypůjčené od odpovídajícího startPinning().
+     */
+    public void startPinning() {
+        scopes.get().push(new HashMap<>());
+    }
+
+    public void releasePinned() {
+        Deque<Map<Key, Copy>> threadScopes = scopes.get();
+        if (threadScopes.isEmpty()) {
+            return;
+        }
+        Map<Key, Copy> scope = threadScopes.pop();
+        if (threadScopes.isEmpty()) {
+            scopes.remove();
+        }
+        if (!scope.isEmpty()) {
+            synchronized (this) {
+                for (Copy copy : scope.values()) {
+                    freeByKey.computeIfAbsent(copy.key, k -> new ArrayDeque<>()).push(copy);
+                    free.add(copy);
+                    freeBytes += copy.size;
+                }
+                //rozpocet se mohl mezitim snizit
+                evict(budgetBytes);
+            }
+        }
+    }
+
+    /**
+     * Odstraní dokumenty souboru (všechny kopie) z cache hned, pokud je zrovna nepoužívá jiné pravidlo.
+     * Pro soubory, o kterých je jisté, že už je nebude potřeba číst (viz FilePipeline).
+     */
+    public synchronized void discard(File file) {
+        String path = file.getAbsolutePath();
+        for (boolean nsAware : new boolean[]{true, false}) {
+            Deque<Copy> fileCopies = freeByKey.remove(new Key(path, nsAware));
+            if (fileCopies != null) {
+                for (Copy copy : fileCopies) {
+                    free.remove(copy);
+                    removeFree(copy);
+                }
+            }
+        }
+    }
+
+    private Copy borrowFree(Key key) {
+        Deque<Copy> keyCopies = freeByKey.get(key);
+        if (keyCopies == null) {
+            return null;
+        }
+        //naposledy vracena kopie, starsi se spis vyradi
+        Copy copy = keyCopies.pop();
+        if (keyCopies.isEmpty()) {
+            freeByKey.remove(key);
+        }
+        free.remove(copy);
+        freeBytes -= copy.size;
+        return copy;
+    }
+
+    /**
+     * Vyhradí v rozpočtu místo pro novou kopii, kterou pak načte volající vlákno (mimo zámek, do té doby ji má vypůjčenou).
+     *
+     * @return kopie, nebo null, pokud se do rozpočtu nevejde ani po odstranění všech volných dokumentů
+     */
+    private Copy reserve(Key key, long size) {
+        if (usedBytes - freeBytes + size > budgetBytes) {
+            return null;
+        }
+        evict(budgetBytes - size);
+        Copy copy = new Copy(key, size);
+        documents++;
+        usedBytes += size;
+        peakBytes = Math.max(peakBytes, usedBytes);
+        return copy;
+    }
+
+    /**
+     * Odstraňuje nejdéle nepoužité volné dokumenty, dokud odhad nebude nejvýš limit.
+     */
+    private void evict(long limit) {
+        Iterator<Copy> eldest = free.iterator();
+        while (usedBytes > limit && eldest.hasNext()) {
+            Copy copy = eldest.next();
+            eldest.remove();
+            Deque<Copy> keyCopies = freeByKey.get(copy.key);
+            keyCopies.remove(copy);
+            if (keyCopies.isEmpty()) {
+                freeByKey.remove(copy.key);
+            }
+            removeFree(copy);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeFree(Copy copy) {
+        documents--;
+        usedBytes -= copy.size;
+        freeBytes -= copy.size;
+    }
+
+    static long estimateSize(File file) {
+        return estimateSize(file.length());
+    }
+
+    private static long estimateSize(long fileLength) {
+        return DOM_BASE_SIZE + fileLength * DOM_SIZE_FACTOR;
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), uncached.get(), evictions.get(), documents, usedBytes, peakBytes, budgetBytes);
+    }
+
+    public static class Statistics {
+        private final long hits;
+        private final long misses;
+        private final long uncached;
+        private final long evictions;
+        private final int documents;
+        private final long usedBytes;
+        private final long peakBytes;
+        private final long budgetBytes;
+
+        Statistics(long hits, long misses, long uncached, long evictions, int documents, long usedBytes, long peakBytes, long budgetBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.uncached = uncached;
+            this.evictions = evictions;
+            this.documents = documents;
+            this.usedBytes = usedBytes;
+            this.peakBytes = peakBytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Počet dokumentů načtených bez cache (mimo startPinning()/releasePinned() nebo kvůli vyčerpanému rozpočtu).
+         */
+        public long getUncached() {
+            return uncached;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        /**
+         * Odhad paměti zabírané dokumenty v cache.
+         */
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        public long getPeakBytes() {
+            return peakBytes;
+        }
+
+        public long getBudgetBytes() {
+            return budgetBytes;
+        }
+    }
+
+    private static class Key {
+        private final String path;
+        private final boolean nsAware;
+
+        Key(String path, boolean nsAware) {
+            this.path = path;
+            this.nsAware = nsAware;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return nsAware == key.nsAware && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + (nsAware ? 1 : 0);
+        }
+    }
+
+    /**
+     * Jedna instance dokumentu souboru. Dokument nastavuje vlákno, které kopii načítá (a má ji vypůjčenou), ostatním
+     * vláknům se zveřejní vrácením pod zámkem cache.
+     */
+    private static class Copy {
+        private final Key key;
+        private final long size;
+        private Document document;
+
+        Copy(Key key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+}
@@ -9,85 +9,71 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
 import java.io.IOException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.InputStream;
 
 /**
  * Created by Martin Řehánek on 2.11.16.
  */
 public class XmlManager {
 
-    //TODO: na realnem provozu (vsechna pravidla hotova) otestovat, jestli ma vubec cache vyznam
-    private final boolean docCacheEnabled;
-    private final LRUCache<String, Document> nsAwareDocCache;
-    private final LRUCache<String, Document> nsUnawareDocCache;
+    //null znamena bez cache dokumentu
+    private final XmlDocumentCache docCache;
 
 
     private final NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+    private final XpathCache xpathCache = new XpathCache(namespaceContext);
+    private volatile FileSystemSnapshot fileSystem = FileSystemSnapshot.passThrough();
 
     public XmlManager(boolean withDocumentCache) {
-        if (withDocumentCache) {
-            docCacheEnabled = true;
-            nsAwareDocCache = new LRUCache<>(20);
-            nsUnawareDocCache = new LRUCache<>(5);
-        } else {
-            docCacheEnabled = false;
-            nsAwareDocCache = null;
-            nsUnawareDocCache = null;
-        }
+        docCache = withDocumentCache ? new XmlDocumentCache(XmlDocumentCache.DEFAULT_BUDGET_BYTES) : null;
     }
 
     public void setNamespaceUri(String prefix, String uri) {
         namespaceContext.setNamespace(prefix, uri);
+        xpathCache.namespacesChanged();
     }
 
-
-    public static class LRUCache<K, V> extends LinkedHashMap<K, V> {
-        private int cacheSize;
-
-        public LRUCache(int cacheSize) {
-            super(16, 0.75f, true);
-            this.cacheSize = cacheSize;
-        }
-
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return size() >= cacheSize;
+    /**
+     * @param fileSystem snímek souborů balíku, dokumenty ze ZIP souboru se čtou přes něj
+     */
+    public void setFileSystem(FileSystemSnapshot fileSystem) {
+        this.fileSystem = fileSystem;
+        if (docCache != null) {
+            docCache.setFileSystem(fileSystem);
         }
     }
 
+    /**
+     * @return dokument, který smí používat jen volající vlákno, a to do konce startPinning()/releasePinned() cache
+     * (DOM není thread-safe ani pro čtení, viz XmlDocumentCache)
+     */
     public Document getXmlDocument(File file, boolean nsAware) throws XmlFileParsingException {
-        if (docCacheEnabled) {
-            String key = file.getAbsolutePath();
-            if (nsAware) {
-                if (nsAwareDocCache.containsKey(key)) {
-                    return nsAwareDocCache.get(key);
-                } else {
-                    Document doc = loadDocument(file, nsAware);
-                    nsAwareDocCache.put(key, doc);
-                    return doc;
-                }
-            } else {
-                if (nsUnawareDocCache.containsKey(key)) {
-                    return nsUnawareDocCache.get(key);
-                } else {
-                    Document doc = loadDocument(file, nsAware);
-                    nsUnawareDocCache.put(key, doc);
-                    return doc;
-                }
-            }
+        if (docCache != null) {
+            return docCache.get(file, nsAware, this::loadDocument);
         } else {
             return loadDocument(file, nsAware);
         }
     }
 
+    /**
+     * @return cache dokumentů, nebo null, pokud je vypnutá
+     */
+    public XmlDocumentCache getDocumentCache() {
+        return docCache;
+    }
+
     private Document loadDocument(File file, boolean nsAware) throws XmlFileParsingException {
         try {
+            FileSystemSnapshot fileSystem = this.fileSystem;
+            if (fileSystem.isInArchive(file)) {
+                try (InputStream in = fileSystem.openStream(file)) {
+                    return XmlUtils.buildDocumentFromStream(in, file.toURI().toString(), nsAware);
+                }
+            }
             return XmlUtils.buildDocumentFromFile(file, nsAware);
         } catch (SAXException e) {
             throw new XmlFileParsingException(file, String.format("chyba parsování xml v souboru %s: %s", file.getAbsolutePath(), e.getMessage()));
@@ -100,18 +86,14 @@ public class XmlManager {
 
     public XPathExpression buildXpath(String xpathExpression) throws InvalidXPathExpressionException {
         try {
-            // SAXON - if xpath 2.0 was needed eventually
-            //only constructor works, not static method
-            //XPathFactory xPathfactory = net.sf.saxon.xpath.XPathFactoryImpl.newInstance();
-            //XPathFactory xPathfactory = new net.sf.saxon.xpath.XPathFactoryImpl();
-
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPath xpath = xPathfactory.newXPath();
-            xpath.setNamespaceContext(namespaceContext);
-            return xpath.compile(xpathExpression);
+            return xpathCache.getXpath(xpathExpression);
         } catch (XPathExpressionException e) {
             throw new InvalidXPathExpressionException(xpathExpression, String.format("chyba v zápisu Xpath '%s': %s", xpathExpression, e.getMessage()));
         }
     }
 
+    public XpathCache getXpathCache() {
+        return xpathCache;
+    }
+
 }
@@ -0,0 +1,86 @@
+package nkp.pspValidator.shared.engine;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache zkompilovaných XPath výrazů.
+ * <p>
+ * XPathFactory, XPath ani XPathExpression nejsou thread-safe, proto má každé vlákno vlastní XPath a vlastní mapu
+ * zkompilovaných výrazů. Klíčem je text výrazu, jmenný kontext je pro jednu instanci cache (tj. jeden Engine) společný.
+ * Po registraci nového prefixu (namespacesChanged()) se výrazy kompilují znovu.
+ */
+public class XpathCache {
+
+    private final NamespaceContext namespaceContext;
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+    private volatile long namespacesVersion = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public XpathCache(NamespaceContext namespaceContext) {
+        this.namespaceContext = namespaceContext;
+    }
+
+    public synchronized void namespacesChanged() {
+        namespacesVersion++;
+    }
+
+    /**
+     * @return zkompilovaný výraz, který smí používat jen volající vlákno
+     */
+    public XPathExpression getXpath(String xpathExpression) throws XPathExpressionException {
+        ThreadCache cache = threadCaches.get();
+        long currentVersion = namespacesVersion;
+        if (cache.namespacesVersion != currentVersion) {
+            cache.expressions.clear();
+            cache.namespacesVersion = currentVersion;
+        }
+        XPathExpression compiled = cache.expressions.get(xpathExpression);
+        if (compiled != null) {
+            hits.incrementAndGet();
+            return compiled;
+        }
+        misses.incrementAndGet();
+        compiled = cache.xpath.compile(xpathExpression);
+        cache.expressions.put(xpathExpression, compiled);
+        return compiled;
+    }
+
+    /**
+     * @return počet výrazů vrácených z cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return počet kompilací výrazů
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private class ThreadCache {
+        private final XPath xpath;
+        private final Map<String, XPathExpression> expressions = new HashMap<>();
+        private long namespacesVersion = -1;
+
+        ThreadCache() {
+            // SAXON - if xpath 2.0 was needed eventually
+            //only constructor works, not static method
+            //XPathFactory xPathfactory = net.sf.saxon.xpath.XPathFactoryImpl.newInstance();
+            //XPathFactory xPathfactory = new net.sf.saxon.xpath.XPathFactoryImpl();
+            XPathFactory xPathfactory = XPathFactory.newInstance();
+            xpath = xPathfactory.newXPath();
+            xpath.setNamespaceContext(namespaceContext);
+        }
+    }
+}
@@ -47,11 +47,11 @@ public class EfFindFilesInDirByPattern extends EvaluationFunction {
                 } else {
                     return okResult(Collections.emptyList());
                 }
-            } else if (!dir.exists()) {
+            } else if (!engine.getFileSystem().exists(dir)) {
                 return errorResultFileDoesNotExist(dir);
-            } else if (!dir.isDirectory()) {
+            } else if (!engine.getFileSystem().isDirectory(dir)) {
                 return errorResultFileIsNotDir(dir);
-            } else if (!dir.canRead()) {
+            } else if (!engine.getFileSystem().canRead(dir)) {
                 return errorResultCannotReadDir(dir);
             }
 
@@ -60,7 +60,7 @@ public class EfFindFilesInDirByPattern extends EvaluationFunction {
                 return errorResultPatternParamNull(PARAM_PATTERN, patternParam);
             }
 
-            File[] files = dir.listFiles();
+            File[] files = engine.getFileSystem().listFiles(dir);
             List<File> filesMatching = new ArrayList<>(files.length);
             for (File file : files) {
                 if (patternParam.matches(file.getName())) {
@@ -51,11 +51,11 @@ public class EfGetDcIdentifiersForEachDmdsecId extends EvaluationFunction {
             File metsFile = (File) paramMetsFile.getData();
             if (metsFile == null) {
                 return errorResultParamNull(PARAM_METS_FILE, paramMetsFile);
-            } else if (!metsFile.exists()) {
+            } else if (!engine.getFileSystem().exists(metsFile)) {
                 return errorResultFileDoesNotExist(metsFile);
-            } else if (metsFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(metsFile)) {
                 return errorResultFileIsDir(metsFile);
-            } else if (!metsFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(metsFile)) {
                 return errorResultCannotReadFile(metsFile);
             }
 
@@ -48,9 +48,9 @@ public class EfGetFileListByXpath extends EvaluationFunction {
             File rootDir = (File) paramRootDirEval.getData();
             if (rootDir == null) {
                 return errorResultParamNull(PARAM_PSP_ROOT_DIR, paramRootDirEval);
-            } else if (!rootDir.exists()) {
+            } else if (!engine.getFileSystem().exists(rootDir)) {
                 return errorResultFileDoesNotExist(rootDir);
-            } else if (!rootDir.isDirectory()) {
+            } else if (!engine.getFileSystem().isDirectory(rootDir)) {
                 return errorResultFileIsNotDir(rootDir);
             }
 
@@ -58,11 +58,11 @@ public class EfGetFileListByXpath extends EvaluationFunction {
             File xmlFile = (File) paramXmlFile.getData();
             if (xmlFile == null) {
                 return errorResultParamNull(PARAM_XML_FILE, paramXmlFile);
-            } else if (!xmlFile.exists()) {
+            } else if (!engine.getFileSystem().exists(xmlFile)) {
                 return errorResultFileDoesNotExist(xmlFile);
-            } else if (xmlFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xmlFile)) {
                 return errorResultFileIsDir(xmlFile);
-            } else if (!xmlFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xmlFile)) {
                 return errorResultCannotReadFile(xmlFile);
             }
 
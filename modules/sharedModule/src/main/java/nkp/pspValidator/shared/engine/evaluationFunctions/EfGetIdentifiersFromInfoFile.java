@@ -41,11 +41,11 @@ public class EfGetIdentifiersFromInfoFile extends EvaluationFunction {
             File infoFile = (File) paramInfoFile.getData();
             if (infoFile == null) {
                 return errorResultParamNull(PARAM_INFO_FILE, paramInfoFile);
-            } else if (!infoFile.exists()) {
+            } else if (!engine.getFileSystem().exists(infoFile)) {
                 return errorResultFileDoesNotExist(infoFile);
-            } else if (infoFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(infoFile)) {
                 return errorResultFileIsDir(infoFile);
-            } else if (!infoFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(infoFile)) {
                 return errorResultCannotReadFile(infoFile);
             } else {
                 return evaluate(infoFile);
@@ -44,11 +44,11 @@ public class EfGetStringListByXpath extends EvaluationFunction {
             File xmlFile = (File) paramXmlFile.getData();
             if (xmlFile == null) {
                 return errorResultParamNull(PARAM_XML_FILE, paramXmlFile);
-            } else if (!xmlFile.exists()) {
+            } else if (!engine.getFileSystem().exists(xmlFile)) {
                 return errorResultFileDoesNotExist(xmlFile);
-            } else if (xmlFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xmlFile)) {
                 return errorResultFileIsDir(xmlFile);
-            } else if (!xmlFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xmlFile)) {
                 return errorResultCannotReadFile(xmlFile);
             }
 
@@ -38,6 +38,20 @@ public abstract class EvaluationFunction implements Function {
 
     public abstract ValueEvaluation evaluate();
 
+    /**
+     * @return jména proměnných (hodnot), na které se odkazují parametry funkce
+     */
+    public Set<String> getReferencedValueVariables() {
+        return ParamReferences.valueVariables(valueParams.keySet(), valueParams::getParams);
+    }
+
+    /**
+     * @return jména proměnných (vzorů), na které se odkazují parametry funkce
+     */
+    public Set<String> getReferencedPatternVariables() {
+        return ParamReferences.patternVariables(patternParams.keySet(), patternParams::getParam);
+    }
+
     ValueEvaluation okResult(Object data) {
         return new ValueEvaluation(data, null);
     }
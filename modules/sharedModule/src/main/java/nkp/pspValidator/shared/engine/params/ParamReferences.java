@@ -0,0 +1,45 @@
+package nkp.pspValidator.shared.engine.params;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Jména proměnných, na které se odkazují parametry funkce (validační i vyhodnocovací), pro graf závislostí v RuleScheduler.
+ */
+public class ParamReferences {
+
+    /**
+     * @param paramNames   jména parametrů (hodnot) funkce
+     * @param paramsByName hodnoty parametru podle jména
+     * @return jména proměnných (hodnot), na které se parametry odkazují
+     */
+    public static Set<String> valueVariables(Set<String> paramNames, Function<String, List<ValueParam>> paramsByName) {
+        Set<String> result = new HashSet<>();
+        for (String paramName : paramNames) {
+            for (ValueParam param : paramsByName.apply(paramName)) {
+                if (param instanceof ValueParamReference) {
+                    result.add(((ValueParamReference) param).getVarName());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param paramNames  jména parametrů (vzorů) funkce
+     * @param paramByName vzor podle jména parametru
+     * @return jména proměnných (vzorů), na které se parametry odkazují
+     */
+    public static Set<String> patternVariables(Set<String> paramNames, Function<String, PatternParam> paramByName) {
+        Set<String> result = new HashSet<>();
+        for (String paramName : paramNames) {
+            PatternParam param = paramByName.apply(paramName);
+            if (param instanceof PatternParamReference) {
+                result.add(((PatternParamReference) param).getVarName());
+            }
+        }
+        return result;
+    }
+}
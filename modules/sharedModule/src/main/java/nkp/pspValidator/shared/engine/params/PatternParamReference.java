@@ -20,6 +20,10 @@ public class PatternParamReference extends PatternParam {
         return engine.getPatternEvaluationByVariable(varName);
     }
 
+    public String getVarName() {
+        return varName;
+    }
+
     @Override
     public String toString() {
         return engine.getPatternEvaluationByVariable(varName).toString();
@@ -20,4 +20,8 @@ public class ValueParamReference extends ValueParam {
     public ValueEvaluation getEvaluation() {
         return engine.getValueEvaluationByVariable(varName);
     }
+
+    public String getVarName() {
+        return varName;
+    }
 }
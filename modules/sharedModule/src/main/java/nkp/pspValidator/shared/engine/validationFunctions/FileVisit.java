@@ -0,0 +1,66 @@
+package nkp.pspValidator.shared.engine.validationFunctions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Soubory, které má funkce (FileVisitingFunction) zkontrolovat, a kontrola jednoho souboru. Případně místo nich výsledek
+ * funkce, pokud k procházení souborů vůbec nedojde (chybné parametry).
+ */
+public class FileVisit {
+
+    private final ValidationFunction function;
+    private final List<File> files;
+    private final ValidationFunction.FileValidation validation;
+    private final ValidationResult failure;
+
+    FileVisit(ValidationFunction function, Collection<File> files, ValidationFunction.FileValidation validation) {
+        this.function = function;
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.validation = validation;
+        this.failure = null;
+    }
+
+    FileVisit(ValidationFunction function, ValidationResult failure) {
+        this.function = function;
+        this.files = Collections.emptyList();
+        this.validation = null;
+        this.failure = failure;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return výsledek funkce, pokud soubory nejde procházet
+     */
+    public ValidationResult getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return soubory v pořadí, ve kterém mají být problémy ve výsledku funkce
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Zkontroluje jeden ze souborů, problémy přidá do result. Neočekávaná chyba je problémem souboru, ostatní soubory
+     * se kontrolují dál.
+     */
+    public void visit(File file, ValidationResult result) {
+        function.validateFile(file, validation, result);
+    }
+
+    /**
+     * @return výsledek funkce v případě neočekávané chyby při kontrole některého souboru
+     */
+    public ValidationResult unexpectedError(Throwable e) {
+        return function.invalidUnexpectedError(e);
+    }
+}
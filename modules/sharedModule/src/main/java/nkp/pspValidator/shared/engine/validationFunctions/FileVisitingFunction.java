@@ -0,0 +1,15 @@
+package nkp.pspValidator.shared.engine.validationFunctions;
+
+/**
+ * Validační funkce, která kontroluje seznam souborů nezávisle soubor po souboru. Taková funkce může být součástí společného
+ * průchodu soubory (FilePipeline), ve kterém se každý soubor načte jen jednou pro všechna pravidla, která ho kontrolují.
+ */
+public interface FileVisitingFunction {
+
+    /**
+     * Vyhodnotí parametry funkce. Samotné soubory se ještě nečtou.
+     *
+     * @return soubory a kontrola jednoho souboru, případně výsledek, pokud funkce kvůli chybě parametrů soubory kontrolovat nemůže
+     */
+    FileVisit prepareFileVisit();
+}
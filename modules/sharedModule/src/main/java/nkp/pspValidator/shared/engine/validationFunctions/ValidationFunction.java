@@ -6,6 +6,10 @@ import nkp.pspValidator.shared.engine.params.*;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 /**
  * Created by Martin Řehánek on 20.10.16.
@@ -38,6 +42,130 @@ public abstract class ValidationFunction implements Function {
 
     public abstract ValidationResult validate();
 
+    /**
+     * @return jména proměnných (hodnot), na které se odkazují parametry funkce
+     */
+    public Set<String> getReferencedValueVariables() {
+        return ParamReferences.valueVariables(valueParams.keySet(), valueParams::getParams);
+    }
+
+    /**
+     * @return jména proměnných (vzorů), na které se odkazují parametry funkce
+     */
+    public Set<String> getReferencedPatternVariables() {
+        return ParamReferences.patternVariables(patternParams.keySet(), patternParams::getParam);
+    }
+
+    /**
+     * Zvaliduje soubory, pokud to Engine dovoluje, tak souběžně (viz Engine.getFileValidationExecutor()).
+     * Problémy jsou ve výsledku vždy seřazené podle pořadí souborů, nezávisle na tom, v jakém pořadí validace doběhly.
+     * Neočekávaná chyba při validaci souboru se nahlásí jako problém toho souboru, ostatní soubory se validují dál.
+     */
+    ValidationResult validateFiles(Collection<File> files, FileValidation validation) {
+        return validateFiles(engine.getFileValidationExecutor(), files, validation);
+    }
+
+    /**
+     * Zvaliduje soubory v daném poolu (i jediný soubor), pro null sekvenčně ve volajícím vlákně.
+     * Problémy jsou ve výsledku seřazené podle pořadí souborů.
+     */
+    ValidationResult validateFiles(ExecutorService executor, Collection<File> files, FileValidation validation) {
+        return validateEach(executor, files, (file, result) -> validateFile(file, validation, result));
+    }
+
+    /**
+     * Jako validateFiles(), jen pro obecné položky (např. dávky souborů). Problémy jsou ve výsledku seřazené podle pořadí položek.
+     * Neočekávaná chyba při validaci položky se nahlásí jako problém (bez souboru) na místě položky.
+     */
+    <T> ValidationResult validateEach(ExecutorService executor, Collection<T> items, BiConsumer<T, ValidationResult> validation) {
+        ValidationResult result = new ValidationResult();
+        //i jedina polozka jde pres pool, pool muze omezovat soubeznost (viz ExternalUtilExecutor)
+        if (executor == null) {
+            for (T item : items) {
+                validateItem(item, validation, result);
+            }
+            return result;
+        }
+        List<Future<ValidationResult>> partialResults = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                partialResults.add(executor.submit(() -> {
+                    ValidationResult partialResult = new ValidationResult();
+                    //xml dokumenty vypujcene z cache pri validaci polozky se po ni vrati dalsim vlaknum
+                    XmlDocumentCache docCache = engine.getXmlDocumentCache();
+                    docCache.startPinning();
+                    try {
+                        validateItem(item, validation, partialResult);
+                    } finally {
+                        docCache.releasePinned();
+                    }
+                    return partialResult;
+                }));
+            }
+            for (Future<ValidationResult> partialResult : partialResults) {
+                result.getProblems().addAll(partialResult.get().getProblems());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("validace souborů přerušena");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        } finally {
+            for (Future<ValidationResult> partialResult : partialResults) {
+                partialResult.cancel(false);
+            }
+        }
+    }
+
+    private <T> void validateItem(T item, BiConsumer<T, ValidationResult> validation, ValidationResult result) {
+        try {
+            validation.accept(item, result);
+        } catch (RuntimeException e) {
+            result.addError(unexpectedErrorProblem(null, e));
+        }
+    }
+
+    void validateFile(File file, FileValidation validation, ValidationResult result) {
+        try {
+            validation.validate(file, result);
+        } catch (RuntimeException e) {
+            result.addError(unexpectedErrorProblem(file, e));
+        }
+    }
+
+    public interface FileValidation {
+        void validate(File file, ValidationResult result);
+    }
+
+    /**
+     * Zvaliduje soubory připravené funkcí (FileVisitingFunction) mimo společný průchod soubory, viz validateFiles().
+     */
+    ValidationResult validateFiles(FileVisit visit) {
+        if (visit.isFailed()) {
+            return visit.getFailure();
+        }
+        try {
+            return validateFiles(visit.getFiles(), visit::visit);
+        } catch (Throwable e) {
+            return invalidUnexpectedError(e);
+        }
+    }
+
+    FileVisit fileVisit(Collection<File> files, FileValidation validation) {
+        return new FileVisit(this, files, validation);
+    }
+
+    FileVisit failedFileVisit(ValidationResult result) {
+        return new FileVisit(this, result);
+    }
 
     ValidationResult singlErrorResult(ValidationProblem error) {
         ValidationResult result = new ValidationResult();
@@ -56,11 +184,15 @@ public abstract class ValidationFunction implements Function {
 
     ValidationResult invalidUnexpectedError(Throwable e) {
         ValidationResult result = new ValidationResult();
-        String message = e.getMessage() != null ? e.getMessage() : e.toString();
-        result.addError(Level.ERROR, null, String.format("nečekaná chyba: %s", message));
+        result.addError(unexpectedErrorProblem(null, e));
         return result;
     }
 
+    ValidationProblem unexpectedErrorProblem(File file, Throwable e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.toString();
+        return new ValidationProblem(Level.ERROR, file, String.format("nečekaná chyba: %s", message));
+    }
+
     ValidationResult invalidValueParamNull(String paramName, ValueEvaluation paramEvaluation) {
         ValidationResult result = new ValidationResult();
         String message = paramEvaluation != null ? paramEvaluation.getErrorMessage() : null;
@@ -9,21 +9,43 @@ import java.io.File;
  */
 public class ValidationProblem {
 
+    /**
+     * Druh problému, odlišuje problémy validovaných dat od souborů, které nešlo zvalidovat.
+     */
+    public enum Kind {
+        //problem validovanych dat
+        VALIDATION,
+        //externi nastroj nad souborem prekrocil casovy limit a byl ukoncen
+        UTIL_TIMEOUT,
+        //externi nastroj nad souborem prekrocil limit velikosti vystupu a byl ukoncen
+        UTIL_OUTPUT_LIMIT;
+    }
+
     private final Level level;
+    private final Kind kind;
 
     private final File file;
     private final String description;
 
     public ValidationProblem(Level level, File file, String description) {
+        this(level, file, description, Kind.VALIDATION);
+    }
+
+    public ValidationProblem(Level level, File file, String description, Kind kind) {
         this.level = level;
         this.file = file;
         this.description = description;
+        this.kind = kind;
     }
 
     public Level getLevel() {
         return level;
     }
 
+    public Kind getKind() {
+        return kind;
+    }
+
     public File getFile() {
         return file;
     }
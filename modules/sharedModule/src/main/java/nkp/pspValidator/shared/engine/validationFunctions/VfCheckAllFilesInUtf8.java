@@ -58,7 +58,7 @@ public class VfCheckAllFilesInUtf8 extends ValidationFunction {
     }
 
     private String detectEncoding(File file) throws IOException {
-        try (InputStream is = new FileInputStream(file)) {
+        try (InputStream is = engine.getFileSystem().openStream(file)) {
             CharsetDetector detector = new CharsetDetector();
             detector.setText(new BufferedInputStream(is));
             CharsetMatch match = detector.detect();
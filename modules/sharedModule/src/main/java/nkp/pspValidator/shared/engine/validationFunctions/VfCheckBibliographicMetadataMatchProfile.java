@@ -2,9 +2,10 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 
 import nkp.pspValidator.shared.XmlUtils;
-import nkp.pspValidator.shared.XsdImportsResourceResolver;
+import nkp.pspValidator.shared.XsdSchemaRegistry;
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.MetsIndex;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
@@ -15,17 +16,12 @@ import nkp.pspValidator.shared.engine.types.MetadataFormat;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfile;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfileValidator;
 import nkp.pspValidator.shared.metadataProfile.biblio.CatalogingConventions;
-import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -67,9 +63,9 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
             File metsFile = (File) paramMetsFileEval.getData();
             if (metsFile == null) {
                 return invalidValueParamNull(PARAM_METS_FILE, paramMetsFileEval);
-            } else if (metsFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(metsFile)) {
                 return singlErrorResult(invalidFileIsDir(metsFile));
-            } else if (!metsFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(metsFile)) {
                 return singlErrorResult(invalidCannotReadDir(metsFile));
             }
 
@@ -88,22 +84,22 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
             ValueEvaluation paramXsdFileDc = valueParams.getParams(PARAM_XSD_DC).get(0).getEvaluation();
             File xsdFileDc = (File) paramXsdFileDc.getData();
             if (xsdFileDc == null) {
-            } else if (!xsdFileDc.exists()) {
+            } else if (!engine.getFileSystem().exists(xsdFileDc)) {
                 return singlErrorResult(invalidFileDoesNotExist(xsdFileDc));
-            } else if (xsdFileDc.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xsdFileDc)) {
                 return singlErrorResult(invalidFileIsDir(xsdFileDc));
-            } else if (!xsdFileDc.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xsdFileDc)) {
                 return singlErrorResult(invalidCannotReadFile(xsdFileDc));
             }
 
             ValueEvaluation paramXsdFileMods = valueParams.getParams(PARAM_XSD_MODS).get(0).getEvaluation();
             File xsdFileMods = (File) paramXsdFileMods.getData();
             if (xsdFileMods == null) {
-            } else if (!xsdFileMods.exists()) {
+            } else if (!engine.getFileSystem().exists(xsdFileMods)) {
                 return singlErrorResult(invalidFileDoesNotExist(xsdFileMods));
-            } else if (xsdFileMods.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xsdFileMods)) {
                 return singlErrorResult(invalidFileIsDir(xsdFileMods));
-            } else if (!xsdFileMods.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xsdFileMods)) {
                 return singlErrorResult(invalidCannotReadFile(xsdFileMods));
             }
 
@@ -119,20 +115,20 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
     private ValidationResult validate(File metsFile, EntityType entityType, String profileDetectionXpath, File xsdFileDc, File xsdFileMods) {
         ValidationResult result = new ValidationResult();
         try {
-            Document metsDoc = engine.getXmlDocument(metsFile, true);
-            List<String> entityIds = detectEntityIds(metsDoc, entityType);
+            MetsIndex metsIndex = engine.getMetsIndex(metsFile);
+            List<String> entityIds = detectEntityIds(metsIndex, entityType);
             for (String entityId : entityIds) {
                 //System.err.println("entity id: " + entityId);
-                CatalogingConventions conventions = detectCatalogingConventions(metsFile, entityId, entityType, metsDoc, result);
+                CatalogingConventions conventions = detectCatalogingConventions(metsFile, entityId, entityType, metsIndex, result);
                 //System.err.println("conventions: " + conventions);
                 String entityTypeAndId = entityType.getDmdSecCode() + '_' + entityId;
-                String profileName = detectProfileName(metsFile, metsDoc, entityTypeAndId, profileDetectionXpath, result);
+                String profileName = detectProfileName(metsFile, metsIndex, entityTypeAndId, profileDetectionXpath, result);
                 //System.err.println("profile name: " + profileName);
                 if (profileName == null) {
                     result.addError(invalid(Level.ERROR, metsFile, "prázdný typ profilu pro %s; přeskakuji validaci MODS a DC zázanamů", entityTypeAndId));
                 } else {
-                    validateMetadata(metsFile, metsDoc, entityType, entityId, MetadataFormat.DC, profileName, conventions, result, xsdFileDc);
-                    validateMetadata(metsFile, metsDoc, entityType, entityId, MetadataFormat.MODS, profileName, conventions, result, xsdFileMods);
+                    validateMetadata(metsFile, metsIndex, entityType, entityId, MetadataFormat.DC, profileName, conventions, result, xsdFileDc);
+                    validateMetadata(metsFile, metsIndex, entityType, entityId, MetadataFormat.MODS, profileName, conventions, result, xsdFileMods);
                 }
             }
             return result;
@@ -148,11 +144,11 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
         }
     }
 
-    private String detectProfileName(File metsFile, Document metsDoc, String entityTypeAndId, String profileDetectionXpath, ValidationResult result)
+    private String detectProfileName(File metsFile, MetsIndex metsIndex, String entityTypeAndId, String profileDetectionXpath, ValidationResult result)
             throws InvalidXPathExpressionException, XPathExpressionException {
         String dmdSecId = "MODSMD_" + entityTypeAndId;
-        XPathExpression modsRootXpath = engine.buildXpath("/mets:mets/mets:dmdSec[@ID=\"" + dmdSecId + "\"]/mets:mdWrap/mets:xmlData/mods:mods");
-        Element modsEl = (Element) modsRootXpath.evaluate(metsDoc, XPathConstants.NODE);
+        Element dmdSecEl = metsIndex.getDmdSec(dmdSecId);
+        Element modsEl = dmdSecEl == null ? null : (Element) engine.buildXpath("mets:mdWrap/mets:xmlData/mods:mods").evaluate(dmdSecEl, XPathConstants.NODE);
         if (modsEl == null) {
             result.addError(invalid(Level.INFO, metsFile, "nenalezen element mets:mets pro záznam %s", dmdSecId));
             return null;
@@ -162,13 +158,13 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
         }
     }
 
-    private CatalogingConventions detectCatalogingConventions(File metsFile, String entityId, EntityType entityType, Document metsDoc, ValidationResult result)
+    private CatalogingConventions detectCatalogingConventions(File metsFile, String entityId, EntityType entityType, MetsIndex metsIndex, ValidationResult result)
             throws InvalidXPathExpressionException, XPathExpressionException {
         String entityGlobalId = entityType.getDmdSecCode() + '_' + entityId;
         String dmdSecId = "MODSMD_" + entityGlobalId;
-        XPathExpression xPathExpression = engine.buildXpath("/mets:mets/mets:dmdSec[@ID=\"" + dmdSecId + "\"]/mets:mdWrap/mets:xmlData/mods:mods/mods:recordInfo/mods:descriptionStandard");
-
-        String specStr = (String) xPathExpression.evaluate(metsDoc, XPathConstants.STRING);
+        Element dmdSecEl = metsIndex.getDmdSec(dmdSecId);
+        String specStr = dmdSecEl == null ? null : (String) engine.buildXpath("mets:mdWrap/mets:xmlData/mods:mods/mods:recordInfo/mods:descriptionStandard")
+                .evaluate(dmdSecEl, XPathConstants.STRING);
         if (specStr == null || specStr.isEmpty()) {
             result.addError(invalid(Level.INFO, metsFile, "záznam %s neobsahuje informaci o použitých katalogizačních pravidlech; validuji %s oproti AACR2", dmdSecId, entityGlobalId));
             return CatalogingConventions.AACR2;
@@ -184,13 +180,15 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
         }
     }
 
-    private List<String> detectEntityIds(Document metsDoc, EntityType entityType) throws InvalidXPathExpressionException, XPathExpressionException {
-        XPathExpression xPathExpression = engine.buildXpath("/mets:mets/mets:dmdSec[contains(@ID, \"" + entityType.getDmdSecCode() + "\")]/@ID");
-        NodeList idAttrs = (NodeList) xPathExpression.evaluate(metsDoc, XPathConstants.NODESET);
-        Set<String> set = new HashSet<>(idAttrs.getLength());
-        for (int i = 0; i < idAttrs.getLength(); i++) {
-            Attr attr = (Attr) idAttrs.item(i);
-            String id = attr.getValue();
+    private List<String> detectEntityIds(MetsIndex metsIndex, EntityType entityType) {
+        List<String> dmdSecIds = new ArrayList<>();
+        for (String id : metsIndex.getDmdSecIds()) {
+            if (id.contains(entityType.getDmdSecCode())) {
+                dmdSecIds.add(id);
+            }
+        }
+        Set<String> set = new HashSet<>(dmdSecIds.size());
+        for (String id : dmdSecIds) {
             if (id.startsWith("MODSMD_")) {
                 id = id.substring("MODSMD_".length());
             } else if (id.startsWith("DCMD_")) {
@@ -203,13 +201,13 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
         return new ArrayList<>(set);
     }
 
-    private void validateMetadata(File metsFile, Document metsDoc, EntityType entityType, String entityId, MetadataFormat format, String profileName,
+    private void validateMetadata(File metsFile, MetsIndex metsIndex, EntityType entityType, String entityId, MetadataFormat format, String profileName,
                                   CatalogingConventions catalogingConventions, ValidationResult result, File xsdFile) {
         String dmdSecId = null;
         try {
             dmdSecId = buildDmdSecId(format, entityType, entityId);
-            XPathExpression xPathExpression = engine.buildXpath("/mets:mets/mets:dmdSec[@ID=\"" + dmdSecId + "\"]/mets:mdWrap/mets:xmlData/*[1]");
-            Element dataElement = (Element) xPathExpression.evaluate(metsDoc, XPathConstants.NODE);
+            Element dmdSecEl = metsIndex.getDmdSec(dmdSecId);
+            Element dataElement = dmdSecEl == null ? null : (Element) engine.buildXpath("mets:mdWrap/mets:xmlData/*[1]").evaluate(dmdSecEl, XPathConstants.NODE);
             if (dataElement == null) {
                 result.addError(invalid(Level.ERROR, metsFile, "nenalezen záznam %s", dmdSecId));
             } else {
@@ -239,10 +237,7 @@ public class VfCheckBibliographicMetadataMatchProfile extends ValidationFunction
     private boolean validateByXsd(File metsFile, File xsdFile, Document xmlDoc, String dmdSecId, ValidationResult result) {
         try {
             DOMSource source = new DOMSource(xmlDoc);
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            schemaFactory.setResourceResolver(new XsdImportsResourceResolver(xsdFile.getParentFile()));
-            Schema schema = schemaFactory.newSchema(xsdFile);
-            Validator validator = schema.newValidator();
+            Validator validator = XsdSchemaRegistry.getInstance().newValidator(xsdFile, true);
             validator.validate(source);
             return true;
         } catch (SAXException e) {
@@ -6,6 +6,7 @@ import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
 import nkp.pspValidator.shared.engine.params.ValueParam;
+import nkp.pspValidator.shared.externalUtils.CliCommand;
 import nkp.pspValidator.shared.externalUtils.ExternalUtil;
 import nkp.pspValidator.shared.externalUtils.ExternalUtilExecution;
 import nkp.pspValidator.shared.externalUtils.ResourceType;
@@ -13,7 +14,9 @@ import nkp.pspValidator.shared.externalUtils.validation.BinaryFileProfile;
 import nkp.pspValidator.shared.externalUtils.validation.BinaryFileValidator;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -103,25 +106,78 @@ public class VfCheckBinaryFilesValidByExternalUtil extends ValidationFunction {
         } else if (!validator.isUtilExecutionDefined(execution)) {
             return singlErrorResult(invalid(Level.INFO, null, "pro nástroj %s není definováno spuštění '%s'", execution.getUtil().getUserFriendlyName(), execution.getName()));
         } else {
-            ValidationResult result = new ValidationResult();
             BinaryFileProfile profile = validator.getProfile(type, execution.getUtil());
             if (profile == null) {
                 return singlErrorResult(invalid(Level.ERROR, null, "nenalezen profil binárního souboru pro typ %s a nástroj %s", type, execution));
             }
-            for (File file : files) {
-                //System.out.println(String.format("validating (%s): %s", profile, file.getAbsolutePath()));
-                try {
-                    List<String> problems = profile.validate(execution.getName(), file);
-                    for (String problem : problems) {
-                        result.addError(invalid(level, file, "%s", problem));
-                    }
-                } catch (Exception e) {
-                    result.addError(invalid(Level.ERROR, file, "%s", e.getMessage()));
-                    e.printStackTrace();
+            //nastroj se spousti ve sdilenem poolu nastroje (s jeho limitem soubeznych procesu), vysledky v poradi souboru
+            ExecutorService executor = validator.getExecutor(execution.getUtil());
+            int batchSize = validator.getBatchSize(execution);
+            if (batchSize > 1) {
+                //jedno spusteni nastroje pro celou davku souboru
+                List<List<File>> batches = new ArrayList<>();
+                for (int i = 0; i < files.size(); i += batchSize) {
+                    batches.add(files.subList(i, Math.min(i + batchSize, files.size())));
                 }
-                //break;
+                return validateEach(executor, batches, (batch, result) -> {
+                    List<File> materialized = new ArrayList<>(batch.size());
+                    try {
+                        //nastroj cte soubory z disku, soubory ze ZIP souboru se rozbali jen na dobu jeho behu
+                        for (File file : batch) {
+                            engine.getFileSystem().materialize(file);
+                            materialized.add(file);
+                        }
+                        List<List<String>> problems = profile.validate(execution.getName(), batch);
+                        for (int i = 0; i < batch.size(); i++) {
+                            if (problems.get(i) == null) {
+                                validateFile(profile, execution, level, batch.get(i), result);
+                            } else {
+                                for (String problem : problems.get(i)) {
+                                    result.addError(invalid(level, batch.get(i), "%s", problem));
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        for (File file : batch) {
+                            result.addError(invalid(Level.ERROR, file, "%s", e.getMessage()));
+                        }
+                        e.printStackTrace();
+                    } finally {
+                        for (File file : materialized) {
+                            engine.getFileSystem().release(file);
+                        }
+                    }
+                });
+            }
+            return validateFiles(executor, files, (file, result) -> validateFile(profile, execution, level, file, result));
+        }
+    }
+
+    private void validateFile(BinaryFileProfile profile, ExternalUtilExecution execution, Level level, File file, ValidationResult result) {
+        //System.out.println(String.format("validating (%s): %s", profile, file.getAbsolutePath()));
+        boolean materialized = false;
+        try {
+            engine.getFileSystem().materialize(file);
+            materialized = true;
+            List<String> problems = profile.validate(execution.getName(), file);
+            for (String problem : problems) {
+                result.addError(invalid(level, file, "%s", problem));
+            }
+        } catch (CliCommand.CliCommandTimeoutException e) {
+            result.addError(new ValidationProblem(Level.ERROR, file,
+                    String.format("soubor nezvalidován, nástroj %s: %s", execution.getUtil().getUserFriendlyName(), e.getMessage()),
+                    ValidationProblem.Kind.UTIL_TIMEOUT));
+        } catch (CliCommand.CliCommandOutputLimitException e) {
+            result.addError(new ValidationProblem(Level.ERROR, file,
+                    String.format("soubor nezvalidován, nástroj %s: %s", execution.getUtil().getUserFriendlyName(), e.getMessage()),
+                    ValidationProblem.Kind.UTIL_OUTPUT_LIMIT));
+        } catch (Exception e) {
+            result.addError(invalid(Level.ERROR, file, "%s", e.getMessage()));
+            e.printStackTrace();
+        } finally {
+            if (materialized) {
+                engine.getFileSystem().release(file);
             }
-            return result;
         }
     }
 
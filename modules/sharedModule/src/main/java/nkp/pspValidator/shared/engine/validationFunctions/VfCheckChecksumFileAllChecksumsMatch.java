@@ -6,6 +6,9 @@ import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
 import nkp.pspValidator.shared.engine.exceptions.InvalidPathException;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 
 /**
@@ -13,6 +16,8 @@ import java.io.*;
  */
 public class VfCheckChecksumFileAllChecksumsMatch extends ValidationFunction {
 
+    private static final Pattern SPACE_OR_TAB = Pattern.compile("[ \\t]");
+
     public static final String PARAM_CHECKSUM_FILE = "checksum_file";
 
     public VfCheckChecksumFileAllChecksumsMatch(String name, Engine engine) {
@@ -30,9 +35,9 @@ public class VfCheckChecksumFileAllChecksumsMatch extends ValidationFunction {
             File checksumFile = (File) paramChecksumFile.getData();
             if (checksumFile == null) {
                 return invalidValueParamNull(PARAM_CHECKSUM_FILE, paramChecksumFile);
-            } else if (!checksumFile.exists()) {
+            } else if (!engine.getFileSystem().exists(checksumFile)) {
                 return singlErrorResult(invalidFileDoesNotExist(checksumFile));
-            } else if (checksumFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(checksumFile)) {
                 return singlErrorResult(invalidFileIsDir(checksumFile));
             }
 
@@ -48,44 +53,26 @@ public class VfCheckChecksumFileAllChecksumsMatch extends ValidationFunction {
         ValidationResult result = new ValidationResult();
 
         File pspRootDir = checksumFile.getParentFile();
-        if (!pspRootDir.exists()) {
+        if (!engine.getFileSystem().exists(pspRootDir)) {
             result.addError(invalidFileDoesNotExist(pspRootDir));
-        } else if (!pspRootDir.isDirectory()) {
+        } else if (!engine.getFileSystem().isDirectory(pspRootDir)) {
             result.addError(invalidFileIsNotDir(pspRootDir));
         } else {
-            FileInputStream fis = null;
+            List<String> lines = new ArrayList<>();
+            InputStream fis = null;
             BufferedReader br = null;
             try {
-                fis = new FileInputStream(checksumFile);
+                fis = engine.getFileSystem().openStream(checksumFile);
                 br = new BufferedReader(new InputStreamReader(fis));
 
                 String line = null;
                 while ((line = br.readLine()) != null) {
-                    String[] parts = line.split("[ \\t]");//space or tabulator
-                    if (parts.length == 1) {
-                        result.addError(invalid(Level.ERROR, checksumFile, "chybí oddělovač (mezera/tabulátor) na řádku '%s'", line));
-                    } else {
-                        String hashExpected = parts[0];
-                        String filepath = parts[1];
-                        try {
-                            File file = Utils.buildAbsoluteFile(pspRootDir, filepath);
-                            String hashComputed = Utils.computeHash(file);
-                            if (!hashComputed.toUpperCase().equals(hashExpected.toUpperCase())) {
-                                result.addError(invalid(Level.ERROR, checksumFile, "uvedený kontrolní součet '%s' nesouhlasí s vypočítaným kontrolním součtem '%s' pro soubor %s", hashExpected, hashComputed, file.getName()));
-                            }
-                        } catch (InvalidPathException e) {
-                            //TODO: tohle se vyskytuje vickrat, udelat pro to metodu
-                            result.addError(invalid(Level.ERROR, checksumFile, "cesta k souboru není zapsána korektně: '%s'", e.getPath()));
-
-                        } catch (HashComputationException e) {
-                            //TODO: tohle se vyskytuje vickrat, udelat pro to metodu
-                            result.addError(invalid(Level.ERROR, checksumFile, "chyba výpočtu kontrolního součtu: %s", e.getMessage()));
-                        }
-                    }
+                    lines.add(line);
                 }
                 br.close();
             } catch (IOException e) {
                 result.addError(invalid(Level.ERROR, checksumFile, "chyba při čtení souboru: %s", e.getMessage()));
+                return result;
             } finally {
                 try {
                     if (br != null) {
@@ -98,8 +85,50 @@ public class VfCheckChecksumFileAllChecksumsMatch extends ValidationFunction {
                     result.addError(invalid(e));
                 }
             }
+
+            //vsechny soubory se nejdriv spocitaji soubezne, samotna kontrola uz jen vyzvedava vysledky
+            engine.getHashManager().computeHashes(collectFiles(pspRootDir, lines));
+
+            for (String line : lines) {
+                String[] parts = SPACE_OR_TAB.split(line);//space or tabulator
+                if (parts.length == 1) {
+                    result.addError(invalid(Level.ERROR, checksumFile, "chybí oddělovač (mezera/tabulátor) na řádku '%s'", line));
+                } else {
+                    String hashExpected = parts[0];
+                    String filepath = parts[1];
+                    try {
+                        File file = Utils.buildAbsoluteFile(pspRootDir, filepath);
+                        String hashComputed = engine.computeHash(file);
+                        if (!hashComputed.toUpperCase().equals(hashExpected.toUpperCase())) {
+                            result.addError(invalid(Level.ERROR, checksumFile, "uvedený kontrolní součet '%s' nesouhlasí s vypočítaným kontrolním součtem '%s' pro soubor %s", hashExpected, hashComputed, file.getName()));
+                        }
+                    } catch (InvalidPathException e) {
+                        //TODO: tohle se vyskytuje vickrat, udelat pro to metodu
+                        result.addError(invalid(Level.ERROR, checksumFile, "cesta k souboru není zapsána korektně: '%s'", e.getPath()));
+
+                    } catch (HashComputationException e) {
+                        //TODO: tohle se vyskytuje vickrat, udelat pro to metodu
+                        result.addError(invalid(Level.ERROR, checksumFile, "chyba výpočtu kontrolního součtu: %s", e.getMessage()));
+                    }
+                }
+            }
         }
         return result;
     }
 
+    private List<File> collectFiles(File pspRootDir, List<String> lines) {
+        List<File> files = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String[] parts = SPACE_OR_TAB.split(line);
+            if (parts.length > 1) {
+                try {
+                    files.add(Utils.buildAbsoluteFile(pspRootDir, parts[1]));
+                } catch (InvalidPathException e) {
+                    //ohlasi se pri kontrole radku
+                }
+            }
+        }
+        return files;
+    }
+
 }
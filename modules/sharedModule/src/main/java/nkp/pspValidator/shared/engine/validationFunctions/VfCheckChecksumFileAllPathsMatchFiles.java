@@ -10,6 +10,7 @@ import java.io.*;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 
 /**
@@ -17,6 +18,8 @@ import java.util.Set;
  */
 public class VfCheckChecksumFileAllPathsMatchFiles extends ValidationFunction {
 
+    private static final Pattern SPACE_OR_TAB = Pattern.compile("[ \\t]");
+
     public static final String PARAM_CHECKSUM_FILE = "checksum_file";
     public static final String PARAM_FILE = "file";
     public static final String PARAM_FILES = "files";
@@ -38,9 +41,9 @@ public class VfCheckChecksumFileAllPathsMatchFiles extends ValidationFunction {
             File checksumFile = (File) paramChecksumFile.getData();
             if (checksumFile == null) {
                 return invalidValueParamNull(PARAM_CHECKSUM_FILE, paramChecksumFile);
-            } else if (!checksumFile.exists()) {
+            } else if (!engine.getFileSystem().exists(checksumFile)) {
                 return singlErrorResult(invalidFileDoesNotExist(checksumFile));
-            } else if (checksumFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(checksumFile)) {
                 return singlErrorResult(invalidFileIsDir(checksumFile));
             }
 
@@ -90,21 +93,21 @@ public class VfCheckChecksumFileAllPathsMatchFiles extends ValidationFunction {
         ValidationResult result = new ValidationResult();
 
         File pspRootDir = checksumFile.getParentFile();
-        if (!pspRootDir.exists()) {
+        if (!engine.getFileSystem().exists(pspRootDir)) {
             result.addError(invalidFileDoesNotExist(pspRootDir));
-        } else if (!pspRootDir.isDirectory()) {
+        } else if (!engine.getFileSystem().isDirectory(pspRootDir)) {
             result.addError(invalidFileIsNotDir(pspRootDir));
         } else {
-            FileInputStream fis = null;
+            InputStream fis = null;
             BufferedReader br = null;
             try {
-                fis = new FileInputStream(checksumFile);
+                fis = engine.getFileSystem().openStream(checksumFile);
                 br = new BufferedReader(new InputStreamReader(fis));
 
                 String line;
                 Set<File> filesFromFile = new HashSet<>();
                 while ((line = br.readLine()) != null) {
-                    String[] parts = line.split("[ \\t]");//space or tabulator
+                    String[] parts = SPACE_OR_TAB.split(line);//space or tabulator
                     if (parts.length == 1) {
                         result.addError(invalid(Level.ERROR, checksumFile, "chybí oddělovač (mezera/tabulátor) na řádku '%s'", line));
                     } else {
@@ -142,14 +145,20 @@ public class VfCheckChecksumFileAllPathsMatchFiles extends ValidationFunction {
     }
 
     private void checkSetsAreSame(ValidationResult result, Set<File> filesFromParams, Set<File> filesFromFile) {
+        if (filesFromParams.equals(filesFromFile)) {
+            return;
+        }
+        //porovnani podle kanonickych cest, stejny soubor muze byt zapsan ruznymi cestami
+        CanonicalPathIndex.FileSet filesFromParamsIndex = engine.getCanonicalPathIndex().of(filesFromParams);
+        CanonicalPathIndex.FileSet filesFromFileIndex = engine.getCanonicalPathIndex().of(filesFromFile);
         for (File file : filesFromParams) {
-            if (!filesFromFile.contains(file)) {
+            if (!filesFromFileIndex.contains(file)) {
                 result.addError(invalid(Level.ERROR, file, "nenalezen záznam pro soubor"));
             }
         }
 
         for (File file : filesFromFile) {
-            if (!filesFromParams.contains(file)) {
+            if (!filesFromParamsIndex.contains(file)) {
                 result.addError(invalid(Level.ERROR, file, "nalezený soubor nebyl očekáván"));
             }
         }
@@ -7,6 +7,7 @@ import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
 
 import java.io.*;
+import java.util.regex.Pattern;
 
 
 /**
@@ -14,6 +15,11 @@ import java.io.*;
  */
 public class VfCheckChecksumFileGeneratedByGrammar extends ValidationFunction {
 
+    private static final Pattern SPACE_OR_TAB = Pattern.compile("[ \\t]");
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]*");
+    private static final Pattern PATH_SEPARATOR = Pattern.compile("[\\\\/]");
+    private static final Pattern PATH_SEGMENT = Pattern.compile("[0-9a-zA-Z\\._\\-]+");
+
     public static final String PARAM_CHECKSUM_FILE = "checksum_file";
 
 
@@ -32,9 +38,9 @@ public class VfCheckChecksumFileGeneratedByGrammar extends ValidationFunction {
             File checksumFile = (File) paramChecksumFile.getData();
             if (checksumFile == null) {
                 return invalidValueParamNull(PARAM_CHECKSUM_FILE, paramChecksumFile);
-            } else if (!checksumFile.exists()) {
+            } else if (!engine.getFileSystem().exists(checksumFile)) {
                 return singlErrorResult(invalidFileDoesNotExist(checksumFile));
-            } else if (checksumFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(checksumFile)) {
                 return singlErrorResult(invalidFileIsDir(checksumFile));
             }
 
@@ -48,15 +54,15 @@ public class VfCheckChecksumFileGeneratedByGrammar extends ValidationFunction {
 
     private ValidationResult validate(File file) {
         ValidationResult result = new ValidationResult();
-        FileInputStream fis = null;
+        InputStream fis = null;
         BufferedReader br = null;
         try {
-            fis = new FileInputStream(file);
+            fis = engine.getFileSystem().openStream(file);
             br = new BufferedReader(new InputStreamReader(fis));
 
             String line;
             while ((line = br.readLine()) != null) {
-                String[] parts = line.split("[ \\t]");//space or tabulator
+                String[] parts = SPACE_OR_TAB.split(line);//space or tabulator
                 if (parts.length == 1) {
                     result.addError(invalid(Level.ERROR, file, "chybí oddělovač (mezera/tabulátor) na řádku '%s'", line));
                 } else if (!is32bHex(parts[0])) {
@@ -88,7 +94,7 @@ public class VfCheckChecksumFileGeneratedByGrammar extends ValidationFunction {
         if (hash == null || hash.isEmpty() || hash.length() != 32) {
             return false;
         } else {
-            return hash.matches("[0-9a-fA-F]*");
+            return HEX.matcher(hash).matches();
         }
     }
 
@@ -96,11 +102,11 @@ public class VfCheckChecksumFileGeneratedByGrammar extends ValidationFunction {
         if (!(path.startsWith("\\") || path.startsWith("/"))) {
             return false;
         }
-        String[] segments = path.split("[\\\\/]");// backslash or slash
+        String[] segments = PATH_SEPARATOR.split(path);// backslash or slash
         for (int i = 0; i < segments.length; i++) {
             String segment = segments[i];
             if (i != 0) {//first segment ignored, should be empty
-                if (!segment.matches("[0-9a-zA-Z\\._\\-]+")) { //apha, digit, '.', '_', '-'
+                if (!PATH_SEGMENT.matcher(segment).matches()) { //apha, digit, '.', '_', '-'
                     return false;
                 }
             }
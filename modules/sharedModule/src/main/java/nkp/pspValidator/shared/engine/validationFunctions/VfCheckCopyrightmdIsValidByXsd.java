@@ -1,7 +1,7 @@
 package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.XmlUtils;
-import nkp.pspValidator.shared.XsdImportsResourceResolver;
+import nkp.pspValidator.shared.XsdSchemaRegistry;
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
@@ -16,25 +16,22 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 
 /**
  * Created by Martin Řehánek on 27.10.16.
  */
-public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction {
+public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_XSD_FILE = "xsd_file";
     public static final String PARAM_METS_FILES = "mets_files";
@@ -52,18 +49,23 @@ public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction {
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
             ValueEvaluation paramXsdFile = valueParams.getParams(PARAM_XSD_FILE).get(0).getEvaluation();
             File xsdFile = (File) paramXsdFile.getData();
             if (xsdFile == null) {
-            } else if (!xsdFile.exists()) {
-                return singlErrorResult(invalidFileDoesNotExist(xsdFile));
-            } else if (xsdFile.isDirectory()) {
-                return singlErrorResult(invalidFileIsDir(xsdFile));
-            } else if (!xsdFile.canRead()) {
-                return singlErrorResult(invalidCannotReadFile(xsdFile));
+            } else if (!engine.getFileSystem().exists(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidFileDoesNotExist(xsdFile)));
+            } else if (engine.getFileSystem().isDirectory(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidFileIsDir(xsdFile)));
+            } else if (!engine.getFileSystem().canRead(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidCannotReadFile(xsdFile)));
             }
 
             Set<File> metsFiles = mergeAbsolutFilesFromParams();
@@ -74,22 +76,24 @@ public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction {
                 ValueParam paramLevel = paramsLevel.get(0);
                 ValueEvaluation evaluation = paramLevel.getEvaluation();
                 if (evaluation.getData() == null) {
-                    return invalidValueParamNull(PARAM_LEVEL, evaluation);
+                    return failedFileVisit(invalidValueParamNull(PARAM_LEVEL, evaluation));
                 } else {
                     level = (Level) evaluation.getData();
                 }
             }
 
-            return validate(metsFiles, xsdFile, level);
+            Level problemLevel = level;
+            return fileVisit(metsFiles, (metsFile, result) -> validate(metsFile, xsdFile, problemLevel, result));
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
     private Set<File> mergeAbsolutFilesFromParams() throws EmptyParamEvaluationException {
-        Set<File> result = new HashSet<>();
+        //serazeno podle cesty, aby poradi problemu v protokolu bylo mezi behy stejne
+        Set<File> result = new TreeSet<>();
         List<ValueParam> fileParams = valueParams.getParams(PARAM_METS_FILE);
         for (ValueParam param : fileParams) {
             ValueEvaluation evaluation = param.getEvaluation();
@@ -113,14 +117,6 @@ public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction {
         return result;
     }
 
-    private ValidationResult validate(Set<File> metsFiles, File xsdFile, Level level) {
-        ValidationResult result = new ValidationResult();
-        for (File metsFile : metsFiles) {
-            validate(metsFile, xsdFile, level, result);
-        }
-        return result;
-    }
-
     private void validate(File metsFile, File xsdFile, Level level, ValidationResult result) {
         try {
             Document metsDoc = engine.getXmlDocument(metsFile, true);
@@ -148,10 +144,7 @@ public class VfCheckCopyrightmdIsValidByXsd extends ValidationFunction {
             } else {
                 Document doc = XmlUtils.elementToNewDocument(copyrightEl, true);
                 DOMSource source = new DOMSource(doc);
-                SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                schemaFactory.setResourceResolver(new XsdImportsResourceResolver(xsdFile.getParentFile()));
-                Schema schema = schemaFactory.newSchema(xsdFile);
-                Validator validator = schema.newValidator();
+                Validator validator = XsdSchemaRegistry.getInstance().newValidator(xsdFile, true);
                 validator.validate(source);
             }
         } catch (InvalidXPathExpressionException e) {
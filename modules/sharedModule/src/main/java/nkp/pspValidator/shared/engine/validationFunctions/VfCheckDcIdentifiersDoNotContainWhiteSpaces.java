@@ -16,12 +16,15 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
+import java.util.regex.Pattern;
 
 /**
  * Created by Martin Řehánek on 1.11.16.
  */
 public class VfCheckDcIdentifiersDoNotContainWhiteSpaces extends ValidationFunction {
 
+    private static final Pattern CONTAINS_WHITESPACE = Pattern.compile(".*\\s.*");
+
     public static final String PARAM_PRIMARY_METS_FILE = "primary-mets_file";
 
     public VfCheckDcIdentifiersDoNotContainWhiteSpaces(String name, Engine engine) {
@@ -39,9 +42,9 @@ public class VfCheckDcIdentifiersDoNotContainWhiteSpaces extends ValidationFunct
             File file = (File) paramEvaluation.getData();
             if (file == null) {
                 return invalidValueParamNull(PARAM_PRIMARY_METS_FILE, paramEvaluation);
-            } else if (file.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(file)) {
                 return singlErrorResult(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
+            } else if (!engine.getFileSystem().canRead(file)) {
                 return singlErrorResult(invalidCannotReadDir(file));
             }
 
@@ -62,7 +65,7 @@ public class VfCheckDcIdentifiersDoNotContainWhiteSpaces extends ValidationFunct
             for (int i = 0; i < nodes.getLength(); i++) {
                 Node node = nodes.item(i);
                 String identifier = node.getTextContent();
-                if (identifier.matches(".*\\s.*")) {
+                if (CONTAINS_WHITESPACE.matcher(identifier).matches()) {
                     result.addError(invalid(Level.WARNING, file, "identifikátor '%s' obsahuje bílé znaky", identifier));
                 }
             }
@@ -56,9 +56,9 @@ public class VfCheckFileIsDir extends ValidationFunction {
     }
 
     private ValidationResult validate(File file) {
-        if (!file.exists()) {
+        if (!engine.getFileSystem().exists(file)) {
             return singlErrorResult(invalidFileDoesNotExist(file));
-        } else if (!file.isDirectory()) {
+        } else if (!engine.getFileSystem().isDirectory(file)) {
             return singlErrorResult(invalidFileIsNotDir(file));
         } else {
             return ValidationResult.ok();
@@ -42,9 +42,9 @@ public class VfCheckFileIsNotDir extends ValidationFunction {
     }
 
     private ValidationResult validate(File file) {
-        if (!file.exists()) {
+        if (!engine.getFileSystem().exists(file)) {
             return singlErrorResult(invalidFileDoesNotExist(file));
-        } else if (file.isDirectory()) {
+        } else if (engine.getFileSystem().isDirectory(file)) {
             return singlErrorResult(invalidFileIsDir(file));
         } else {
             return ValidationResult.ok();
@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared.engine.validationFunctions;
 
+import nkp.pspValidator.shared.engine.CanonicalPathIndex;
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
@@ -64,13 +65,16 @@ public class VfCheckFileListsMatch extends ValidationFunction {
         }
 
         if (!filesExpectedSet.equals(filesFoundSet)) {//something is different
+            //porovnani podle kanonickych cest, stejny soubor muze byt zapsan ruznymi cestami
+            CanonicalPathIndex.FileSet filesExpectedIndex = engine.getCanonicalPathIndex().of(filesExpectedSet);
+            CanonicalPathIndex.FileSet filesFoundIndex = engine.getCanonicalPathIndex().of(filesFoundSet);
             for (File foundFile : filesFoundSet) {
-                if (!filesExpectedSet.contains(foundFile)) {
+                if (!filesExpectedIndex.contains(foundFile)) {
                     result.addError(invalid(Level.ERROR, null, "nalezen neočekávaný soubor %s", foundFile.getAbsolutePath()));
                 }
             }
             for (File expectedFile : filesExpectedSet) {
-                if (!filesFoundSet.contains(expectedFile)) {
+                if (!filesFoundIndex.contains(expectedFile)) {
                     result.addError(invalid(Level.ERROR, null, "nenalezen očekávaný soubor %s", expectedFile.getAbsolutePath()));
                 }
             }
@@ -34,9 +34,9 @@ public class VfCheckInfoFileChecksumMatches extends ValidationFunction {
             File infoFile = (File) paramInfoFile.getData();
             if (infoFile == null) {
                 return invalidValueParamNull(PARAM_INFO_FILE, paramInfoFile);
-            } else if (infoFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(infoFile)) {
                 return singlErrorResult(invalidFileIsDir(infoFile));
-            } else if (!infoFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(infoFile)) {
                 return singlErrorResult(invalidCannotReadDir(infoFile));
             }
 
@@ -44,9 +44,9 @@ public class VfCheckInfoFileChecksumMatches extends ValidationFunction {
             File checksumFile = (File) paramChecksumFile.getData();
             if (checksumFile == null) {
                 return invalidValueParamNull(PARAM_CHECKSUM_FILE, paramChecksumFile);
-            } else if (checksumFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(checksumFile)) {
                 return singlErrorResult(invalidFileIsDir(checksumFile));
-            } else if (!checksumFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(checksumFile)) {
                 return singlErrorResult(invalidCannotReadDir(checksumFile));
             }
 
@@ -80,7 +80,7 @@ public class VfCheckInfoFileChecksumMatches extends ValidationFunction {
             } else if (hashFoundUc != null && !hashFoundUc.trim().isEmpty()) {
                 hashFound = hashFoundUc.trim();
             }
-            String hashComputed = Utils.computeHash(checksumFileExisting);
+            String hashComputed = engine.computeHash(checksumFileExisting);
             if (!hashComputed.toUpperCase().equals(hashFound.toUpperCase())) {
                 result.addError(invalid(Level.ERROR, infoFile,
                         "uvedený kontrolní součet '%s' nesouhlasí s vypočítaným kontrolním součtem '%s' pro soubor %s",
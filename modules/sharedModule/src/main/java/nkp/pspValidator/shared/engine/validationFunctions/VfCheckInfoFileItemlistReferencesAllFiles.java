@@ -48,9 +48,9 @@ public class VfCheckInfoFileItemlistReferencesAllFiles extends ValidationFunctio
             File infoFile = (File) paramInfoFile.getData();
             if (infoFile == null) {
                 return invalidValueParamNull(PARAM_INFO_FILE, paramInfoFile);
-            } else if (infoFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(infoFile)) {
                 return singlErrorResult(invalidFileIsDir(infoFile));
-            } else if (!infoFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(infoFile)) {
                 return singlErrorResult(invalidCannotReadDir(infoFile));
             }
 
@@ -117,13 +117,16 @@ public class VfCheckInfoFileItemlistReferencesAllFiles extends ValidationFunctio
             Set<File> foundFiles = new HashSet<>(foundFilesList.size());
             foundFiles.addAll(foundFilesList);
             if (!foundFiles.equals(expectedFiles)) {//something is different
+                //porovnani podle kanonickych cest, stejny soubor muze byt zapsan ruznymi cestami
+                CanonicalPathIndex.FileSet expectedIndex = engine.getCanonicalPathIndex().of(expectedFiles);
+                CanonicalPathIndex.FileSet foundIndex = engine.getCanonicalPathIndex().of(foundFiles);
                 for (File foundFile : foundFiles) {
-                    if (!expectedFiles.contains(foundFile)) {
+                    if (!expectedIndex.contains(foundFile)) {
                         result.addError(invalid(level, infoFile, "soubor INFO se odkazuje na neočekávaný soubor %s", foundFile.getAbsolutePath()));
                     }
                 }
                 for (File expectedFile : expectedFiles) {
-                    if (!foundFiles.contains(expectedFile)) {
+                    if (!foundIndex.contains(expectedFile)) {
                         result.addError(invalid(level, infoFile, "soubor INFO se neodkazuje na očekávaný soubor %s", expectedFile.getAbsolutePath()));
                     }
                 }
@@ -45,9 +45,9 @@ public class VfCheckInfoFileReferencesPrimaryMets extends ValidationFunction {
             File infoFile = (File) paramInfoFile.getData();
             if (infoFile == null) {
                 return invalidValueParamNull(PARAM_INFO_FILE, paramInfoFile);
-            } else if (infoFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(infoFile)) {
                 return singlErrorResult(invalidFileIsDir(infoFile));
-            } else if (!infoFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(infoFile)) {
                 return singlErrorResult(invalidCannotReadDir(infoFile));
             }
 
@@ -29,7 +29,7 @@ import java.util.Set;
 /**
  * Created by Martin Řehánek on 1.11.16.
  */
-public class VfCheckMetsAmdsecElementsMatchProfile extends ValidationFunction {
+public class VfCheckMetsAmdsecElementsMatchProfile extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_METS_FILES = "mets_files";
     public static final String PARAM_METS_FILE = "mets_file";
@@ -49,6 +49,11 @@ public class VfCheckMetsAmdsecElementsMatchProfile extends ValidationFunction {
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
@@ -57,31 +62,31 @@ public class VfCheckMetsAmdsecElementsMatchProfile extends ValidationFunction {
             ValueEvaluation paramElementXpath = valueParams.getParams(PARAM_ELEMENT_XPATH).get(0).getEvaluation();
             String elementXpath = (String) paramElementXpath.getData();
             if (elementXpath == null) {
-                return invalidValueParamNull(PARAM_ELEMENT_XPATH, paramElementXpath);
+                return failedFileVisit(invalidValueParamNull(PARAM_ELEMENT_XPATH, paramElementXpath));
             }
 
             ValueEvaluation paramProfileId = valueParams.getParams(PARAM_PROFILE_ID).get(0).getEvaluation();
             String profileId = (String) paramProfileId.getData();
             if (profileId == null) {
-                return invalidValueParamNull(PARAM_PROFILE_ID, paramProfileId);
+                return failedFileVisit(invalidValueParamNull(PARAM_PROFILE_ID, paramProfileId));
             }
 
             ValueEvaluation paramElementMustExist = valueParams.getParams(PARAM_ELEMENT_MUST_EXIST).get(0).getEvaluation();
             Boolean elementMustExist = (Boolean) paramElementMustExist.getData();
             if (elementMustExist == null) {
-                return invalidValueParamNull(PARAM_PROFILE_ID, paramElementMustExist);
+                return failedFileVisit(invalidValueParamNull(PARAM_PROFILE_ID, paramElementMustExist));
             }
 
             MetadataProfile profile = engine.getTechnicalMetadataProfilesManager().buildProfile(profileId);
             if (profile == null) {
-                return singlErrorResult(invalid(Level.ERROR, null, "nenalezen profil '%s'", profileId));
+                return failedFileVisit(singlErrorResult(invalid(Level.ERROR, null, "nenalezen profil '%s'", profileId)));
             } else {
-                return validate(metsFiles, elementXpath, elementMustExist, profile);
+                return fileVisit(metsFiles, (file, result) -> validate(file, elementXpath, elementMustExist, profile, result));
             }
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
@@ -110,18 +115,14 @@ public class VfCheckMetsAmdsecElementsMatchProfile extends ValidationFunction {
         return result;
     }
 
-    private ValidationResult validate(Set<File> files, String elementXpath, Boolean elementMustExist, MetadataProfile profile) {
-        ValidationResult result = new ValidationResult();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                result.addError(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
-                result.addError(invalidCannotReadDir(file));
-            } else {
-                validateFile(file, result, elementXpath, elementMustExist, profile);
-            }
+    private void validate(File file, String elementXpath, Boolean elementMustExist, MetadataProfile profile, ValidationResult result) {
+        if (engine.getFileSystem().isDirectory(file)) {
+            result.addError(invalidFileIsDir(file));
+        } else if (!engine.getFileSystem().canRead(file)) {
+            result.addError(invalidCannotReadDir(file));
+        } else {
+            validateFile(file, result, elementXpath, elementMustExist, profile);
         }
-        return result;
     }
 
     private void validateFile(File file, ValidationResult result, String elementXpath, Boolean elementMustExist, MetadataProfile profile) {
@@ -3,14 +3,10 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.*;
 import nkp.pspValidator.shared.engine.exceptions.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by Martin Řehánek on 1.11.16.
@@ -36,9 +32,9 @@ public class VfCheckMetsFilesecChecksumsMatch extends ValidationFunction {
             File metsFile = (File) paramMetsFileEval.getData();
             if (metsFile == null) {
                 return invalidValueParamNull(PARAM_METS_FILE, paramMetsFileEval);
-            } else if (metsFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(metsFile)) {
                 return singlErrorResult(invalidFileIsDir(metsFile));
-            } else if (!metsFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(metsFile)) {
                 return singlErrorResult(invalidCannotReadDir(metsFile));
             }
 
@@ -46,7 +42,7 @@ public class VfCheckMetsFilesecChecksumsMatch extends ValidationFunction {
             File pspDir = (File) paramPspDirEval.getData();
             if (pspDir == null) {
                 return invalidValueParamNull(PARAM_PSP_DIR, paramPspDirEval);
-            } else if (!pspDir.isDirectory()) {
+            } else if (!engine.getFileSystem().isDirectory(pspDir)) {
                 return singlErrorResult(invalidFileIsNotDir(pspDir));
             }
 
@@ -61,12 +57,12 @@ public class VfCheckMetsFilesecChecksumsMatch extends ValidationFunction {
     private ValidationResult validate(File pspdir, File metsFile) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(metsFile, true);
-            XPathExpression xpath = engine.buildXpath("//mets:fileSec/mets:fileGrp/mets:file");
-            NodeList fileElements = (NodeList) xpath.evaluate(doc, XPathConstants.NODESET);
-            for (int i = 0; i < fileElements.getLength(); i++) {
+            List<MetsIndex.FileEntry> fileEntries = engine.getMetsIndex(metsFile).getFiles();
+            //vsechny soubory se nejdriv spocitaji soubezne, samotna kontrola uz jen vyzvedava vysledky
+            engine.getHashManager().computeHashes(collectFiles(pspdir, fileEntries));
+            for (MetsIndex.FileEntry fileEntry : fileEntries) {
                 try {
-                    checkFile(pspdir, (Element) fileElements.item(i));
+                    checkFile(pspdir, fileEntry);
                 } catch (HashMismatchException e) {
                     result.addError(invalid(Level.WARNING, null, e.getMessage()));
                 } catch (Exception e) {
@@ -75,21 +71,27 @@ public class VfCheckMetsFilesecChecksumsMatch extends ValidationFunction {
             }
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } finally {
             return result;
         }
     }
 
-    private void checkFile(File pspdir, Element fileEl) throws InvalidXPathExpressionException, XPathExpressionException, InvalidPathException, HashComputationException, HashMismatchException {
-        String hashExpected = fileEl.getAttribute("CHECKSUM");
-        XPathExpression xpath = engine.buildXpath("mets:FLocat/@xlink:href");
-        String filePath = (String) xpath.evaluate(fileEl, XPathConstants.STRING);
-        File file = Utils.buildAbsoluteFile(pspdir, filePath);
-        String hashComputed = Utils.computeHash(file);
+    private List<File> collectFiles(File pspdir, List<MetsIndex.FileEntry> fileEntries) {
+        List<File> files = new ArrayList<>(fileEntries.size());
+        for (MetsIndex.FileEntry fileEntry : fileEntries) {
+            try {
+                files.add(Utils.buildAbsoluteFile(pspdir, fileEntry.getHref()));
+            } catch (InvalidPathException e) {
+                //ohlasi se pri kontrole souboru
+            }
+        }
+        return files;
+    }
+
+    private void checkFile(File pspdir, MetsIndex.FileEntry fileEntry) throws InvalidPathException, HashComputationException, HashMismatchException {
+        String hashExpected = fileEntry.getChecksum();
+        File file = Utils.buildAbsoluteFile(pspdir, fileEntry.getHref());
+        String hashComputed = engine.computeHash(file);
         if (!hashComputed.toUpperCase().equals(hashExpected.toUpperCase())) {
             throw new HashMismatchException(String.format("uvedený kontrolní součet (%s) se liší od vypočítaného kontrolního součtu (%s) souboru %s", hashExpected, hashComputed, file.getAbsolutePath()));
         }
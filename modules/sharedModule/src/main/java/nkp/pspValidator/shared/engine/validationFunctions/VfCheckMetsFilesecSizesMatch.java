@@ -3,13 +3,7 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.*;
 import nkp.pspValidator.shared.engine.exceptions.*;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 
 /**
@@ -33,9 +27,9 @@ public class VfCheckMetsFilesecSizesMatch extends ValidationFunction {
             File metsFile = (File) paramMetsFileEval.getData();
             if (metsFile == null) {
                 return invalidValueParamNull(PARAM_METS_FILE, paramMetsFileEval);
-            } else if (metsFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(metsFile)) {
                 return singlErrorResult(invalidFileIsDir(metsFile));
-            } else if (!metsFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(metsFile)) {
                 return singlErrorResult(invalidCannotReadDir(metsFile));
             }
 
@@ -43,7 +37,7 @@ public class VfCheckMetsFilesecSizesMatch extends ValidationFunction {
             File pspDir = (File) paramPspDirEval.getData();
             if (pspDir == null) {
                 return invalidValueParamNull(PARAM_PSP_DIR, paramPspDirEval);
-            } else if (!pspDir.isDirectory()) {
+            } else if (!engine.getFileSystem().isDirectory(pspDir)) {
                 return singlErrorResult(invalidFileIsNotDir(pspDir));
             }
 
@@ -58,12 +52,9 @@ public class VfCheckMetsFilesecSizesMatch extends ValidationFunction {
     private ValidationResult validate(File pspdir, File metsFile) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(metsFile, true);
-            XPathExpression xpath = engine.buildXpath("//mets:fileSec/mets:fileGrp/mets:file");
-            NodeList fileElements = (NodeList) xpath.evaluate(doc, XPathConstants.NODESET);
-            for (int i = 0; i < fileElements.getLength(); i++) {
+            for (MetsIndex.FileEntry fileEntry : engine.getMetsIndex(metsFile).getFiles()) {
                 try {
-                    checkFile(pspdir, (Element) fileElements.item(i));
+                    checkFile(pspdir, fileEntry);
                 } catch (SizeDifferenceException e) {
                     result.addError(invalid(Level.WARNING, e.getFile(), e.getMessage()));
                 } catch (Exception e) {
@@ -72,21 +63,15 @@ public class VfCheckMetsFilesecSizesMatch extends ValidationFunction {
             }
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } finally {
             return result;
         }
     }
 
-    private void checkFile(File pspdir, Element fileEl) throws InvalidXPathExpressionException, XPathExpressionException, InvalidPathException, SizeDifferenceException {
-        long sizeExpected = Long.valueOf(fileEl.getAttribute("SIZE"));
-        XPathExpression xpath = engine.buildXpath("mets:FLocat/@xlink:href");
-        String filePath = (String) xpath.evaluate(fileEl, XPathConstants.STRING);
-        File file = Utils.buildAbsoluteFile(pspdir, filePath);
-        long sizeComputed = file.length();
+    private void checkFile(File pspdir, MetsIndex.FileEntry fileEntry) throws InvalidPathException, SizeDifferenceException {
+        long sizeExpected = Long.valueOf(fileEntry.getSize());
+        File file = Utils.buildAbsoluteFile(pspdir, fileEntry.getHref());
+        long sizeComputed = engine.getFileSystem().length(file);
         if (sizeComputed != sizeExpected) {
             throw new SizeDifferenceException(String.format("uvedená velikost (%d B) se liší od zjištěné velikosti (%d B) souboru", sizeExpected, sizeComputed), file);
         }
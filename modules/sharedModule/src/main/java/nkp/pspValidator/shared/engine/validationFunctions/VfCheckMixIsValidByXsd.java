@@ -1,7 +1,7 @@
 package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.XmlUtils;
-import nkp.pspValidator.shared.XsdImportsResourceResolver;
+import nkp.pspValidator.shared.XsdSchemaRegistry;
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
@@ -16,11 +16,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -34,7 +31,7 @@ import java.util.List;
 /**
  * Created by Martin Řehánek on 27.10.16.
  */
-public class VfCheckMixIsValidByXsd extends ValidationFunction {
+public class VfCheckMixIsValidByXsd extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_XSD_FILE = "xsd_file";
     public static final String PARAM_METS_FILES = "mets_files";
@@ -50,18 +47,23 @@ public class VfCheckMixIsValidByXsd extends ValidationFunction {
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
             ValueEvaluation paramXsdFile = valueParams.getParams(PARAM_XSD_FILE).get(0).getEvaluation();
             File xsdFile = (File) paramXsdFile.getData();
             if (xsdFile == null) {
-            } else if (!xsdFile.exists()) {
-                return singlErrorResult(invalidFileDoesNotExist(xsdFile));
-            } else if (xsdFile.isDirectory()) {
-                return singlErrorResult(invalidFileIsDir(xsdFile));
-            } else if (!xsdFile.canRead()) {
-                return singlErrorResult(invalidCannotReadFile(xsdFile));
+            } else if (!engine.getFileSystem().exists(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidFileDoesNotExist(xsdFile)));
+            } else if (engine.getFileSystem().isDirectory(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidFileIsDir(xsdFile)));
+            } else if (!engine.getFileSystem().canRead(xsdFile)) {
+                return failedFileVisit(singlErrorResult(invalidCannotReadFile(xsdFile)));
             }
 
             List<File> metsFiles = new ArrayList<>();
@@ -83,28 +85,21 @@ public class VfCheckMixIsValidByXsd extends ValidationFunction {
                 ValueParam paramLevel = paramsLevel.get(0);
                 ValueEvaluation evaluation = paramLevel.getEvaluation();
                 if (evaluation.getData() == null) {
-                    return invalidValueParamNull(PARAM_LEVEL, evaluation);
+                    return failedFileVisit(invalidValueParamNull(PARAM_LEVEL, evaluation));
                 } else {
                     level = (Level) evaluation.getData();
                 }
             }
 
-            return validate(metsFiles, xsdFile, level);
+            Level problemLevel = level;
+            return fileVisit(metsFiles, (metsFile, result) -> validate(metsFile, xsdFile, problemLevel, result));
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
-    private ValidationResult validate(List<File> metsFiles, File xsdFile, Level level) {
-        ValidationResult result = new ValidationResult();
-        for (File metsFile : metsFiles) {
-            validate(metsFile, xsdFile, level, result);
-        }
-        return result;
-    }
-
     private void validate(File metsFile, File xsdFile, Level level, ValidationResult result) {
         try {
             Document metsDoc = engine.getXmlDocument(metsFile, true);
@@ -135,11 +130,7 @@ public class VfCheckMixIsValidByXsd extends ValidationFunction {
                 Document mixDoc = XmlUtils.elementToNewDocument(mixEl, true);
 
                 DOMSource source = new DOMSource(mixDoc);
-                SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                schemaFactory.setResourceResolver(new XsdImportsResourceResolver(xsdFile.getParentFile()));
-
-                Schema schema = schemaFactory.newSchema(xsdFile);
-                Validator validator = schema.newValidator();
+                Validator validator = XsdSchemaRegistry.getInstance().newValidator(xsdFile, true);
                 validator.validate(source);
             }
 
@@ -47,9 +47,9 @@ public class VfCheckNoFileIsDir extends ValidationFunction {
     private ValidationResult validate(List<File> files) {
         ValidationResult result = new ValidationResult();
         for (File file : files) {
-            if (!file.exists()) {
+            if (!engine.getFileSystem().exists(file)) {
                 result.addError(invalidFileDoesNotExist(file));
-            } else if (file.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(file)) {
                 result.addError(invalidFileIsDir(file));
             }
         }
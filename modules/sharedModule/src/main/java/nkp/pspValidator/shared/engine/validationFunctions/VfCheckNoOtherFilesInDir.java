@@ -44,9 +44,9 @@ public class VfCheckNoOtherFilesInDir extends ValidationFunction {
                 //ignore
                 //return invalidValueParamNull(PARAM_ROOT_DIR, paramRootDir);
                 return ValidationResult.ok();
-            } else if (!rootDir.isDirectory()) {
+            } else if (!engine.getFileSystem().isDirectory(rootDir)) {
                 return singlErrorResult(invalidFileIsNotDir(rootDir));
-            } else if (!rootDir.canRead()) {
+            } else if (!engine.getFileSystem().canRead(rootDir)) {
                 return singlErrorResult(invalidCannotReadDir(rootDir));
             }
 
@@ -105,7 +105,7 @@ public class VfCheckNoOtherFilesInDir extends ValidationFunction {
     }
 
     private List<File> listAbsoluteFiles(File rootDir) {
-        File[] files = rootDir.listFiles();
+        File[] files = engine.getFileSystem().listFiles(rootDir);
         List<File> result = new ArrayList<>(files.length);
         for (File file : files) {
             result.add(file.getAbsoluteFile());
@@ -24,7 +24,7 @@ import java.util.*;
 /**
  * Created by Martin Řehánek on 1.11.16.
  */
-public class VfCheckPremisLinks extends ValidationFunction {
+public class VfCheckPremisLinks extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_METS_FILES = "mets_files";
     public static final String PARAM_METS_FILE = "mets_file";
@@ -38,15 +38,20 @@ public class VfCheckPremisLinks extends ValidationFunction {
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
             Set<File> metsFiles = mergeAbsolutFilesFromParams();
-            return validate(metsFiles);
+            return fileVisit(metsFiles, this::validate);
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
@@ -75,18 +80,14 @@ public class VfCheckPremisLinks extends ValidationFunction {
         return result;
     }
 
-    private ValidationResult validate(Set<File> files) {
-        ValidationResult result = new ValidationResult();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                result.addError(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
-                result.addError(invalidCannotReadDir(file));
-            } else {
-                validateFile(file, result);
-            }
+    private void validate(File file, ValidationResult result) {
+        if (engine.getFileSystem().isDirectory(file)) {
+            result.addError(invalidFileIsDir(file));
+        } else if (!engine.getFileSystem().canRead(file)) {
+            result.addError(invalidCannotReadDir(file));
+        } else {
+            validateFile(file, result);
         }
-        return result;
     }
 
     private void validateFile(File file, ValidationResult result) {
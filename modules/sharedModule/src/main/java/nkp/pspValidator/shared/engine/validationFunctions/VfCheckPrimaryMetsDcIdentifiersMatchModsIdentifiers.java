@@ -42,9 +42,9 @@ public class VfCheckPrimaryMetsDcIdentifiersMatchModsIdentifiers extends Validat
             File file = (File) paramEvaluation.getData();
             if (file == null) {
                 return invalidValueParamNull(PARAM_PRIMARY_METS_FILE, paramEvaluation);
-            } else if (file.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(file)) {
                 return singlErrorResult(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
+            } else if (!engine.getFileSystem().canRead(file)) {
                 return singlErrorResult(invalidCannotReadDir(file));
             }
 
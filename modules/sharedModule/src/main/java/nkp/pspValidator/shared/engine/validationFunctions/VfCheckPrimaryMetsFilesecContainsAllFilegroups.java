@@ -3,17 +3,12 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.MetsIndex;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
-import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 
 /**
@@ -38,9 +33,9 @@ public class VfCheckPrimaryMetsFilesecContainsAllFilegroups extends ValidationFu
             File file = (File) paramEvaluation.getData();
             if (file == null) {
                 return invalidValueParamNull(PARAM_PRIMARY_METS_FILE, paramEvaluation);
-            } else if (file.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(file)) {
                 return singlErrorResult(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
+            } else if (!engine.getFileSystem().canRead(file)) {
                 return singlErrorResult(invalidCannotReadDir(file));
             }
 
@@ -55,39 +50,39 @@ public class VfCheckPrimaryMetsFilesecContainsAllFilegroups extends ValidationFu
     private ValidationResult validate(File file) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(file, true);
-            checkFileGroupOk(file, doc, "MC_IMGGRP", "Images", result);
-            checkFileGroupOk(file, doc, "UC_IMGGRP", "Images", result);
-            checkFileGroupOk(file, doc, "ALTOGRP", "Layout", result);
-            checkFileGroupOk(file, doc, "TXTGRP", "Text", result);
-            checkFileGroupOk(file, doc, "TECHMDGRP", "Technical Metadata", result);
-            checkFilegroupsCount(file, doc, 5, result);
+            MetsIndex metsIndex = engine.getMetsIndex(file);
+            checkFileGroupOk(file, metsIndex, "MC_IMGGRP", "Images", result);
+            checkFileGroupOk(file, metsIndex, "UC_IMGGRP", "Images", result);
+            checkFileGroupOk(file, metsIndex, "ALTOGRP", "Layout", result);
+            checkFileGroupOk(file, metsIndex, "TXTGRP", "Text", result);
+            checkFileGroupOk(file, metsIndex, "TECHMDGRP", "Technical Metadata", result);
+            checkFilegroupsCount(file, metsIndex, 5, result);
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } finally {
             return result;
         }
     }
 
-    private void checkFilegroupsCount(File file, Document doc, int expectedCount, ValidationResult result) throws InvalidXPathExpressionException, XPathExpressionException {
-        XPathExpression xpath = engine.buildXpath("count(/mets:mets/mets:fileSec/mets:fileGrp)");
-        int count = Integer.valueOf((String) xpath.evaluate(doc, XPathConstants.STRING));
+    private void checkFilegroupsCount(File file, MetsIndex metsIndex, int expectedCount, ValidationResult result) {
+        int count = metsIndex.getFileGrps().size();
         if (count != expectedCount) {
             result.addError(invalid(Level.ERROR, file, "neočekávaný počet elementů mets:fileGrp (%d namísto %d)", count, expectedCount));
         }
     }
 
-    private void checkFileGroupOk(File file, Document doc, String id, String useExpected, ValidationResult result) throws InvalidXPathExpressionException, XPathExpressionException {
-        XPathExpression xpath = engine.buildXpath("/mets:mets/mets:fileSec/mets:fileGrp[@ID='" + id + "']");
-        Element fileGrpEl = (Element) xpath.evaluate(doc, XPathConstants.NODE);
-        if (fileGrpEl == null) {
+    private void checkFileGroupOk(File file, MetsIndex metsIndex, String id, String useExpected, ValidationResult result) {
+        MetsIndex.FileGrp fileGrp = null;
+        for (MetsIndex.FileGrp candidate : metsIndex.getFileGrps()) {
+            if (candidate.getId().equals(id)) {
+                fileGrp = candidate;
+                break;
+            }
+        }
+        if (fileGrp == null) {
             result.addError(invalid(Level.ERROR, file, "nenalezen element mets:fileGrp s atributem ID=\"%s\"", id));
         } else {
-            String useFound = fileGrpEl.getAttribute("USE");
+            String useFound = fileGrp.getUse();
             if (!useExpected.equals(useFound)) {
                 result.addError(invalid(Level.ERROR, file,
                         "element mets:fileGrp s atributem ID=\"%s\" obsahuje nepovolenou hodnotu atributu USE: '%s' namísto očekávané '%s'",
@@ -3,17 +3,12 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.MetsIndex;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
-import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.util.List;
 
@@ -61,19 +56,15 @@ public class VfCheckPrimaryMetsLogicalMapOk extends ValidationFunction {
     private ValidationResult validate(File primaryMetsFile, List<String> divTypesAllowed) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(primaryMetsFile, true);
+            MetsIndex metsIndex = engine.getMetsIndex(primaryMetsFile);
 
             String structMapXpath = "/mets:mets/mets:structMap[@TYPE='LOGICAL']";
-            Element structMapEl = (Element) engine.buildXpath(structMapXpath).evaluate(doc, XPathConstants.NODE);
-            if (structMapEl == null) {
+            List<MetsIndex.StructMap> structMaps = metsIndex.getStructMaps("LOGICAL");
+            if (structMaps.isEmpty()) {
                 result.addError(Level.ERROR, primaryMetsFile, "chybí logická strukturální mapa (%s)", structMapXpath);
             } else {
-                checkDivs(primaryMetsFile, doc, structMapEl, structMapXpath, divTypesAllowed, result);
+                checkDivs(primaryMetsFile, metsIndex, structMaps.get(0).getDivs(), structMapXpath, divTypesAllowed, result);
             }
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
         } finally {
@@ -81,16 +72,15 @@ public class VfCheckPrimaryMetsLogicalMapOk extends ValidationFunction {
         }
     }
 
-    private void checkDivs(File primaryMetsFile, Document doc, Element parentEl, String parentPath, List<String> divTypesAllowed, ValidationResult result) throws InvalidXPathExpressionException, XPathExpressionException {
-        NodeList divEls = (NodeList) engine.buildXpath("mets:div").evaluate(parentEl, XPathConstants.NODESET);
-        for (int i = 0; i < divEls.getLength(); i++) {
-            Element divEl = (Element) divEls.item(i);
-            String id = divEl.getAttribute("ID");
+    private void checkDivs(File primaryMetsFile, MetsIndex metsIndex, List<MetsIndex.Div> divs, String parentPath, List<String> divTypesAllowed, ValidationResult result) {
+        for (int i = 0; i < divs.size(); i++) {
+            MetsIndex.Div div = divs.get(i);
+            String id = div.getId();
             String path = id.isEmpty() ? String.format("%s/mets:div[%d]", parentPath, i) : String.format("%s/mets:div[ID='%s']", parentPath, id);
             if (id.isEmpty()) {
                 result.addError(Level.ERROR, primaryMetsFile, "%s: prázdný/chybějící atribut ID", path);
             }
-            String type = divEl.getAttribute("TYPE");
+            String type = div.getType();
             if (type.isEmpty()) {
                 result.addError(Level.ERROR, primaryMetsFile, "%s: prázdný/chybějící atribut TYPE", path);
             } else {
@@ -100,16 +90,15 @@ public class VfCheckPrimaryMetsLogicalMapOk extends ValidationFunction {
             }
 
             //DMDID
-            String dmdid = divEl.getAttribute("DMDID");
+            String dmdid = div.getElement().getAttribute("DMDID");
             if (!dmdid.isEmpty()) {
                 String dmdSecPath = String.format("/mets:mets/mets:dmdSec[@ID='%s']", dmdid);
-                Element dmdSecEl = (Element) engine.buildXpath(dmdSecPath).evaluate(doc, XPathConstants.NODE);
-                if (dmdSecEl == null) {
+                if (metsIndex.getDmdSec(dmdid) == null) {
                     result.addError(Level.ERROR, primaryMetsFile, "%s: odkaz na neexistující metadatový záznam %s", path, dmdSecPath);
                 }
             }
 
-            checkDivs(primaryMetsFile, doc, divEl, path, divTypesAllowed, result);
+            checkDivs(primaryMetsFile, metsIndex, div.getDivs(), path, divTypesAllowed, result);
         }
     }
 }
@@ -3,18 +3,14 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.MetsIndex;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
-import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
 import nkp.pspValidator.shared.engine.params.ValueParam;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.util.*;
 
@@ -79,18 +75,22 @@ public class VfCheckPrimaryMetsPhysicalMapOk extends ValidationFunction {
     private ValidationResult validate(File primaryMetsFile, String expectedTopLevelDivType, List<String> filegroupIds, List<String> pageTypes) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(primaryMetsFile, true);
+            MetsIndex metsIndex = engine.getMetsIndex(primaryMetsFile);
             Map<String, Set<String>> fileIdsByFilegroup = new HashMap<>();
             for (String filegroupId : filegroupIds) {
                 String filePath = String.format("/mets:mets/mets:fileSec/mets:fileGrp[@ID='%s']/mets:file", filegroupId);
-                NodeList fileEls = (NodeList) engine.buildXpath(filePath).evaluate(doc, XPathConstants.NODESET);
-                if (fileEls == null || fileEls.getLength() == 0) {
+                List<MetsIndex.FileEntry> fileEntries = new ArrayList<>();
+                for (MetsIndex.FileGrp fileGrp : metsIndex.getFileGrps()) {
+                    if (fileGrp.getId().equals(filegroupId)) {
+                        fileEntries.addAll(fileGrp.getFiles());
+                    }
+                }
+                if (fileEntries.isEmpty()) {
                     result.addError(Level.WARNING, primaryMetsFile, "nenalezeny elementy %s", filePath);
                 } else {
                     Set<String> fileIds = new HashSet<>();
-                    for (int i = 0; i < fileEls.getLength(); i++) {
-                        Element fileEl = (Element) fileEls.item(i);
-                        String fileId = fileEl.getAttribute("ID");
+                    for (MetsIndex.FileEntry fileEntry : fileEntries) {
+                        String fileId = fileEntry.getId();
                         if (fileId.isEmpty()) {
                             result.addError(Level.WARNING, primaryMetsFile, "některý z elementů %s má chybějící/prázdný atribut ID",
                                     filePath);
@@ -103,42 +103,47 @@ public class VfCheckPrimaryMetsPhysicalMapOk extends ValidationFunction {
             }
 
             String structMapXpath = "/mets:mets/mets:structMap[@TYPE='PHYSICAL']";
-            Element structMapEl = (Element) engine.buildXpath(structMapXpath).evaluate(doc, XPathConstants.NODE);
-            if (structMapEl == null) {
+            List<MetsIndex.StructMap> structMaps = metsIndex.getStructMaps("PHYSICAL");
+            if (structMaps.isEmpty()) {
                 result.addError(Level.ERROR, primaryMetsFile, "chybí fyzická strukturální mapa (%s)", structMapXpath);
             } else {
                 //top-level div
                 String topLevelDivPath = expectedTopLevelDivType == null ? "mets:div[@TYPE]" : String.format("mets:div[@TYPE='%s']", expectedTopLevelDivType);
-                Element topLevelDivEl = (Element) engine.buildXpath(topLevelDivPath).evaluate(structMapEl, XPathConstants.NODE);
-                if (topLevelDivEl == null) {
+                MetsIndex.Div topLevelDiv = null;
+                for (MetsIndex.Div div : structMaps.get(0).getDivs()) {
+                    if (expectedTopLevelDivType == null ? div.hasType() : expectedTopLevelDivType.equals(div.getType())) {
+                        topLevelDiv = div;
+                        break;
+                    }
+                }
+                if (topLevelDiv == null) {
                     result.addError(Level.ERROR, primaryMetsFile,
                             "fyzická strukturální mapa neobsahuje element %s", topLevelDivPath);
                 } else {
                     //DMDID
-                    String dmdid = topLevelDivEl.getAttribute("DMDID");
+                    String dmdid = topLevelDiv.getElement().getAttribute("DMDID");
                     if (dmdid.isEmpty()) {
                         result.addError(Level.ERROR, primaryMetsFile, "atribut DMDID chybí, nebo je prázdný");
                     } else {
                         String dmdSecPath = String.format("/mets:mets/mets:dmdSec[@ID='%s']", dmdid);
-                        Element dmdSecEl = (Element) engine.buildXpath(dmdSecPath).evaluate(doc, XPathConstants.NODE);
-                        if (dmdSecEl == null) {
+                        if (metsIndex.getDmdSec(dmdid) == null) {
                             result.addError(Level.ERROR, primaryMetsFile, "fyzická strukturální mapa se odkazuje na neexistující záznam %s", dmdSecPath);
                         }
                     }
                     //page divs
-                    NodeList pageDivEls = (NodeList) engine.buildXpath("mets:div").evaluate(topLevelDivEl, XPathConstants.NODESET);
-                    if (pageDivEls.getLength() == 0) {
+                    List<MetsIndex.Div> pageDivs = topLevelDiv.getDivs();
+                    if (pageDivs.isEmpty()) {
                         result.addError(Level.ERROR, primaryMetsFile, "fyzická strukturální mapa neobsahuje žádný záznam stránky");
                     }
-                    for (int i = 0; i < pageDivEls.getLength(); i++) {
-                        Element pageDivEl = (Element) pageDivEls.item(i);
+                    for (MetsIndex.Div pageDiv : pageDivs) {
+                        Element pageDivEl = pageDiv.getElement();
                         //ID
-                        String pageId = pageDivEl.getAttribute("ID");
+                        String pageId = pageDiv.getId();
                         if (pageId.isEmpty()) {
                             result.addError(Level.ERROR, primaryMetsFile, "některý ze záznamů stránek ve fyzické strukturální mapě má prázdný/chybějící atribut ID", primaryMetsFile.getName());
                         }
                         //TYPE
-                        String pageType = pageDivEl.getAttribute("TYPE");
+                        String pageType = pageDiv.getType();
                         if (pageType.isEmpty()) {
                             result.addError(Level.ERROR, primaryMetsFile, "záznam stránky %s ve fyzické strukturální mapě má prázdný/chybějící atribut TYPE",
                                     pageId);
@@ -171,10 +176,8 @@ public class VfCheckPrimaryMetsPhysicalMapOk extends ValidationFunction {
                         }
 
                         //kontrola odkazovani z fyzicke mapy na soubory
-                        NodeList fptrFileids = (NodeList) engine.buildXpath("mets:fptr/@FILEID").evaluate(pageDivEl, XPathConstants.NODESET);
                         Set<String> fileGroupsUsed = new HashSet<>();
-                        for (int j = 0; j < fptrFileids.getLength(); j++) {
-                            String fptrFileId = fptrFileids.item(j).getNodeValue();
+                        for (String fptrFileId : pageDiv.getFptrFileIds()) {
                             boolean found = false;
                             for (String filegroup : fileIdsByFilegroup.keySet()) {
                                 if (fileIdsByFilegroup.get(filegroup).contains(fptrFileId)) {
@@ -199,10 +202,6 @@ public class VfCheckPrimaryMetsPhysicalMapOk extends ValidationFunction {
                     }
                 }
             }
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
         } finally {
@@ -3,18 +3,12 @@ package nkp.pspValidator.shared.engine.validationFunctions;
 
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
+import nkp.pspValidator.shared.engine.MetsIndex;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
 import nkp.pspValidator.shared.engine.ValueType;
 import nkp.pspValidator.shared.engine.exceptions.ContractException;
-import nkp.pspValidator.shared.engine.exceptions.InvalidXPathExpressionException;
 import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -57,17 +51,15 @@ public class VfCheckPrimaryMetsStructLinksOk extends ValidationFunction {
     private ValidationResult validate(File primaryMetsFile) {
         ValidationResult result = new ValidationResult();
         try {
-            Document doc = engine.getXmlDocument(primaryMetsFile, true);
-            List<String> pageIds = getPageIdsFromPhysicalMap(doc);
-            List<String> logicalObjectIds = getObjectIdsFromLogicalMap(doc);
+            MetsIndex metsIndex = engine.getMetsIndex(primaryMetsFile);
+            List<String> pageIds = getPageIdsFromPhysicalMap(metsIndex);
+            Set<String> pageIdsSet = new HashSet<>(pageIds);
+            Set<String> logicalObjectIds = getObjectIdsFromLogicalMap(metsIndex);
 
-            NodeList smLinkEls = (NodeList) engine.buildXpath("/mets:mets/mets:structLink/mets:smLink")
-                    .evaluate(doc, XPathConstants.NODESET);
             Set<String> pageIdsConected = new HashSet<>();
-            for (int i = 0; i < smLinkEls.getLength(); i++) {
-                Element smLinkEl = (Element) smLinkEls.item(i);
-                String from = smLinkEl.getAttribute("xlink:from");
-                String to = smLinkEl.getAttribute("xlink:to");
+            for (MetsIndex.SmLink smLink : metsIndex.getSmLinks()) {
+                String from = smLink.getFrom();
+                String to = smLink.getTo();
                 if (from.isEmpty() && to.isEmpty()) {
                     result.addError(Level.ERROR, primaryMetsFile,
                             "nalezen element smLink s prázdnými/chybějícími atributy xlink:from a xlink:to");
@@ -83,7 +75,7 @@ public class VfCheckPrimaryMetsStructLinksOk extends ValidationFunction {
                                 "nalezen element smLink s hodnotou atributu xlink:from (%s), která neodpovídá žádnému atributu mets:div/@ID v logické strukturální mapě",
                                 from);
                     }
-                    if (!pageIds.contains(to)) {
+                    if (!pageIdsSet.contains(to)) {
                         result.addError(Level.ERROR, primaryMetsFile,
                                 "nalezen element smLink s hodnotou atributu xlink:to (%s), která neodpovídá žádné stránce ve fyzické strukturální mapě",
                                 to);
@@ -100,10 +92,6 @@ public class VfCheckPrimaryMetsStructLinksOk extends ValidationFunction {
                             pageId);
                 }
             }
-        } catch (InvalidXPathExpressionException e) {
-            result.addError(invalid(e));
-        } catch (XPathExpressionException e) {
-            result.addError(invalid(e));
         } catch (XmlFileParsingException e) {
             result.addError(invalid(e));
         } finally {
@@ -111,26 +99,35 @@ public class VfCheckPrimaryMetsStructLinksOk extends ValidationFunction {
         }
     }
 
-    private List<String> getObjectIdsFromLogicalMap(Document doc) throws InvalidXPathExpressionException, XPathExpressionException {
-        List<String> result = new ArrayList<>();
-        String structMapXpath = "/mets:mets/mets:structMap[@TYPE='LOGICAL']//mets:div/@ID";
-        NodeList ids = (NodeList) engine.buildXpath(structMapXpath).evaluate(doc, XPathConstants.NODESET);
-        for (int i = 0; i < ids.getLength(); i++) {
-            Node idAttr = ids.item(i);
-            String id = idAttr.getNodeValue();
-            result.add(id);
+    //mets:div/@ID kdekoli v logickych strukturalnich mapach
+    private Set<String> getObjectIdsFromLogicalMap(MetsIndex metsIndex) {
+        Set<String> result = new HashSet<>();
+        for (MetsIndex.StructMap structMap : metsIndex.getStructMaps("LOGICAL")) {
+            collectDivIds(structMap.getDivs(), result);
         }
         return result;
     }
 
-    private List<String> getPageIdsFromPhysicalMap(Document doc) throws InvalidXPathExpressionException, XPathExpressionException {
+    private void collectDivIds(List<MetsIndex.Div> divs, Set<String> result) {
+        for (MetsIndex.Div div : divs) {
+            if (div.hasId()) {
+                result.add(div.getId());
+            }
+            collectDivIds(div.getDivs(), result);
+        }
+    }
+
+    //mets:div/mets:div/@ID ve fyzickych strukturalnich mapach, v poradi dokumentu
+    private List<String> getPageIdsFromPhysicalMap(MetsIndex metsIndex) {
         List<String> result = new ArrayList<>();
-        String structMapXpath = "/mets:mets/mets:structMap[@TYPE='PHYSICAL']/mets:div/mets:div/@ID";
-        NodeList ids = (NodeList) engine.buildXpath(structMapXpath).evaluate(doc, XPathConstants.NODESET);
-        for (int i = 0; i < ids.getLength(); i++) {
-            Node idAttr = ids.item(i);
-            String id = idAttr.getNodeValue();
-            result.add(id);
+        for (MetsIndex.StructMap structMap : metsIndex.getStructMaps("PHYSICAL")) {
+            for (MetsIndex.Div topLevelDiv : structMap.getDivs()) {
+                for (MetsIndex.Div pageDiv : topLevelDiv.getDivs()) {
+                    if (pageDiv.hasId()) {
+                        result.add(pageDiv.getId());
+                    }
+                }
+            }
         }
         return result;
     }
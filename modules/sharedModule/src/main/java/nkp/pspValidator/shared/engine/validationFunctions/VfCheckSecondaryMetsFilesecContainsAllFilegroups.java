@@ -20,7 +20,7 @@ import java.util.List;
 /**
  * Created by Martin Řehánek on 1.11.16.
  */
-public class VfCheckSecondaryMetsFilesecContainsAllFilegroups extends ValidationFunction {
+public class VfCheckSecondaryMetsFilesecContainsAllFilegroups extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_SECONDARY_METS_FILES = "secondary-mets_files";
 
@@ -32,35 +32,36 @@ public class VfCheckSecondaryMetsFilesecContainsAllFilegroups extends Validation
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
             ValueEvaluation paramEvaluation = valueParams.getParams(PARAM_SECONDARY_METS_FILES).get(0).getEvaluation();
             List<File> files = (List<File>) paramEvaluation.getData();
             if (files == null) {
-                return invalidValueParamNull(PARAM_SECONDARY_METS_FILES, paramEvaluation);
+                return failedFileVisit(invalidValueParamNull(PARAM_SECONDARY_METS_FILES, paramEvaluation));
             }
 
-            return validate(files);
+            return fileVisit(files, this::validate);
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
-    private ValidationResult validate(List<File> files) {
-        ValidationResult result = new ValidationResult();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                result.addError(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
-                result.addError(invalidCannotReadDir(file));
-            } else {
-                checkFileValid(file, result);
-            }
+    private void validate(File file, ValidationResult result) {
+        if (engine.getFileSystem().isDirectory(file)) {
+            result.addError(invalidFileIsDir(file));
+        } else if (!engine.getFileSystem().canRead(file)) {
+            result.addError(invalidCannotReadDir(file));
+        } else {
+            checkFileValid(file, result);
         }
-        return result;
     }
 
     private void checkFileValid(File file, ValidationResult result) {
@@ -22,7 +22,7 @@ import java.util.List;
 /**
  * Created by Martin Řehánek on 1.11.16.
  */
-public class VfCheckSecondaryMetsPhysicalMapOk extends ValidationFunction {
+public class VfCheckSecondaryMetsPhysicalMapOk extends ValidationFunction implements FileVisitingFunction {
 
     public static final String PARAM_SECONDARY_METS_FILES = "secondary-mets_files";
     public static final String PARAM_EXPECTED_PAGE_TYPE = "expected_page_type";
@@ -38,48 +38,49 @@ public class VfCheckSecondaryMetsPhysicalMapOk extends ValidationFunction {
 
     @Override
     public ValidationResult validate() {
+        return validateFiles(prepareFileVisit());
+    }
+
+    @Override
+    public FileVisit prepareFileVisit() {
         try {
             checkContractCompliance();
 
             ValueEvaluation paramEvaluation = valueParams.getParams(PARAM_SECONDARY_METS_FILES).get(0).getEvaluation();
             List<File> metsFiles = (List<File>) paramEvaluation.getData();
             if (metsFiles == null) {
-                return invalidValueParamNull(PARAM_SECONDARY_METS_FILES, paramEvaluation);
+                return failedFileVisit(invalidValueParamNull(PARAM_SECONDARY_METS_FILES, paramEvaluation));
             }
 
             ValueEvaluation paramExpectedPageType = valueParams.getParams(PARAM_EXPECTED_PAGE_TYPE).get(0).getEvaluation();
             String expectedPageType = (String) paramExpectedPageType.getData();
             if (expectedPageType == null) {
-                return invalidValueParamNull(PARAM_EXPECTED_PAGE_TYPE, paramExpectedPageType);
+                return failedFileVisit(invalidValueParamNull(PARAM_EXPECTED_PAGE_TYPE, paramExpectedPageType));
             }
 
             ValueEvaluation paramFilegroupIds = valueParams.getParams(PARAM_FILEGROUP_IDS).get(0).getEvaluation();
             List<String> filegroupIds = (List<String>) paramFilegroupIds.getData();
             if (filegroupIds == null) {
-                return invalidValueParamNull(PARAM_FILEGROUP_IDS, paramFilegroupIds);
+                return failedFileVisit(invalidValueParamNull(PARAM_FILEGROUP_IDS, paramFilegroupIds));
             }
 
-            return validate(metsFiles, expectedPageType, filegroupIds);
+            return fileVisit(metsFiles, (file, result) -> validate(file, expectedPageType, filegroupIds, result));
         } catch (ContractException e) {
-            return invalidContractNotMet(e);
+            return failedFileVisit(invalidContractNotMet(e));
         } catch (Throwable e) {
             e.printStackTrace();
-            return invalidUnexpectedError(e);
+            return failedFileVisit(invalidUnexpectedError(e));
         }
     }
 
-    private ValidationResult validate(List<File> files, String expectedPageType, List<String> filegroupIds) {
-        ValidationResult result = new ValidationResult();
-        for (File file : files) {
-            if (file.isDirectory()) {
-                result.addError(invalidFileIsDir(file));
-            } else if (!file.canRead()) {
-                result.addError(invalidCannotReadDir(file));
-            } else {
-                checkFileValid(file, expectedPageType, filegroupIds, result);
-            }
+    private void validate(File file, String expectedPageType, List<String> filegroupIds, ValidationResult result) {
+        if (engine.getFileSystem().isDirectory(file)) {
+            result.addError(invalidFileIsDir(file));
+        } else if (!engine.getFileSystem().canRead(file)) {
+            result.addError(invalidCannotReadDir(file));
+        } else {
+            checkFileValid(file, expectedPageType, filegroupIds, result);
         }
-        return result;
     }
 
     private void checkFileValid(File file, String expectedPageType, List<String> filegroupIds, ValidationResult result) {
@@ -8,9 +8,13 @@ import nkp.pspValidator.shared.engine.exceptions.ContractException;
 import nkp.pspValidator.shared.engine.types.Identifier;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 public class VfCheckStringDerivedFromUrnnbnOrUuid extends ValidationFunction {
 
+    private static final Pattern UUID = Pattern.compile("uuid:[a-f0-9]{8}(-[a-f0-9]{4}){3}-[a-f0-9]{12}");
+    private static final Pattern URN_NBN = Pattern.compile("urn:nbn:cz:[A-Za-z0-9]{2,6}-[A-Za-z0-9]{6}");
+
     public static final String PARAM_STRING = "string";
 
     public static final String PARAM_IDENTIFIERS = "identifiers";
@@ -58,10 +62,10 @@ public class VfCheckStringDerivedFromUrnnbnOrUuid extends ValidationFunction {
         if (uuid == null && urnnbn == null) {
             return singlErrorResult(invalid(Level.ERROR, null, "nenalezen žádný z identifikátorů UUID ani URN:NBN"));
         }
-        if (uuid != null && !uuid.matches("uuid:[a-f0-9]{8}(-[a-f0-9]{4}){3}-[a-f0-9]{12}")) {
+        if (uuid != null && !UUID.matcher(uuid).matches()) {
             return singlErrorResult(invalid(Level.ERROR, null, "hodnota '%s' není ve formátu UUID", uuid));
         }
-        if (urnnbn != null && !urnnbn.matches("urn:nbn:cz:[A-Za-z0-9]{2,6}-[A-Za-z0-9]{6}")) {
+        if (urnnbn != null && !URN_NBN.matcher(urnnbn).matches()) {
             return singlErrorResult(invalid(Level.ERROR, null, "hodnota '%s' není ve formátu URN:NBN", urnnbn));
         }
         if (uuid != null && stringIsDerivedFromUUid(string, uuid)) {
@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared.engine.validationFunctions;
 
+import nkp.pspValidator.shared.XsdSchemaRegistry;
 import nkp.pspValidator.shared.engine.Engine;
 import nkp.pspValidator.shared.engine.Level;
 import nkp.pspValidator.shared.engine.ValueEvaluation;
@@ -9,17 +10,15 @@ import nkp.pspValidator.shared.engine.exceptions.EmptyParamEvaluationException;
 import nkp.pspValidator.shared.engine.params.ValueParam;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 
 /**
@@ -46,11 +45,11 @@ public class VfCheckXmlIsValidByXsd extends ValidationFunction {
             ValueEvaluation paramXsdFile = valueParams.getParams(PARAM_XSD_FILE).get(0).getEvaluation();
             File xsdFile = (File) paramXsdFile.getData();
             if (xsdFile == null) {
-            } else if (!xsdFile.exists()) {
+            } else if (!engine.getFileSystem().exists(xsdFile)) {
                 return singlErrorResult(invalidFileDoesNotExist(xsdFile));
-            } else if (xsdFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xsdFile)) {
                 return singlErrorResult(invalidFileIsDir(xsdFile));
-            } else if (!xsdFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xsdFile)) {
                 return singlErrorResult(invalidCannotReadFile(xsdFile));
             }
 
@@ -75,7 +74,8 @@ public class VfCheckXmlIsValidByXsd extends ValidationFunction {
     }
 
     private Set<File> mergeAbsolutFilesFromParams() throws EmptyParamEvaluationException {
-        Set<File> result = new HashSet<>();
+        //serazeno podle cesty, aby poradi problemu v protokolu bylo mezi behy stejne
+        Set<File> result = new TreeSet<>();
         List<ValueParam> fileParams = valueParams.getParams(PARAM_XML_FILE);
         for (ValueParam param : fileParams) {
             ValueEvaluation evaluation = param.getEvaluation();
@@ -100,20 +100,20 @@ public class VfCheckXmlIsValidByXsd extends ValidationFunction {
     }
 
     private ValidationResult validate(Set<File> xmlFiles, File xsdFile, Level level) {
-        ValidationResult result = new ValidationResult();
-        for (File xmlFile : xmlFiles) {
-            validate(xmlFile, xsdFile, level, result);
-        }
-        return result;
+        return validateFiles(xmlFiles, (xmlFile, result) -> validate(xmlFile, xsdFile, level, result));
     }
 
     private void validate(File xmlFile, File xsdFile, Level level, ValidationResult result) {
         try {
-            Source xmlFileSource = new StreamSource(xmlFile);
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = schemaFactory.newSchema(xsdFile);
-            Validator validator = schema.newValidator();
-            validator.validate(xmlFileSource);
+            Validator validator = XsdSchemaRegistry.getInstance().newValidator(xsdFile, false);
+            if (engine.getFileSystem().isInArchive(xmlFile)) {
+                try (InputStream in = engine.getFileSystem().openStream(xmlFile)) {
+                    validator.validate(new StreamSource(in, xmlFile.toURI().toString()));
+                }
+            } else {
+                Source xmlFileSource = new StreamSource(xmlFile);
+                validator.validate(xmlFileSource);
+            }
         } catch (SAXException e) {
             result.addError(level, xmlFile, "obsah souboru není validní podle Xml schema ze souboru %s: %s", xsdFile.getAbsolutePath(), e.getMessage());
         } catch (IOException e) {
@@ -11,6 +11,7 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 
 /**
@@ -36,11 +37,11 @@ public class VfCheckXmlIsWellBuilt extends ValidationFunction {
             File xmlFile = (File) paramXmlFile.getData();
             if (xmlFile == null) {
                 return invalidValueParamNull(PARAM_XML_FILE, paramXmlFile);
-            } else if (!xmlFile.exists()) {
+            } else if (!engine.getFileSystem().exists(xmlFile)) {
                 return singlErrorResult(invalidFileDoesNotExist(xmlFile));
-            } else if (xmlFile.isDirectory()) {
+            } else if (engine.getFileSystem().isDirectory(xmlFile)) {
                 return singlErrorResult(invalidFileIsDir(xmlFile));
-            } else if (!xmlFile.canRead()) {
+            } else if (!engine.getFileSystem().canRead(xmlFile)) {
                 return singlErrorResult(invalidCannotReadFile(xmlFile));
             }
 
@@ -55,7 +56,13 @@ public class VfCheckXmlIsWellBuilt extends ValidationFunction {
     private ValidationResult validate(File file) {
         ValidationResult result = new ValidationResult();
         try {
-            XmlUtils.buildDocumentFromFile(file, false);
+            if (engine.getFileSystem().isInArchive(file)) {
+                try (InputStream in = engine.getFileSystem().openStream(file)) {
+                    XmlUtils.buildDocumentFromStream(in, file.toURI().toString(), false);
+                }
+            } else {
+                XmlUtils.buildDocumentFromFile(file, false);
+            }
         } catch (ParserConfigurationException e) {
             result.addError(invalid(Level.ERROR, file, "ParserConfigurationException při zpracování souboru: %s", e.getMessage()));
         } catch (SAXException e) {
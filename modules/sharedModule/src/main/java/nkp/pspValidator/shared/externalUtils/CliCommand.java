@@ -1,82 +1,181 @@
 package nkp.pspValidator.shared.externalUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
+ * Spuštění externího programu s přečtením standardního a chybového výstupu.
+ * <p>
+ * Volitelně s časovým limitem a s limitem velikosti zachyceného výstupu. Při překročení se ukončí proces i všechny
+ * jeho podprocesy (např. JVM spuštěná skriptem nástroje) a vyhodí se CliCommandLimitException.
+ * <p>
  * Created by Martin Řehánek on 29.9.16.
  */
 public class CliCommand {
 
+    //vlakna pro cteni vystupu procesu, sdilena vsemi spustenimi misto dvou novych vlaken pro kazde spusteni
+    private static final ExecutorService STREAM_READERS = buildStreamReaders();
+
     private final String[] command;
+    //0 znamena bez casoveho limitu
+    private final long timeoutMillis;
+    //limit pro kazdy z vystupu (stdout, stderr) zvlast
+    private final long maxOutputChars;
 
     public CliCommand(String[] command) {
+        this(command, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param timeoutMillis  jak dlouho nejvýše může program běžet, 0 znamená bez limitu
+     * @param maxOutputChars kolik znaků standardního i chybového výstupu se nejvýše zachytí
+     */
+    public CliCommand(String[] command, long timeoutMillis, long maxOutputChars) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException(String.format("časový limit nesmí být záporný, ne %d", timeoutMillis));
+        }
+        if (maxOutputChars < 1) {
+            throw new IllegalArgumentException(String.format("limit výstupu musí být kladný, ne %d", maxOutputChars));
+        }
         this.command = command;
+        this.timeoutMillis = timeoutMillis;
+        //vic se do StringBuilderu nevejde
+        this.maxOutputChars = Math.min(maxOutputChars, Integer.MAX_VALUE - 8);
+    }
+
+    private static ExecutorService buildStreamReaders() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "cli-command-stream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     public Result execute() throws CliCommandException {
+        //System.out.println("command: " + this);
+        Process process;
         try {
-            //System.out.println("command: " + this);
-            Process process = Runtime.getRuntime().exec(command);
-            //TODO: perhaps thread pooling here
-
-            //read standard error stream in separate thread
-            StringBuilder stderrBuilder = new StringBuilder();
-            Thread errThread = new Thread(() -> {
-                try {
-                    BufferedReader stderrReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-                    String line;
-                    while ((line = stderrReader.readLine()) != null) {
-                        stderrBuilder.append(line);
-                        stderrBuilder.append('\n');
-                    }
-                    stderrReader.close();
-                } catch (IOException e) {
-                    //e.printStackTrace();
-                    //nothing, only main thread running program itself shoud propagate exception
+            process = Runtime.getRuntime().exec(command);
+        } catch (IOException e) {
+            throw new CliCommandException(e.getMessage(), e);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        AtomicBoolean outputLimitExceeded = new AtomicBoolean(false);
+        //read standard output and standard error streams in separate threads
+        Future<String> stdoutFuture = STREAM_READERS.submit(() -> readStream(process.getInputStream(), process, outputLimitExceeded));
+        Future<String> stderrFuture = STREAM_READERS.submit(() -> readStream(process.getErrorStream(), process, outputLimitExceeded));
+        try {
+            //wait for process and both readers to finish
+            String stdOut;
+            String stdErr;
+            if (timeoutMillis == 0) {
+                process.waitFor();
+                stdOut = stdoutFuture.get();
+                stdErr = stderrFuture.get();
+            } else {
+                //vystup muze drzet otevreny i podproces, ktery prezil ukonceni hlavniho procesu, proto limit i pro cteni
+                if (!process.waitFor(remainingNanos(deadline), TimeUnit.NANOSECONDS)) {
+                    throw timeout(process, stdoutFuture, stderrFuture);
                 }
-            });
-
-            //read standard output stream in separate thread
-            StringBuilder stdoutBuilder = new StringBuilder();
-            Thread outThread = new Thread(() -> {
                 try {
-                    BufferedReader stdoutReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    String line;
-                    while ((line = stdoutReader.readLine()) != null) {
-                        stdoutBuilder.append(line);
-                        stdoutBuilder.append('\n');
-                        //System.err.println(line);
-                    }
-                    stdoutReader.close();
-                } catch (IOException e) {
-                    //e.printStackTrace();
-                    //nothing, only main thread running program itself shoud propagate exception
+                    stdOut = stdoutFuture.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+                    stdErr = stderrFuture.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    throw timeout(process, stdoutFuture, stderrFuture);
                 }
-            });
-            //start threads to read output streams
-            outThread.start();
-            errThread.start();
-
-            //wait for all 3 threads to finish
-            int exitValue = process.waitFor();
-            outThread.join();
-            errThread.join();
-            String stdOut = stdoutBuilder.toString();
-            String stdErr = stderrBuilder.toString();
+            }
+            if (outputLimitExceeded.get()) {
+                throw new CliCommandOutputLimitException(String.format("výstup programu přesáhl %d znaků, program byl ukončen", maxOutputChars));
+            }
             /*System.err.println("SOUT: " + stdOut);
             System.err.println("SERR: " + stdErr);*/
-            Result result = new Result(exitValue, stdOut, stdErr);
+            Result result = new Result(process.exitValue(), stdOut, stdErr);
             //result.print();
             return result;
-        } catch (Throwable e) {
+        } catch (InterruptedException e) {
+            //validace byla prerusena (zrusena), program nema bezet dal
+            destroyProcessTree(process);
+            Thread.currentThread().interrupt();
+            throw new CliCommandException("přerušeno: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new CliCommandException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private CliCommandTimeoutException timeout(Process process, Future<String> stdoutFuture, Future<String> stderrFuture) {
+        destroyProcessTree(process);
+        //ctecky skonci samy po uzavreni vystupu ukoncenych procesu
+        stdoutFuture.cancel(false);
+        stderrFuture.cancel(false);
+        return new CliCommandTimeoutException(String.format("program neskončil do %d ms, byl ukončen", timeoutMillis));
+    }
+
+    private static long remainingNanos(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Čte výstup po řádcích stejně jako BufferedReader.readLine() (konce řádků převedené na '\n', '\n' i za posledním
+     * řádkem), ale bez načtení celého, třeba i nekonečného řádku do paměti.
+     */
+    private String readStream(InputStream stream, Process process, AtomicBoolean outputLimitExceeded) {
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = new InputStreamReader(stream)) {
+            char[] buffer = new char[8192];
+            boolean skipLf = false;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                if (builder.length() + read > maxOutputChars) {
+                    outputLimitExceeded.set(true);
+                    destroyProcessTree(process);
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\r') {
+                        builder.append('\n');
+                        skipLf = true;
+                    } else {
+                        if (c != '\n' || !skipLf) {
+                            builder.append(c);
+                        }
+                        skipLf = false;
+                    }
+                }
+            }
+        } catch (IOException e) {
             //e.printStackTrace();
-            //throw e;
-            //return null;
-            //return new Result(-1,null, e.getMessage());
-            throw new CliCommandException(e.getMessage());
+            //nothing, only main thread running program itself shoud propagate exception
+        }
+        if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Násilně ukončí proces i jeho podprocesy. Podprocesy se zjišťují předem, po ukončení rodiče už by je nešlo dohledat.
+     */
+    static void destroyProcessTree(Process process) {
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        for (ProcessHandle descendant : descendants) {
+            descendant.destroyForcibly();
         }
     }
 
@@ -127,5 +226,31 @@ public class CliCommand {
         }
     }
 
+    /**
+     * Program byl ukončen validátorem kvůli překročení limitu, o výsledku validace souboru tedy nic neříká.
+     */
+    public static class CliCommandLimitException extends CliCommandException {
+        private static final long serialVersionUID = 1L;
+
+        public CliCommandLimitException(String message) {
+            super(message);
+        }
+    }
+
+    public static class CliCommandTimeoutException extends CliCommandLimitException {
+        private static final long serialVersionUID = 1L;
+
+        public CliCommandTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    public static class CliCommandOutputLimitException extends CliCommandLimitException {
+        private static final long serialVersionUID = 1L;
+
+        public CliCommandOutputLimitException(String message) {
+            super(message);
+        }
+    }
 
 }
@@ -1,8 +1,9 @@
 package nkp.pspValidator.shared.externalUtils;
 
+import java.io.Serializable;
 import java.util.Objects;
 
-public class ExternalUtilExecution {
+public class ExternalUtilExecution implements Serializable {
     private final String name;
     private final ExternalUtil util;
 
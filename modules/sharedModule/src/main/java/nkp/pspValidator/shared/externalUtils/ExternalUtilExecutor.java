@@ -0,0 +1,132 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Souběžné spouštění externích nástrojů nad binárními soubory s limitem počtu současně běžících procesů pro každý nástroj
+ * zvlášť (např. Jpylyzer 8x, ale paměťově náročný JHOVE jen 2x).
+ * <p>
+ * Každý nástroj má vlastní frontu a pool vláken velikosti podle limitu. Fronty sdílí všechna pravidla (a všechny balíky)
+ * používající stejný ExternalUtilManager, limit tedy platí pro celý běh validátoru, ne pro jednotlivé pravidlo.
+ * Přes pool se nástroj spouští i s limitem 1 (výchozí), jinak by při souběžném vyhodnocení pravidel nebo balíků běželo
+ * víc procesů nástroje najednou.
+ */
+public class ExternalUtilExecutor {
+
+    private final Map<ExternalUtil, Integer> threads = new EnumMap<>(ExternalUtil.class);
+    private final Map<ExternalUtil, ExecutorService> executors = new EnumMap<>(ExternalUtil.class);
+
+    /**
+     * Zpracuje limity ve tvaru "POCET" (všechny nástroje) nebo "NASTROJ=POCET", více položek oddělených čárkou,
+     * např. "4,JHOVE=2". Položka pro konkrétní nástroj má přednost před společným počtem.
+     *
+     * @throws IllegalArgumentException pro neznámý nástroj nebo počet menší než 1
+     */
+    public static Map<ExternalUtil, Integer> parseThreads(String definition) {
+        return parsePerUtil(definition, count -> parsePositive(count, "neplatný počet vláken '%s'", "počet vláken musí být alespoň 1, ne %d"));
+    }
+
+    /**
+     * Zpracuje hodnoty pro nástroje ve tvaru "HODNOTA" (všechny nástroje) nebo "NASTROJ=HODNOTA", více položek
+     * oddělených čárkou. Položka pro konkrétní nástroj má přednost před společnou hodnotou.
+     *
+     * @throws IllegalArgumentException pro neznámý nástroj, nebo pokud parseValue hodnotu odmítne
+     */
+    static Map<ExternalUtil, Integer> parsePerUtil(String definition, Function<String, Integer> parseValue) {
+        Map<ExternalUtil, Integer> result = new EnumMap<>(ExternalUtil.class);
+        Map<ExternalUtil, Integer> explicit = new EnumMap<>(ExternalUtil.class);
+        for (String item : definition.split(",")) {
+            item = item.trim();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int separator = item.indexOf('=');
+            if (separator == -1) {
+                int value = parseValue.apply(item);
+                for (ExternalUtil util : ExternalUtil.values()) {
+                    result.put(util, value);
+                }
+            } else {
+                String utilName = item.substring(0, separator).trim().toUpperCase();
+                ExternalUtil util;
+                try {
+                    util = ExternalUtil.valueOf(utilName);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("neznámý nástroj '%s'", utilName));
+                }
+                explicit.put(util, parseValue.apply(item.substring(separator + 1).trim()));
+            }
+        }
+        result.putAll(explicit);
+        return result;
+    }
+
+    static int parsePositive(String value, String invalidMessage, String notPositiveMessage) {
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format(invalidMessage, value));
+        }
+        if (result < 1) {
+            throw new IllegalArgumentException(String.format(notPositiveMessage, result));
+        }
+        return result;
+    }
+
+    public synchronized int getThreads(ExternalUtil util) {
+        Integer result = threads.get(util);
+        return result == null ? 1 : result;
+    }
+
+    public synchronized void setThreads(ExternalUtil util, int utilThreads) {
+        if (utilThreads < 1) {
+            throw new IllegalArgumentException(String.format("počet vláken musí být alespoň 1, ne %d", utilThreads));
+        }
+        if (getThreads(util) == utilThreads) {
+            //pool muzou prave pouzivat validace jinych baliku
+            return;
+        }
+        ExecutorService executor = executors.remove(util);
+        if (executor != null) {
+            executor.shutdown();
+        }
+        threads.put(util, utilThreads);
+    }
+
+    public void setThreads(Map<ExternalUtil, Integer> utilThreads) {
+        for (Map.Entry<ExternalUtil, Integer> entry : utilThreads.entrySet()) {
+            setThreads(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return sdílený pool pro spouštění nástroje, s počtem vláken podle limitu nástroje
+     */
+    public synchronized ExecutorService getExecutor(ExternalUtil util) {
+        int utilThreads = getThreads(util);
+        ExecutorService executor = executors.get(util);
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            String threadPrefix = "external-util-" + util.name().toLowerCase() + "-";
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(utilThreads, utilThreads,
+                    30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, threadPrefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            //ExternalUtilManager nema zadne ukonceni, necinna vlakna proto musi zaniknout sama
+            threadPool.allowCoreThreadTimeOut(true);
+            executor = threadPool;
+            executors.put(util, executor);
+        }
+        return executor;
+    }
+}
@@ -1,26 +1,44 @@
 package nkp.pspValidator.shared.externalUtils;
 
+import nkp.pspValidator.shared.engine.RegexpRegistry;
 import nkp.pspValidator.shared.externalUtils.UtilHandler.CommandData;
 import nkp.pspValidator.shared.externalUtils.UtilHandler.Parser;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by Martin Řehánek on 14.11.16.
  */
 public class ExternalUtilManager {
 
+    //vic znaku vystupu jednoho spusteni nastroje se nezachyti, aby nastroj s nekonecnym vystupem nevycerpal pamet
+    public static final long DEFAULT_MAX_OUTPUT_CHARS = 64L * 1024 * 1024;
+
     private final Map<ExternalUtil, UtilHandler> utilVersionDetectionHandlers;
     private final Map<ExternalUtilExecution, UtilHandler> utilExecutionHandlers;
     private final Map<String, Boolean> utilAvailable = new HashMap<>();
 
     private final Set<ExternalUtil> utilsDisabled = new HashSet<>();
+    private final ExternalUtilExecutor executor = new ExternalUtilExecutor();
+    //kolik souboru predat jednomu spusteni nastroje, 1 znamena spousteni pro kazdy soubor zvlast
+    private volatile int batchSize = 1;
+    //verze nastroju zjistene v runUtilVersionDetection(), bez verze se vystupy nastroje necachuji
+    private final Map<ExternalUtil, String> utilVersions = new ConcurrentHashMap<>();
+    private volatile ExternalUtilOutputCache outputCache;
+    //casove limity spusteni nastroju v sekundach, neuvedene nastroje bez limitu
+    private volatile Map<ExternalUtil, Integer> timeouts = new EnumMap<>(ExternalUtil.class);
+    private volatile long maxOutputChars = DEFAULT_MAX_OUTPUT_CHARS;
+    private final ExternalUtilMetrics metrics = new ExternalUtilMetrics();
 
     public ExternalUtilManager(Map<ExternalUtil, UtilHandler> utilVersionDetectionHandlers, Map<ExternalUtilExecution, UtilHandler> utilExecutionHandlers) {
         this.utilVersionDetectionHandlers = utilVersionDetectionHandlers;
@@ -38,6 +56,88 @@ public class ExternalUtilManager {
         return utilsDisabled.contains(util);
     }
 
+    /**
+     * @return souběžné spouštění nástrojů, sdílené všemi validacemi používajícími tento manager
+     */
+    public ExternalUtilExecutor getExecutor() {
+        return executor;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("velikost dávky musí být alespoň 1, ne %d", batchSize));
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return kolik souborů předat jednomu spuštění, 1, pokud spuštění nad více soubory není povolené nebo definované
+     */
+    public int getBatchSize(ExternalUtilExecution execution) {
+        UtilHandler utilHandler = utilExecutionHandlers.get(execution);
+        if (utilHandler == null || utilHandler.getBatch() == null) {
+            return 1;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Zpracuje časové limity v sekundách ve tvaru "SEKUNDY" (všechny nástroje) nebo "NASTROJ=SEKUNDY", více položek
+     * oddělených čárkou, např. "300,KAKADU=60".
+     *
+     * @throws IllegalArgumentException pro neznámý nástroj nebo limit menší než 1
+     */
+    public static Map<ExternalUtil, Integer> parseTimeouts(String definition) {
+        return ExternalUtilExecutor.parsePerUtil(definition, seconds -> ExternalUtilExecutor.parsePositive(seconds,
+                "neplatný časový limit '%s'", "časový limit musí být alespoň 1 s, ne %d"));
+    }
+
+    /**
+     * Nastaví časové limity spuštění nástrojů. Nástroj, který limit překročí, se i se svými podprocesy ukončí.
+     * Spuštění nad dávkou souborů má limit násobený počtem souborů.
+     *
+     * @param timeouts limity v sekundách, neuvedené nástroje běží bez limitu
+     */
+    public void setTimeouts(Map<ExternalUtil, Integer> timeouts) {
+        Map<ExternalUtil, Integer> copy = new EnumMap<>(ExternalUtil.class);
+        for (Map.Entry<ExternalUtil, Integer> entry : timeouts.entrySet()) {
+            if (entry.getValue() < 1) {
+                throw new IllegalArgumentException(String.format("časový limit musí být alespoň 1 s, ne %d", entry.getValue()));
+            }
+            copy.put(entry.getKey(), entry.getValue());
+        }
+        this.timeouts = copy;
+    }
+
+    /**
+     * @return časový limit nástroje v sekundách, nebo null, pokud není omezený
+     */
+    public Integer getTimeout(ExternalUtil util) {
+        return timeouts.get(util);
+    }
+
+    /**
+     * Kolik znaků standardního i chybového výstupu jednoho spuštění nástroje se nejvýše zachytí, při překročení se
+     * nástroj ukončí. Spuštění nad dávkou souborů má limit násobený počtem souborů.
+     */
+    public void setMaxOutputChars(long maxOutputChars) {
+        if (maxOutputChars < 1) {
+            throw new IllegalArgumentException(String.format("limit výstupu musí být kladný, ne %d", maxOutputChars));
+        }
+        this.maxOutputChars = maxOutputChars;
+    }
+
+    public long getMaxOutputChars() {
+        return maxOutputChars;
+    }
+
+    /**
+     * @return počty a doby spuštění nástrojů od vytvoření manageru
+     */
+    public ExternalUtilMetrics getMetrics() {
+        return metrics;
+    }
+
     public boolean isVersionDetectionDefined(ExternalUtil type) {
         return utilVersionDetectionHandlers.containsKey(type);
     }
@@ -68,15 +168,19 @@ public class ExternalUtilManager {
         }
         for (ExternalUtilExecution execution : utilExecutionHandlers.keySet()) {
             if (execution.getUtil() == util) {
-                utilExecutionHandlers.get(execution).getCommandData().setPath(path);
+                UtilHandler utilHandler = utilExecutionHandlers.get(execution);
+                utilHandler.getCommandData().setPath(path);
+                if (utilHandler.getBatch() != null) {
+                    utilHandler.getBatch().getCommandData().setPath(path);
+                }
             }
         }
     }
 
     public String runUtilVersionDetection(ExternalUtil util) throws CliCommand.CliCommandException {
         UtilHandler versionDetection = utilVersionDetectionHandlers.get(util);
-        String[] command = buildCommand(versionDetection.getCommandData(), null);
-        CliCommand.Result result = new CliCommand(command).execute();
+        String[] command = buildCommand(versionDetection.getCommandData(), (File) null);
+        CliCommand.Result result = buildCliCommand(util, command, 1).execute();
         String rawOutput = null;
         Parser parser = versionDetection.getParser();
         Stream stream = parser.getStream();
@@ -93,21 +197,90 @@ public class ExternalUtilManager {
         if (rawOutput != null && !rawOutput.isEmpty()) {
             String parsed = parseData(rawOutput, parser);
             if (parsed == null || parsed.isEmpty()) {
-                System.out.println("'" + rawOutput + "'");
-
+                //vystup je soucasti hlasky, ladici vypis na stdout by se michal s vystupem validace
                 throw new CliCommand.CliCommandException("verze nenalezena ve výstupu: " + rawOutput);
             } else {
-                return parsed.trim();
+                String version = parsed.trim();
+                utilVersions.put(util, version);
+                return version;
             }
         } else {
             throw new CliCommand.CliCommandException("prázdný výstup");
         }
     }
 
+    /**
+     * @return verze nástroje zjištěná v runUtilVersionDetection(), nebo null
+     */
+    public String getUtilVersion(ExternalUtil util) {
+        return utilVersions.get(util);
+    }
+
+    /**
+     * @param outputCache perzistentní cache výstupů nástrojů, null znamená bez cache
+     */
+    public void setOutputCache(ExternalUtilOutputCache outputCache) {
+        this.outputCache = outputCache;
+    }
+
+    public ExternalUtilOutputCache getOutputCache() {
+        return outputCache;
+    }
+
+    /**
+     * @return výstup z cache, nebo null, pokud cache není nastavená, verze nástroje není známá nebo výstup v cache není
+     */
+    private String getCachedOutput(ExternalUtilExecution utilExecution, File targetFile) {
+        ExternalUtilOutputCache cache = outputCache;
+        String version = utilVersions.get(utilExecution.getUtil());
+        if (cache == null || version == null) {
+            return null;
+        }
+        try {
+            return cache.get(targetFile, utilExecution, version, commandKey(utilExecution));
+        } catch (IOException e) {
+            //soubor nejde precist, nastroj se spusti a chybu ohlasi sam
+            return null;
+        }
+    }
+
+    private void cacheOutput(ExternalUtilExecution utilExecution, File targetFile, String output) {
+        ExternalUtilOutputCache cache = outputCache;
+        String version = utilVersions.get(utilExecution.getUtil());
+        if (cache == null || version == null) {
+            return;
+        }
+        try {
+            cache.put(targetFile, utilExecution, version, commandKey(utilExecution), output);
+        } catch (IOException e) {
+            //nic, vystup jen nebude v cache
+        }
+    }
+
+    /**
+     * @return příkaz spuštění nad jedním souborem s dosazenou cestou k nástroji a zpracování výstupu, výstupy
+     * z cache pro jiný příkaz (např. po změně externalUtils.xml nebo cesty k nástroji) se nepoužijí
+     */
+    private String commandKey(ExternalUtilExecution utilExecution) {
+        UtilHandler utilHandler = utilExecutionHandlers.get(utilExecution);
+        Parser parser = utilHandler.getParser();
+        return String.join(" ", buildCommand(utilHandler.getCommandData(), (File) null))
+                + '\n' + parser.getStream() + '\n' + parser.getRegexp();
+    }
+
     public String runUtilExecution(ExternalUtilExecution utilExecution, File targetFile) throws CliCommand.CliCommandException {
+        String output = getCachedOutput(utilExecution, targetFile);
+        if (output == null) {
+            output = executeUtil(utilExecution, targetFile);
+            cacheOutput(utilExecution, targetFile, output);
+        }
+        return output;
+    }
+
+    private String executeUtil(ExternalUtilExecution utilExecution, File targetFile) throws CliCommand.CliCommandException {
         UtilHandler utilHandler = utilExecutionHandlers.get(utilExecution);
         String[] command = buildCommand(utilHandler.getCommandData(), targetFile);
-        CliCommand.Result result = new CliCommand(command).execute();
+        CliCommand.Result result = execute(utilExecution, command, 1);
         String rawOutput = null;
         Stream stream = utilHandler.getParser().getStream();
         switch (stream) {
@@ -128,6 +301,110 @@ public class ExternalUtilManager {
         }
     }
 
+    /**
+     * Spustí nástroj nad více soubory najednou a rozdělí výstup na výstupy jednotlivých souborů.
+     * Soubory s výstupem v cache se nástroji nepředávají.
+     *
+     * @return výstupy podle souboru, soubory, které ve výstupu nejsou, ve výsledku chybí
+     */
+    public Map<File, String> runUtilExecution(ExternalUtilExecution utilExecution, List<File> targetFiles) throws CliCommand.CliCommandException {
+        Map<File, String> outputs = new HashMap<>();
+        List<File> filesToRun = new ArrayList<>(targetFiles.size());
+        for (File targetFile : targetFiles) {
+            String output = getCachedOutput(utilExecution, targetFile);
+            if (output != null) {
+                outputs.put(targetFile, output);
+            } else {
+                filesToRun.add(targetFile);
+            }
+        }
+        if (!filesToRun.isEmpty()) {
+            Map<File, String> executed = executeUtil(utilExecution, filesToRun);
+            for (Map.Entry<File, String> entry : executed.entrySet()) {
+                cacheOutput(utilExecution, entry.getKey(), entry.getValue());
+            }
+            outputs.putAll(executed);
+        }
+        return outputs;
+    }
+
+    private Map<File, String> executeUtil(ExternalUtilExecution utilExecution, List<File> targetFiles) throws CliCommand.CliCommandException {
+        UtilHandler utilHandler = utilExecutionHandlers.get(utilExecution);
+        UtilHandler.Batch batch = utilHandler.getBatch();
+        if (batch == null) {
+            throw new IllegalStateException("spuštění nad více soubory není definováno: " + utilExecution);
+        }
+        String[] command = buildCommand(batch.getCommandData(), targetFiles);
+        CliCommand.Result result = execute(utilExecution, command, targetFiles.size());
+        String rawOutput = null;
+        Stream stream = utilHandler.getParser().getStream();
+        switch (stream) {
+            case STDERR:
+                rawOutput = result.getStderr();
+                break;
+            case STDOUT:
+                rawOutput = result.getStdout();
+                break;
+            default:
+                throw new IllegalStateException("unexpected stream " + stream);
+        }
+        if (rawOutput == null) {
+            throw new CliCommand.CliCommandException("chybí výstup");
+        }
+        String parsed = parseData(rawOutput, utilHandler.getParser());
+        if (parsed == null || parsed.isEmpty()) {
+            throw new CliCommand.CliCommandException("prázdný výstup");
+        }
+        Map<String, String> outputsByPath = batch.getSplitter().split(parsed);
+        Map<File, String> outputs = new HashMap<>();
+        for (File targetFile : targetFiles) {
+            String output = outputsByPath.get(targetFile.getAbsolutePath());
+            if (output != null) {
+                outputs.put(targetFile, output.trim());
+            }
+        }
+        return outputs;
+    }
+
+    private CliCommand buildCliCommand(ExternalUtil util, String[] command, int files) {
+        Integer timeout = timeouts.get(util);
+        long timeoutMillis = timeout == null ? 0 : timeout * 1000L * files;
+        long maxChars = maxOutputChars;
+        return new CliCommand(command, timeoutMillis, maxChars > Long.MAX_VALUE / files ? Long.MAX_VALUE : maxChars * files);
+    }
+
+    private CliCommand.Result execute(ExternalUtilExecution utilExecution, String[] command, int files) throws CliCommand.CliCommandException {
+        long start = System.nanoTime();
+        ExternalUtilMetrics.Outcome outcome = ExternalUtilMetrics.Outcome.FAILED;
+        try {
+            CliCommand.Result result = buildCliCommand(utilExecution.getUtil(), command, files).execute();
+            outcome = ExternalUtilMetrics.Outcome.FINISHED;
+            return result;
+        } catch (CliCommand.CliCommandTimeoutException e) {
+            outcome = ExternalUtilMetrics.Outcome.TIMEOUT;
+            throw e;
+        } catch (CliCommand.CliCommandOutputLimitException e) {
+            outcome = ExternalUtilMetrics.Outcome.OUTPUT_LIMIT;
+            throw e;
+        } finally {
+            metrics.record(utilExecution, files, System.nanoTime() - start, outcome);
+        }
+    }
+
+    private String[] buildCommand(CommandData commandData, List<File> targetFiles) {
+        List<String> result = new ArrayList<>();
+        for (String token : buildCommand(commandData, (File) null)) {
+            if ("${TARGET_FILES}".equals(token)) {
+                for (File targetFile : targetFiles) {
+                    result.add(targetFile.getAbsolutePath());
+                }
+            } else {
+                result.add(token);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
     private String[] buildCommand(CommandData commandData, File targetFile) {
         String utilPath = commandData.getPath() == null ? "" : commandData.getPath().getAbsolutePath();
         if (!utilPath.isEmpty() && !utilPath.endsWith(File.separator)) {
@@ -150,8 +427,12 @@ public class ExternalUtilManager {
             return rawOutput;
         } else {
             //System.out.println("raw output: " + rawOutput);
-            Matcher m = Pattern.compile(parser.getRegexp()).matcher(rawOutput);
+            Matcher m = RegexpRegistry.get(parser.getRegexp()).matcher(rawOutput);
             if (m.find()) {
+                if (m.start() == 0 && m.end() == rawOutput.length()) {
+                    //typicky (?s).*, vystup muze mit i megabajty, nekopiruje se
+                    return rawOutput;
+                }
                 //first appearance
                 String result = m.group(0);
                 //System.err.println("match: "  + result);
@@ -7,6 +7,7 @@ import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException
 import org.w3c.dom.Element;
 
 import java.io.File;
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,7 +18,7 @@ import static nkp.pspValidator.shared.XmlUtils.getFirstChildElementsByName;
 /**
  * Created by Martin Řehánek on 29.9.16.
  */
-public class ExternalUtilManagerFactory {
+public class ExternalUtilManagerFactory implements Serializable {
 
     private static ExternalUtilManagerFactory instance;
 
@@ -59,7 +60,12 @@ public class ExternalUtilManagerFactory {
                     Stream stream = Stream.valueOf(streamEl.getTextContent().trim());
                     //System.err.println(String.format("execution: os: %s, util: %s, name: %s, stream: %s", os, util, executionName, stream));
                     String regexp = getFirstChildElementsByName(parserEl, "regexp").getTextContent().trim();
-                    addUtilityExecution(os, util, executionName, command, stream, regexp);
+                    UtilHandler.Batch batch = null;
+                    Element batchEl = getFirstChildElementsByName(osEl, "batch");
+                    if (batchEl != null) {
+                        batch = buildBatch(batchEl);
+                    }
+                    addUtilityExecution(os, util, executionName, command, stream, regexp, batch);
                 }
             }
         }
@@ -77,7 +83,25 @@ public class ExternalUtilManagerFactory {
         );
     }
 
-    private void addUtilityExecution(OperatingSystem os, ExternalUtil util, String executionName, String rawCommand, Stream outStream, String outRegexp) {
+    private UtilHandler.Batch buildBatch(Element batchEl) throws ValidatorConfigurationException {
+        String command = getFirstChildElementsByName(batchEl, "command").getTextContent().trim();
+        if (!command.contains("${TARGET_FILES}")) {
+            throw new ValidatorConfigurationException("příkaz pro spuštění nad více soubory neobsahuje ${TARGET_FILES}: " + command);
+        }
+        OutputSplitter splitter;
+        Element byXmlElementEl = getFirstChildElementsByName(batchEl, "splitByXmlElement");
+        Element byLineEl = getFirstChildElementsByName(batchEl, "splitByLine");
+        if (byXmlElementEl != null) {
+            splitter = new OutputSplitter.ByXmlElement(byXmlElementEl.getAttribute("name"), byXmlElementEl.getAttribute("pathAttribute"));
+        } else if (byLineEl != null) {
+            splitter = new OutputSplitter.ByLine(byLineEl.getAttribute("regexp"));
+        } else {
+            throw new ValidatorConfigurationException("chybí způsob rozdělení výstupu (splitByXmlElement nebo splitByLine) pro příkaz " + command);
+        }
+        return new UtilHandler.Batch(new UtilHandler.CommandData(command), splitter);
+    }
+
+    private void addUtilityExecution(OperatingSystem os, ExternalUtil util, String executionName, String rawCommand, Stream outStream, String outRegexp, UtilHandler.Batch batch) {
         ExternalUtilExecution execution = new ExternalUtilExecution(executionName, util);
         if (!utilExecutionInfoByOs.containsKey(os)) {
             utilExecutionInfoByOs.put(os, new HashMap<>());
@@ -85,7 +109,8 @@ public class ExternalUtilManagerFactory {
         utilExecutionInfoByOs.get(os).put(execution,
                 new UtilHandler(
                         new UtilHandler.CommandData(rawCommand),
-                        new UtilHandler.Parser(outStream, outRegexp)
+                        new UtilHandler.Parser(outStream, outRegexp),
+                        batch
                 )
         );
     }
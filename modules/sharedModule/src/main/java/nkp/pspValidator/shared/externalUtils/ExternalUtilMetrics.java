@@ -0,0 +1,167 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Počty a doby spuštění externích nástrojů podle spuštění (ExternalUtilExecution), za celou dobu života
+ * ExternalUtilManager, tedy případně přes všechny validované balíky.
+ * <p>
+ * Spuštění nad dávkou souborů se počítá jako jedno spuštění s dobou běhu celé dávky. Pro percentily se uchovává
+ * nejvýše MAX_SAMPLES dob běhu (náhodný vzorek, pokud je spuštění víc).
+ */
+public class ExternalUtilMetrics {
+
+    static final int MAX_SAMPLES = 10000;
+
+    public enum Outcome {
+        //nastroj dobehl (s jakymkoliv navratovym kodem)
+        FINISHED,
+        //nastroj nejde spustit, nebo chyba cteni vystupu
+        FAILED,
+        TIMEOUT,
+        OUTPUT_LIMIT;
+    }
+
+    private final Map<ExternalUtilExecution, Counter> counters = new ConcurrentHashMap<>();
+
+    public void record(ExternalUtilExecution execution, int files, long durationNanos, Outcome outcome) {
+        counters.computeIfAbsent(execution, e -> new Counter()).record(files, durationNanos, outcome);
+    }
+
+    /**
+     * @return statistiky spuštění seřazené podle nástroje a jména spuštění
+     */
+    public List<Statistics> getStatistics() {
+        List<Statistics> result = new ArrayList<>();
+        for (Map.Entry<ExternalUtilExecution, Counter> entry : counters.entrySet()) {
+            result.add(entry.getValue().getStatistics(entry.getKey()));
+        }
+        result.sort(Comparator.comparing((Statistics s) -> s.getExecution().getUtil())
+                .thenComparing(s -> s.getExecution().getName()));
+        return result;
+    }
+
+    private static class Counter {
+        private long executions;
+        private long files;
+        private long failures;
+        private long timeouts;
+        private long outputLimits;
+        private long maxNanos;
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int samplesSize;
+
+        synchronized void record(int files, long durationNanos, Outcome outcome) {
+            executions++;
+            this.files += files;
+            switch (outcome) {
+                case FAILED:
+                    failures++;
+                    break;
+                case TIMEOUT:
+                    timeouts++;
+                    break;
+                case OUTPUT_LIMIT:
+                    outputLimits++;
+                    break;
+                default:
+                    break;
+            }
+            maxNanos = Math.max(maxNanos, durationNanos);
+            if (samplesSize < MAX_SAMPLES) {
+                samples[samplesSize++] = durationNanos;
+            } else {
+                //reservoir sampling, kazde spusteni ma ve vzorku stejnou sanci
+                long index = ThreadLocalRandom.current().nextLong(executions);
+                if (index < MAX_SAMPLES) {
+                    samples[(int) index] = durationNanos;
+                }
+            }
+        }
+
+        synchronized Statistics getStatistics(ExternalUtilExecution execution) {
+            long[] sorted = Arrays.copyOf(samples, samplesSize);
+            Arrays.sort(sorted);
+            return new Statistics(execution, executions, files, failures, timeouts, outputLimits,
+                    percentileMillis(sorted, 0.5), percentileMillis(sorted, 0.99), maxNanos / 1000000);
+        }
+
+        private static long percentileMillis(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1000000;
+        }
+    }
+
+    public static class Statistics {
+        private final ExternalUtilExecution execution;
+        private final long executions;
+        private final long files;
+        private final long failures;
+        private final long timeouts;
+        private final long outputLimits;
+        private final long p50Millis;
+        private final long p99Millis;
+        private final long maxMillis;
+
+        Statistics(ExternalUtilExecution execution, long executions, long files, long failures, long timeouts, long outputLimits,
+                   long p50Millis, long p99Millis, long maxMillis) {
+            this.execution = execution;
+            this.executions = executions;
+            this.files = files;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.outputLimits = outputLimits;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public ExternalUtilExecution getExecution() {
+            return execution;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        /**
+         * @return počet zpracovaných souborů, u dávek víc než počet spuštění
+         */
+        public long getFiles() {
+            return files;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getOutputLimits() {
+            return outputLimits;
+        }
+
+        public long getP50Millis() {
+            return p50Millis;
+        }
+
+        public long getP99Millis() {
+            return p99Millis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Výstupy externích nástrojů nad binárními soubory uložené na disku mezi jednotlivými běhy validátoru.
+ * <p>
+ * Při opakované validaci balíku (např. po opravě metadat) nebo při validaci stejných souborů podle jiné verze DMF se
+ * nástroj nad souborem znovu nespouští. Výstup se z cache použije jen tehdy, pokud souhlasí nástroj, jeho zjištěná verze,
+ * spuštění (např. jp2k), příkaz spuštění z konfigurace (externalUtils.xml) s dosazenou cestou k nástroji a absolutní
+ * cesta, velikost, čas poslední změny i identifikátor souboru v souborovém systému. Z příkazu se do klíče ukládá jen
+ * kontrolní součet. Bez zjištěné verze nástroje se cache nepoužije.
+ * <p>
+ * Velikost uložených výstupů je omezená (přibližně, podle počtu znaků), při překročení se odstraňují nejdéle nepoužité
+ * záznamy. Soubor cache se načte při prvním použití a zapisuje se (komprimovaně) jen voláním save().
+ */
+public class ExternalUtilOutputCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x4B56554F; //KVUO
+
+    private final File cacheFile;
+    private final long maxBytes;
+    //true: nastroje se spusti vzdy, cache se jen aktualizuje
+    private final boolean bypass;
+
+    private LinkedHashMap<String, Entry> entries;
+    private long bytes = 0;
+    private boolean modified = false;
+    private long hits = 0;
+    private long misses = 0;
+
+    public ExternalUtilOutputCache(File cacheFile, long maxBytes, boolean bypass) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(String.format("maximální velikost cache musí být kladná, ne %d", maxBytes));
+        }
+        this.cacheFile = cacheFile;
+        this.maxBytes = maxBytes;
+        this.bypass = bypass;
+    }
+
+    public boolean isBypass() {
+        return bypass;
+    }
+
+    /**
+     * @param command příkaz spuštění nástroje včetně zpracování výstupu, jak vznikl z konfigurace
+     * @return uložený výstup, nebo null, pokud v cache není, soubor se od té doby změnil, nebo se má cache obejít
+     */
+    public String get(File file, ExternalUtilExecution execution, String utilVersion, String command) throws IOException {
+        if (bypass) {
+            return null;
+        }
+        BasicFileAttributes attributes = readAttributes(file);
+        synchronized (this) {
+            Entry stored = getEntries().get(key(file, execution, utilVersion, command));
+            if (stored != null && stored.matches(attributes)) {
+                hits++;
+                return stored.output;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    public void put(File file, ExternalUtilExecution execution, String utilVersion, String command, String output) throws IOException {
+        BasicFileAttributes attributes = readAttributes(file);
+        Entry entry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), fileKey(attributes), output);
+        synchronized (this) {
+            Entry previous = getEntries().put(key(file, execution, utilVersion, command), entry);
+            if (previous != null) {
+                bytes -= previous.output.length();
+            }
+            bytes += output.length();
+            evict();
+            modified = true;
+        }
+    }
+
+    /**
+     * Zapíše cache na disk (přes dočasný soubor, aby případný pád nezanechal poškozený soubor).
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException(String.format("nelze vytvořit adresář %s", dir.getAbsolutePath()));
+        }
+        File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeUTF(entry.fileKey);
+                //vystup muze byt delsi nez 64 KB, ktere zvlada writeUTF
+                byte[] output = entry.output.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(output.length);
+                out.write(output);
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        modified = false;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private LinkedHashMap<String, Entry> getEntries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<>(16, 0.75f, true);
+            load();
+        }
+        return entries;
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        //posledni (prave vlozeny) zaznam zustava, i kdyz je sam vetsi nez limit
+        while (bytes > maxBytes && entries.size() > 1) {
+            bytes -= iterator.next().output.length();
+            iterator.remove();
+        }
+    }
+
+    private void load() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(cacheFile))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                //neznamy format, cache se zalozi znovu
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                long fileSize = in.readLong();
+                long lastModified = in.readLong();
+                String fileKey = in.readUTF();
+                byte[] output = new byte[in.readInt()];
+                in.readFully(output);
+                Entry entry = new Entry(fileSize, lastModified, fileKey, new String(output, StandardCharsets.UTF_8));
+                entries.put(key, entry);
+                bytes += entry.output.length();
+            }
+            evict();
+        } catch (IOException e) {
+            //poskozena cache neni chyba validace, nastroje se jen spusti znovu
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    private static String key(File file, ExternalUtilExecution execution, String utilVersion, String command) {
+        return execution.getUtil().name() + '\t' + execution.getName() + '\t' + utilVersion + '\t' + hash(command) + '\t' + file.getAbsolutePath();
+    }
+
+    private static String hash(String command) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest(command.getBytes(StandardCharsets.UTF_8))) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String fileKey;
+        private final String output;
+
+        Entry(long size, long lastModified, String fileKey, String output) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.output = output;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size()
+                    && lastModified == attributes.lastModifiedTime().toMillis()
+                    && fileKey.equals(fileKey(attributes));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import nkp.pspValidator.shared.XmlUtils;
+import nkp.pspValidator.shared.engine.RegexpRegistry;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * Rozdělí výstup jednoho spuštění nástroje nad více soubory (viz ${TARGET_FILES}) na výstupy jednotlivých souborů,
+ * takové, jaké by nástroj vypsal při spuštění nad jediným souborem.
+ */
+public interface OutputSplitter extends Serializable {
+
+    /**
+     * @return výstupy podle cesty k souboru, jak ji uvádí nástroj
+     * @throws CliCommand.CliCommandException výstup nejde rozdělit
+     */
+    Map<String, String> split(String output) throws CliCommand.CliCommandException;
+
+    /**
+     * Xml výstup, ve kterém má každý soubor vlastní element (např. repInfo u JHOVE) s cestou k souboru v atributu.
+     * Výstup souboru je celý dokument, ze kterého jsou odstraněné elementy ostatních souborů (i s odsazením za nimi),
+     * xpath výrazy profilů (i s //) tak najdou jen data daného souboru.
+     */
+    class ByXmlElement implements OutputSplitter {
+        private static final long serialVersionUID = 1L;
+
+        private final String elementName;
+        private final String pathAttribute;
+
+        /**
+         * @param elementName   lokální jméno elementu se záznamem jednoho souboru
+         * @param pathAttribute atribut elementu s cestou k souboru
+         */
+        public ByXmlElement(String elementName, String pathAttribute) {
+            this.elementName = elementName;
+            this.pathAttribute = pathAttribute;
+        }
+
+        @Override
+        public Map<String, String> split(String output) throws CliCommand.CliCommandException {
+            Document doc;
+            try {
+                doc = XmlUtils.buildDocumentFromString(output, true);
+            } catch (Exception e) {
+                throw new CliCommand.CliCommandException("chyba parsování xml výstupu: " + e.getMessage(), e);
+            }
+            //kostra dokumentu bez zaznamu souboru, kazdy vystup je jeji kopie s jedinym zaznamem
+            //(kopie celeho dokumentu a mazani ostatnich zaznamu by byly kvadraticke v poctu souboru)
+            List<Element> records = findRecords(doc);
+            Set<Node> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<List<Node>> recordNodes = new ArrayList<>(records.size());
+            for (Element record : records) {
+                //zaznam i s odsazenim za nim
+                List<Node> nodes = new ArrayList<>();
+                nodes.add(record);
+                for (Node next = record.getNextSibling(); isWhitespace(next); next = next.getNextSibling()) {
+                    nodes.add(next);
+                }
+                removed.addAll(nodes);
+                recordNodes.add(nodes);
+            }
+            List<Node> parents = new ArrayList<>(records.size());
+            List<Node> nextSiblings = new ArrayList<>(records.size());
+            for (List<Node> nodes : recordNodes) {
+                Node next = nodes.get(nodes.size() - 1).getNextSibling();
+                while (next != null && removed.contains(next)) {
+                    next = next.getNextSibling();
+                }
+                parents.add(nodes.get(0).getParentNode());
+                nextSiblings.add(next);
+            }
+            for (Node node : removed) {
+                node.getParentNode().removeChild(node);
+            }
+            Map<Node, int[]> paths = new IdentityHashMap<>();
+            Map<String, String> result = new LinkedHashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                Document fileDoc = (Document) doc.cloneNode(true);
+                Node parent = findByPath(fileDoc, paths.computeIfAbsent(parents.get(i), ByXmlElement::path));
+                Node next = nextSiblings.get(i) == null ? null
+                        : findByPath(fileDoc, paths.computeIfAbsent(nextSiblings.get(i), ByXmlElement::path));
+                for (Node node : recordNodes.get(i)) {
+                    parent.insertBefore(fileDoc.importNode(node, true), next);
+                }
+                result.put(records.get(i).getAttribute(pathAttribute), XmlUtils.toString(fileDoc));
+            }
+            return result;
+        }
+
+        private static boolean isWhitespace(Node node) {
+            return node != null && node.getNodeType() == Node.TEXT_NODE && node.getNodeValue().trim().isEmpty();
+        }
+
+        /**
+         * @return elementy se záznamy souborů, bez záznamů vnořených v jiném záznamu (ty patří k vnějšímu záznamu)
+         */
+        private List<Element> findRecords(Document doc) {
+            NodeList nodes = doc.getElementsByTagNameNS("*", elementName);
+            List<Element> result = new ArrayList<>(nodes.getLength());
+            Set<Node> records = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < nodes.getLength(); i++) {
+                Element element = (Element) nodes.item(i);
+                records.add(element);
+                if (!hasAncestorIn(element, records)) {
+                    result.add(element);
+                }
+            }
+            return result;
+        }
+
+        private static boolean hasAncestorIn(Node node, Set<Node> nodes) {
+            for (Node ancestor = node.getParentNode(); ancestor != null; ancestor = ancestor.getParentNode()) {
+                if (nodes.contains(ancestor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return indexy potomků od dokumentu k uzlu
+         */
+        private static int[] path(Node node) {
+            List<Integer> indexes = new ArrayList<>();
+            for (Node current = node; current.getParentNode() != null; current = current.getParentNode()) {
+                indexes.add(0, indexOf(current));
+            }
+            int[] path = new int[indexes.size()];
+            for (int i = 0; i < path.length; i++) {
+                path[i] = indexes.get(i);
+            }
+            return path;
+        }
+
+        private static Node findByPath(Document doc, int[] path) {
+            Node node = doc;
+            for (int index : path) {
+                node = node.getChildNodes().item(index);
+            }
+            return node;
+        }
+
+        private static int indexOf(Node node) {
+            int index = 0;
+            for (Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return "ByXmlElement{" +
+                    "elementName='" + elementName + '\'' +
+                    ", pathAttribute='" + pathAttribute + '\'' +
+                    '}';
+        }
+    }
+
+    /**
+     * Textový výstup, ve kterém záznam každého souboru začíná řádkem odpovídajícím výrazu, první skupina výrazu je
+     * cesta k souboru (např. "^Image: (.*)$"). Výstup souboru jsou řádky od začátku jeho záznamu do začátku dalšího.
+     */
+    class ByLine implements OutputSplitter {
+        private static final long serialVersionUID = 1L;
+
+        private final String regexp;
+
+        public ByLine(String regexp) {
+            this.regexp = regexp;
+        }
+
+        @Override
+        public Map<String, String> split(String output) {
+            Map<String, String> result = new LinkedHashMap<>();
+            Matcher m = RegexpRegistry.get("(?m)" + regexp).matcher(output);
+            String path = null;
+            int start = 0;
+            while (m.find()) {
+                if (path != null) {
+                    result.put(path, output.substring(start, m.start()));
+                }
+                path = m.group(1);
+                start = m.start();
+            }
+            if (path != null) {
+                result.put(path, output.substring(start));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ByLine{" +
+                    "regexp='" + regexp + '\'' +
+                    '}';
+        }
+    }
+}
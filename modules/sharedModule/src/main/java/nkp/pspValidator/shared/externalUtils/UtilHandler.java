@@ -1,17 +1,27 @@
 package nkp.pspValidator.shared.externalUtils;
 
 import java.io.File;
+import java.io.Serializable;
 
 /**
  * Created by Martin Řehánek on 14.11.16.
  */
-public class UtilHandler {
+public class UtilHandler implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final CommandData commandData;
     private final Parser parser;
+    //spusteni nad vice soubory najednou, null pokud ho nastroj nema definovane
+    private final Batch batch;
 
     public UtilHandler(CommandData commandData, Parser parser) {
+        this(commandData, parser, null);
+    }
+
+    public UtilHandler(CommandData commandData, Parser parser, Batch batch) {
         this.commandData = commandData;
         this.parser = parser;
+        this.batch = batch;
     }
 
     public CommandData getCommandData() {
@@ -22,7 +32,13 @@ public class UtilHandler {
         return parser;
     }
 
-    public static class CommandData {
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public static class CommandData implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private File path;
         private final String rawCommand;
 
@@ -51,7 +67,9 @@ public class UtilHandler {
         }
     }
 
-    public static class Parser {
+    public static class Parser implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private final Stream stream;
         private final String regexp;
 
@@ -77,5 +95,37 @@ public class UtilHandler {
         }
     }
 
+    /**
+     * Spuštění nástroje nad více soubory najednou (${TARGET_FILES}). Výstup se zpracuje parserem spuštění nad jedním
+     * souborem a pak se rozdělí na výstupy jednotlivých souborů.
+     */
+    public static class Batch implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final CommandData commandData;
+        private final OutputSplitter splitter;
+
+        public Batch(CommandData commandData, OutputSplitter splitter) {
+            this.commandData = commandData;
+            this.splitter = splitter;
+        }
+
+        public CommandData getCommandData() {
+            return commandData;
+        }
+
+        public OutputSplitter getSplitter() {
+            return splitter;
+        }
+
+        @Override
+        public String toString() {
+            return "Batch{" +
+                    "commandData=" + commandData +
+                    ", splitter=" + splitter +
+                    '}';
+        }
+    }
+
 
 }
@@ -8,7 +8,9 @@ import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Martin Řehánek on 17.11.16.
@@ -29,11 +31,49 @@ public abstract class BinaryFileProfile {
         validations.add(validation);
     }
 
-    public List<String> validate(String executionName, File imageFile) {
-        List<String> totalErrors = new ArrayList<>();
-        String toolRawOutput = null;
+    /**
+     * @throws CliCommand.CliCommandLimitException nástroj překročil časový limit nebo limit výstupu, soubor tedy nebyl zvalidován
+     */
+    public List<String> validate(String executionName, File imageFile) throws CliCommand.CliCommandLimitException {
+        String toolRawOutput;
         try {
             toolRawOutput = runExternalUtil(executionName, imageFile);
+        } catch (CliCommand.CliCommandLimitException e) {
+            throw e;
+        } catch (CliCommand.CliCommandException e) {
+            List<String> totalErrors = new ArrayList<>();
+            totalErrors.add(e.getMessage());
+            return totalErrors;
+        }
+        return validateOutput(toolRawOutput);
+    }
+
+    /**
+     * Zvaliduje soubory jedním spuštěním nástroje (viz ExternalUtilManager.getBatchSize()).
+     *
+     * @return problémy souborů v pořadí souborů, null pro soubory, které je potřeba zvalidovat jednotlivě
+     * (validate(executionName, file)), protože ve výstupu nástroje chybí, nebo spuštění nad dávkou selhalo
+     */
+    public List<List<String>> validate(String executionName, List<File> imageFiles) {
+        Map<File, String> outputs = Collections.emptyMap();
+        if (imageFiles.size() > 1) {
+            try {
+                outputs = externalUtilManager.runUtilExecution(new ExternalUtilExecution(executionName, externalUtil), imageFiles);
+            } catch (CliCommand.CliCommandException e) {
+                //nic, soubory se zvaliduji jednotlive, pri prekroceni limitu se tak najde soubor, ktery ho zpusobil
+            }
+        }
+        List<List<String>> result = new ArrayList<>(imageFiles.size());
+        for (File imageFile : imageFiles) {
+            String toolRawOutput = outputs.get(imageFile);
+            result.add(toolRawOutput != null ? validateOutput(toolRawOutput) : null);
+        }
+        return result;
+    }
+
+    private List<String> validateOutput(String toolRawOutput) {
+        List<String> totalErrors = new ArrayList<>();
+        try {
             Object processedOutput = processExternalUtilOutput(toolRawOutput, externalUtil);
             for (Validation validation : validations) {
                 try {
@@ -44,8 +84,6 @@ public abstract class BinaryFileProfile {
                     totalErrors.add(e.getMessage());
                 }
             }
-        } catch (CliCommand.CliCommandException e) {
-            totalErrors.add(e.getMessage());
         } catch (ExternalUtilOutputParsingException e) {
             totalErrors.add(e.getMessage());
         } finally {
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by Martin Řehánek on 16.11.16.
@@ -46,6 +47,47 @@ public class BinaryFileValidator {
         return externalUtilManager.isUtilExecutionDefined(exec);
     }
 
+    public void setUtilThreads(Map<ExternalUtil, Integer> utilThreads) {
+        externalUtilManager.getExecutor().setThreads(utilThreads);
+    }
+
+    /**
+     * @return kolik souborů předat jednomu spuštění nástroje, 1 znamená spouštění pro každý soubor zvlášť
+     */
+    public int getBatchSize(ExternalUtilExecution execution) {
+        return externalUtilManager.getBatchSize(execution);
+    }
+
+    public void setBatchSize(int batchSize) {
+        externalUtilManager.setBatchSize(batchSize);
+    }
+
+    public void setOutputCache(ExternalUtilOutputCache outputCache) {
+        externalUtilManager.setOutputCache(outputCache);
+    }
+
+    /**
+     * @param timeouts časové limity nástrojů v sekundách, neuvedené nástroje bez limitu
+     */
+    public void setTimeouts(Map<ExternalUtil, Integer> timeouts) {
+        externalUtilManager.setTimeouts(timeouts);
+    }
+
+    public void setMaxOutputChars(long maxOutputChars) {
+        externalUtilManager.setMaxOutputChars(maxOutputChars);
+    }
+
+    public ExternalUtilMetrics getUtilMetrics() {
+        return externalUtilManager.getMetrics();
+    }
+
+    /**
+     * @return sdílený pool pro spouštění nástroje, s počtem vláken podle limitu nástroje
+     */
+    public ExecutorService getExecutor(ExternalUtil util) {
+        return externalUtilManager.getExecutor().getExecutor(util);
+    }
+
     private Map<ExternalUtil, BinaryFileProfile> getProfilesByType(ResourceType type) {
         if (!profiles.containsKey(type)) {
             profiles.put(type, new HashMap<>());
@@ -1,23 +1,47 @@
 package nkp.pspValidator.shared.externalUtils.validation;
 
 import nkp.pspValidator.shared.NamespaceContextImpl;
-import nkp.pspValidator.shared.XmlUtils;
 import nkp.pspValidator.shared.engine.exceptions.ExternalUtilOutputParsingException;
 import nkp.pspValidator.shared.externalUtils.ExternalUtil;
 import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
+import nkp.pspValidator.shared.externalUtils.validation.extractions.StreamingXmlExtractor;
+import nkp.pspValidator.shared.externalUtils.validation.extractions.XmlDataExtraction;
 import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.io.StringReader;
 
 /**
+ * Profil nad xml výstupem nástroje.
+ * <p>
+ * Pokud jsou všechny xpath výrazy validací jednoduché cesty (viz SimpleXpath), výstup se jen sekvenčně přečte
+ * (StreamingXmlExtractor) a DOM se nesestavuje, paměť tak nezávisí na velikosti výstupu. Profil s některým výrazem
+ * s predikátem, funkcí apod. vyhodnocuje všechny výrazy nad DOM.
+ * <p>
  * Created by Martin Řehánek on 18.11.16.
  */
 public class BinaryFileXmlProfile extends BinaryFileProfile {
 
 
     private final NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+    //null, pokud nektera validace potrebuje DOM
+    private StreamingXmlExtractor streamingExtractor = new StreamingXmlExtractor();
+    //DocumentBuilder neni thread-safe, kazde vlakno ho ale muze pouzit opakovane
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = ThreadLocal.withInitial(() -> {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     public BinaryFileXmlProfile(ExternalUtilManager externalUtilManager, ExternalUtil externalUtil) {
         super(externalUtilManager, externalUtil);
@@ -31,9 +55,36 @@ public class BinaryFileXmlProfile extends BinaryFileProfile {
         return namespaceContext;
     }
 
+    @Override
+    public void addValidation(Validation validation) {
+        super.addValidation(validation);
+        if (streamingExtractor != null) {
+            DataExtraction extraction = validation.getDataExtraction();
+            if (!(extraction instanceof XmlDataExtraction) || !((XmlDataExtraction) extraction).registerTo(streamingExtractor)) {
+                streamingExtractor = null;
+            }
+        }
+    }
+
+    /**
+     * @return true, pokud se výstup vyhodnocuje bez DOM
+     */
+    public boolean isStreaming() {
+        return streamingExtractor != null && !streamingExtractor.isEmpty();
+    }
+
     Object processExternalUtilOutput(String toolRawOutput, ExternalUtil util) throws ExternalUtilOutputParsingException {
+        if (isStreaming()) {
+            try {
+                return streamingExtractor.extract(new StringReader(toolRawOutput));
+            } catch (XMLStreamException e) {
+                throw new ExternalUtilOutputParsingException(String.format("chyba parsování xml (výstup nástroje %s): %s", util, e.getMessage()));
+            }
+        }
         try {
-            Document doc = XmlUtils.buildDocumentFromString(toolRawOutput, true);
+            DocumentBuilder builder = DOCUMENT_BUILDERS.get();
+            builder.reset();
+            Document doc = builder.parse(new InputSource(new StringReader(toolRawOutput)));
             /*String docStr = XmlUtils.toString(doc);
             System.out.println(docStr);*/
             return doc;
@@ -41,8 +92,6 @@ public class BinaryFileXmlProfile extends BinaryFileProfile {
             throw new ExternalUtilOutputParsingException(String.format("chyba parsování xml (výstup nástroje %s): %s", util, e.getMessage()));
         } catch (IOException e) {
             throw new ExternalUtilOutputParsingException(String.format("chyba čtení výstupu nástroje %s: %s", util, e.getMessage()));
-        } catch (ParserConfigurationException e) {
-            throw new ExternalUtilOutputParsingException(String.format("chyba konfigurace parseru při čtení výstupu nástroje %s: %s", util, e.getMessage()));
         }
     }
 
@@ -30,6 +30,10 @@ class Validation {
         return validationErrors;
     }
 
+    DataExtraction getDataExtraction() {
+        return dataExtraction;
+    }
+
     public String getName() {
         return name;
     }
@@ -3,7 +3,6 @@ package nkp.pspValidator.shared.externalUtils.validation.extractions;
 import nkp.pspValidator.shared.externalUtils.ExtractionResultType;
 
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import java.util.List;
 
@@ -18,14 +17,18 @@ public class FirstNonemptyByXpathDataExctraction extends XmlDataExtraction {
         this.paths = paths;
     }
 
+    @Override
+    List<String> getXpaths() {
+        return paths;
+    }
+
     @Override
     public Object extract(Object processedOutput) throws ExtractionException {
         String pathForError = null;
         try {
             for (String path : paths) {
                 pathForError = path;
-                XPathExpression xPath = buildXpath(path);
-                Object extractedData = extractData(xPath, processedOutput);
+                Object extractedData = extractData(path, processedOutput);
                 if (extractedData != null && !extractedData.toString().isEmpty()) {
                     return extractedData;
                 }
@@ -0,0 +1,134 @@
+package nkp.pspValidator.shared.externalUtils.validation.extractions;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Xpath výraz tvaru cesty, který jde vyhodnotit při sekvenčním čtení xml (viz StreamingXmlExtractor), bez DOM.
+ * Kroky jsou jména elementů (s prefixem nebo bez) nebo *, oddělené / nebo //, poslední krok může být atribut (@jméno).
+ * Např. //j:properties/j:jp2HeaderBox/j:imageHeaderBox/j:width nebo /j:jhove/@release.
+ * Výrazy s predikáty, funkcemi nebo jinými osami jednoduché nejsou, ty se vyhodnocují nad DOM.
+ */
+public class SimpleXpath {
+
+    private static final String NAME = "[A-Za-z_][\\w.\\-]*";
+    private static final Pattern STEP = Pattern.compile("(//|/)?(@?)((?:" + NAME + ":)?(?:" + NAME + ")|\\*)");
+
+    private final String expression;
+    private final List<Step> steps;
+    //jmeno atributu v poslednim kroku, nebo null
+    private final QName attribute;
+
+    private SimpleXpath(String expression, List<Step> steps, QName attribute) {
+        this.expression = expression;
+        this.steps = steps;
+        this.attribute = attribute;
+    }
+
+    /**
+     * @return zpracovaný výraz, nebo null, pokud výraz není jednoduchá cesta nebo používá neznámý prefix
+     */
+    public static SimpleXpath compile(String expression, NamespaceContext namespaceContext) {
+        List<Step> steps = new ArrayList<>();
+        QName attribute = null;
+        Matcher m = STEP.matcher(expression);
+        int position = 0;
+        while (position < expression.length()) {
+            if (attribute != null || !m.find(position) || m.start() != position) {
+                return null;
+            }
+            String axis = m.group(1);
+            if (axis == null && position > 0) {
+                //kroky musi byt oddelene
+                return null;
+            }
+            boolean isAttribute = !m.group(2).isEmpty();
+            String name = m.group(3);
+            if (isAttribute && ("*".equals(name) || "//".equals(axis) || steps.isEmpty())) {
+                return null;
+            }
+            QName qName;
+            if ("*".equals(name)) {
+                qName = null;
+            } else {
+                int colon = name.indexOf(':');
+                if (colon < 0) {
+                    //jmeno bez prefixu je v xpath 1.0 vzdy bez jmenneho prostoru
+                    qName = new QName(name);
+                } else {
+                    String namespace = namespaceContext.getNamespaceURI(name.substring(0, colon));
+                    if (namespace == null) {
+                        return null;
+                    }
+                    qName = new QName(namespace, name.substring(colon + 1));
+                }
+            }
+            if (isAttribute) {
+                attribute = qName;
+            } else {
+                steps.add(new Step("//".equals(axis), qName));
+            }
+            position = m.end();
+        }
+        return steps.isEmpty() ? null : new SimpleXpath(expression, steps, attribute);
+    }
+
+    /**
+     * @param elements cesta od kořenového elementu k aktuálnímu elementu
+     * @return jestli výraz (bez případného atributu) vybírá aktuální element
+     */
+    boolean matches(List<QName> elements) {
+        return matches(elements, elements.size() - 1, steps.size() - 1);
+    }
+
+    private boolean matches(List<QName> elements, int element, int step) {
+        if (step < 0) {
+            return element < 0;
+        }
+        if (element < 0 || !steps.get(step).matches(elements.get(element))) {
+            return false;
+        }
+        if (!steps.get(step).descendant) {
+            return matches(elements, element - 1, step - 1);
+        }
+        //predchozi krok muze byt na kterekoliv vyssi urovni
+        for (int parent = element - 1; parent >= -1; parent--) {
+            if (matches(elements, parent, step - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    QName getAttribute() {
+        return attribute;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static class Step {
+        private final boolean descendant;
+        //null znamena libovolny element (*)
+        private final QName name;
+
+        Step(boolean descendant, QName name) {
+            this.descendant = descendant;
+            this.name = name;
+        }
+
+        boolean matches(QName element) {
+            return name == null || name.equals(element);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package nkp.pspValidator.shared.externalUtils.validation.extractions;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Vyhodnotí jednoduché xpath výrazy (viz SimpleXpath) jedním sekvenčním průchodem xml (StAX) bez sestavení DOM.
+ * V paměti se drží jen cesta k aktuálnímu elementu a hodnoty vybraných uzlů, ne celý dokument, takže paměť
+ * nezávisí na velikosti výstupu nástroje, ale jen na objemu extrahovaných dat.
+ * <p>
+ * Výrazy se registrují při sestavení profilu, samotná extrakce (extract()) je thread-safe.
+ */
+public class StreamingXmlExtractor {
+
+    private static final XMLInputFactory INPUT_FACTORY = buildInputFactory();
+
+    private final Map<String, SimpleXpath> paths = new LinkedHashMap<>();
+    //vyrazy, u kterych je potreba hodnota vsech uzlu, u ostatnich staci prvni
+    private final Set<String> allValues = new HashSet<>();
+
+    private static XMLInputFactory buildInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     * @param allValues true, pokud je potřeba hodnota všech vybraných uzlů, jinak jen prvního
+     */
+    public void register(SimpleXpath path, boolean allValues) {
+        paths.put(path.getExpression(), path);
+        if (allValues) {
+            this.allValues.add(path.getExpression());
+        }
+    }
+
+    public boolean isEmpty() {
+        return paths.isEmpty();
+    }
+
+    public Values extract(Reader xml) throws XMLStreamException {
+        Map<String, List<String>> values = new HashMap<>();
+        for (String expression : paths.keySet()) {
+            values.put(expression, new ArrayList<>());
+        }
+        List<QName> elements = new ArrayList<>();
+        //rozpracovane hodnoty vybranych elementu, textovy obsah vsech potomku
+        Deque<Capture> captures = new ArrayDeque<>();
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        elements.add(reader.getName());
+                        for (SimpleXpath path : paths.values()) {
+                            List<String> pathValues = values.get(path.getExpression());
+                            if (!pathValues.isEmpty() && !allValues.contains(path.getExpression())) {
+                                continue;
+                            }
+                            if (path.matches(elements)) {
+                                if (path.getAttribute() == null) {
+                                    captures.push(new Capture(pathValues, elements.size()));
+                                } else {
+                                    String value = attributeValue(reader, path.getAttribute());
+                                    if (value != null) {
+                                        pathValues.add(value);
+                                    }
+                                }
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!captures.isEmpty()) {
+                            String text = reader.getText();
+                            for (Capture capture : captures) {
+                                capture.text.append(text);
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        while (!captures.isEmpty() && captures.peek().depth == elements.size()) {
+                            captures.pop().finish();
+                        }
+                        elements.remove(elements.size() - 1);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new Values(values);
+    }
+
+    private static String attributeValue(XMLStreamReader reader, QName name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(reader.getAttributeName(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static class Capture {
+        private final List<String> values;
+        private final int depth;
+        private final StringBuilder text = new StringBuilder();
+        //misto hodnoty se rezervuje hned, hodnoty jsou tak v poradi dokumentu i pro vnorene elementy
+        private final int index;
+
+        Capture(List<String> values, int depth) {
+            this.values = values;
+            this.depth = depth;
+            this.index = values.size();
+            values.add(null);
+        }
+
+        void finish() {
+            values.set(index, text.toString());
+        }
+    }
+
+    /**
+     * Hodnoty uzlů vybraných jednotlivými výrazy, v pořadí dokumentu.
+     */
+    public static class Values {
+        private final Map<String, List<String>> values;
+
+        Values(Map<String, List<String>> values) {
+            this.values = values;
+        }
+
+        /**
+         * @return hodnoty, nebo null, pokud výraz nebyl registrovaný
+         */
+        public List<String> get(String expression) {
+            return values.get(expression);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared.externalUtils.validation.extractions;
 
+import nkp.pspValidator.shared.engine.RegexpRegistry;
 import nkp.pspValidator.shared.externalUtils.validation.DataExtraction;
 
 import java.util.ArrayList;
@@ -11,7 +12,7 @@ public abstract class TextDataExtraction implements DataExtraction {
 
     List<String> findAllMatches(String regexp, String text) {
         List<String> result = new ArrayList<>();
-        Pattern p = Pattern.compile(regexp);
+        Pattern p = RegexpRegistry.get(regexp);
         Matcher m = p.matcher(text);
         while (m.find()) {
             String match = m.group();
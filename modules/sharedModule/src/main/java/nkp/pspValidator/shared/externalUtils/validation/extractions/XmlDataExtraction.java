@@ -1,5 +1,6 @@
 package nkp.pspValidator.shared.externalUtils.validation.extractions;
 
+import nkp.pspValidator.shared.engine.XpathCache;
 import nkp.pspValidator.shared.externalUtils.ExtractionResultType;
 import nkp.pspValidator.shared.externalUtils.validation.DataExtraction;
 import org.w3c.dom.Node;
@@ -17,18 +18,109 @@ public abstract class XmlDataExtraction implements DataExtraction {
 
     final ExtractionResultType extractionResultType;
     private final NamespaceContext namespaceContext;
+    //vyrazy se kompiluji jednou pro kazde vlakno, ne pro kazdy soubor
+    private final XpathCache xpathCache;
 
     protected XmlDataExtraction(ExtractionResultType extractionResultType, NamespaceContext namespaceContext) {
         this.extractionResultType = extractionResultType;
         this.namespaceContext = namespaceContext;
+        this.xpathCache = new XpathCache(namespaceContext);
     }
 
+    /**
+     * @return všechny xpath výrazy, které extrakce vyhodnocuje
+     */
+    abstract List<String> getXpaths();
+
+    /**
+     * Zaregistruje výrazy extrakce pro vyhodnocení bez DOM, pokud jsou všechny jednoduché (viz SimpleXpath).
+     *
+     * @return false, pokud některý z výrazů jednoduchý není, extrakce pak potřebuje DOM a nic se neregistruje
+     */
+    public boolean registerTo(StreamingXmlExtractor extractor) {
+        List<SimpleXpath> simpleXpaths = new ArrayList<>();
+        for (String xpath : getXpaths()) {
+            SimpleXpath simpleXpath = SimpleXpath.compile(xpath, namespaceContext);
+            if (simpleXpath == null) {
+                return false;
+            }
+            simpleXpaths.add(simpleXpath);
+        }
+        for (SimpleXpath simpleXpath : simpleXpaths) {
+            extractor.register(simpleXpath, isListType());
+        }
+        return true;
+    }
+
+    private boolean isListType() {
+        switch (extractionResultType) {
+            case STRING_LIST:
+            case INTEGER_LIST:
+            case FLOAT_LIST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param processedOutput DOM výstupu, nebo hodnoty vybrané při sekvenčním čtení (StreamingXmlExtractor.Values)
+     */
+    Object extractData(String xpathExpression, Object processedOutput) throws ExtractionException, XPathExpressionException {
+        if (processedOutput instanceof StreamingXmlExtractor.Values) {
+            List<String> values = ((StreamingXmlExtractor.Values) processedOutput).get(xpathExpression);
+            if (values == null) {
+                throw new IllegalStateException(String.format("výraz '%s' nebyl zaregistrován pro čtení bez DOM", xpathExpression));
+            }
+            return convert(values);
+        }
+        return extractData(buildXpath(xpathExpression), processedOutput);
+    }
+
+    /**
+     * Stejný výsledek jako extractData() nad DOM: pro jednoduché typy hodnota prvního uzlu ("" bez uzlů),
+     * pro seznamy hodnoty všech uzlů, null, pokud hodnotu nejde převést na číslo.
+     */
+    private Object convert(List<String> values) {
+        String first = values.isEmpty() ? "" : values.get(0);
+        try {
+            switch (extractionResultType) {
+                case STRING:
+                    return first;
+                case INTEGER:
+                    return Integer.valueOf(first);
+                case FLOAT:
+                    return Float.valueOf(first);
+                case STRING_LIST:
+                    return new ArrayList<>(values);
+                case INTEGER_LIST: {
+                    List<Integer> result = new ArrayList<>(values.size());
+                    for (String value : values) {
+                        result.add(Integer.valueOf(value));
+                    }
+                    return result;
+                }
+                case FLOAT_LIST: {
+                    List<Float> result = new ArrayList<>(values.size());
+                    for (String value : values) {
+                        result.add(Float.valueOf(value));
+                    }
+                    return result;
+                }
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return zkompilovaný výraz, který smí používat jen volající vlákno
+     */
     XPathExpression buildXpath(String xpathExpression) throws ExtractionException {
         try {
-            XPathFactory xPathfactory = XPathFactory.newInstance();
-            XPath xpath = xPathfactory.newXPath();
-            xpath.setNamespaceContext(namespaceContext);
-            return xpath.compile(xpathExpression);
+            return xpathCache.getXpath(xpathExpression);
         } catch (XPathExpressionException e) {
             throw new ExtractionException(String.format("chyba v zápisu Xpath '%s': %s", xpathExpression, e.getMessage()));
         }
@@ -1,15 +1,32 @@
 package nkp.pspValidator.shared.metadataProfile;
 
+import nkp.pspValidator.shared.engine.RegexpRegistry;
+
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Created by Martin Řehánek on 10.1.17.
  */
 public class ContentDefinitionRegexp implements ContentDefinition {
     private final String regexp;
+    //zkompilovano jednou pro vsechny kontroly, null pro chybny vyraz (chyba se projevi az pri kontrole, jako drive)
+    private final Pattern pattern;
 
     public ContentDefinitionRegexp(String regexp) {
         this.regexp = regexp;
+        this.pattern = compile(regexp);
+    }
+
+    private static Pattern compile(String regexp) {
+        if (regexp == null) {
+            return null;
+        }
+        try {
+            return RegexpRegistry.get(regexp);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
     }
 
     @Override
@@ -22,7 +39,8 @@ public class ContentDefinitionRegexp implements ContentDefinition {
                 }
             };
         }
-        if (Pattern.matches(regexp, valueFound)) {
+        boolean matches = pattern != null ? pattern.matcher(valueFound).matches() : Pattern.matches(regexp, valueFound);
+        if (matches) {
             return new CheckingResultMatch();
         } else {
             return new CheckingResultFail() {
@@ -26,6 +26,14 @@ public class DictionaryManager {
         init();
     }
 
+    /**
+     * Slovníky už zpracované dříve, např. ze snímku konfigurace.
+     */
+    public DictionaryManager(File dictionaryDir, Map<String, Set<String>> dictionaries) {
+        this.dictionaryDir = dictionaryDir;
+        this.dictionaries.putAll(dictionaries);
+    }
+
     private void init() throws ValidatorConfigurationException {
         dictionaries.clear();
         if (!dictionaryDir.exists()) {
@@ -1,5 +1,7 @@
 package nkp.pspValidator.shared.metadataProfile;
 
+import nkp.pspValidator.shared.engine.XmlManager;
+
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -16,6 +18,7 @@ public class MetadataProfile {
     private Map<String, String> namespaces;
     private Set<String> declaredDictionaries = Collections.emptySet();
     private ExpectedElementDefinition rootElementDefinition;
+    private volatile XmlManager xmlManager;
 
     public Map<String, String> getNamespaces() {
         return namespaces;
@@ -23,6 +26,30 @@ public class MetadataProfile {
 
     public void setNamespaces(Map<String, String> namespaces) {
         this.namespaces = namespaces;
+        this.xmlManager = null;
+    }
+
+    /**
+     * XPath výrazy profilu se kompilují jednou pro všechny validace podle profilu, ne pro každý validovaný záznam
+     * (každé vlákno má vlastní zkompilované výrazy, viz XpathCache).
+     */
+    public XmlManager getXmlManager() {
+        XmlManager manager = xmlManager;
+        if (manager == null) {
+            synchronized (this) {
+                manager = xmlManager;
+                if (manager == null) {
+                    manager = new XmlManager(false);
+                    if (namespaces != null) {
+                        for (String prefix : namespaces.keySet()) {
+                            manager.setNamespaceUri(prefix, namespaces.get(prefix));
+                        }
+                    }
+                    xmlManager = manager;
+                }
+            }
+        }
+        return manager;
     }
 
     public Set<String> getDeclaredDictionaries() {
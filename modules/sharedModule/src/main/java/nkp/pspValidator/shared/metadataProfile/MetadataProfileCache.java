@@ -0,0 +1,43 @@
+package nkp.pspValidator.shared.metadataProfile;
+
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zpracované profily podle souboru. Profil se z XML zpracuje jen jednou a pak ho sdílí všechny validace všech balíků,
+ * MetadataProfile se po zpracování nemění a MetadataProfileValidator ho smí používat z více vláken.
+ */
+public class MetadataProfileCache {
+
+    private final MetadataProfileParser parser;
+    private final Map<File, MetadataProfile> profiles = new ConcurrentHashMap<>();
+
+    public MetadataProfileCache(MetadataProfileParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Zpracuje soubor (a tím ho otestuje), výsledek si zapamatuje.
+     */
+    public MetadataProfile parse(File file) throws ValidatorConfigurationException {
+        MetadataProfile profile = parser.parseProfile(file);
+        profiles.put(file, profile);
+        return profile;
+    }
+
+    public MetadataProfile get(File file) throws ValidatorConfigurationException {
+        MetadataProfile profile = profiles.get(file);
+        if (profile == null) {
+            //pri soubeznem prvnim pouziti se muze profil zpracovat vicekrat, pouzije se prvni vysledek
+            profile = parser.parseProfile(file);
+            MetadataProfile previous = profiles.putIfAbsent(file, profile);
+            if (previous != null) {
+                profile = previous;
+            }
+        }
+        return profile;
+    }
+}
@@ -21,11 +21,7 @@ import java.util.Set;
 public class MetadataProfileValidator {
 
     public static ValidationResult validate(MetadataProfile metadataProfile, File metadataFile, Document doc, ValidationResult result, String errorLabel) throws InvalidXPathExpressionException, XPathExpressionException {
-        XmlManager manager = new XmlManager(false);
-        for (String prefix : metadataProfile.getNamespaces().keySet()) {
-            String url = metadataProfile.getNamespaces().get(prefix);
-            manager.setNamespaceUri(prefix, url);
-        }
+        XmlManager manager = metadataProfile.getXmlManager();
         ExpectedElementDefinition rootElDef = metadataProfile.getRootElementDefinition();
         String rootElXpath = buildElementPath(null, rootElDef.buildRelativeXpath(), null);
         XPathExpression rootElXpathExpr = manager.buildXpath(rootElXpath);
@@ -3,6 +3,7 @@ package nkp.pspValidator.shared.metadataProfile.biblio;
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.engine.types.MetadataFormat;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfile;
+import nkp.pspValidator.shared.metadataProfile.MetadataProfileCache;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfileParser;
 
 import java.io.File;
@@ -18,18 +19,27 @@ import static nkp.pspValidator.shared.engine.types.MetadataFormat.MODS;
 public class BibliographicMetadataProfilesManager {
 
     private final Map<MetadataFormat, Map<CatalogingConventions, Map<String, File>>> data = new HashMap<>();
-    private final MetadataProfileParser parser;
+    private final MetadataProfileCache profiles;
 
     public BibliographicMetadataProfilesManager(MetadataProfileParser parser) {
-        this.parser = parser;
+        this.profiles = new MetadataProfileCache(parser);
         data.put(DC, new HashMap<>());
         data.put(MODS, new HashMap<>());
     }
 
     public void registerProfileFile(File profileFile, MetadataFormat format) throws ValidatorConfigurationException {
+        registerProfileFile(profileFile, format, true);
+    }
+
+    /**
+     * @param testParse false pro soubor, který už byl úspěšně zpracován dříve (např. při sestavení snímku konfigurace)
+     */
+    public void registerProfileFile(File profileFile, MetadataFormat format, boolean testParse) throws ValidatorConfigurationException {
         //System.err.println("BibliographicMetadataProfilesManager: registering File: " + profileFile.getAbsoluteFile() + ", " + format);
-        //just test-parsing so that we reveal potential errors before actually processing it
-        parser.parseProfile(profileFile);
+        if (testParse) {
+            //test-parsing reveals potential errors before actually processing it, parsed profile is kept for validations
+            profiles.parse(profileFile);
+        }
         Map<CatalogingConventions, Map<String, File>> conventionsMapMap = data.get(format);
         String filename = profileFile.getName();
         String filenameWithoutSuffix = profileFile.getName().substring(0, filename.length() - ".xml".length());
@@ -71,7 +81,7 @@ public class BibliographicMetadataProfilesManager {
             return null;
         } else {
             try {
-                return parser.parseProfile(file);
+                return profiles.get(file);
             } catch (ValidatorConfigurationException e) {
                 //should never happen, profile has already been parsed
                 throw new IllegalStateException(e);
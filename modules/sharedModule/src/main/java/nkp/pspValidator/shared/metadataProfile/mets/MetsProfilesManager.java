@@ -2,6 +2,7 @@ package nkp.pspValidator.shared.metadataProfile.mets;
 
 import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfile;
+import nkp.pspValidator.shared.metadataProfile.MetadataProfileCache;
 import nkp.pspValidator.shared.metadataProfile.MetadataProfileParser;
 
 import java.io.File;
@@ -14,16 +15,25 @@ import java.util.Map;
 public class MetsProfilesManager {
 
     private final Map<String, File> data = new HashMap<>();
-    private final MetadataProfileParser parser;
+    private final MetadataProfileCache profiles;
 
     public MetsProfilesManager(MetadataProfileParser parser) {
-        this.parser = parser;
+        this.profiles = new MetadataProfileCache(parser);
     }
 
     public void processFile(File file) throws ValidatorConfigurationException {
+        processFile(file, true);
+    }
+
+    /**
+     * @param testParse false pro soubor, který už byl úspěšně zpracován dříve (např. při sestavení snímku konfigurace)
+     */
+    public void processFile(File file, boolean testParse) throws ValidatorConfigurationException {
         //System.err.println("processing: " + file.getName() + ", " + format);
-        //just test-parsing so that we reveal potential errors before actually processing it
-        parser.parseProfile(file);
+        if (testParse) {
+            //test-parsing reveals potential errors before actually processing it, parsed profile is kept for validations
+            profiles.parse(file);
+        }
         String filenameWithoutSuffix = file.getName().substring(0, file.getName().length() - ".xml".length());
         data.put(filenameWithoutSuffix, file);
     }
@@ -34,7 +44,7 @@ public class MetsProfilesManager {
             return null;
         } else {
             try {
-                return parser.parseProfile(file);
+                return profiles.get(file);
             } catch (ValidatorConfigurationException e) {
                 //should never happen, profile has already been parsed
                 throw new IllegalStateException(e);
@@ -0,0 +1,92 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.Engine;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ConfigSnapshotTest {
+
+    private static final File CONFIG_DIR = new File("src/main/resources/nkp/pspValidator/shared/validatorConfig");
+
+    @Test
+    public void snapshotGivesSameConfiguration() throws Exception {
+        File snapshotFile = File.createTempFile("configSnapshot", ".bin");
+        snapshotFile.deleteOnExit();
+        ConfigSnapshot.build(CONFIG_DIR).save(snapshotFile, CONFIG_DIR);
+
+        ConfigSnapshot snapshot = ConfigSnapshot.load(snapshotFile, CONFIG_DIR);
+        assertNotNull(snapshot);
+        ValidatorConfigurationManager fromSnapshot = new ValidatorConfigurationManager(CONFIG_DIR, snapshot);
+        ValidatorConfigurationManager fromXml = new ValidatorConfigurationManager(CONFIG_DIR);
+        assertEquals(fromXml.getDictionaryManager().getDictionaries(), fromSnapshot.getDictionaryManager().getDictionaries());
+
+        Dmf dmf = new Dmf(Dmf.Type.MONOGRAPH, "1.2");
+        Engine snapshotEngine = buildEngine(fromSnapshot, dmf);
+        Engine xmlEngine = buildEngine(fromXml, dmf);
+        assertEquals(xmlEngine.getRuleSections().size(), snapshotEngine.getRuleSections().size());
+        for (int i = 0; i < xmlEngine.getRuleSections().size(); i++) {
+            assertEquals(xmlEngine.getRules(xmlEngine.getRuleSections().get(i)).size(),
+                    snapshotEngine.getRules(snapshotEngine.getRuleSections().get(i)).size());
+        }
+    }
+
+    @Test
+    public void snapshotOfOtherConfigIsIgnored() throws Exception {
+        File snapshotFile = File.createTempFile("configSnapshot", ".bin");
+        snapshotFile.deleteOnExit();
+        ConfigSnapshot.build(CONFIG_DIR).save(snapshotFile, CONFIG_DIR);
+        File otherConfigDir = Files.createTempDirectory("config").toFile();
+        otherConfigDir.deleteOnExit();
+        assertNull(ConfigSnapshot.load(snapshotFile, otherConfigDir));
+    }
+
+    @Test
+    public void undeserializableFdmfFallsBackToXml() throws Exception {
+        ConfigSnapshot built = ConfigSnapshot.build(CONFIG_DIR);
+        //zmeneny serialVersionUID tridy FdmfEntry, jako po zmene tridy v novem sestaveni
+        HashMap<String, byte[]> stale = new HashMap<>();
+        for (Map.Entry<String, byte[]> entry : built.serializedFdmfs.entrySet()) {
+            stale.put(entry.getKey(), withChangedSerialVersionUid(entry.getValue(), ConfigSnapshot.FdmfEntry.class));
+        }
+        ConfigSnapshot snapshot = new ConfigSnapshot(built.dictionaries, built.getExternalUtilManagerFactory(), stale);
+        assertNull(snapshot.getFdmf("monograph_1.2"));
+
+        ValidatorConfigurationManager fromSnapshot = new ValidatorConfigurationManager(CONFIG_DIR, snapshot);
+        ValidatorConfigurationManager fromXml = new ValidatorConfigurationManager(CONFIG_DIR);
+        Dmf dmf = new Dmf(Dmf.Type.MONOGRAPH, "1.2");
+        Engine snapshotEngine = buildEngine(fromSnapshot, dmf);
+        Engine xmlEngine = buildEngine(fromXml, dmf);
+        assertEquals(xmlEngine.getRuleSections().size(), snapshotEngine.getRuleSections().size());
+    }
+
+    @Test
+    public void classFingerprintIsStable() {
+        assertEquals(ConfigSnapshot.classFingerprint(), ConfigSnapshot.classFingerprint());
+    }
+
+    private static byte[] withChangedSerialVersionUid(byte[] serialized, Class<?> serializedClass) {
+        byte[] className = serializedClass.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] result = serialized.clone();
+        for (int i = 0; i + className.length + 8 <= result.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(result, i, i + className.length), className)) {
+                //za jmenem tridy v popisu tridy nasleduje 8 bajtu serialVersionUID
+                result[i + className.length + 7] ^= 1;
+                return result;
+            }
+        }
+        throw new IllegalStateException("třída není v serializovaných datech: " + serializedClass.getName());
+    }
+
+    private Engine buildEngine(ValidatorConfigurationManager configManager, Dmf dmf) throws Exception {
+        FdmfConfiguration fdmfConfig = new FdmfRegistry(configManager).getFdmfConfig(dmf);
+        return fdmfConfig.getCompiledFdmf(configManager.getDictionaryManager()).buildEngine(new File("."), null);
+    }
+}
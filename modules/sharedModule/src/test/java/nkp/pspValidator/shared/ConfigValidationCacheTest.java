@@ -0,0 +1,73 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.Utils;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ConfigValidationCacheTest {
+
+    private static final File CONFIG_DIR = new File("src/main/resources/nkp/pspValidator/shared/validatorConfig");
+
+    @Test
+    public void onlyValidVerdictIsStored() throws Exception {
+        File xsd = new File(CONFIG_DIR, "xsd/fdmfConfig.xsd");
+        File config = new File(CONFIG_DIR, "fDMF/monograph_1.2/namespaces.xml");
+        File cacheFile = File.createTempFile("configValidation", ".cache");
+        cacheFile.deleteOnExit();
+        cacheFile.delete();
+
+        ConfigValidationCache cache = new ConfigValidationCache(cacheFile);
+        cache.validate(config, xsd, false);
+        cache.validate(config, xsd, false);
+        assertEquals(1, Files.readAllLines(cacheFile.toPath()).size());
+
+        File invalidConfig = File.createTempFile("invalidConfig", ".xml");
+        invalidConfig.deleteOnExit();
+        Files.write(invalidConfig.toPath(), "<neznamy/>".getBytes(StandardCharsets.UTF_8));
+        try {
+            new ConfigValidationCache(cacheFile).validate(invalidConfig, xsd, false);
+            fail();
+        } catch (Exception e) {
+            //ocekavano
+        }
+        assertEquals(1, Files.readAllLines(cacheFile.toPath()).size());
+    }
+
+    @Test
+    public void fileWritableByOthersIsIgnored() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        File xsd = new File(CONFIG_DIR, "xsd/fdmfConfig.xsd");
+        File invalidConfig = File.createTempFile("invalidConfig", ".xml");
+        invalidConfig.deleteOnExit();
+        Files.write(invalidConfig.toPath(), "<neznamy/>".getBytes(StandardCharsets.UTF_8));
+        File dir = Files.createTempDirectory("configValidation").toFile();
+        File cacheFile = new File(dir, "config-validation.cache");
+        cacheFile.deleteOnExit();
+        dir.deleteOnExit();
+
+        //podvrzeny verdikt pro nevalidni soubor
+        Files.write(cacheFile.toPath(), (Utils.computeHash(invalidConfig) + ' ' + Utils.computeHash(xsd) + '\n').getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(cacheFile.toPath(), PosixFilePermissions.fromString("rw-rw-rw-"));
+        assertFalse(ConfigValidationCache.isTrusted(cacheFile.toPath()));
+        try {
+            new ConfigValidationCache(cacheFile).validate(invalidConfig, xsd, false);
+            fail();
+        } catch (Exception e) {
+            //ocekavano, verdikt ze souboru se nepouzil
+        }
+
+        //soubor vytvoreny cache muze cist a zapisovat jen vlastnik
+        cacheFile.delete();
+        new ConfigValidationCache(cacheFile).validate(new File(CONFIG_DIR, "fDMF/monograph_1.2/namespaces.xml"), xsd, false);
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(cacheFile.toPath()));
+        assertTrue(ConfigValidationCache.isTrusted(cacheFile.toPath()));
+    }
+}
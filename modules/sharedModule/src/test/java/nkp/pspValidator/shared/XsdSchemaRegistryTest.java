@@ -0,0 +1,119 @@
+package nkp.pspValidator.shared;
+
+import nkp.pspValidator.shared.engine.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Registr zkompilovaných XSD: každé schéma se kompiluje jednou, chybějící nebo chybné schéma se neuloží.
+ */
+public class XsdSchemaRegistryTest {
+
+    private static final String XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">"
+            + "<xs:element name=\"root\" type=\"xs:string\"/>"
+            + "</xs:schema>";
+
+    private File tmpDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("xsd-registry").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Utils.deleteNonemptyDir(tmpDir);
+    }
+
+    @Test
+    public void schemaCompiledOnce() throws Exception {
+        File xsd = write("schema.xsd", XSD);
+        XsdSchemaRegistry registry = new XsdSchemaRegistry();
+        int threads = 8;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Schema>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return registry.getSchema(xsd, false);
+                }));
+            }
+            Schema schema = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Schema> result : results) {
+                assertSame(schema, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, registry.getMisses());
+        assertEquals(threads - 1, registry.getHits());
+
+        //validator je pokazde novy, schema stejne
+        registry.newValidator(xsd, false).validate(new StreamSource(new StringReader("<root>ok</root>")));
+        assertNotSame(registry.newValidator(xsd, false), registry.newValidator(xsd, false));
+        assertEquals(1, registry.getMisses());
+    }
+
+    @Test
+    public void changedSchemaRecompiled() throws Exception {
+        File xsd = write("schema.xsd", XSD);
+        XsdSchemaRegistry registry = new XsdSchemaRegistry();
+        Schema first = registry.getSchema(xsd, false);
+        assertTrue(xsd.setLastModified(xsd.lastModified() + 2000));
+        assertNotSame(first, registry.getSchema(xsd, false));
+        assertEquals(2, registry.getMisses());
+    }
+
+    @Test
+    public void missingSchemaFails() throws Exception {
+        File xsd = new File(tmpDir, "missing.xsd");
+        XsdSchemaRegistry registry = new XsdSchemaRegistry();
+        assertCompilationFails(registry, xsd);
+        //chyba se neuklada, po doplneni souboru se schema zkompiluje
+        write("missing.xsd", XSD);
+        assertNotNull(registry.getSchema(xsd, false));
+        assertEquals(2, registry.getMisses());
+    }
+
+    @Test
+    public void brokenSchemaFails() throws Exception {
+        File xsd = write("broken.xsd", "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"><xs:element name=");
+        XsdSchemaRegistry registry = new XsdSchemaRegistry();
+        assertCompilationFails(registry, xsd);
+        assertCompilationFails(registry, xsd);
+        assertEquals(2, registry.getMisses());
+        assertEquals(0, registry.getHits());
+    }
+
+    private void assertCompilationFails(XsdSchemaRegistry registry, File xsd) {
+        try {
+            registry.getSchema(xsd, false);
+            fail();
+        } catch (SAXException | IOException e) {
+            //schema nelze nacist
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(tmpDir, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,44 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CanonicalPathIndexTest {
+
+    private static final File PSP_DIR = new File("src/test/resources/monograph_1.2/b50eb6b0-f0a4-11e3-b72e-005056827e52");
+
+    @Test
+    public void filesMatchByCanonicalPath() throws Exception {
+        CanonicalPathIndex index = new Engine(null).getCanonicalPathIndex();
+        File amdsec = new File(PSP_DIR, "amdsec");
+        File[] files = amdsec.listFiles();
+        Arrays.sort(files);
+        CanonicalPathIndex.FileSet fileSet = index.of(Arrays.asList(files));
+
+        assertEquals(files.length, fileSet.size());
+        assertTrue(fileSet.contains(files[0]));
+        assertTrue(fileSet.contains(new File(PSP_DIR, "./amdsec/" + files[0].getName())));
+        assertTrue(fileSet.contains(new File(PSP_DIR, "txt/../amdsec/" + files[0].getName())));
+        assertFalse(fileSet.contains(new File(PSP_DIR, "txt/" + files[0].getName())));
+        assertEquals(files[0].getCanonicalPath(), index.getCanonicalPath(files[0].getAbsoluteFile()));
+    }
+
+    @Test
+    public void canonicalPathsResolvedOnce() throws Exception {
+        CanonicalPathIndex index = new Engine(null).getCanonicalPathIndex();
+        File file = new File(PSP_DIR, "info_b50eb6b0-f0a4-11e3-b72e-005056827e52.xml");
+        index.getCanonicalPath(file);
+        index.getCanonicalPath(file);
+        index.of(Arrays.asList(file, file.getAbsoluteFile()));
+        assertEquals(1, index.getMisses());
+        assertEquals(3, index.getHits());
+
+        index.clear();
+        index.getCanonicalPath(file);
+        assertEquals(2, index.getMisses());
+    }
+}
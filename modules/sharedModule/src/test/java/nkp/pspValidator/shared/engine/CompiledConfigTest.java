@@ -0,0 +1,55 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompiledConfigTest {
+
+    private static final File FDMF_ROOT = new File("src/main/resources/nkp/pspValidator/shared/validatorConfig/fDMF/monograph_1.2");
+    private static final String[] CONFIG_FILES = {"namespaces.xml", "patterns.xml", "variables.xml", "rules.xml"};
+
+    @Test
+    public void sameRulesInIndependentEngines() throws ValidatorConfigurationException {
+        ConfigProcessor processor = new ConfigProcessor();
+        List<CompiledConfig> configs = new ArrayList<>();
+        for (String configFile : CONFIG_FILES) {
+            configs.add(processor.compile(new File(FDMF_ROOT, configFile)));
+        }
+        Engine first = buildEngine(configs);
+        Engine second = buildEngine(configs);
+
+        Engine processedDirectly = new Engine(null);
+        for (String configFile : CONFIG_FILES) {
+            processedDirectly.processConfigFile(new File(FDMF_ROOT, configFile));
+        }
+
+        List<RulesSection> sections = first.getRuleSections();
+        assertFalse(sections.isEmpty());
+        assertEquals(processedDirectly.getRuleSections().size(), sections.size());
+        assertEquals(sections.size(), second.getRuleSections().size());
+        for (int i = 0; i < sections.size(); i++) {
+            List<Rule> rules = first.getRules(sections.get(i));
+            List<Rule> otherRules = second.getRules(second.getRuleSections().get(i));
+            assertEquals(sections.get(i).getName(), second.getRuleSections().get(i).getName());
+            assertEquals(rules.size(), otherRules.size());
+            for (int j = 0; j < rules.size(); j++) {
+                assertEquals(rules.get(j).getName(), otherRules.get(j).getName());
+                assertNotSame(rules.get(j), otherRules.get(j));
+            }
+        }
+    }
+
+    private Engine buildEngine(List<CompiledConfig> configs) throws ValidatorConfigurationException {
+        Engine engine = new Engine(null);
+        for (CompiledConfig config : configs) {
+            config.applyTo(engine);
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,115 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.ValidatorConfigurationException;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilePipelineTest {
+
+    private static final File AMDSEC_DIR = new File("src/test/resources/monograph_1.2/b50eb6b0-f0a4-11e3-b72e-005056827e52/amdsec");
+
+    @Test
+    public void sameResultsAsSeparateRules() throws Exception {
+        Engine separate = buildEngine();
+        List<Rule> separateRules = buildRules(separate);
+
+        Engine pipelined = buildEngine();
+        List<Rule> pipelinedRules = buildRules(pipelined);
+        FilePipeline pipeline = new FilePipeline(pipelined, pipelinedRules);
+        pipelined.setFilePipeline(pipeline);
+
+        assertEquals(pipelinedRules.size(), pipeline.getRules().size());
+        assertEquals(0, pipeline.getFilesVisited());
+        for (int i = 0; i < separateRules.size(); i++) {
+            List<String> expected = messages(separate.evaluateRule(separateRules.get(i)));
+            List<String> actual = messages(pipelined.evaluateRule(pipelinedRules.get(i)));
+            assertEquals(expected, actual);
+            assertSame(pipelinedRules.get(i).getResult(), pipelined.evaluateRule(pipelinedRules.get(i)));
+        }
+        //adresar amdsec + soubory, spolecne pro obe pravidla
+        assertEquals(amdsecFiles().size(), pipeline.getFilesVisited());
+    }
+
+    @Test
+    public void failedRuleDoesNotStopOthers() throws Exception {
+        Engine engine = buildEngine();
+        Rule failing = engine.buildRule(0, 0, "PREMIS", "chybny parametr",
+                engine.buildValidationFunction("checkPremisLinks")
+                        .withValueParam("mets_files", ValueType.FILE_LIST, new ValueEvaluation(null)));
+        Rule ok = buildRules(engine).get(0);
+        FilePipeline pipeline = new FilePipeline(engine, Arrays.asList(failing, ok));
+        engine.setFilePipeline(pipeline);
+
+        assertTrue(engine.evaluateRule(failing).hasProblems());
+        assertEquals(amdsecFiles().size(), pipeline.getFilesVisited());
+    }
+
+    @Test
+    public void timingPerRule() throws Exception {
+        Engine engine = buildEngine();
+        Rule failing = engine.buildRule(0, 0, "PREMIS", "chybny parametr",
+                engine.buildValidationFunction("checkPremisLinks")
+                        .withValueParam("mets_files", ValueType.FILE_LIST, new ValueEvaluation(null)));
+        List<Rule> rules = new ArrayList<>(buildRules(engine));
+        rules.add(failing);
+        FilePipeline pipeline = new FilePipeline(engine, rules);
+        engine.setFilePipeline(pipeline);
+        assertNull(pipeline.getTiming(failing));
+
+        //prubeh spusti prvni pravidlo, cas se ale meri pro kazde pravidlo zvlast
+        engine.evaluateRule(rules.get(0));
+        for (Rule rule : rules) {
+            FilePipeline.Timing timing = pipeline.getTiming(rule);
+            assertNotNull(rule.getName(), timing);
+            assertEquals(timing.getDurationMs(), timing.getParametersMs() + timing.getVisitMs(), 1);
+        }
+        //pravidlo s chybnymi parametry zadne soubory nekontrolovalo
+        assertEquals(0, pipeline.getTiming(failing).getVisitMs());
+    }
+
+    private Engine buildEngine() {
+        Engine engine = new Engine(null);
+        engine.defineNamespace("mets", MetsIndex.NS_METS);
+        engine.defineNamespace("xlink", MetsIndex.NS_XLINK);
+        engine.defineNamespace("premis", "info:lc/xmlns/premis-v2");
+        return engine;
+    }
+
+    private List<Rule> buildRules(Engine engine) throws ValidatorConfigurationException {
+        List<File> files = amdsecFiles();
+        return Arrays.asList(
+                engine.buildRule(0, 1, "FILESEC", "filesec obsahuje vsechny skupiny souboru",
+                        engine.buildValidationFunction("checkSecondaryMetsFilesecContainsAllFilegroups")
+                                .withValueParam("secondary-mets_files", ValueType.FILE_LIST, new ValueEvaluation(files))),
+                engine.buildRule(0, 2, "PREMIS", "odkazy mezi premis",
+                        engine.buildValidationFunction("checkPremisLinks")
+                                .withValueParam("mets_files", ValueType.FILE_LIST, new ValueEvaluation(files)))
+        );
+    }
+
+    private List<File> amdsecFiles() {
+        List<File> files = new ArrayList<>();
+        //adresar misto souboru: problem pri kontrole jednoho ze souboru
+        files.add(AMDSEC_DIR);
+        File[] amdsecFiles = AMDSEC_DIR.listFiles();
+        Arrays.sort(amdsecFiles);
+        files.addAll(Arrays.asList(amdsecFiles));
+        return files;
+    }
+
+    private List<String> messages(ValidationResult result) {
+        List<String> messages = new ArrayList<>();
+        for (ValidationProblem problem : result.getProblems()) {
+            messages.add(problem.getLevel() + ": " + problem.getMessage(true));
+        }
+        return messages;
+    }
+}
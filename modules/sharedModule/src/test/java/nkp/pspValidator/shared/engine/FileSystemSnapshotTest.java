@@ -0,0 +1,84 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FileSystemSnapshotTest {
+
+    private File root;
+    private File subdir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("fs-snapshot").toFile();
+        root.deleteOnExit();
+        subdir = new File(root, "amdsec");
+        assertTrue(subdir.mkdir());
+        subdir.deleteOnExit();
+        file = write(new File(subdir, "amd_mets_0001.xml"), "<mets/>");
+    }
+
+    @Test
+    public void answersLikeFileSystem() throws IOException {
+        FileSystemSnapshot snapshot = new FileSystemSnapshot(root);
+        snapshot.refresh();
+        File missing = new File(subdir, "missing.xml");
+        File missingInMissingDir = new File(new File(root, "missing"), "missing.xml");
+        for (File checked : Arrays.asList(root, subdir, file, missing, missingInMissingDir, new File(root, "amdsec/./amd_mets_0001.xml"))) {
+            assertEquals(checked.exists(), snapshot.exists(checked));
+            assertEquals(checked.isDirectory(), snapshot.isDirectory(checked));
+            assertEquals(checked.isFile(), snapshot.isFile(checked));
+            assertEquals(checked.canRead(), snapshot.canRead(checked));
+            assertEquals(checked.getCanonicalPath(), snapshot.getCanonicalPath(checked));
+        }
+        assertEquals(file.length(), snapshot.length(file));
+        assertEquals(file.lastModified(), snapshot.lastModified(file));
+        assertArrayEquals(subdir.listFiles(), snapshot.listFiles(subdir));
+        assertNull(snapshot.listFiles(file));
+        assertEquals(3, snapshot.getStatistics().getEntries());
+    }
+
+    @Test
+    public void filesOutsideSnapshotGoToFileSystem() throws IOException {
+        FileSystemSnapshot snapshot = new FileSystemSnapshot(subdir);
+        snapshot.refresh();
+        assertTrue(snapshot.isDirectory(root));
+        assertEquals(1, snapshot.getStatistics().getStatsPerformed());
+        assertTrue(snapshot.isFile(file));
+        assertEquals(1, snapshot.getStatistics().getStatsAvoided());
+
+        FileSystemSnapshot passThrough = FileSystemSnapshot.passThrough();
+        passThrough.refresh();
+        assertTrue(passThrough.isFile(file));
+        assertEquals(0, passThrough.getStatistics().getStatsAvoided());
+    }
+
+    @Test
+    public void changesVisibleOnlyAfterRefresh() throws IOException {
+        FileSystemSnapshot snapshot = new FileSystemSnapshot(root);
+        snapshot.refresh();
+        File added = write(new File(subdir, "amd_mets_0002.xml"), "<mets/>");
+        assertFalse(snapshot.exists(added));
+        assertEquals(1, snapshot.listFiles(subdir).length);
+
+        snapshot.refresh();
+        assertTrue(snapshot.exists(added));
+        assertEquals(2, snapshot.listFiles(subdir).length);
+        assertEquals(2, snapshot.getStatistics().getRefreshes());
+    }
+
+    private File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,102 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.HashComputationException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HashManagerTest {
+
+    @Test
+    public void fileReadOnlyOnce() throws IOException, HashComputationException {
+        File file = File.createTempFile("hash", ".txt");
+        file.deleteOnExit();
+        byte[] content = "obsah souboru".getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), content);
+
+        HashManager manager = new HashManager();
+        String first = manager.computeHash(file);
+        String second = manager.computeHash(file);
+        assertEquals(Utils.computeHash(file), first);
+        assertEquals(first, second);
+        assertEquals(1, manager.getMisses());
+        assertEquals(1, manager.getHits());
+        assertEquals(content.length, manager.getBytesHashed());
+        assertEquals(content.length, manager.getBytesSaved());
+    }
+
+    @Test
+    public void threadsByStorageType() {
+        HashManager manager = new HashManager();
+        //vychozi je HDD, kde se vic vlaken nevyplati
+        assertEquals(2, manager.getThreads());
+        manager.setStorage(StorageType.SSD, null);
+        assertEquals(Math.max(2, Runtime.getRuntime().availableProcessors()), manager.getThreads());
+        manager.setStorage(StorageType.HDD, 5);
+        assertEquals(5, manager.getThreads());
+        try {
+            manager.setStorage(StorageType.SSD, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //aspon jedno vlakno
+        }
+    }
+
+    @Test
+    public void bulkHashesComputedOnceWithThroughput() throws IOException, HashComputationException {
+        List<File> files = new ArrayList<>();
+        long totalBytes = 0;
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            byte[] content = new byte[64 * 1024 + i];
+            random.nextBytes(content);
+            File file = File.createTempFile("hash", ".bin");
+            file.deleteOnExit();
+            Files.write(file.toPath(), content);
+            files.add(file);
+            totalBytes += content.length;
+        }
+        File missing = new File(files.get(0).getParentFile(), files.get(0).getName() + ".missing");
+        List<File> requested = new ArrayList<>(files);
+        requested.add(missing);
+
+        HashManager manager = new HashManager();
+        manager.setStorage(StorageType.SSD, 4);
+        assertNull(manager.getBulkThroughputMBps());
+        HashManager.BulkHashReport report = manager.computeHashes(requested);
+        assertEquals(requested.size(), report.getFiles());
+        assertEquals(totalBytes, report.getBytes());
+        assertNotNull(report.getThroughputMBps());
+        assertTrue(report.getThroughputMBps() > 0);
+        assertNotNull(manager.getBulkThroughputMBps());
+
+        //pravidla si soucty jen vyzvednou
+        for (File file : files) {
+            assertEquals(Utils.computeHash(file), manager.computeHash(file));
+        }
+        assertEquals(totalBytes, manager.getBytesHashed());
+        //chybu nahlasi az pravidlo, ktere o soucet pozada
+        try {
+            manager.computeHash(missing);
+            fail();
+        } catch (HashComputationException e) {
+            //soubor neexistuje
+        }
+        //podruhe uz neni co cist
+        assertEquals(0, manager.computeHashes(files).getBytes());
+    }
+
+    @Test
+    public void throughputInMBps() {
+        assertEquals(2.0, HashManager.BulkHashReport.toMBps(4 * 1024 * 1024, 2_000_000_000L), 0.0001);
+        assertNull(HashManager.BulkHashReport.toMBps(1024, 0));
+    }
+}
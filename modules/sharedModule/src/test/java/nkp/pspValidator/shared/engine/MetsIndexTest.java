@@ -0,0 +1,94 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetsIndexTest {
+
+    private static final File METS_FILE = new File("src/test/resources/monograph_1.2/b50eb6b0-f0a4-11e3-b72e-005056827e52/mets_b50eb6b0-f0a4-11e3-b72e-005056827e52.xml");
+
+    private Engine engine;
+    private Document doc;
+
+    @Before
+    public void setUp() throws Exception {
+        engine = new Engine(null);
+        engine.defineNamespace("mets", MetsIndex.NS_METS);
+        engine.defineNamespace("xlink", MetsIndex.NS_XLINK);
+        //stejne jako pri vyhodnoceni pravidla, dokument z cache patri vlaknu do releasePinned()
+        engine.getXmlDocumentCache().startPinning();
+        doc = engine.getXmlDocument(METS_FILE, true);
+    }
+
+    @After
+    public void tearDown() {
+        engine.getXmlDocumentCache().releasePinned();
+    }
+
+    @Test
+    public void sharedByRules() throws Exception {
+        assertSame(engine.getMetsIndex(METS_FILE), engine.getMetsIndex(METS_FILE));
+        assertSame(MetsIndex.of(doc), engine.getMetsIndex(METS_FILE));
+    }
+
+    @Test
+    public void filesMatchXpath() throws Exception {
+        NodeList fileEls = (NodeList) engine.buildXpath("//mets:fileSec/mets:fileGrp/mets:file").evaluate(doc, XPathConstants.NODESET);
+        List<MetsIndex.FileEntry> files = engine.getMetsIndex(METS_FILE).getFiles();
+        assertTrue(fileEls.getLength() > 0);
+        assertEquals(fileEls.getLength(), files.size());
+        for (int i = 0; i < fileEls.getLength(); i++) {
+            Element fileEl = (Element) fileEls.item(i);
+            MetsIndex.FileEntry file = files.get(i);
+            assertSame(fileEl, file.getElement());
+            assertEquals(engine.buildXpath("mets:FLocat/@xlink:href").evaluate(fileEl, XPathConstants.STRING), file.getHref());
+            assertEquals(fileEl.getAttribute("SIZE"), file.getSize());
+            assertEquals(fileEl.getAttribute("CHECKSUM"), file.getChecksum());
+        }
+    }
+
+    @Test
+    public void structMapsMatchXpath() throws Exception {
+        MetsIndex index = engine.getMetsIndex(METS_FILE);
+        NodeList pageIds = (NodeList) engine.buildXpath("/mets:mets/mets:structMap[@TYPE='PHYSICAL']/mets:div/mets:div/@ID").evaluate(doc, XPathConstants.NODESET);
+        List<String> indexedPageIds = new ArrayList<>();
+        for (MetsIndex.StructMap structMap : index.getStructMaps("PHYSICAL")) {
+            for (MetsIndex.Div topLevelDiv : structMap.getDivs()) {
+                for (MetsIndex.Div pageDiv : topLevelDiv.getDivs()) {
+                    indexedPageIds.add(pageDiv.getId());
+                }
+            }
+        }
+        assertTrue(pageIds.getLength() > 0);
+        assertEquals(pageIds.getLength(), indexedPageIds.size());
+        for (int i = 0; i < pageIds.getLength(); i++) {
+            assertEquals(pageIds.item(i).getNodeValue(), indexedPageIds.get(i));
+        }
+
+        NodeList smLinks = (NodeList) engine.buildXpath("/mets:mets/mets:structLink/mets:smLink").evaluate(doc, XPathConstants.NODESET);
+        assertEquals(smLinks.getLength(), index.getSmLinks().size());
+        assertFalse(index.getStructMaps("LOGICAL").isEmpty());
+    }
+
+    @Test
+    public void dmdSecsById() throws Exception {
+        MetsIndex index = engine.getMetsIndex(METS_FILE);
+        assertFalse(index.getDmdSecIds().isEmpty());
+        for (String id : index.getDmdSecIds()) {
+            Element expected = (Element) engine.buildXpath(String.format("/mets:mets/mets:dmdSec[@ID='%s']", id)).evaluate(doc, XPathConstants.NODE);
+            assertSame(expected, index.getDmdSec(id));
+        }
+        assertNull(index.getDmdSec("NEEXISTUJICI"));
+    }
+}
@@ -0,0 +1,36 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PersistentHashCacheTest {
+
+    @Test
+    public void hashSurvivesSaveAndLoad() throws IOException {
+        File file = File.createTempFile("hash", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "obsah souboru".getBytes(StandardCharsets.UTF_8));
+        File cacheFile = File.createTempFile("hashCache", ".bin");
+        cacheFile.deleteOnExit();
+        cacheFile.delete();
+
+        PersistentHashCache cache = new PersistentHashCache(cacheFile, 10, PersistentHashCache.EvictionPolicy.LRU, false);
+        cache.put(file, "abc");
+        cache.save();
+
+        PersistentHashCache loaded = new PersistentHashCache(cacheFile, 10, PersistentHashCache.EvictionPolicy.LRU, false);
+        assertEquals("abc", loaded.get(file));
+        PersistentHashCache verifying = new PersistentHashCache(cacheFile, 10, PersistentHashCache.EvictionPolicy.LRU, true);
+        assertNull(verifying.get(file));
+
+        Files.write(file.toPath(), "jiny obsah souboru".getBytes(StandardCharsets.UTF_8));
+        assertNull(loaded.get(file));
+    }
+}
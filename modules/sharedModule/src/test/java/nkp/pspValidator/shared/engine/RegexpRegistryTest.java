@@ -0,0 +1,63 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class RegexpRegistryTest {
+
+    //vyrazy typicke pro profily metadat, extrakce z vystupu nastroju a cesty k souborum
+    private static final List<String> TYPICAL_REGEXPS = Arrays.asList(
+            "uuid:[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}",
+            "urn:nbn:cz:[a-z0-9]{2,6}-[a-z0-9]{6}",
+            "[0-9]{4}(-[0-9]{2}(-[0-9]{2})?)?",
+            "(?m)^\\s*Image: (.*)$",
+            "Kakadu-v[0-9]+(\\.[0-9]+)*",
+            "[A-Za-z]:\\\\.*|/.*");
+    private static final String VALUE = "uuid:0eaa6730-9068-11dd-97de-000d606f5dc6";
+    private static final int CALLS = 20000;
+
+    @Test
+    public void patternCompiledOnce() {
+        String regexp = "RegexpRegistryTest-[0-9]+";
+        long misses = RegexpRegistry.getMisses();
+        Pattern pattern = RegexpRegistry.get(regexp);
+        assertSame(pattern, RegexpRegistry.get(regexp));
+        assertEquals(misses + 1, RegexpRegistry.getMisses());
+        assertTrue(pattern.matcher("RegexpRegistryTest-42").matches());
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void invalidPatternFails() {
+        RegexpRegistry.get("RegexpRegistryTest-[");
+    }
+
+    @Test
+    public void fasterThanCompilePerCall() {
+        //jednoduche mereni bez JMH: nejlepsi z nekolika kol, prvni kola slouzi k zahrati JIT
+        long perCall = Long.MAX_VALUE;
+        long registry = Long.MAX_VALUE;
+        int matches = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                matches += Pattern.compile(TYPICAL_REGEXPS.get(i % TYPICAL_REGEXPS.size())).matcher(VALUE).matches() ? 1 : 0;
+            }
+            perCall = Math.min(perCall, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                matches -= RegexpRegistry.get(TYPICAL_REGEXPS.get(i % TYPICAL_REGEXPS.size())).matcher(VALUE).matches() ? 1 : 0;
+            }
+            registry = Math.min(registry, System.nanoTime() - start);
+        }
+        assertEquals(0, matches);
+        System.out.printf("RegexpRegistry: %d volani, kompilace pri kazdem volani %d ms, registr %d ms%n",
+                CALLS, perCall / 1000000, registry / 1000000);
+        assertTrue("registr " + registry + " ns, kompilace " + perCall + " ns", registry < perCall);
+    }
+}
@@ -0,0 +1,242 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.ValidationState;
+import nkp.pspValidator.shared.Validator;
+import nkp.pspValidator.shared.engine.evaluationFunctions.EvaluationFunction;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationFunction;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Paralelní vyhodnocení pravidel: čekání na proměnné, pořadí výsledků ve ValidationState a zrušení validace.
+ */
+public class RuleSchedulerTest {
+
+    @Test
+    public void rulesWaitForVariables() throws Exception {
+        Engine engine = new Engine(null);
+        AtomicInteger baseEvaluations = new AtomicInteger();
+        AtomicBoolean baseDone = new AtomicBoolean();
+        AtomicBoolean derivedDone = new AtomicBoolean();
+        engine.registerValueDefinition("BASE", engine.buildValueDefinition(ValueType.STRING, new TestEvaluation(engine, () -> {
+            baseEvaluations.incrementAndGet();
+            sleep(100);
+            baseDone.set(true);
+            return "a";
+        })));
+        engine.registerValueDefinition("DERIVED", engine.buildValueDefinition(ValueType.STRING, new TestEvaluation(engine, () -> {
+            //BASE uz musi byt vyhodnocena, jinak by se vyhodnocovala tady
+            boolean dependencyReady = baseDone.get();
+            Object base = engine.getValueEvaluationByVariable("BASE").getData();
+            derivedDone.set(true);
+            return dependencyReady ? base + "b" : "nepockal na BASE";
+        }).withValueParamByReference("base", ValueType.STRING, "BASE")));
+
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            rules.add(new Rule(0, i, "RULE" + i, "", new TestFunction(engine, () -> {
+                ValidationResult result = new ValidationResult();
+                if (!derivedDone.get()) {
+                    result.addError(Level.ERROR, null, "nepockal na DERIVED");
+                }
+                result.addError(Level.INFO, null, (String) engine.getValueEvaluationByVariable("DERIVED").getData());
+                return result;
+            }).withValueParamByReference("derived", ValueType.STRING, "DERIVED")));
+        }
+
+        RuleScheduler scheduler = new RuleScheduler(engine, 4);
+        try {
+            scheduler.schedule(rules);
+            for (Rule rule : rules) {
+                RuleScheduler.RuleExecution execution = scheduler.awaitExecution(rule, null);
+                assertEquals(Collections.singletonList("ab"), messages(execution.getResult()));
+                assertTrue(execution.getStartTime() <= execution.getFinishTime());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+        assertEquals(1, baseEvaluations.get());
+    }
+
+    @Test
+    public void resultsReportedInRuleOrder() throws Exception {
+        Engine engine = new Engine(null);
+        RulesSection section = engine.buildRuleSection(0, "SECTION", "");
+        engine.registerRuleSection(section);
+        List<Integer> evaluationOrder = Collections.synchronizedList(new ArrayList<>());
+        int[] durations = {300, 150, 0};
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < durations.length; i++) {
+            int ruleId = i;
+            Rule rule = new Rule(0, ruleId, "RULE" + ruleId, "", new TestFunction(engine, () -> {
+                sleep(durations[ruleId]);
+                evaluationOrder.add(ruleId);
+                ValidationResult result = new ValidationResult();
+                result.addError(Level.ERROR, null, "RULE" + ruleId);
+                return result;
+            }));
+            engine.registerRule(section, rule);
+            rules.add(rule);
+        }
+
+        RecordingListener listener = new RecordingListener();
+        Validator validator = new Validator(engine);
+        validator.setRuleThreads(durations.length);
+        ValidationState state = validator.run(null, new PrintStream(new ByteArrayOutputStream()), 0, null, null, listener, null);
+
+        //pravidla bezela soucasne, nejkratsi dobehlo prvni
+        assertEquals(Arrays.asList(2, 1, 0), evaluationOrder);
+        //Validator je ale hlasi v poradi z konfigurace
+        assertEquals(Arrays.asList(0, 1, 2), listener.finishedRules);
+        assertTrue(listener.validationsFinished);
+        for (Rule rule : rules) {
+            assertEquals(Collections.singletonList(rule.getName()), messages(state.getResult(rule)));
+        }
+        assertEquals(durations.length, state.getGlobalProblemsTotal().intValue());
+        assertFalse(state.isValid());
+    }
+
+    @Test
+    public void canceledRulesNotStarted() throws Exception {
+        Engine engine = new Engine(null);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicInteger laterRulesStarted = new AtomicInteger();
+        Rule blocking = new Rule(0, 0, "BLOCKING", "", new TestFunction(engine, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+            return new ValidationResult();
+        }));
+        List<Rule> rules = new ArrayList<>();
+        rules.add(blocking);
+        for (int i = 1; i < 5; i++) {
+            rules.add(new Rule(0, i, "RULE" + i, "", new TestFunction(engine, () -> {
+                laterRulesStarted.incrementAndGet();
+                return new ValidationResult();
+            })));
+        }
+
+        RuleScheduler scheduler = new RuleScheduler(engine, 1);
+        scheduler.schedule(rules);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertNull(scheduler.awaitExecution(blocking, () -> true));
+        //rozbehnute pravidlo se neprerusuje, ostatni uz nezacnou
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        sleep(100);
+        assertEquals(0, laterRulesStarted.get());
+    }
+
+    private static List<String> messages(ValidationResult result) {
+        List<String> messages = new ArrayList<>();
+        for (ValidationProblem problem : result.getProblems()) {
+            messages.add(problem.getMessage(false));
+        }
+        return messages;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestFunction extends ValidationFunction {
+        private final Supplier<ValidationResult> body;
+
+        TestFunction(Engine engine, Supplier<ValidationResult> body) {
+            super("test", engine, null);
+            this.body = body;
+        }
+
+        @Override
+        public ValidationResult validate() {
+            return body.get();
+        }
+    }
+
+    private static class TestEvaluation extends EvaluationFunction {
+        private final Supplier<Object> body;
+
+        TestEvaluation(Engine engine, Supplier<Object> body) {
+            super("test", engine, new Contract().withReturnType(ValueType.STRING));
+            this.body = body;
+        }
+
+        @Override
+        public ValueEvaluation evaluate() {
+            return new ValueEvaluation(body.get());
+        }
+    }
+
+    private static class RecordingListener implements ValidationState.ProgressListener {
+        private final List<Integer> finishedRules = new ArrayList<>();
+        private boolean validationsFinished;
+
+        @Override
+        public void onInitialization(List<RulesSection> sections, Map<RulesSection, List<Rule>> rules) {
+        }
+
+        @Override
+        public void onValidationsStart() {
+        }
+
+        @Override
+        public void onValidationsFinish(int globalProblemsTotal, Map<Level, Integer> globalProblemsByLevel, boolean valid, long totalTime) {
+            validationsFinished = true;
+        }
+
+        @Override
+        public void onValidationsCancel() {
+        }
+
+        @Override
+        public void onSectionSkipped(int sectionId) {
+        }
+
+        @Override
+        public void onSectionStart(int sectionId) {
+        }
+
+        @Override
+        public void onSectionFinish(int sectionId, long duration) {
+        }
+
+        @Override
+        public void onSectionCancel(int sectionId) {
+        }
+
+        @Override
+        public void onRuleStart(int sectionId, int ruleId) {
+        }
+
+        @Override
+        public void onRuleFinish(int sectionId, Map<Level, Integer> sectionProblemsByLevel, int sectionProblemsTotal, int ruleId, Map<Level, Integer> ruleProblemsByLevel, int ruleProblemsTotal, List<ValidationProblem> errors) {
+            finishedRules.add(ruleId);
+        }
+
+        @Override
+        public void onRuleCancel(int sectionId, int ruleId) {
+        }
+    }
+}
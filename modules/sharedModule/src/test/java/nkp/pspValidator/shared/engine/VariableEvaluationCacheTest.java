@@ -0,0 +1,137 @@
+package nkp.pspValidator.shared.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VariableEvaluationCacheTest {
+
+    @Test
+    public void evaluatedOnceByConcurrentRequests() throws InterruptedException, ExecutionException {
+        VariableEvaluationCache<String> cache = new VariableEvaluationCache<>();
+        AtomicInteger evaluations = new AtomicInteger();
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("VAR", () -> {
+                        evaluations.incrementAndGet();
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return "value";
+                    }, reason -> "cycle");
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals("value", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, evaluations.get());
+        VariableEvaluationCache.Statistics statistics = cache.getStatistics().get(0);
+        assertEquals(1, statistics.getMisses());
+        assertEquals(threads - 1, statistics.getHits());
+    }
+
+    @Test
+    public void cycleDetected() {
+        VariableEvaluationCache<String> cache = new VariableEvaluationCache<>();
+        String result = cache.get("A", () -> cache.get("A", () -> "inner", reason -> "cycle"), reason -> "outer cycle");
+        assertEquals("cycle", result);
+    }
+
+    @Test
+    public void constantNotEvaluated() {
+        VariableEvaluationCache<String> cache = new VariableEvaluationCache<>();
+        cache.put("CONST", "value");
+        assertEquals("value", cache.get("CONST", () -> "evaluated", reason -> "cycle"));
+        assertEquals(0, cache.getStatistics().get(0).getMisses());
+    }
+
+    @Test
+    public void cycleAcrossThreadsDetected() throws Exception {
+        VariableEvaluationCache<String> cache = new VariableEvaluationCache<>();
+        CountDownLatch bothEvaluating = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            //A zavisi na B a B na A, kazda se zacne vyhodnocovat v jinem vlakne
+            Future<String> a = executor.submit(() -> cache.get("A", () -> {
+                bothEvaluating.countDown();
+                awaitQuietly(bothEvaluating);
+                return "A+" + cache.get("B", () -> "B", reason -> reason);
+            }, reason -> reason));
+            Future<String> b = executor.submit(() -> cache.get("B", () -> {
+                bothEvaluating.countDown();
+                awaitQuietly(bothEvaluating);
+                return "B+" + cache.get("A", () -> "A", reason -> reason);
+            }, reason -> reason));
+            String resultA = a.get(5, TimeUnit.SECONDS);
+            String resultB = b.get(5, TimeUnit.SECONDS);
+            //cyklus pozna vlakno, ktere by zacalo cekat jako druhe, druha promenna pak pouzije jeho vysledek
+            String cycle = VariableEvaluationCache.CYCLE;
+            assertTrue(resultA + ", " + resultB,
+                    resultA.equals("A+B+" + cycle) && resultB.equals("B+" + cycle)
+                            || resultA.equals("A+" + cycle) && resultB.equals("B+A+" + cycle));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitingInterrupted() throws Exception {
+        VariableEvaluationCache<String> cache = new VariableEvaluationCache<>();
+        CountDownLatch evaluating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> evaluation = executor.submit(() -> cache.get("SLOW", () -> {
+                evaluating.countDown();
+                awaitQuietly(release);
+                return "value";
+            }, reason -> reason));
+            assertTrue(evaluating.await(5, TimeUnit.SECONDS));
+            String[] waitingResult = new String[1];
+            boolean[] interruptFlagKept = new boolean[1];
+            Thread waiting = new Thread(() -> {
+                waitingResult[0] = cache.get("SLOW", () -> "other", reason -> reason);
+                interruptFlagKept[0] = Thread.currentThread().isInterrupted();
+            });
+            waiting.start();
+            //pocka, az vlakno opravdu ceka
+            Thread.sleep(100);
+            waiting.interrupt();
+            waiting.join(5000);
+            assertFalse(waiting.isAlive());
+            assertEquals(VariableEvaluationCache.INTERRUPTED, waitingResult[0]);
+            assertTrue(interruptFlagKept[0]);
+            release.countDown();
+            assertEquals("value", evaluation.get(5, TimeUnit.SECONDS));
+            //prerusene cekani vyhodnoceni nezrusilo
+            assertEquals("value", cache.getIfPresent("SLOW"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
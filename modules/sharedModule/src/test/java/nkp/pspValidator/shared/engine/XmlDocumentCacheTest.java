@@ -0,0 +1,199 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.engine.exceptions.XmlFileParsingException;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class XmlDocumentCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final XmlDocumentCache.Loader loader = (file, nsAware) -> {
+        loads.incrementAndGet();
+        try {
+            return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        } catch (Exception e) {
+            throw new XmlFileParsingException(file, e.getMessage());
+        }
+    };
+
+    @Test
+    public void evictsByEstimatedSize() throws Exception {
+        File small = createXml(100);
+        File big = createXml(10_000);
+        XmlDocumentCache cache = new XmlDocumentCache(XmlDocumentCache.estimateSize(big) + XmlDocumentCache.estimateSize(small));
+
+        Document smallDoc = getReleased(cache, small);
+        assertSame(smallDoc, getReleased(cache, small));
+        getReleased(cache, big);
+        assertEquals(0, cache.getStatistics().getEvictions());
+        //druhy velky dokument se do rozpoctu nevejde, vyradi se nejdele nepouzity
+        getReleased(cache, createXml(10_000));
+        assertEquals(2, cache.getStatistics().getEvictions());
+        assertEquals(3, cache.getStatistics().getMisses());
+        assertEquals(1, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void pinnedDocumentIsNotEvicted() throws Exception {
+        File first = createXml(1000);
+        File second = createXml(1000);
+        XmlDocumentCache cache = new XmlDocumentCache(XmlDocumentCache.estimateSize(first));
+
+        cache.startPinning();
+        Document firstDoc = cache.get(first, true, loader);
+        //vypujceny dokument zabira cely rozpocet, druhy se nacte bez cache
+        cache.get(second, true, loader);
+        assertSame(firstDoc, cache.get(first, true, loader));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStatistics().getUncached());
+        assertEquals(0, cache.getStatistics().getEvictions());
+        cache.releasePinned();
+        assertEquals(1, cache.getStatistics().getDocuments());
+    }
+
+    @Test
+    public void budgetIsNotExceeded() throws Exception {
+        File small = createXml(100);
+        File big = createXml(10_000);
+        long budget = XmlDocumentCache.estimateSize(big) + XmlDocumentCache.estimateSize(small);
+        XmlDocumentCache cache = new XmlDocumentCache(budget);
+
+        cache.startPinning();
+        cache.get(big, true, loader);
+        cache.get(small, true, loader);
+        //vse vypujcene, dalsi dokumenty se nacitaji bez cache, i kdyz jsou male
+        cache.get(createXml(100), true, loader);
+        cache.get(createXml(10_000), true, loader);
+        assertEquals(2, cache.getStatistics().getUncached());
+        cache.releasePinned();
+        assertEquals(2, cache.getStatistics().getDocuments());
+        assertEquals(budget, cache.getStatistics().getPeakBytes());
+
+        //dokument vetsi nez rozpocet se necachuje, volne dokumenty kvuli nemu nevypadnou
+        getReleased(cache, createXml(20_000));
+        assertEquals(3, cache.getStatistics().getUncached());
+        assertEquals(2, cache.getStatistics().getDocuments());
+
+        //snizeni rozpoctu odstrani nejdele nepouzite volne dokumenty
+        getReleased(cache, small);
+        cache.setBudgetBytes(XmlDocumentCache.estimateSize(small));
+        assertEquals(1, cache.getStatistics().getDocuments());
+        assertEquals(XmlDocumentCache.estimateSize(small), cache.getStatistics().getUsedBytes());
+        assertTrue(cache.getStatistics().getUsedBytes() <= cache.getStatistics().getBudgetBytes());
+    }
+
+    @Test
+    public void borrowedDocumentIsNotShared() throws Exception {
+        File file = createXml(100);
+        XmlDocumentCache cache = new XmlDocumentCache(XmlDocumentCache.DEFAULT_BUDGET_BYTES);
+        cache.startPinning();
+        Document doc = cache.get(file, true, loader);
+
+        //DOM neni thread-safe ani pro cteni, dokument vypujceny jinym vlaknem se nesdili
+        Document[] otherThreadDocs = new Document[3];
+        runInOtherThread(() -> {
+            cache.startPinning();
+            otherThreadDocs[0] = cache.get(file, true, loader);
+            otherThreadDocs[1] = cache.get(file, true, loader);
+            cache.releasePinned();
+        });
+        assertNotSame(doc, otherThreadDocs[0]);
+        assertSame(otherThreadDocs[0], otherThreadDocs[1]);
+        assertEquals(2, loads.get());
+        cache.releasePinned();
+
+        //vracene kopie dostane kterekoliv dalsi vlakno, nezavisle na tom, kdo je nacetl
+        runInOtherThread(() -> {
+            cache.startPinning();
+            otherThreadDocs[2] = cache.get(file, true, loader);
+            cache.releasePinned();
+        });
+        assertTrue(otherThreadDocs[2] == doc || otherThreadDocs[2] == otherThreadDocs[0]);
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getStatistics().getDocuments());
+
+        //discard() odstrani vsechny kopie
+        cache.discard(file);
+        assertEquals(0, cache.getStatistics().getDocuments());
+    }
+
+    @Test
+    public void nestedPinningReleasesOwnDocuments() throws Exception {
+        File outer = createXml(100);
+        File inner = createXml(100);
+        XmlDocumentCache cache = new XmlDocumentCache(XmlDocumentCache.DEFAULT_BUDGET_BYTES);
+        cache.startPinning();
+        Document outerDoc = cache.get(outer, true, loader);
+        cache.startPinning();
+        assertSame(outerDoc, cache.get(outer, true, loader));
+        cache.get(inner, true, loader);
+        cache.releasePinned();
+
+        //vnitrni uroven vratila jen svuj dokument, vnejsi zustava vypujceny
+        Document[] otherThreadDocs = new Document[2];
+        runInOtherThread(() -> {
+            cache.startPinning();
+            otherThreadDocs[0] = cache.get(outer, true, loader);
+            otherThreadDocs[1] = cache.get(inner, true, loader);
+            cache.releasePinned();
+        });
+        assertNotSame(outerDoc, otherThreadDocs[0]);
+        assertEquals(3, loads.get());
+        cache.releasePinned();
+    }
+
+    @Test
+    public void notCachedOutsidePinning() throws Exception {
+        File file = createXml(100);
+        XmlDocumentCache cache = new XmlDocumentCache(XmlDocumentCache.DEFAULT_BUDGET_BYTES);
+        assertNotSame(cache.get(file, true, loader), cache.get(file, true, loader));
+        assertEquals(2, cache.getStatistics().getUncached());
+        assertEquals(0, cache.getStatistics().getDocuments());
+    }
+
+    private Document getReleased(XmlDocumentCache cache, File file) throws XmlFileParsingException {
+        cache.startPinning();
+        try {
+            return cache.get(file, true, loader);
+        } finally {
+            cache.releasePinned();
+        }
+    }
+
+    private static void runInOtherThread(CacheAccess access) throws InterruptedException {
+        Thread other = new Thread(() -> {
+            try {
+                access.run();
+            } catch (XmlFileParsingException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        other.start();
+        other.join();
+    }
+
+    private interface CacheAccess {
+        void run() throws XmlFileParsingException;
+    }
+
+    private File createXml(int elements) throws IOException {
+        StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < elements; i++) {
+            xml.append("<item>").append(i).append("</item>");
+        }
+        xml.append("</root>");
+        File file = File.createTempFile("doc", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
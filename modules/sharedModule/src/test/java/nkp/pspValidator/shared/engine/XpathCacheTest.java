@@ -0,0 +1,101 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.NamespaceContextImpl;
+import nkp.pspValidator.shared.XmlUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Zkompilované XPath výrazy: opakované použití v rámci vlákna, vlastní instance pro každé vlákno.
+ */
+public class XpathCacheTest {
+
+    private static final String NS = "http://example.org/ns";
+
+    @Test
+    public void reusedWithinThread() throws Exception {
+        XpathCache cache = new XpathCache(new NamespaceContextImpl());
+        XPathExpression first = cache.getXpath("count(//item)");
+        assertSame(first, cache.getXpath("count(//item)"));
+        assertNotSame(first, cache.getXpath("count(//other)"));
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void recompiledAfterNamespaceChange() throws Exception {
+        NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+        namespaceContext.setNamespace("a", NS);
+        XpathCache cache = new XpathCache(namespaceContext);
+        XPathExpression before = cache.getXpath("count(//a:item)");
+
+        namespaceContext.setNamespace("b", NS);
+        cache.namespacesChanged();
+        XPathExpression after = cache.getXpath("count(//a:item)");
+        assertNotSame(before, after);
+        assertEquals(3.0, (Double) cache.getXpath("count(//b:item)").evaluate(buildDoc(3), XPathConstants.NUMBER), 0.0);
+    }
+
+    @Test
+    public void threadsUseOwnExpressions() throws Exception {
+        NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+        namespaceContext.setNamespace("a", NS);
+        XpathCache cache = new XpathCache(namespaceContext);
+        XPathExpression mainThreadExpression = cache.getXpath("count(//a:item)");
+
+        int threads = 8;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<XPathExpression>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int items = i + 1;
+                results.add(executor.submit(() -> {
+                    //dokument i vyraz patri jen tomuto vlaknu
+                    Document doc = buildDoc(items);
+                    start.await();
+                    XPathExpression expression = null;
+                    for (int j = 0; j < 200; j++) {
+                        expression = cache.getXpath("count(//a:item)");
+                        double count = (Double) expression.evaluate(doc, XPathConstants.NUMBER);
+                        if (count != items) {
+                            throw new IllegalStateException(String.format("očekáváno %d, nalezeno %s", items, count));
+                        }
+                    }
+                    return expression;
+                }));
+            }
+            List<XPathExpression> expressions = new ArrayList<>();
+            for (Future<XPathExpression> result : results) {
+                XPathExpression expression = result.get(10, TimeUnit.SECONDS);
+                assertNotSame(mainThreadExpression, expression);
+                for (XPathExpression other : expressions) {
+                    assertNotSame(other, expression);
+                }
+                expressions.add(expression);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //jedna kompilace pro kazde vlakno, zbytek z cache
+        assertEquals(threads + 1, cache.getMisses());
+        assertEquals(threads * 199, cache.getHits());
+    }
+
+    private static Document buildDoc(int items) throws Exception {
+        StringBuilder xml = new StringBuilder("<root xmlns=\"" + NS + "\">");
+        for (int i = 0; i < items; i++) {
+            xml.append("<item/>");
+        }
+        xml.append("</root>");
+        return XmlUtils.buildDocumentFromString(xml.toString(), true);
+    }
+}
@@ -0,0 +1,180 @@
+package nkp.pspValidator.shared.engine;
+
+import nkp.pspValidator.shared.Dmf;
+import nkp.pspValidator.shared.DmfDetector;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Balík v ZIP souboru: rozbalení s výpočtem kontrolních součtů a čtení bez rozbalení (FileSystemSnapshot.ofZip()).
+ */
+public class ZipPackageTest {
+
+    private static final String PSP_NAME = "b50eb6b0-f0a4-11e3-b72e-005056827e52";
+    private static final File PSP_DIR = new File("src/test/resources/monograph_1.2/" + PSP_NAME);
+    private static final String CHECKSUM_FILE = "md5_" + PSP_NAME + ".md5";
+
+    private File tmpDir;
+    private File zipFile;
+
+    @Before
+    public void setUp() throws IOException {
+        tmpDir = Files.createTempDirectory("zip-package").toFile();
+        zipFile = new File(tmpDir, PSP_NAME + ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            //polozka odkazujici na samotny cilovy adresar se preskoci
+            out.putNextEntry(new ZipEntry("./"));
+            out.closeEntry();
+            Path root = PSP_DIR.getParentFile().toPath();
+            Files.walkFileTree(PSP_DIR.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    out.putNextEntry(new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Utils.deleteNonemptyDir(tmpDir);
+    }
+
+    @Test
+    public void unzipComputesHashesOfAllFiles() throws Exception {
+        File containerDir = new File(tmpDir, "extracted");
+        Map<File, String> hashes = Utils.unzipAndComputeHashes(zipFile, containerDir);
+        List<File> extracted = listFiles(new File(containerDir, PSP_NAME));
+        assertEquals(extracted.size(), hashes.size());
+        for (File file : extracted) {
+            assertEquals(Utils.computeHash(file), hashes.get(file));
+        }
+    }
+
+    @Test
+    public void entryOutsideTargetDirRejected() throws IOException {
+        File evilZip = new File(tmpDir, "evil.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(evilZip))) {
+            out.putNextEntry(new ZipEntry("../evil.txt"));
+            out.write(1);
+            out.closeEntry();
+        }
+        File containerDir = new File(tmpDir, "extracted");
+        try {
+            Utils.unzipAndComputeHashes(evilZip, containerDir);
+            fail();
+        } catch (IOException e) {
+            //polozka mimo adresar
+        }
+        try {
+            FileSystemSnapshot.ofZip(evilZip, containerDir).close();
+            fail();
+        } catch (IOException e) {
+            //polozka mimo adresar
+        }
+        assertFalse(new File(tmpDir, "evil.txt").exists());
+    }
+
+    @Test
+    public void checksumRuleUsesRegisteredHashes() throws Exception {
+        File containerDir = new File(tmpDir, "extracted");
+        Map<File, String> hashes = Utils.unzipAndComputeHashes(zipFile, containerDir);
+        File pspDir = new File(containerDir, PSP_NAME);
+
+        Engine engine = new Engine(null);
+        engine.getHashManager().registerHashes(pspDir, hashes);
+        long bytesRegistered = engine.getHashManager().getBytesHashed();
+        List<String> problems = checkChecksums(engine, pspDir);
+        assertEquals(checkChecksums(new Engine(null), PSP_DIR), problems);
+        //soubory ze ZIP souboru se kvuli kontrolnim souctum necetly znovu (chybejici soubory se zkusi a neprectou)
+        assertEquals(bytesRegistered, engine.getHashManager().getBytesHashed());
+    }
+
+    @Test
+    public void packageReadWithoutExtraction() throws Exception {
+        File containerDir = new File(tmpDir, "in-place");
+        try (FileSystemSnapshot zipFileSystem = FileSystemSnapshot.ofZip(zipFile, containerDir)) {
+            File pspDir = new File(containerDir, PSP_NAME);
+            assertTrue(zipFileSystem.isDirectory(containerDir));
+            assertEquals(1, zipFileSystem.listFiles(containerDir).length);
+            assertEquals(PSP_DIR.list().length, zipFileSystem.listFiles(pspDir).length);
+            File checksumFile = new File(pspDir, CHECKSUM_FILE);
+            assertTrue(zipFileSystem.isInArchive(checksumFile));
+            assertEquals(new File(PSP_DIR, CHECKSUM_FILE).length(), zipFileSystem.length(checksumFile));
+            assertEquals(Dmf.Type.MONOGRAPH, new DmfDetector(zipFileSystem).detectDmfType(pspDir));
+
+            Engine engine = new Engine(null);
+            engine.setFileSystemSnapshot(zipFileSystem);
+            assertEquals(checkChecksums(new Engine(null), PSP_DIR), checkChecksums(engine, pspDir));
+            assertNotNull(engine.getXmlDocument(new File(pspDir, "mets_" + PSP_NAME + ".xml"), true));
+            assertFalse(containerDir.exists());
+        }
+    }
+
+    @Test
+    public void fileMaterializedOnlyUntilReleased() throws Exception {
+        File containerDir = new File(tmpDir, "in-place");
+        FileSystemSnapshot zipFileSystem = FileSystemSnapshot.ofZip(zipFile, containerDir);
+        File checksumFile = new File(new File(containerDir, PSP_NAME), CHECKSUM_FILE);
+        zipFileSystem.materialize(checksumFile);
+        zipFileSystem.materialize(checksumFile);
+        assertTrue(checksumFile.isFile());
+        try (InputStream in = zipFileSystem.openStream(checksumFile)) {
+            assertEquals(Utils.computeHash(in), Utils.computeHash(checksumFile));
+        }
+        zipFileSystem.release(checksumFile);
+        assertTrue(checksumFile.isFile());
+        zipFileSystem.release(checksumFile);
+        assertFalse(checksumFile.exists());
+
+        zipFileSystem.materialize(checksumFile);
+        zipFileSystem.close();
+        assertFalse(containerDir.exists());
+    }
+
+    private List<String> checkChecksums(Engine engine, File pspDir) throws Exception {
+        Rule rule = engine.buildRule(0, 0, "CHECKSUM", "kontrolni soucty",
+                engine.buildValidationFunction("checkChecksumFileAllChecksumsMatch")
+                        .withValueParam("checksum_file", ValueType.FILE, new ValueEvaluation(new File(pspDir, CHECKSUM_FILE))));
+        List<String> messages = new ArrayList<>();
+        for (ValidationProblem problem : engine.evaluateRule(rule).getProblems()) {
+            //hlaseni o chybejicich souborech obsahuji cestu k baliku
+            messages.add(problem.getMessage(false).replace(pspDir.getAbsolutePath(), PSP_NAME));
+        }
+        return messages;
+    }
+
+    private List<File> listFiles(File dir) throws IOException {
+        List<File> files = new ArrayList<>();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+}
@@ -0,0 +1,138 @@
+package nkp.pspValidator.shared.engine.validationFunctions;
+
+import nkp.pspValidator.shared.engine.Engine;
+import nkp.pspValidator.shared.engine.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validace seznamů souborů (validateFiles(), validateEach()) sekvenčně i v poolu: pořadí problémů a chyba jedné položky.
+ */
+public class ValidationFunctionTest {
+
+    private static final int ITEMS = 20;
+    private static final int FAILING = 5;
+
+    private final TestFunction function = new TestFunction(new Engine(null));
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void problemsInFileOrder() {
+        List<File> files = files();
+        for (ExecutorService pool : new ExecutorService[]{null, executor}) {
+            ValidationResult result = function.validateFiles(pool, files, (file, partialResult) -> {
+                int index = index(file);
+                //prvni soubory se validuji nejdele
+                sleep(ITEMS - index);
+                partialResult.addError(Level.ERROR, file, "problem %d", index);
+                partialResult.addError(Level.INFO, file, "info %d", index);
+            });
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < ITEMS; i++) {
+                expected.add("problem " + i);
+                expected.add("info " + i);
+            }
+            assertEquals(expected, descriptions(result));
+        }
+    }
+
+    @Test
+    public void failingFileDoesNotLoseOthers() {
+        List<File> files = files();
+        for (ExecutorService pool : new ExecutorService[]{null, executor}) {
+            ValidationResult result = function.validateFiles(pool, files, (file, partialResult) -> {
+                int index = index(file);
+                if (index == FAILING) {
+                    throw new IllegalStateException("chyba souboru");
+                }
+                partialResult.addError(Level.ERROR, file, "problem %d", index);
+            });
+            List<ValidationProblem> problems = result.getProblems();
+            assertEquals(ITEMS, problems.size());
+            for (int i = 0; i < ITEMS; i++) {
+                assertEquals(files.get(i), problems.get(i).getFile());
+            }
+            assertEquals("nečekaná chyba: chyba souboru", problems.get(FAILING).getMessage(false));
+            assertEquals("problem " + (FAILING + 1), problems.get(FAILING + 1).getMessage(false));
+        }
+    }
+
+    @Test
+    public void failingItemDoesNotLoseOthers() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(i);
+        }
+        for (ExecutorService pool : new ExecutorService[]{null, executor}) {
+            ValidationResult result = function.validateEach(pool, items, (item, partialResult) -> {
+                if (item == FAILING) {
+                    throw new IllegalStateException("chyba dávky");
+                }
+                partialResult.addError(Level.ERROR, null, "dávka %d", item);
+            });
+            List<String> descriptions = descriptions(result);
+            assertEquals(ITEMS, descriptions.size());
+            assertEquals("nečekaná chyba: chyba dávky", descriptions.get(FAILING));
+            assertEquals("dávka " + (ITEMS - 1), descriptions.get(ITEMS - 1));
+        }
+    }
+
+    private static List<File> files() {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            files.add(new File("soubor_" + i));
+        }
+        return files;
+    }
+
+    private static int index(File file) {
+        return Integer.parseInt(file.getName().substring("soubor_".length()));
+    }
+
+    private static List<String> descriptions(ValidationResult result) {
+        List<String> descriptions = new ArrayList<>();
+        for (ValidationProblem problem : result.getProblems()) {
+            descriptions.add(problem.getMessage(false));
+        }
+        return descriptions;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestFunction extends ValidationFunction {
+
+        TestFunction(Engine engine) {
+            super("test", engine, null);
+        }
+
+        @Override
+        public ValidationResult validate() {
+            return ValidationResult.ok();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CliCommandTest {
+
+    @Before
+    public void shellAvailable() {
+        Assume.assumeTrue(new java.io.File("/bin/sh").canExecute());
+    }
+
+    @Test
+    public void outputLinesAsReadLine() throws Exception {
+        CliCommand.Result result = new CliCommand(new String[]{"/bin/sh", "-c", "printf 'a\\r\\nb\\rc'; printf 'err\\n' >&2"}).execute();
+        assertEquals(0, result.getExitValue());
+        assertEquals("a\nb\nc\n", result.getStdout());
+        assertEquals("err\n", result.getStderr());
+    }
+
+    @Test
+    public void timeoutKillsProcessTree() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            //podproces drzi otevreny vystup i po ukonceni shellu
+            new CliCommand(new String[]{"/bin/sh", "-c", "sleep 30 & sleep 30"}, 500, 1000).execute();
+            fail();
+        } catch (CliCommand.CliCommandTimeoutException e) {
+            //ok
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void outputLimit() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            new CliCommand(new String[]{"/bin/sh", "-c", "while true; do echo 0123456789; done"}, 0, 100000).execute();
+            fail();
+        } catch (CliCommand.CliCommandOutputLimitException e) {
+            //ok
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test
+    public void parseTimeouts() {
+        assertEquals(Integer.valueOf(60), ExternalUtilManager.parseTimeouts("300,kakadu=60").get(ExternalUtil.KAKADU));
+        assertEquals(Integer.valueOf(300), ExternalUtilManager.parseTimeouts("300,kakadu=60").get(ExternalUtil.JHOVE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseTimeoutsZero() {
+        ExternalUtilManager.parseTimeouts("KAKADU=0");
+    }
+}
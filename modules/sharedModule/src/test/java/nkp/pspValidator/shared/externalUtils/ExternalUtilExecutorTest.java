@@ -0,0 +1,85 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExternalUtilExecutorTest {
+
+    @Test
+    public void parseThreads() {
+        Map<ExternalUtil, Integer> threads = ExternalUtilExecutor.parseThreads("jhove=2, 4");
+        assertEquals(ExternalUtil.values().length, threads.size());
+        assertEquals(Integer.valueOf(2), threads.get(ExternalUtil.JHOVE));
+        assertEquals(Integer.valueOf(4), threads.get(ExternalUtil.JPYLYZER));
+
+        threads = ExternalUtilExecutor.parseThreads("JPYLYZER=8,JHOVE=2");
+        assertEquals(2, threads.size());
+        assertEquals(Integer.valueOf(8), threads.get(ExternalUtil.JPYLYZER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThreadsUnknownUtil() {
+        ExternalUtilExecutor.parseThreads("NOSUCHUTIL=2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThreadsZero() {
+        ExternalUtilExecutor.parseThreads("JHOVE=0");
+    }
+
+    @Test
+    public void singleThreadByDefault() throws Exception {
+        ExternalUtilExecutor executor = new ExternalUtilExecutor();
+        ExecutorService jhove = executor.getExecutor(ExternalUtil.JHOVE);
+        assertNotNull(jhove);
+        assertSame(jhove, executor.getExecutor(ExternalUtil.JHOVE));
+        assertNotSame(jhove, executor.getExecutor(ExternalUtil.JPYLYZER));
+        //limit 1 plati i pro ulohy z vice vlaken pravidel
+        assertEquals(1, maxRunning(jhove, 10));
+
+        executor.setThreads(ExternalUtil.JHOVE, 2);
+        assertNotSame(jhove, executor.getExecutor(ExternalUtil.JHOVE));
+    }
+
+    @Test
+    public void limitPerUtil() throws Exception {
+        ExternalUtilExecutor executor = new ExternalUtilExecutor();
+        executor.setThreads(ExternalUtil.JHOVE, 2);
+        assertEquals(2, maxRunning(executor.getExecutor(ExternalUtil.JHOVE), 10));
+    }
+
+    private static int maxRunning(ExecutorService pool, int tasks) throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService ruleThreads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                futures.add(ruleThreads.submit(() -> pool.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }).get()));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            ruleThreads.shutdownNow();
+        }
+        return maxRunning.get();
+    }
+}
@@ -0,0 +1,54 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ExternalUtilMetricsTest {
+
+    private static final ExternalUtilExecution EXECUTION = new ExternalUtilExecution("jp2k", ExternalUtil.KAKADU);
+
+    @Test
+    public void percentiles() {
+        ExternalUtilMetrics metrics = new ExternalUtilMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(EXECUTION, 1, i * 1000000L, i == 100 ? ExternalUtilMetrics.Outcome.TIMEOUT : ExternalUtilMetrics.Outcome.FINISHED);
+        }
+        metrics.record(new ExternalUtilExecution("jp2k", ExternalUtil.JHOVE), 20, 5000000L, ExternalUtilMetrics.Outcome.FINISHED);
+        List<ExternalUtilMetrics.Statistics> statistics = metrics.getStatistics();
+        assertEquals(2, statistics.size());
+        assertEquals(ExternalUtil.JHOVE, statistics.get(0).getExecution().getUtil());
+        assertEquals(20, statistics.get(0).getFiles());
+        ExternalUtilMetrics.Statistics kakadu = statistics.get(1);
+        assertEquals(100, kakadu.getExecutions());
+        assertEquals(1, kakadu.getTimeouts());
+        assertEquals(50, kakadu.getP50Millis());
+        assertEquals(99, kakadu.getP99Millis());
+        assertEquals(100, kakadu.getMaxMillis());
+    }
+
+    @Test
+    public void managerRecordsTimeout() throws Exception {
+        Assume.assumeTrue(new File("/bin/sleep").canExecute());
+        Map<ExternalUtilExecution, UtilHandler> executions = new HashMap<>();
+        executions.put(EXECUTION, new UtilHandler(new UtilHandler.CommandData("/bin/sleep 30"), new UtilHandler.Parser(Stream.STDOUT, null)));
+        ExternalUtilManager manager = new ExternalUtilManager(new HashMap<>(), executions);
+        manager.setTimeouts(Collections.singletonMap(ExternalUtil.KAKADU, 1));
+        try {
+            manager.runUtilExecution(EXECUTION, new File("/dev/null"));
+            fail();
+        } catch (CliCommand.CliCommandTimeoutException e) {
+            //ok
+        }
+        ExternalUtilMetrics.Statistics statistics = manager.getMetrics().getStatistics().get(0);
+        assertEquals(1, statistics.getExecutions());
+        assertEquals(1, statistics.getTimeouts());
+    }
+}
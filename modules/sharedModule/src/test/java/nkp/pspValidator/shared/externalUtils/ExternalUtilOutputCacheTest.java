@@ -0,0 +1,104 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ExternalUtilOutputCacheTest {
+
+    private static final ExternalUtilExecution JP2K = new ExternalUtilExecution("jp2k", ExternalUtil.JPYLYZER);
+    private static final String COMMAND = "/usr/bin/jpylyzer --format jp2 ${TARGET_FILE}";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void outputReusedUntilFileVersionOrCommandChanges() throws Exception {
+        File image = tmp.newFile("mc_0001.jp2");
+        ExternalUtilOutputCache cache = new ExternalUtilOutputCache(tmp.newFile("cache"), 1024 * 1024, false);
+        assertNull(cache.get(image, JP2K, "1.17", COMMAND));
+        cache.put(image, JP2K, "1.17", COMMAND, "<jpylyzer/>");
+        assertEquals("<jpylyzer/>", cache.get(image, JP2K, "1.17", COMMAND));
+        assertNull(cache.get(image, JP2K, "2.0", COMMAND));
+        assertNull(cache.get(image, new ExternalUtilExecution("jp2k", ExternalUtil.JHOVE), "1.17", COMMAND));
+        //jiny prikaz ze stejne verze nastroje (zmena externalUtils.xml nebo cesty k nastroji)
+        assertNull(cache.get(image, JP2K, "1.17", "/opt/jpylyzer/jpylyzer --format jp2 ${TARGET_FILE}"));
+
+        Files.write(image.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        assertNull(cache.get(image, JP2K, "1.17", COMMAND));
+        assertEquals(1, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void savedAndLoaded() throws Exception {
+        File image = tmp.newFile("mc_0001.jp2");
+        File cacheFile = new File(tmp.getRoot(), "cache/outputs.bin");
+        StringBuilder longOutput = new StringBuilder();
+        while (longOutput.length() < 100000) {
+            longOutput.append("<property>příliš žluťoučký kůň</property>\n");
+        }
+        ExternalUtilOutputCache cache = new ExternalUtilOutputCache(cacheFile, 1024 * 1024, false);
+        cache.put(image, JP2K, "1.17", COMMAND, longOutput.toString());
+        cache.save();
+
+        assertEquals(longOutput.toString(), new ExternalUtilOutputCache(cacheFile, 1024 * 1024, false).get(image, JP2K, "1.17", COMMAND));
+        assertNull(new ExternalUtilOutputCache(cacheFile, 1024 * 1024, true).get(image, JP2K, "1.17", COMMAND));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws Exception {
+        File first = tmp.newFile("mc_0001.jp2");
+        File second = tmp.newFile("mc_0002.jp2");
+        File third = tmp.newFile("mc_0003.jp2");
+        ExternalUtilOutputCache cache = new ExternalUtilOutputCache(tmp.newFile("cache"), 25, false);
+        cache.put(first, JP2K, "1.17", COMMAND, "0123456789");
+        cache.put(second, JP2K, "1.17", COMMAND, "0123456789");
+        assertNotNull(cache.get(first, JP2K, "1.17", COMMAND));
+        cache.put(third, JP2K, "1.17", COMMAND, "0123456789");
+        assertNotNull(cache.get(first, JP2K, "1.17", COMMAND));
+        assertNull(cache.get(second, JP2K, "1.17", COMMAND));
+        assertNotNull(cache.get(third, JP2K, "1.17", COMMAND));
+    }
+
+    @Test
+    public void managerUsesCacheOnlyWithKnownVersion() throws Exception {
+        Assume.assumeTrue(new File("/bin/cat").canExecute() && new File("/bin/echo").canExecute());
+        File image = tmp.newFile("mc_0001.jp2");
+        Files.write(image.toPath(), "output".getBytes(StandardCharsets.UTF_8));
+        ExternalUtilExecution execution = new ExternalUtilExecution("text", ExternalUtil.SHNTOOL);
+        Map<ExternalUtil, UtilHandler> versionDetections = new HashMap<>();
+        versionDetections.put(ExternalUtil.SHNTOOL, new UtilHandler(new UtilHandler.CommandData("/bin/echo 3.0.10"), new UtilHandler.Parser(Stream.STDOUT, "(?s).*")));
+        Map<ExternalUtilExecution, UtilHandler> executions = new HashMap<>();
+        executions.put(execution, new UtilHandler(new UtilHandler.CommandData("${UTIL_PATH}cat ${TARGET_FILE}"), new UtilHandler.Parser(Stream.STDOUT, "(?s).*")));
+        ExternalUtilManager manager = new ExternalUtilManager(versionDetections, executions);
+        ExternalUtilOutputCache cache = new ExternalUtilOutputCache(tmp.newFile("cache"), 1024 * 1024, false);
+        manager.setOutputCache(cache);
+
+        String command = "cat ${TARGET_FILE}\nSTDOUT\n(?s).*";
+        assertEquals("output", manager.runUtilExecution(execution, image));
+        assertNull(cache.get(image, execution, "3.0.10", command));
+
+        assertEquals("3.0.10", manager.runUtilVersionDetection(ExternalUtil.SHNTOOL));
+        assertEquals("output", manager.runUtilExecution(execution, image));
+        assertEquals("output", cache.get(image, execution, "3.0.10", command));
+        long hits = cache.getHits();
+        assertEquals("output", manager.runUtilExecution(execution, image));
+        assertEquals(hits + 1, cache.getHits());
+
+        //jina cesta k nastroji je jiny prikaz, ulozeny vystup se nepouzije
+        manager.setPath(ExternalUtil.SHNTOOL, new File("/bin"));
+        long misses = cache.getMisses();
+        assertEquals("output", manager.runUtilExecution(execution, image));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+}
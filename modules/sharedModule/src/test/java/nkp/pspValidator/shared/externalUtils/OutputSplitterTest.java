@@ -0,0 +1,104 @@
+package nkp.pspValidator.shared.externalUtils;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class OutputSplitterTest {
+
+    private static final String JHOVE_OUTPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<jhove xmlns=\"http://hul.harvard.edu/ois/xml/ns/jhove\" release=\"1.20\">\n" +
+            " <date>2026-10-17</date>\n" +
+            " <repInfo uri=\"/psp/mastercopy/mc_0001.jp2\"><status>Well-Formed and valid</status></repInfo>\n" +
+            " <repInfo uri=\"/psp/mastercopy/mc_0002.jp2\"><status>Not well-formed</status></repInfo>\n" +
+            "</jhove>";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void splitByXmlElement() throws Exception {
+        Map<String, String> outputs = new OutputSplitter.ByXmlElement("repInfo", "uri").split(JHOVE_OUTPUT);
+        assertEquals(Arrays.asList("/psp/mastercopy/mc_0001.jp2", "/psp/mastercopy/mc_0002.jp2"), new ArrayList<>(outputs.keySet()));
+        String first = outputs.get("/psp/mastercopy/mc_0001.jp2");
+        assertTrue(first.contains("Well-Formed and valid"));
+        assertTrue(first.contains("<date>2026-10-17</date>"));
+        assertFalse(first.contains("mc_0002"));
+        assertTrue(outputs.get("/psp/mastercopy/mc_0002.jp2").contains("Not well-formed"));
+    }
+
+    @Test
+    public void splitByXmlElementManyFiles() throws Exception {
+        int files = 2000;
+        StringBuilder output = new StringBuilder("<jhove xmlns=\"http://hul.harvard.edu/ois/xml/ns/jhove\">\n <date>2026-10-17</date>\n <repInfos>\n");
+        for (int i = 0; i < files; i++) {
+            output.append("  <repInfo uri=\"/psp/mc_").append(i).append(".jp2\"><status>").append(i).append("</status></repInfo>\n");
+        }
+        output.append(" </repInfos>\n <statistics/>\n</jhove>");
+        Map<String, String> outputs = new OutputSplitter.ByXmlElement("repInfo", "uri").split(output.toString());
+        assertEquals(files, outputs.size());
+        int i = 0;
+        for (Map.Entry<String, String> entry : outputs.entrySet()) {
+            assertEquals("/psp/mc_" + i + ".jp2", entry.getKey());
+            //jen vlastni zaznam na puvodnim miste, bez odsazeni ostatnich zaznamu
+            String fileOutput = entry.getValue();
+            assertTrue(fileOutput, fileOutput.matches("(?s).*<repInfos>\\s*<repInfo uri=\"/psp/mc_" + i + "\\.jp2\"><status>" + i + "</status></repInfo>\\s*</repInfos>\\s*<statistics/>.*"));
+            assertTrue(fileOutput, fileOutput.length() < 500);
+            i++;
+        }
+    }
+
+    @Test(expected = CliCommand.CliCommandException.class)
+    public void splitByXmlElementInvalidXml() throws Exception {
+        new OutputSplitter.ByXmlElement("repInfo", "uri").split("<jhove><repInfo>");
+    }
+
+    @Test
+    public void splitByLine() {
+        String output = "Image: /psp/a.jp2\n  Format: JP2\nImage: /psp/b.jp2\n  Format: JP2\n  Geometry: 10x10\n";
+        Map<String, String> outputs = new OutputSplitter.ByLine("^Image: (.*)$").split(output);
+        assertEquals(2, outputs.size());
+        assertEquals("Image: /psp/a.jp2\n  Format: JP2\n", outputs.get("/psp/a.jp2"));
+        assertEquals("Image: /psp/b.jp2\n  Format: JP2\n  Geometry: 10x10\n", outputs.get("/psp/b.jp2"));
+    }
+
+    @Test
+    public void batchExecution() throws Exception {
+        Assume.assumeTrue(new File("/bin/cat").canExecute());
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File file = tmp.newFile("file" + i + ".txt").getAbsoluteFile();
+            Files.write(file.toPath(), ("FILE: " + file.getAbsolutePath() + "\ncontent " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        File notInOutput = tmp.newFile("empty.txt").getAbsoluteFile();
+        ExternalUtilExecution execution = new ExternalUtilExecution("text", ExternalUtil.SHNTOOL);
+        UtilHandler handler = new UtilHandler(new UtilHandler.CommandData("/bin/cat ${TARGET_FILE}"),
+                new UtilHandler.Parser(Stream.STDOUT, "(?s).*"),
+                new UtilHandler.Batch(new UtilHandler.CommandData("/bin/cat ${TARGET_FILES}"), new OutputSplitter.ByLine("^FILE: (.*)$")));
+        Map<ExternalUtilExecution, UtilHandler> executions = new HashMap<>();
+        executions.put(execution, handler);
+        ExternalUtilManager manager = new ExternalUtilManager(new HashMap<>(), executions);
+
+        assertEquals(1, manager.getBatchSize(execution));
+        manager.setBatchSize(10);
+        assertEquals(10, manager.getBatchSize(execution));
+        assertEquals(1, manager.getBatchSize(new ExternalUtilExecution("other", ExternalUtil.SHNTOOL)));
+
+        List<File> targets = new ArrayList<>(files);
+        targets.add(notInOutput);
+        Map<File, String> outputs = manager.runUtilExecution(execution, targets);
+        assertEquals(3, outputs.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(manager.runUtilExecution(execution, files.get(i)), outputs.get(files.get(i)));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package nkp.pspValidator.shared.externalUtils.validation;
+
+import nkp.pspValidator.shared.XmlUtils;
+import nkp.pspValidator.shared.externalUtils.ExternalUtil;
+import nkp.pspValidator.shared.externalUtils.ExternalUtilManager;
+import nkp.pspValidator.shared.externalUtils.ResourceType;
+import nkp.pspValidator.shared.externalUtils.validation.extractions.StreamingXmlExtractor;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Profily nad xml výstupem nástrojů: volba vyhodnocení bez DOM podle xpath výrazů profilu a shodné výsledky validací.
+ */
+public class BinaryFileXmlProfileTest {
+
+    private static final File PROFILES_DIR = new File("src/main/resources/nkp/pspValidator/shared/validatorConfig/fDMF/monograph_1.2/binaryFileProfiles/mc");
+
+    private static final String JPYLYZER_OUTPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<jpylyzer xmlns=\"http://openpreservation.org/ns/jpylyzer/v2/\">\n" +
+            " <toolInfo><toolName>jpylyzer</toolName><toolVersion>2.1.0</toolVersion></toolInfo>\n" +
+            " <file>\n" +
+            "  <fileInfo><fileName>mc_0001.jp2</fileName><fileSizeInBytes>1024</fileSizeInBytes><fileLastModified>Thu Oct 15 10:00:00 2026</fileLastModified></fileInfo>\n" +
+            "  <isValid format=\"jp2\">True</isValid>\n" +
+            "  <properties>\n" +
+            "   <jp2HeaderBox>\n" +
+            "    <imageHeaderBox><height>600</height><width>400</width><nC>3</nC></imageHeaderBox>\n" +
+            "    <colourSpecificationBox><meth>Enumerated</meth><enumCS>sRGB</enumCS></colourSpecificationBox>\n" +
+            "    <resolutionBox><captureResolutionBox><vRescInPixelsPerMeter>11811.02</vRescInPixelsPerMeter><hRescInPixelsPerMeter>11811.02</hRescInPixelsPerMeter></captureResolutionBox></resolutionBox>\n" +
+            "   </jp2HeaderBox>\n" +
+            "   <contiguousCodestreamBox>\n" +
+            "    <siz><xTsiz>1024</xTsiz><yTsiz>1024</yTsiz><numberOfTiles>1</numberOfTiles><ssizDepth>8</ssizDepth><ssizDepth>8</ssizDepth></siz>\n" +
+            "    <cod><precincts>yes</precincts><sop>yes</sop><eph>yes</eph><order>RPCL</order><layers>1</layers><transformation>5-3 reversible</transformation>" +
+            "<levels>5</levels><codeBlockWidth>64</codeBlockWidth><codeBlockHeight>64</codeBlockHeight><codingBypass>no</codingBypass>" +
+            "<precinctSizeX>256</precinctSizeX><precinctSizeY>256</precinctSizeY><precinctSizeX>128</precinctSizeX><precinctSizeY>128</precinctSizeY></cod>\n" +
+            "    <com><comment>Kakadu-v7.10</comment></com>\n" +
+            "   </contiguousCodestreamBox>\n" +
+            "   <compressionRatio>2.5</compressionRatio>\n" +
+            "  </properties>\n" +
+            " </file>\n" +
+            "</jpylyzer>";
+
+    @Test
+    public void profileWithPathsOnlyStreamed() throws Exception {
+        BinaryFileValidator validator = new BinaryFileValidator(new ExternalUtilManager(new HashMap<>(), new HashMap<>()));
+        validator.registerProfile(ResourceType.IMAGE_MASTER_COPY, ExternalUtil.JPYLYZER, new File(PROFILES_DIR, "jpylyzer.xml"));
+        validator.registerProfile(ResourceType.IMAGE_MASTER_COPY, ExternalUtil.JHOVE, new File(PROFILES_DIR, "jhove.xml"));
+        BinaryFileXmlProfile jpylyzer = (BinaryFileXmlProfile) validator.getProfile(ResourceType.IMAGE_MASTER_COPY, ExternalUtil.JPYLYZER);
+        BinaryFileXmlProfile jhove = (BinaryFileXmlProfile) validator.getProfile(ResourceType.IMAGE_MASTER_COPY, ExternalUtil.JHOVE);
+        assertTrue(jpylyzer.isStreaming());
+        //profil JHOVE pouziva predikaty, vyhodnocuje se nad DOM
+        assertFalse(jhove.isStreaming());
+
+        Object streamed = jpylyzer.processExternalUtilOutput(JPYLYZER_OUTPUT, ExternalUtil.JPYLYZER);
+        assertTrue(streamed instanceof StreamingXmlExtractor.Values);
+        Document doc = XmlUtils.buildDocumentFromString(JPYLYZER_OUTPUT, true);
+        int nonEmpty = 0;
+        for (Validation validation : jpylyzer.validations) {
+            Object fromDom = validation.getDataExtraction().extract(doc);
+            assertEquals(validation.getName(), fromDom, validation.getDataExtraction().extract(streamed));
+            assertEquals(validation.getName(), validation.validate(doc), validation.validate(streamed));
+            if (fromDom != null && !(fromDom instanceof List && ((List<?>) fromDom).isEmpty())) {
+                nonEmpty++;
+            }
+        }
+        assertTrue(nonEmpty > 20);
+    }
+}
@@ -0,0 +1,56 @@
+package nkp.pspValidator.shared.externalUtils.validation.extractions;
+
+import nkp.pspValidator.shared.NamespaceContextImpl;
+import nkp.pspValidator.shared.XmlUtils;
+import nkp.pspValidator.shared.externalUtils.ExtractionResultType;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class FirstNonemptyByXpathDataExctractionTest {
+
+    private static final String JHOVE_OUTPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<jhove xmlns=\"http://hul.harvard.edu/ois/xml/ns/jhove\">\n" +
+            " <repInfo uri=\"/psp/mc_0001.jp2\"><properties>\n" +
+            "  <property><name>NumberOfLayers</name><values><value>%d</value></values></property>\n" +
+            "  <property><name>Method</name><values><value>Enumerated Colourspace</value></values></property>\n" +
+            " </properties></repInfo>\n" +
+            "</jhove>";
+
+    @Test
+    public void extractsFromManyDocumentsConcurrently() throws Exception {
+        NamespaceContextImpl nsContext = new NamespaceContextImpl();
+        nsContext.setNamespace("j2", "http://hul.harvard.edu/ois/xml/ns/jhove");
+        FirstNonemptyByXpathDataExctraction layers = new FirstNonemptyByXpathDataExctraction(ExtractionResultType.INTEGER, nsContext,
+                Arrays.asList("//j2:property[j2:name='Layers']/j2:values/j2:value", "//j2:property[j2:name='NumberOfLayers']/j2:values/j2:value"));
+        FirstNonemptyByXpathDataExctraction method = new FirstNonemptyByXpathDataExctraction(ExtractionResultType.STRING, nsContext,
+                Arrays.asList("//j2:property[j2:name='Method']/j2:values/j2:value"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                int expectedLayers = i;
+                futures.add(executor.submit(() -> {
+                    Document doc = XmlUtils.buildDocumentFromString(String.format(JHOVE_OUTPUT, expectedLayers), true);
+                    assertEquals(expectedLayers, layers.extract(doc));
+                    assertEquals("Enumerated Colourspace", method.extract(doc));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package nkp.pspValidator.shared.externalUtils.validation.extractions;
+
+import nkp.pspValidator.shared.NamespaceContextImpl;
+import nkp.pspValidator.shared.XmlUtils;
+import nkp.pspValidator.shared.externalUtils.ExtractionResultType;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Vyhodnocení jednoduchých xpath výrazů při sekvenčním čtení xml: stejné výsledky jako nad DOM.
+ */
+public class StreamingXmlExtractorTest {
+
+    private static final String NS = "http://openpreservation.org/ns/jpylyzer/v2/";
+
+    private static final String OUTPUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<jpylyzer xmlns=\"" + NS + "\" xmlns:o=\"http://example.org/other\" version=\"2.1\">\n" +
+            " <toolInfo><toolName>jpylyzer</toolName><toolVersion>2.1.0</toolVersion></toolInfo>\n" +
+            " <file>\n" +
+            "  <fileInfo><fileName>mc_0001.jp2</fileName><fileSizeInBytes>1024</fileSizeInBytes></fileInfo>\n" +
+            "  <isValid format=\"jp2\">True</isValid>\n" +
+            "  <properties>\n" +
+            "   <jp2HeaderBox><imageHeaderBox><height>600</height><width>400</width><nC>3</nC></imageHeaderBox></jp2HeaderBox>\n" +
+            "   <contiguousCodestreamBox>\n" +
+            "    <cod><levels>5</levels><order>RPCL</order><precinctSizeX>256</precinctSizeX><precinctSizeX>128</precinctSizeX></cod>\n" +
+            "    <com><comment><![CDATA[Kakadu <v7>]]> &amp; dal&#x161;&#237;</comment></com>\n" +
+            "    <com><comment>druhý</comment></com>\n" +
+            "    <o:cod><levels>99</levels></o:cod>\n" +
+            "   </contiguousCodestreamBox>\n" +
+            "   <compressionRatio>12.5<!-- komentar --></compressionRatio>\n" +
+            "   <box><box><name>vnoreny</name></box><name>vnejsi</name></box>\n" +
+            "  </properties>\n" +
+            " </file>\n" +
+            "</jpylyzer>";
+
+    private final NamespaceContextImpl namespaceContext = new NamespaceContextImpl();
+
+    public StreamingXmlExtractorTest() {
+        namespaceContext.setNamespace("j", NS);
+        namespaceContext.setNamespace("o", "http://example.org/other");
+    }
+
+    @Test
+    public void simpleExpressions() {
+        for (String xpath : Arrays.asList("//j:fileInfo/j:fileName", "/j:jpylyzer/@version", "rgn", "//j:cod/*", "/j:jpylyzer//j:levels",
+                "//j:isValid/@format", "//*")) {
+            assertNotNull(xpath, SimpleXpath.compile(xpath, namespaceContext));
+        }
+        for (String xpath : Arrays.asList("//j:property[j:name='CSize']/j:values/j:value", "count(.//j:name[text()='TilePart'])",
+                "//j:name/text()", "//x:unknownPrefix", "../j:a", "//@version", "//j:a | //j:b", "//j:a/", "j:a j:b", "")) {
+            assertNull(xpath, SimpleXpath.compile(xpath, namespaceContext));
+        }
+    }
+
+    @Test
+    public void sameValuesAsDom() throws Exception {
+        List<String> xpaths = Arrays.asList(
+                "//j:fileInfo/j:fileName", "//j:toolInfo/j:toolVersion", "/j:jpylyzer/@version", "//j:isValid/@format",
+                "//j:properties/j:jp2HeaderBox/j:imageHeaderBox/j:width", "//j:properties/j:contiguousCodestreamBox/j:cod/j:levels",
+                "//j:properties/j:contiguousCodestreamBox/j:com/j:comment", "//j:cod/j:precinctSizeX", "//j:properties/j:compressionRatio",
+                "//j:cod/*", "/j:jpylyzer//j:levels", "//j:box", "//j:box/j:name", "rgn", "//j:missing", "/j:file", "//j:properties");
+        Document doc = XmlUtils.buildDocumentFromString(OUTPUT, true);
+        for (ExtractionResultType type : new ExtractionResultType[]{ExtractionResultType.STRING, ExtractionResultType.STRING_LIST,
+                ExtractionResultType.INTEGER, ExtractionResultType.INTEGER_LIST, ExtractionResultType.FLOAT, ExtractionResultType.FLOAT_LIST}) {
+            StreamingXmlExtractor extractor = new StreamingXmlExtractor();
+            FirstNonemptyByXpathDataExctraction extraction = new FirstNonemptyByXpathDataExctraction(type, namespaceContext, xpaths);
+            assertTrue(extraction.registerTo(extractor));
+            StreamingXmlExtractor.Values values = extractor.extract(new StringReader(OUTPUT));
+            for (String xpath : xpaths) {
+                assertEquals(type + " " + xpath, extraction.extractData(xpath, doc), extraction.extractData(xpath, values));
+            }
+        }
+    }
+
+    @Test
+    public void valuesInDocumentOrder() throws Exception {
+        StreamingXmlExtractor extractor = new StreamingXmlExtractor();
+        extractor.register(SimpleXpath.compile("//j:box", namespaceContext), true);
+        extractor.register(SimpleXpath.compile("//j:comment", namespaceContext), false);
+        StreamingXmlExtractor.Values values = extractor.extract(new StringReader(OUTPUT));
+        //vnejsi element zacina drive, jeho hodnota obsahuje i text vnoreneho
+        assertEquals(Arrays.asList("vnorenyvnejsi", "vnoreny"), values.get("//j:box"));
+        //u jednoduchych typu se drzi jen prvni hodnota
+        assertEquals(Collections.singletonList("Kakadu <v7> & další"), values.get("//j:comment"));
+        assertNull(values.get("//j:other"));
+    }
+
+    @Test
+    public void mixedExtractionNotRegistered() {
+        StreamingXmlExtractor extractor = new StreamingXmlExtractor();
+        FirstNonemptyByXpathDataExctraction extraction = new FirstNonemptyByXpathDataExctraction(ExtractionResultType.STRING, namespaceContext,
+                Arrays.asList("//j:fileInfo/j:fileName", "//j:property[j:name='CSize']/j:values/j:value"));
+        assertFalse(extraction.registerTo(extractor));
+        assertTrue(extractor.isEmpty());
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void invalidXml() throws Exception {
+        StreamingXmlExtractor extractor = new StreamingXmlExtractor();
+        extractor.register(SimpleXpath.compile("//j:fileName", namespaceContext), false);
+        extractor.extract(new StringReader("<jpylyzer><fileName>a</jpylyzer>"));
+    }
+}
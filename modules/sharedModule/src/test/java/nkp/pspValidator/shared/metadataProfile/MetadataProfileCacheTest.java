@@ -0,0 +1,85 @@
+package nkp.pspValidator.shared.metadataProfile;
+
+import nkp.pspValidator.shared.XmlUtils;
+import nkp.pspValidator.shared.engine.Engine;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationProblem;
+import nkp.pspValidator.shared.engine.validationFunctions.ValidationResult;
+import nkp.pspValidator.shared.metadataProfile.tech.TechnicalMetadataProfilesManager;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class MetadataProfileCacheTest {
+
+    private static final File PROFILE_FILE = new File("src/main/resources/nkp/pspValidator/shared/validatorConfig/fDMF/monograph_1.2/techProfiles/premis_event.xml");
+    private static final File AMDSEC_FILE = new File("src/test/resources/monograph_1.2/b50eb6b0-f0a4-11e3-b72e-005056827e52/amdsec/amd_mets_b50eb6b0-f0a4-11e3-b72e-005056827e52_0001.xml");
+
+    @Test
+    public void profileParsedOnce() throws Exception {
+        TechnicalMetadataProfilesManager manager = new TechnicalMetadataProfilesManager(new MetadataProfileParser(new DictionaryManager(null, Collections.emptyMap())));
+        manager.processFile(PROFILE_FILE);
+        MetadataProfile profile = manager.buildProfile("premis_event");
+        assertNotNull(profile);
+        assertSame(profile, manager.buildProfile("premis_event"));
+        assertSame(profile.getXmlManager(), profile.getXmlManager());
+    }
+
+    @Test
+    public void sharedProfileValidatesConcurrently() throws Exception {
+        MetadataProfileCache cache = new MetadataProfileCache(new MetadataProfileParser(new DictionaryManager(null, Collections.emptyMap())));
+        MetadataProfile profile = cache.get(PROFILE_FILE);
+        assertSame(profile, cache.get(PROFILE_FILE));
+
+        Engine engine = new Engine(null);
+        engine.defineNamespace("premis", "info:lc/xmlns/premis-v2");
+        NodeList events = (NodeList) engine.buildXpath("//premis:event").evaluate(engine.getXmlDocument(AMDSEC_FILE, true), XPathConstants.NODESET);
+        assertTrue(events.getLength() > 0);
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < events.getLength(); i++) {
+            docs.add(XmlUtils.elementToNewDocument((Element) events.item(i), true));
+        }
+
+        List<String> expected = validate(profile, docs);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                //kazde vlakno vlastni kopie dokumentu, DOM neni thread-safe ani pro cteni
+                List<Document> threadDocs = new ArrayList<>();
+                for (int j = 0; j < events.getLength(); j++) {
+                    threadDocs.add(XmlUtils.elementToNewDocument((Element) events.item(j), true));
+                }
+                futures.add(executor.submit(() -> validate(profile, threadDocs)));
+            }
+            for (Future<List<String>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<String> validate(MetadataProfile profile, List<Document> docs) throws Exception {
+        ValidationResult result = new ValidationResult();
+        for (Document doc : docs) {
+            MetadataProfileValidator.validate(profile, AMDSEC_FILE, doc, result, null);
+        }
+        List<String> messages = new ArrayList<>();
+        for (ValidationProblem problem : result.getProblems()) {
+            messages.add(problem.getLevel() + ": " + problem.getMessage(true));
+        }
+        return messages;
+    }
+}